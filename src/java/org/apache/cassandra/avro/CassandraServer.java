@@ -633,6 +633,7 @@ public class CassandraServer implements Cassandra {
                     AbstractReplicationStrategy.getClass(ksDef.strategy_class.toString()),
                     strategyOptions,
                     ksDef.replication_factor,
+                    ksDef.speculative_retry == null ? null : SpeculativeRetry.fromString(ksDef.speculative_retry.toString()),
                     cfDefs.toArray(new CFMetaData[cfDefs.size()]));
             applyMigrationOnStage(new AddKeyspace(ksmeta));
             return DatabaseDescriptor.getDefsVersion().toString();
@@ -720,11 +721,15 @@ public class CassandraServer implements Cassandra {
                 }
             }
             
+            SpeculativeRetry speculativeRetry = ks_def.speculative_retry == null
+                                              ? DatabaseDescriptor.getTableDefinition(ks_def.name.toString()).speculativeRetry
+                                              : SpeculativeRetry.fromString(ks_def.speculative_retry.toString());
             KSMetaData ksm = new KSMetaData(
                     ks_def.name.toString(), 
                     AbstractReplicationStrategy.getClass(ks_def.strategy_class.toString()),
                     strategyOptions,
-                    ks_def.replication_factor);
+                    ks_def.replication_factor,
+                    speculativeRetry);
             applyMigrationOnStage(new UpdateKeyspace(ksm));
             return DatabaseDescriptor.getDefsVersion().toString();
         }
@@ -809,26 +814,39 @@ public class CassandraServer implements Cassandra {
         CFMetaData.validateMinMaxCompactionThresholds(cf_def);
         CFMetaData.validateMemtableSettings(cf_def);
 
-        return new CFMetaData(cf_def.keyspace.toString(),
-                              cf_def.name.toString(),
-                              ColumnFamilyType.create(cfType),
-                              DatabaseDescriptor.getComparator(compare),
-                              subCompare.length() == 0 ? null : DatabaseDescriptor.getComparator(subCompare),
-                              cf_def.comment == null ? "" : cf_def.comment.toString(),
-                              cf_def.row_cache_size == null ? CFMetaData.DEFAULT_ROW_CACHE_SIZE : cf_def.row_cache_size,
-                              cf_def.key_cache_size == null ? CFMetaData.DEFAULT_KEY_CACHE_SIZE : cf_def.key_cache_size,
-                              cf_def.read_repair_chance == null ? CFMetaData.DEFAULT_READ_REPAIR_CHANCE : cf_def.read_repair_chance,
-                              cf_def.replicate_on_write == null ? CFMetaData.DEFAULT_REPLICATE_ON_WRITE : cf_def.replicate_on_write,
-                              cf_def.gc_grace_seconds != null ? cf_def.gc_grace_seconds : CFMetaData.DEFAULT_GC_GRACE_SECONDS,
-                              DatabaseDescriptor.getComparator(validate),
-                              cf_def.min_compaction_threshold == null ? CFMetaData.DEFAULT_MIN_COMPACTION_THRESHOLD : cf_def.min_compaction_threshold,
-                              cf_def.max_compaction_threshold == null ? CFMetaData.DEFAULT_MAX_COMPACTION_THRESHOLD : cf_def.max_compaction_threshold,
-                              cf_def.row_cache_save_period_in_seconds == null ? CFMetaData.DEFAULT_ROW_CACHE_SAVE_PERIOD_IN_SECONDS : cf_def.row_cache_save_period_in_seconds,
-                              cf_def.key_cache_save_period_in_seconds == null ? CFMetaData.DEFAULT_KEY_CACHE_SAVE_PERIOD_IN_SECONDS : cf_def.key_cache_save_period_in_seconds,
-                              cf_def.memtable_flush_after_mins == null ? CFMetaData.DEFAULT_MEMTABLE_LIFETIME_IN_MINS : cf_def.memtable_flush_after_mins,
-                              cf_def.memtable_throughput_in_mb == null ? CFMetaData.DEFAULT_MEMTABLE_THROUGHPUT_IN_MB : cf_def.memtable_throughput_in_mb,
-                              cf_def.memtable_operations_in_millions == null ? CFMetaData.DEFAULT_MEMTABLE_OPERATIONS_IN_MILLIONS : cf_def.memtable_operations_in_millions,
-                              ColumnDefinition.fromColumnDefs((Iterable<ColumnDef>) cf_def.column_metadata));
+        CFMetaData cfm = new CFMetaData(cf_def.keyspace.toString(),
+                                        cf_def.name.toString(),
+                                        ColumnFamilyType.create(cfType),
+                                        DatabaseDescriptor.getComparator(compare),
+                                        subCompare.length() == 0 ? null : DatabaseDescriptor.getComparator(subCompare),
+                                        cf_def.comment == null ? "" : cf_def.comment.toString(),
+                                        cf_def.row_cache_size == null ? CFMetaData.DEFAULT_ROW_CACHE_SIZE : cf_def.row_cache_size,
+                                        cf_def.key_cache_size == null ? CFMetaData.DEFAULT_KEY_CACHE_SIZE : cf_def.key_cache_size,
+                                        cf_def.read_repair_chance == null ? CFMetaData.DEFAULT_READ_REPAIR_CHANCE : cf_def.read_repair_chance,
+                                        cf_def.replicate_on_write == null ? CFMetaData.DEFAULT_REPLICATE_ON_WRITE : cf_def.replicate_on_write,
+                                        cf_def.gc_grace_seconds != null ? cf_def.gc_grace_seconds : CFMetaData.DEFAULT_GC_GRACE_SECONDS,
+                                        DatabaseDescriptor.getComparator(validate),
+                                        cf_def.min_compaction_threshold == null ? CFMetaData.DEFAULT_MIN_COMPACTION_THRESHOLD : cf_def.min_compaction_threshold,
+                                        cf_def.max_compaction_threshold == null ? CFMetaData.DEFAULT_MAX_COMPACTION_THRESHOLD : cf_def.max_compaction_threshold,
+                                        cf_def.row_cache_save_period_in_seconds == null ? CFMetaData.DEFAULT_ROW_CACHE_SAVE_PERIOD_IN_SECONDS : cf_def.row_cache_save_period_in_seconds,
+                                        cf_def.key_cache_save_period_in_seconds == null ? CFMetaData.DEFAULT_KEY_CACHE_SAVE_PERIOD_IN_SECONDS : cf_def.key_cache_save_period_in_seconds,
+                                        cf_def.memtable_flush_after_mins == null ? CFMetaData.DEFAULT_MEMTABLE_LIFETIME_IN_MINS : cf_def.memtable_flush_after_mins,
+                                        cf_def.memtable_throughput_in_mb == null ? CFMetaData.DEFAULT_MEMTABLE_THROUGHPUT_IN_MB : cf_def.memtable_throughput_in_mb,
+                                        cf_def.memtable_operations_in_millions == null ? CFMetaData.DEFAULT_MEMTABLE_OPERATIONS_IN_MILLIONS : cf_def.memtable_operations_in_millions,
+                                        ColumnDefinition.fromColumnDefs((Iterable<ColumnDef>) cf_def.column_metadata));
+        if (cf_def.memtable_allocator != null)
+            cfm.setMemtableAllocator(cf_def.memtable_allocator.toString());
+        if (cf_def.compaction_strategy != null)
+            cfm.setCompactionStrategyClass(cf_def.compaction_strategy.toString());
+        if (cf_def.compaction_strategy_options != null)
+            cfm.setCompactionStrategyOptions(cf_def.compaction_strategy_options);
+        if (cf_def.compression != null)
+            cfm.setCompression(cf_def.compression);
+        if (cf_def.compression_chunk_length_in_kb != null)
+            cfm.setCompressionChunkLengthInKb(cf_def.compression_chunk_length_in_kb);
+        if (cf_def.row_cache_size_in_mb != null)
+            cfm.setRowCacheSizeInMb(cf_def.row_cache_size_in_mb);
+        return cfm;
     }
 
     public KsDef describe_keyspace(CharSequence keyspace) throws AvroRemoteException, NotFoundException
@@ -0,0 +1,61 @@
+package org.apache.cassandra.cache;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+import java.util.Set;
+
+/**
+ * The storage behind an InstrumentedCache. This is like a Map, but it maintains a given capacity,
+ * and put and remove don't return the previous value, so that an implementation that stores values
+ * in serialized form only has to deserialize them on get.
+ */
+public interface ICache<K, V>
+{
+    public int capacity();
+
+    public void setCapacity(int capacity);
+
+    public void put(K key, V value);
+
+    public V get(K key);
+
+    public void remove(K key);
+
+    /**
+     * @return the number of entries in the cache
+     */
+    public int size();
+
+    /**
+     * @return the sum of the weights of the entries in the cache, in the same unit as the capacity
+     */
+    public int weightedSize();
+
+    public void clear();
+
+    public Set<K> keySet();
+
+    /**
+     * @return true if the cache stores copies of the values put into it, so that a value returned by get
+     * may be modified without affecting the cache, and changes to a cached value must be put again
+     */
+    public boolean isPutCopying();
+}
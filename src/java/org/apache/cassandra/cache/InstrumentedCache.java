@@ -24,14 +24,9 @@ package org.apache.cassandra.cache;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
-import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
-import com.googlecode.concurrentlinkedhashmap.Weighers;
-
 public class InstrumentedCache<K, V>
 {
-    public static final int DEFAULT_CONCURENCY_LEVEL = 64;
-
-    private final ConcurrentLinkedHashMap<K, V> map;
+    private final ICache<K, V> map;
     private final AtomicLong requests = new AtomicLong(0);
     private final AtomicLong hits = new AtomicLong(0);
     private final AtomicLong lastRequests = new AtomicLong(0);
@@ -40,17 +35,12 @@ public class InstrumentedCache<K, V>
 
     public InstrumentedCache(int capacity)
     {
-        this(capacity, DEFAULT_CONCURENCY_LEVEL);
+        this(ConcurrentLinkedHashCache.<K, V>create(capacity));
     }
 
-    public InstrumentedCache(int capacity, int concurency)
+    public InstrumentedCache(ICache<K, V> map)
     {
-        map = new ConcurrentLinkedHashMap.Builder<K, V>()
-                .weigher(Weighers.<V>singleton())
-                .initialCapacity(capacity)
-                .maximumWeightedCapacity(capacity)
-                .concurrencyLevel(concurency)
-                .build();
+        this.map = map;
     }
 
     public void put(K key, V value)
@@ -82,6 +72,14 @@ public class InstrumentedCache<K, V>
         return map.capacity();
     }
 
+    /**
+     * @return true if values are copied into the cache, so that a cached value can't be modified in place
+     */
+    public boolean isPutCopying()
+    {
+        return map.isPutCopying();
+    }
+
     public boolean isCapacitySetManually()
     {
         return capacitySetManually;
@@ -103,6 +101,11 @@ public class InstrumentedCache<K, V>
         return map.size();
     }
 
+    public int getWeightedSize()
+    {
+        return map.weightedSize();
+    }
+
     public long getHits()
     {
         return hits.get();
@@ -27,6 +27,9 @@ public interface JMXInstrumentedCacheMBean
     public void setCapacity(int capacity);
     public int getSize();
 
+    /** the sum of the weights of the cached entries, in the unit of the capacity (entries, or kilobytes for an off-heap cache) */
+    public int getWeightedSize();
+
     /** total request count since cache creation */
     public long getRequests();
 
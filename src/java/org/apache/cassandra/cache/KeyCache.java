@@ -0,0 +1,422 @@
+package org.apache.cassandra.cache;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.MurmurHash;
+
+/**
+ * Maps (sstable generation, row key) to the position of the row in the sstable's data file, and to the position
+ * of its promoted header in the sstable's index file if it has one.
+ *
+ * Entries live in parallel primitive arrays of open-addressed hash tables (one per segment, each guarded by its
+ * own monitor) instead of as map nodes, so an entry costs a copy of the key bytes and a few dozen bytes of
+ * slots rather than the half dozen objects a Pair<Descriptor, DecoratedKey> -> Long map entry needs.
+ * When a segment is full, the CLOCK algorithm picks the entry to evict: a hit marks an entry as referenced,
+ * and the clock hand skips (and clears) referenced entries once before evicting them.
+ */
+public class KeyCache implements KeyCacheMBean
+{
+    private static final int SEGMENT_SHIFT = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_SHIFT;
+    private static final int INITIAL_SEGMENT_SLOTS = 16;
+
+    private final Segment[] segments;
+    private volatile int capacity;
+    private volatile boolean capacitySetManually;
+
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong lastRequests = new AtomicLong(0);
+    private final AtomicLong lastHits = new AtomicLong(0);
+
+    public KeyCache(int capacity)
+    {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment();
+        updateCapacity(capacity);
+    }
+
+    public KeyCache(String table, String name, int capacity)
+    {
+        this(capacity);
+        AbstractCache.registerMBean(this, table, name);
+    }
+
+    private static int hash(int generation, ByteBuffer key)
+    {
+        if (key.hasArray())
+            return MurmurHash.hash32(key.array(), key.arrayOffset() + key.position(), key.remaining(), generation);
+        byte[] bytes = ByteBufferUtil.getArray(key);
+        return MurmurHash.hash32(bytes, 0, bytes.length, generation);
+    }
+
+    private Segment segmentFor(int hash)
+    {
+        return segments[hash >>> (32 - SEGMENT_SHIFT)];
+    }
+
+    /**
+     * @return the cached data file position of the key in the sstable with the given generation, or -1 if it
+     * isn't cached
+     */
+    public long get(int generation, ByteBuffer key)
+    {
+        Entry entry = getEntry(generation, key);
+        return entry == null ? -1 : entry.position;
+    }
+
+    /**
+     * @return the cached positions of the key in the sstable with the given generation, or null if it isn't cached
+     */
+    public Entry getEntry(int generation, ByteBuffer key)
+    {
+        int hash = hash(generation, key);
+        Entry entry = segmentFor(hash).get(hash, generation, key);
+        requests.incrementAndGet();
+        if (entry != null)
+            hits.incrementAndGet();
+        return entry;
+    }
+
+    public void put(int generation, ByteBuffer key, long position)
+    {
+        put(generation, key, position, -1);
+    }
+
+    /**
+     * @param headerPosition the position in the index file of the promoted header of the row, or -1 if it has none
+     */
+    public void put(int generation, ByteBuffer key, long position, long headerPosition)
+    {
+        assert position >= 0;
+        int hash = hash(generation, key);
+        segmentFor(hash).put(hash, generation, key, position, headerPosition);
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public boolean isCapacitySetManually()
+    {
+        return capacitySetManually;
+    }
+
+    public void updateCapacity(int capacity)
+    {
+        this.capacity = capacity;
+        // spread the capacity over the segments, so that their sum is exactly the capacity
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i].setMaxSize(capacity / SEGMENTS + (i < capacity % SEGMENTS ? 1 : 0));
+    }
+
+    public void setCapacity(int capacity)
+    {
+        updateCapacity(capacity);
+        capacitySetManually = true;
+    }
+
+    public int getSize()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    public int getWeightedSize()
+    {
+        return getSize();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getRequests()
+    {
+        return requests.get();
+    }
+
+    public double getRecentHitRate()
+    {
+        long r = requests.get();
+        long h = hits.get();
+        try
+        {
+            return ((double)(h - lastHits.get())) / (r - lastRequests.get());
+        }
+        finally
+        {
+            lastRequests.set(r);
+            lastHits.set(h);
+        }
+    }
+
+    public void clear()
+    {
+        for (Segment segment : segments)
+            segment.clear();
+        requests.set(0);
+        hits.set(0);
+    }
+
+    /**
+     * @return a snapshot of the distinct row keys in the cache, whatever sstable they were cached for
+     */
+    public Set<ByteBuffer> getKeySet()
+    {
+        Set<ByteBuffer> keys = new HashSet<ByteBuffer>();
+        for (Segment segment : segments)
+            segment.addKeysTo(keys);
+        return keys;
+    }
+
+    public static final class Entry
+    {
+        /** the position of the row in the data file */
+        public final long position;
+        /** the position in the index file of the promoted header of the row, or -1 if it has none */
+        public final long headerPosition;
+
+        Entry(long position, long headerPosition)
+        {
+            this.position = position;
+            this.headerPosition = headerPosition;
+        }
+    }
+
+    /**
+     * A linear-probing hash table whose slots are spread over parallel arrays.  A slot is empty iff its key is null.
+     * The table starts small and doubles until it can hold maxSize entries at a load factor of 3/4.
+     */
+    private static final class Segment
+    {
+        private int[] hashes;
+        private int[] generations;
+        private long[] positions;
+        private long[] headerPositions;
+        private byte[][] keys;
+        private boolean[] referenced;
+
+        private int size;
+        private int maxSize;
+        private int hand;
+
+        Segment()
+        {
+            allocate(INITIAL_SEGMENT_SLOTS);
+        }
+
+        private void allocate(int slots)
+        {
+            hashes = new int[slots];
+            generations = new int[slots];
+            positions = new long[slots];
+            headerPositions = new long[slots];
+            keys = new byte[slots][];
+            referenced = new boolean[slots];
+            size = 0;
+            hand = 0;
+        }
+
+        private static int slotsFor(int entries)
+        {
+            int slots = INITIAL_SEGMENT_SLOTS;
+            while (slots * 3 / 4 < entries)
+                slots <<= 1;
+            return slots;
+        }
+
+        private int indexOf(int hash, int generation, ByteBuffer key)
+        {
+            int mask = keys.length - 1;
+            for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask)
+            {
+                if (hashes[i] == hash && generations[i] == generation && equals(keys[i], key))
+                    return i;
+            }
+            return -1;
+        }
+
+        private static boolean equals(byte[] cached, ByteBuffer key)
+        {
+            if (cached.length != key.remaining())
+                return false;
+            for (int i = 0; i < cached.length; i++)
+            {
+                if (cached[i] != key.get(key.position() + i))
+                    return false;
+            }
+            return true;
+        }
+
+        synchronized Entry get(int hash, int generation, ByteBuffer key)
+        {
+            int i = indexOf(hash, generation, key);
+            if (i < 0)
+                return null;
+            referenced[i] = true;
+            return new Entry(positions[i], headerPositions[i]);
+        }
+
+        synchronized void put(int hash, int generation, ByteBuffer key, long position, long headerPosition)
+        {
+            int i = indexOf(hash, generation, key);
+            if (i >= 0)
+            {
+                positions[i] = position;
+                headerPositions[i] = headerPosition;
+                return;
+            }
+            if (maxSize == 0)
+                return;
+
+            if (size == maxSize)
+                evict();
+            else if (size >= keys.length * 3 / 4)
+                rehash(keys.length << 1);
+            insert(hash, generation, ByteBufferUtil.getArray(key), position, headerPosition, false);
+        }
+
+        private void insert(int hash, int generation, byte[] key, long position, long headerPosition, boolean ref)
+        {
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (keys[i] != null)
+                i = (i + 1) & mask;
+            hashes[i] = hash;
+            generations[i] = generation;
+            positions[i] = position;
+            headerPositions[i] = headerPosition;
+            keys[i] = key;
+            referenced[i] = ref;
+            size++;
+        }
+
+        /**
+         * Advances the clock hand to the first unreferenced entry, clearing the reference bits it passes, and removes it.
+         */
+        private void evict()
+        {
+            int mask = keys.length - 1;
+            while (true)
+            {
+                if (keys[hand] != null)
+                {
+                    if (!referenced[hand])
+                    {
+                        // removal may shift a later entry into this slot, so leave the hand here
+                        removeAt(hand);
+                        return;
+                    }
+                    referenced[hand] = false;
+                }
+                hand = (hand + 1) & mask;
+            }
+        }
+
+        /**
+         * Empties slot i, then shifts back any entry of the same probe run that would no longer be reachable.
+         */
+        private void removeAt(int i)
+        {
+            int mask = keys.length - 1;
+            int j = i;
+            while (true)
+            {
+                j = (j + 1) & mask;
+                if (keys[j] == null)
+                    break;
+                int home = hashes[j] & mask;
+                // the entry at j can move to i only if its home slot is not cyclically within (i, j]
+                boolean reachable = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (reachable)
+                    continue;
+                hashes[i] = hashes[j];
+                generations[i] = generations[j];
+                positions[i] = positions[j];
+                headerPositions[i] = headerPositions[j];
+                keys[i] = keys[j];
+                referenced[i] = referenced[j];
+                i = j;
+            }
+            keys[i] = null;
+            size--;
+        }
+
+        private void rehash(int slots)
+        {
+            int[] oldHashes = hashes;
+            int[] oldGenerations = generations;
+            long[] oldPositions = positions;
+            long[] oldHeaderPositions = headerPositions;
+            byte[][] oldKeys = keys;
+            boolean[] oldReferenced = referenced;
+            allocate(slots);
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldKeys[i] != null)
+                    insert(oldHashes[i], oldGenerations[i], oldKeys[i], oldPositions[i], oldHeaderPositions[i], oldReferenced[i]);
+            }
+        }
+
+        synchronized void setMaxSize(int maxSize)
+        {
+            this.maxSize = maxSize;
+            while (size > maxSize)
+                evict();
+            // give back the memory of a table that is now much larger than needed
+            int slots = slotsFor(Math.max(size, 1));
+            if (slots < keys.length / 2)
+                rehash(slots);
+        }
+
+        synchronized int size()
+        {
+            return size;
+        }
+
+        synchronized void clear()
+        {
+            allocate(INITIAL_SEGMENT_SLOTS);
+        }
+
+        synchronized void addKeysTo(Set<ByteBuffer> set)
+        {
+            for (byte[] key : keys)
+            {
+                if (key != null)
+                    set.add(ByteBuffer.wrap(key));
+            }
+        }
+    }
+}
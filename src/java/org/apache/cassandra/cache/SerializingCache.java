@@ -0,0 +1,201 @@
+package org.apache.cassandra.cache;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import org.apache.cassandra.io.ICompactSerializer2;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+
+/**
+ * Serializes cache values into native memory, outside of the Java heap, so that a large cache costs the
+ * garbage collector nothing. Entries are weighed by their serialized size in kilobytes (rounded up), so the
+ * capacity is in kilobytes too. Values are deserialized on every get; callers must put a value again to
+ * change what is cached.
+ */
+public class SerializingCache<K, V> implements ICache<K, V>
+{
+    private static final Logger logger = LoggerFactory.getLogger(SerializingCache.class);
+
+    private static final int DEFAULT_CONCURENCY_LEVEL = 64;
+
+    private static final boolean available;
+    static
+    {
+        boolean jna = true;
+        try
+        {
+            Class.forName("com.sun.jna.Memory");
+        }
+        catch (Throwable e)
+        {
+            logger.info("JNA not found. Off-heap caches will be disabled.");
+            jna = false;
+        }
+        available = jna;
+    }
+
+    private final ConcurrentLinkedHashMap<K, FreeableMemory> map;
+    private final ICompactSerializer2<V> serializer;
+
+    public SerializingCache(int capacityInKb, ICompactSerializer2<V> serializer)
+    {
+        this.serializer = serializer;
+
+        EvictionListener<K, FreeableMemory> listener = new EvictionListener<K, FreeableMemory>()
+        {
+            public void onEviction(K k, FreeableMemory mem)
+            {
+                mem.unreference();
+            }
+        };
+        Weigher<FreeableMemory> weigher = new Weigher<FreeableMemory>()
+        {
+            public int weightOf(FreeableMemory mem)
+            {
+                return (int) ((mem.size() + 1023) / 1024);
+            }
+        };
+        this.map = new ConcurrentLinkedHashMap.Builder<K, FreeableMemory>()
+                   .weigher(weigher)
+                   .initialCapacity(16)
+                   .maximumWeightedCapacity(capacityInKb)
+                   .concurrencyLevel(DEFAULT_CONCURENCY_LEVEL)
+                   .listener(listener)
+                   .build();
+    }
+
+    /**
+     * @return true if native memory can be allocated: that requires JNA, which is optional
+     */
+    public static boolean isAvailable()
+    {
+        return available;
+    }
+
+    private V deserialize(FreeableMemory mem)
+    {
+        byte[] bytes = new byte[(int) mem.size()];
+        mem.read(0, bytes, 0, bytes.length);
+        try
+        {
+            return serializer.deserialize(new DataInputStream(new ByteArrayInputStream(bytes)));
+        }
+        catch (IOException e)
+        {
+            throw new IOError(e);
+        }
+    }
+
+    private FreeableMemory serialize(V value)
+    {
+        DataOutputBuffer buffer = new DataOutputBuffer();
+        try
+        {
+            serializer.serialize(value, buffer);
+        }
+        catch (IOException e)
+        {
+            throw new IOError(e);
+        }
+        FreeableMemory mem = new FreeableMemory(buffer.getLength());
+        mem.write(0, buffer.getData(), 0, buffer.getLength());
+        return mem;
+    }
+
+    public int capacity()
+    {
+        return map.capacity();
+    }
+
+    public void setCapacity(int capacity)
+    {
+        map.setCapacity(capacity);
+    }
+
+    public int size()
+    {
+        return map.size();
+    }
+
+    public int weightedSize()
+    {
+        return map.weightedSize();
+    }
+
+    public void clear()
+    {
+        for (K key : map.keySet())
+            remove(key);
+    }
+
+    public V get(K key)
+    {
+        FreeableMemory mem = map.get(key);
+        if (mem == null)
+            return null;
+        // the entry may be evicted, and its memory freed, while we read it
+        if (!mem.reference())
+            return null;
+        try
+        {
+            return deserialize(mem);
+        }
+        finally
+        {
+            mem.unreference();
+        }
+    }
+
+    public void put(K key, V value)
+    {
+        FreeableMemory old = map.put(key, serialize(value));
+        if (old != null)
+            old.unreference();
+    }
+
+    public void remove(K key)
+    {
+        FreeableMemory mem = map.remove(key);
+        if (mem != null)
+            mem.unreference();
+    }
+
+    public Set<K> keySet()
+    {
+        return map.keySet();
+    }
+
+    public boolean isPutCopying()
+    {
+        return true;
+    }
+}
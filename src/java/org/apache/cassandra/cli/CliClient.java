@@ -1305,16 +1305,19 @@ public class CliClient extends CliUserHelp
             // compaction manager information
             if (compactionManagerMBean != null)
             {
-                String compactionType = compactionManagerMBean.getCompactionType();
-
-                // if ongoing compaction type is index build
-                if (compactionType != null && compactionType.contains("index build"))
+                for (Map<String, String> compaction : compactionManagerMBean.getCompactions())
                 {
-                    String indexName         = compactionManagerMBean.getColumnFamilyInProgress();
-                    long bytesCompacted      = compactionManagerMBean.getBytesCompacted();
-                    long totalBytesToProcess = compactionManagerMBean.getBytesTotalInProgress();
+                    String compactionType = compaction.get(CompactionManagerMBean.COMPACTION_TYPE);
+
+                    // if ongoing compaction type is index build
+                    if (compactionType != null && compactionType.contains("index build"))
+                    {
+                        String indexName         = compaction.get(CompactionManagerMBean.COMPACTION_COLUMNFAMILY);
+                        long bytesCompacted      = Long.parseLong(compaction.get(CompactionManagerMBean.COMPACTION_BYTES_COMPACTED));
+                        long totalBytesToProcess = Long.parseLong(compaction.get(CompactionManagerMBean.COMPACTION_BYTES_TOTAL));
 
-                    sessionState.out.printf("%nCurrently building index %s, completed %d of %d bytes.%n", indexName, bytesCompacted, totalBytesToProcess);
+                        sessionState.out.printf("%nCurrently building index %s, completed %d of %d bytes.%n", indexName, bytesCompacted, totalBytesToProcess);
+                    }
                 }
             }
 
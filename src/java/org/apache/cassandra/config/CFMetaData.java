@@ -30,8 +30,10 @@ import org.apache.commons.lang.builder.ToStringBuilder;
 
 import org.apache.avro.util.Utf8;
 import org.apache.cassandra.avro.ColumnDef;
+import org.apache.cassandra.db.AbstractCompactionStrategy;
 import org.apache.cassandra.db.ColumnFamilyType;
 import org.apache.cassandra.db.HintedHandOffManager;
+import org.apache.cassandra.db.SizeTieredCompactionStrategy;
 import org.apache.cassandra.db.SystemTable;
 import org.apache.cassandra.db.Table;
 import org.apache.cassandra.db.marshal.AbstractType;
@@ -40,8 +42,10 @@ import org.apache.cassandra.db.marshal.TimeUUIDType;
 import org.apache.cassandra.db.marshal.UTF8Type;
 import org.apache.cassandra.db.migration.Migration;
 import org.apache.cassandra.io.SerDeUtils;
+import org.apache.cassandra.utils.Allocator;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.HeapAllocator;
 import org.apache.cassandra.utils.Pair;
 
 
@@ -59,6 +63,11 @@ public final class CFMetaData
     public final static int DEFAULT_MEMTABLE_LIFETIME_IN_MINS = 60;
     public final static int DEFAULT_MEMTABLE_THROUGHPUT_IN_MB = sizeMemtableThroughput();
     public final static double DEFAULT_MEMTABLE_OPERATIONS_IN_MILLIONS = sizeMemtableOperations(DEFAULT_MEMTABLE_THROUGHPUT_IN_MB);
+    public final static Class<? extends Allocator> DEFAULT_MEMTABLE_ALLOCATOR = HeapAllocator.class;
+    public final static Class<? extends AbstractCompactionStrategy> DEFAULT_COMPACTION_STRATEGY_CLASS = SizeTieredCompactionStrategy.class;
+    public final static boolean DEFAULT_COMPRESSION = false;
+    public final static int DEFAULT_COMPRESSION_CHUNK_LENGTH_IN_KB = 64;
+    public final static int DEFAULT_ROW_CACHE_SIZE_IN_MB = 0;
 
     private static final int MIN_CF_ID = 1000;
 
@@ -159,6 +168,12 @@ public final class CFMetaData
     private int memtableFlushAfterMins;               // default 60 
     private int memtableThroughputInMb;               // default based on heap size
     private double memtableOperationsInMillions;      // default based on throughput
+    private Class<? extends Allocator> memtableAllocator = DEFAULT_MEMTABLE_ALLOCATOR; // default HeapAllocator
+    private Class<? extends AbstractCompactionStrategy> compactionStrategyClass = DEFAULT_COMPACTION_STRATEGY_CLASS; // default size tiered
+    private Map<String, String> compactionStrategyOptions = new HashMap<String, String>();
+    private boolean compression = DEFAULT_COMPRESSION;                                 // default off
+    private int compressionChunkLengthInKb = DEFAULT_COMPRESSION_CHUNK_LENGTH_IN_KB;  // default 64
+    private int rowCacheSizeInMb = DEFAULT_ROW_CACHE_SIZE_IN_MB;                      // default 0: cache rowCacheSize rows on the heap
     // NOTE: if you find yourself adding members to this class, make sure you keep the convert methods in lockstep.
 
     private final Map<ByteBuffer, ColumnDefinition> column_metadata;
@@ -302,53 +317,67 @@ public final class CFMetaData
     /** clones an existing CFMetaData using the same id. */
     public static CFMetaData rename(CFMetaData cfm, String newName)
     {
-        return new CFMetaData(cfm.tableName,
-                              newName,
-                              cfm.cfType,
-                              cfm.comparator,
-                              cfm.subcolumnComparator,
-                              cfm.comment,
-                              cfm.rowCacheSize,
-                              cfm.keyCacheSize,
-                              cfm.readRepairChance,
-                              cfm.replicateOnWrite,
-                              cfm.gcGraceSeconds,
-                              cfm.defaultValidator,
-                              cfm.minCompactionThreshold,
-                              cfm.maxCompactionThreshold,
-                              cfm.rowCacheSavePeriodInSeconds,
-                              cfm.keyCacheSavePeriodInSeconds,
-                              cfm.memtableFlushAfterMins,
-                              cfm.memtableThroughputInMb,
-                              cfm.memtableOperationsInMillions,
-                              cfm.cfId,
-                              cfm.column_metadata);
+        CFMetaData newCfm = new CFMetaData(cfm.tableName,
+                                           newName,
+                                           cfm.cfType,
+                                           cfm.comparator,
+                                           cfm.subcolumnComparator,
+                                           cfm.comment,
+                                           cfm.rowCacheSize,
+                                           cfm.keyCacheSize,
+                                           cfm.readRepairChance,
+                                           cfm.replicateOnWrite,
+                                           cfm.gcGraceSeconds,
+                                           cfm.defaultValidator,
+                                           cfm.minCompactionThreshold,
+                                           cfm.maxCompactionThreshold,
+                                           cfm.rowCacheSavePeriodInSeconds,
+                                           cfm.keyCacheSavePeriodInSeconds,
+                                           cfm.memtableFlushAfterMins,
+                                           cfm.memtableThroughputInMb,
+                                           cfm.memtableOperationsInMillions,
+                                           cfm.cfId,
+                                           cfm.column_metadata);
+        newCfm.memtableAllocator = cfm.memtableAllocator;
+        newCfm.compactionStrategyClass = cfm.compactionStrategyClass;
+        newCfm.compactionStrategyOptions = new HashMap<String, String>(cfm.compactionStrategyOptions);
+        newCfm.compression = cfm.compression;
+        newCfm.compressionChunkLengthInKb = cfm.compressionChunkLengthInKb;
+        newCfm.rowCacheSizeInMb = cfm.rowCacheSizeInMb;
+        return newCfm;
     }
     
     /** clones existing CFMetaData. keeps the id but changes the table name.*/
     public static CFMetaData renameTable(CFMetaData cfm, String tableName)
     {
-        return new CFMetaData(tableName,
-                              cfm.cfName,
-                              cfm.cfType,
-                              cfm.comparator,
-                              cfm.subcolumnComparator,
-                              cfm.comment,
-                              cfm.rowCacheSize,
-                              cfm.keyCacheSize,
-                              cfm.readRepairChance,
-                              cfm.replicateOnWrite,
-                              cfm.gcGraceSeconds,
-                              cfm.defaultValidator,
-                              cfm.minCompactionThreshold,
-                              cfm.maxCompactionThreshold,
-                              cfm.rowCacheSavePeriodInSeconds,
-                              cfm.keyCacheSavePeriodInSeconds,
-                              cfm.memtableFlushAfterMins,
-                              cfm.memtableThroughputInMb,
-                              cfm.memtableOperationsInMillions,
-                              cfm.cfId,
-                              cfm.column_metadata);
+        CFMetaData newCfm = new CFMetaData(tableName,
+                                           cfm.cfName,
+                                           cfm.cfType,
+                                           cfm.comparator,
+                                           cfm.subcolumnComparator,
+                                           cfm.comment,
+                                           cfm.rowCacheSize,
+                                           cfm.keyCacheSize,
+                                           cfm.readRepairChance,
+                                           cfm.replicateOnWrite,
+                                           cfm.gcGraceSeconds,
+                                           cfm.defaultValidator,
+                                           cfm.minCompactionThreshold,
+                                           cfm.maxCompactionThreshold,
+                                           cfm.rowCacheSavePeriodInSeconds,
+                                           cfm.keyCacheSavePeriodInSeconds,
+                                           cfm.memtableFlushAfterMins,
+                                           cfm.memtableThroughputInMb,
+                                           cfm.memtableOperationsInMillions,
+                                           cfm.cfId,
+                                           cfm.column_metadata);
+        newCfm.memtableAllocator = cfm.memtableAllocator;
+        newCfm.compactionStrategyClass = cfm.compactionStrategyClass;
+        newCfm.compactionStrategyOptions = new HashMap<String, String>(cfm.compactionStrategyOptions);
+        newCfm.compression = cfm.compression;
+        newCfm.compressionChunkLengthInKb = cfm.compressionChunkLengthInKb;
+        newCfm.rowCacheSizeInMb = cfm.rowCacheSizeInMb;
+        return newCfm;
     }
     
     /** used for evicting cf data out of static tracking collections. */
@@ -387,6 +416,14 @@ public final class CFMetaData
         cf.memtable_flush_after_mins = memtableFlushAfterMins;
         cf.memtable_throughput_in_mb = memtableThroughputInMb;
         cf.memtable_operations_in_millions = memtableOperationsInMillions;
+        cf.memtable_allocator = new Utf8(memtableAllocator.getName());
+        cf.compaction_strategy = new Utf8(compactionStrategyClass.getName());
+        cf.compaction_strategy_options = new HashMap<CharSequence, CharSequence>();
+        for (Map.Entry<String, String> e : compactionStrategyOptions.entrySet())
+            cf.compaction_strategy_options.put(new Utf8(e.getKey()), new Utf8(e.getValue()));
+        cf.compression = compression;
+        cf.compression_chunk_length_in_kb = compressionChunkLengthInKb;
+        cf.row_cache_size_in_mb = rowCacheSizeInMb;
         cf.column_metadata = SerDeUtils.createArray(column_metadata.size(),
                                                     org.apache.cassandra.avro.ColumnDef.SCHEMA$);
         for (ColumnDefinition cd : column_metadata.values())
@@ -428,27 +465,47 @@ public final class CFMetaData
         Integer memtable_throughput_in_mb = cf.memtable_throughput_in_mb == null ? DEFAULT_MEMTABLE_THROUGHPUT_IN_MB : cf.memtable_throughput_in_mb;
         Double memtable_operations_in_millions = cf.memtable_operations_in_millions == null ? DEFAULT_MEMTABLE_OPERATIONS_IN_MILLIONS : cf.memtable_operations_in_millions;
 
-        return new CFMetaData(cf.keyspace.toString(),
-                              cf.name.toString(),
-                              ColumnFamilyType.create(cf.column_type.toString()),
-                              comparator,
-                              subcolumnComparator,
-                              cf.comment.toString(),
-                              cf.row_cache_size,
-                              cf.key_cache_size,
-                              cf.read_repair_chance,
-                              cf.replicate_on_write,
-                              cf.gc_grace_seconds,
-                              validator,
-                              minct,
-                              maxct,
-                              row_cache_save_period_in_seconds,
-                              key_cache_save_period_in_seconds,
-                              memtable_flush_after_mins,
-                              memtable_throughput_in_mb,
-                              memtable_operations_in_millions,
-                              cf.id,
-                              column_metadata);
+        CFMetaData cfm = new CFMetaData(cf.keyspace.toString(),
+                                        cf.name.toString(),
+                                        ColumnFamilyType.create(cf.column_type.toString()),
+                                        comparator,
+                                        subcolumnComparator,
+                                        cf.comment.toString(),
+                                        cf.row_cache_size,
+                                        cf.key_cache_size,
+                                        cf.read_repair_chance,
+                                        cf.replicate_on_write,
+                                        cf.gc_grace_seconds,
+                                        validator,
+                                        minct,
+                                        maxct,
+                                        row_cache_save_period_in_seconds,
+                                        key_cache_save_period_in_seconds,
+                                        memtable_flush_after_mins,
+                                        memtable_throughput_in_mb,
+                                        memtable_operations_in_millions,
+                                        cf.id,
+                                        column_metadata);
+        try
+        {
+            if (cf.memtable_allocator != null)
+                cfm.setMemtableAllocator(cf.memtable_allocator.toString());
+            if (cf.compaction_strategy != null)
+                cfm.setCompactionStrategyClass(cf.compaction_strategy.toString());
+            if (cf.compaction_strategy_options != null)
+                cfm.setCompactionStrategyOptions(cf.compaction_strategy_options);
+            if (cf.compression != null)
+                cfm.setCompression(cf.compression);
+            if (cf.compression_chunk_length_in_kb != null)
+                cfm.setCompressionChunkLengthInKb(cf.compression_chunk_length_in_kb);
+            if (cf.row_cache_size_in_mb != null)
+                cfm.setRowCacheSizeInMb(cf.row_cache_size_in_mb);
+        }
+        catch (ConfigurationException ex)
+        {
+            throw new RuntimeException("Could not inflate CFMetaData for " + cf, ex);
+        }
+        return cfm;
     }
     
     public String getComment()
@@ -521,6 +578,81 @@ public final class CFMetaData
         return memtableOperationsInMillions;
     }
 
+    public Class<? extends Allocator> getMemtableAllocator()
+    {
+        return memtableAllocator;
+    }
+
+    public void setMemtableAllocator(String className) throws ConfigurationException
+    {
+        Class<?> cls = FBUtilities.classForName(className, "memtable allocator");
+        if (!Allocator.class.isAssignableFrom(cls))
+            throw new ConfigurationException(className + " is not a memtable allocator");
+        memtableAllocator = (Class<? extends Allocator>) cls;
+    }
+
+    public Class<? extends AbstractCompactionStrategy> getCompactionStrategyClass()
+    {
+        return compactionStrategyClass;
+    }
+
+    public void setCompactionStrategyClass(String className) throws ConfigurationException
+    {
+        compactionStrategyClass = AbstractCompactionStrategy.getClass(className);
+    }
+
+    public Map<String, String> getCompactionStrategyOptions()
+    {
+        return Collections.unmodifiableMap(compactionStrategyOptions);
+    }
+
+    public void setCompactionStrategyOptions(Map<? extends CharSequence, ? extends CharSequence> options)
+    {
+        compactionStrategyOptions = new HashMap<String, String>();
+        for (Map.Entry<? extends CharSequence, ? extends CharSequence> e : options.entrySet())
+            compactionStrategyOptions.put(e.getKey().toString(), e.getValue().toString());
+    }
+
+    public boolean getCompression()
+    {
+        return compression;
+    }
+
+    public void setCompression(boolean compression)
+    {
+        this.compression = compression;
+    }
+
+    public int getCompressionChunkLengthInKb()
+    {
+        return compressionChunkLengthInKb;
+    }
+
+    public void setCompressionChunkLengthInKb(int chunkLengthInKb) throws ConfigurationException
+    {
+        // chunks are decompressed into a single byte array, and lengths are powers of two so offsets divide cleanly
+        if (chunkLengthInKb <= 0 || chunkLengthInKb > 1024 * 1024 || Integer.bitCount(chunkLengthInKb) != 1)
+            throw new ConfigurationException("compression_chunk_length_in_kb must be a positive power of two, not " + chunkLengthInKb);
+        compressionChunkLengthInKb = chunkLengthInKb;
+    }
+
+    /**
+     * @return the native memory to give an off-heap, serializing row cache, or zero to cache rowCacheSize
+     * deserialized rows on the heap instead
+     */
+    public int getRowCacheSizeInMb()
+    {
+        return rowCacheSizeInMb;
+    }
+
+    public void setRowCacheSizeInMb(int rowCacheSizeInMb) throws ConfigurationException
+    {
+        // the cache weighs entries in kilobytes, and its capacity is an int
+        if (rowCacheSizeInMb < 0 || rowCacheSizeInMb > Integer.MAX_VALUE / 1024)
+            throw new ConfigurationException("row_cache_size_in_mb must be between 0 and " + Integer.MAX_VALUE / 1024 + ", not " + rowCacheSizeInMb);
+        this.rowCacheSizeInMb = rowCacheSizeInMb;
+    }
+
     public Map<ByteBuffer, ColumnDefinition> getColumn_metadata()
     {
         return Collections.unmodifiableMap(column_metadata);
@@ -559,6 +691,12 @@ public final class CFMetaData
             .append(memtableFlushAfterMins, rhs.memtableFlushAfterMins)
             .append(memtableThroughputInMb, rhs.memtableThroughputInMb)
             .append(memtableOperationsInMillions, rhs.memtableOperationsInMillions)
+            .append(memtableAllocator, rhs.memtableAllocator)
+            .append(compactionStrategyClass, rhs.compactionStrategyClass)
+            .append(compactionStrategyOptions, rhs.compactionStrategyOptions)
+            .append(compression, rhs.compression)
+            .append(compressionChunkLengthInKb, rhs.compressionChunkLengthInKb)
+            .append(rowCacheSizeInMb, rhs.rowCacheSizeInMb)
             .isEquals();
     }
 
@@ -586,6 +724,12 @@ public final class CFMetaData
             .append(memtableFlushAfterMins)
             .append(memtableThroughputInMb)
             .append(memtableOperationsInMillions)
+            .append(memtableAllocator)
+            .append(compactionStrategyClass)
+            .append(compactionStrategyOptions)
+            .append(compression)
+            .append(compressionChunkLengthInKb)
+            .append(rowCacheSizeInMb)
             .toHashCode();
     }
 
@@ -681,6 +825,20 @@ public final class CFMetaData
         memtableFlushAfterMins = cf_def.memtable_flush_after_mins;
         memtableThroughputInMb = cf_def.memtable_throughput_in_mb;
         memtableOperationsInMillions = cf_def.memtable_operations_in_millions;
+        // thrift has no way to express the allocator, the compaction strategy, compression or an off-heap row cache,
+        // so an unset value leaves it alone
+        if (cf_def.memtable_allocator != null)
+            setMemtableAllocator(cf_def.memtable_allocator.toString());
+        if (cf_def.compaction_strategy != null)
+            setCompactionStrategyClass(cf_def.compaction_strategy.toString());
+        if (cf_def.compaction_strategy_options != null)
+            setCompactionStrategyOptions(cf_def.compaction_strategy_options);
+        if (cf_def.compression != null)
+            setCompression(cf_def.compression);
+        if (cf_def.compression_chunk_length_in_kb != null)
+            setCompressionChunkLengthInKb(cf_def.compression_chunk_length_in_kb);
+        if (cf_def.row_cache_size_in_mb != null)
+            setRowCacheSizeInMb(cf_def.row_cache_size_in_mb);
         
         // adjust secondary indexes. figure out who is coming and going.
         Set<ByteBuffer> toRemove = new HashSet<ByteBuffer>();
@@ -786,6 +944,12 @@ public final class CFMetaData
         def.memtable_flush_after_mins = cfm.memtableFlushAfterMins;
         def.memtable_throughput_in_mb = cfm.memtableThroughputInMb;
         def.memtable_operations_in_millions = cfm.memtableOperationsInMillions;
+        def.memtable_allocator = cfm.memtableAllocator.getName();
+        def.compaction_strategy = cfm.compactionStrategyClass.getName();
+        def.compaction_strategy_options = new HashMap<CharSequence, CharSequence>(cfm.compactionStrategyOptions);
+        def.compression = cfm.compression;
+        def.compression_chunk_length_in_kb = cfm.compressionChunkLengthInKb;
+        def.row_cache_size_in_mb = cfm.rowCacheSizeInMb;
         List<org.apache.cassandra.avro.ColumnDef> column_meta = new ArrayList<org.apache.cassandra.avro.ColumnDef>(cfm.column_metadata.size());
         for (ColumnDefinition cd : cfm.column_metadata.values())
         {
@@ -948,6 +1112,12 @@ public final class CFMetaData
             .append("memtableFlushAfterMins", memtableFlushAfterMins)
             .append("memtableThroughputInMb", memtableThroughputInMb)
             .append("memtableOperationsInMillions", memtableOperationsInMillions)
+            .append("memtableAllocator", memtableAllocator)
+            .append("compactionStrategyClass", compactionStrategyClass)
+            .append("compactionStrategyOptions", compactionStrategyOptions)
+            .append("compression", compression)
+            .append("compressionChunkLengthInKb", compressionChunkLengthInKb)
+            .append("rowCacheSizeInMb", rowCacheSizeInMb)
             .append("column_metadata", column_metadata)
             .toString();
     }
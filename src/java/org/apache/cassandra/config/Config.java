@@ -34,6 +34,7 @@ public class Config
     
     public Boolean auto_bootstrap = false;
     public Boolean hinted_handoff_enabled = true;
+    public Integer hinted_handoff_throttle_in_kb = 1024;
     
     public SeedProviderDef seed_provider;
     public DiskAccessMode disk_access_mode = DiskAccessMode.auto;
@@ -54,8 +55,10 @@ public class Config
     public Integer concurrent_reads = 8;
     public Integer concurrent_writes = 32;
     public Integer concurrent_replicates = 32;
+    public Integer replicate_on_write_coalescing_window_in_ms = 10;
     
     public Integer memtable_flush_writers = null; // will get set to the length of data dirs in DatabaseDescriptor
+    public Integer memtable_total_space_in_mb = null; // will get set to 1/3 of the heap in DatabaseDescriptor
     
     public Integer sliced_buffer_size_in_kb = 64;
     
@@ -72,6 +75,11 @@ public class Config
     public Integer thrift_framed_transport_size_in_mb = 15;
     public Boolean snapshot_before_compaction = false;
     public Integer compaction_thread_priority = Thread.MIN_PRIORITY;
+    public Integer concurrent_compactors = Runtime.getRuntime().availableProcessors();
+    public Integer compaction_throughput_mb_per_sec = 16;
+    public Integer stream_throughput_outbound_mb_per_sec = 0;
+    public Integer stream_throughput_outbound_per_host_mb_per_sec = 0;
+    public Integer streaming_connections_per_host = 2;
     
     public Integer binary_memtable_throughput_in_mb = 256;
     
@@ -86,7 +94,9 @@ public class Config
     // Commit Log
     public String commitlog_directory;
     public Integer commitlog_rotation_threshold_in_mb;
+    public Integer commitlog_total_space_in_mb = 4096;
     public CommitLogSync commitlog_sync;
+    /** @deprecated ignored; batch mode syncs as soon as the previous sync completes */
     public Double commitlog_sync_batch_window_in_ms;
     public Integer commitlog_sync_period_in_ms;
     
@@ -101,6 +111,7 @@ public class Config
     public RequestSchedulerOptions request_scheduler_options;
 
     public Integer index_interval = 128;
+    public Boolean bloom_filter_off_heap = false;
 
     public List<RawKeyspace> keyspaces;
     
@@ -128,6 +128,7 @@ public class    DatabaseDescriptor
             ksDesc.putListPropertyType("column_families", RawColumnFamily.class);
             TypeDescription cfDesc = new TypeDescription(RawColumnFamily.class);
             cfDesc.putListPropertyType("column_metadata", RawColumnDefinition.class);
+            cfDesc.putMapPropertyType("compaction_strategy_options", String.class, String.class);
             TypeDescription seedDesc = new TypeDescription(SeedProviderDef.class);
             seedDesc.putMapPropertyType("parameters", String.class, String.class);
             constructor.addTypeDescription(desc);
@@ -141,17 +142,18 @@ public class    DatabaseDescriptor
                 throw new ConfigurationException("Missing required directive CommitLogSync");
             }
 
+            if (conf.commitlog_sync_batch_window_in_ms != null)
+            {
+                logger.warn("commitlog_sync_batch_window_in_ms is deprecated and ignored: batch mode groups the writes that arrive during a sync into the next one");
+            }
+
             if (conf.commitlog_sync == Config.CommitLogSync.batch)
             {
-                if (conf.commitlog_sync_batch_window_in_ms == null)
+                if (conf.commitlog_sync_period_in_ms != null)
                 {
-                    throw new ConfigurationException("Missing value for commitlog_sync_batch_window_in_ms: Double expected.");
-                } 
-                else if (conf.commitlog_sync_period_in_ms != null)
-                {
-                    throw new ConfigurationException("Batch sync specified, but commitlog_sync_period_in_ms found. Only specify commitlog_sync_batch_window_in_ms when using batch sync");
+                    throw new ConfigurationException("Batch sync specified, but commitlog_sync_period_in_ms found. Only specify commitlog_sync_period_in_ms when using periodic sync");
                 }
-                logger.debug("Syncing log with a batch window of " + conf.commitlog_sync_batch_window_in_ms);
+                logger.debug("Syncing log in batches");
             }
             else
             {
@@ -159,10 +161,6 @@ public class    DatabaseDescriptor
                 {
                     throw new ConfigurationException("Missing value for commitlog_sync_period_in_ms: Integer expected");
                 }
-                else if (conf.commitlog_sync_batch_window_in_ms != null)
-                {
-                    throw new ConfigurationException("commitlog_sync_period_in_ms specified, but commitlog_sync_batch_window_in_ms found.  Only specify commitlog_sync_period_in_ms when using periodic sync.");
-                }
                 logger.debug("Syncing log with a period of " + conf.commitlog_sync_period_in_ms);
             }
 
@@ -229,6 +227,11 @@ public class    DatabaseDescriptor
                 throw new ConfigurationException("conf.concurrent_replicates must be at least 2");
             }
 
+            if (conf.replicate_on_write_coalescing_window_in_ms == null || conf.replicate_on_write_coalescing_window_in_ms < 0)
+            {
+                throw new ConfigurationException("replicate_on_write_coalescing_window_in_ms must be non-negative");
+            }
+
             /* Memtable flush writer threads */
             if (conf.memtable_flush_writers != null && conf.memtable_flush_writers < 1)
             {
@@ -239,6 +242,11 @@ public class    DatabaseDescriptor
                 conf.memtable_flush_writers = conf.data_file_directories.length;
             }
 
+            if (conf.memtable_total_space_in_mb == null)
+                conf.memtable_total_space_in_mb = (int) (Runtime.getRuntime().maxMemory() / (3 * 1048576));
+            if (conf.memtable_total_space_in_mb <= 0)
+                throw new ConfigurationException("memtable_total_space_in_mb must be positive");
+
             /* Local IP or hostname to bind services to */
             if (conf.listen_address != null)
             {
@@ -271,6 +279,36 @@ public class    DatabaseDescriptor
             {
                 throw new ConfigurationException("compaction_thread_priority must be between 1 and 5");
             }
+
+            if (conf.concurrent_compactors == null || conf.concurrent_compactors < 1)
+            {
+                throw new ConfigurationException("concurrent_compactors must be at least 1");
+            }
+
+            if (conf.compaction_throughput_mb_per_sec == null || conf.compaction_throughput_mb_per_sec < 0)
+            {
+                throw new ConfigurationException("compaction_throughput_mb_per_sec must be a non-negative integer (0 disables throttling)");
+            }
+
+            if (conf.stream_throughput_outbound_mb_per_sec == null || conf.stream_throughput_outbound_mb_per_sec < 0)
+            {
+                throw new ConfigurationException("stream_throughput_outbound_mb_per_sec must be a non-negative integer (0 disables throttling)");
+            }
+
+            if (conf.stream_throughput_outbound_per_host_mb_per_sec == null || conf.stream_throughput_outbound_per_host_mb_per_sec < 0)
+            {
+                throw new ConfigurationException("stream_throughput_outbound_per_host_mb_per_sec must be a non-negative integer (0 disables throttling)");
+            }
+
+            if (conf.streaming_connections_per_host == null || conf.streaming_connections_per_host < 1)
+            {
+                throw new ConfigurationException("streaming_connections_per_host must be at least 1");
+            }
+
+            if (conf.hinted_handoff_throttle_in_kb == null || conf.hinted_handoff_throttle_in_kb < 0)
+            {
+                throw new ConfigurationException("hinted_handoff_throttle_in_kb must be a non-negative integer (0 disables throttling)");
+            }
             
             /* end point snitch */
             if (conf.endpoint_snitch == null)
@@ -351,6 +389,9 @@ public class    DatabaseDescriptor
             if (conf.commitlog_rotation_threshold_in_mb != null)
                 CommitLog.setSegmentSize(conf.commitlog_rotation_threshold_in_mb * 1024 * 1024);
 
+            if (conf.commitlog_total_space_in_mb == null || conf.commitlog_total_space_in_mb <= 0)
+                throw new ConfigurationException("commitlog_total_space_in_mb must be positive");
+
             // Hardcoded system tables
             KSMetaData systemMeta = new KSMetaData(Table.SYSTEM_TABLE,
                                                    LocalStrategy.class,
@@ -629,11 +670,24 @@ public class    DatabaseDescriptor
                                              cf.memtable_throughput_in_mb,
                                              cf.memtable_operations_in_millions,
                                              metadata);
+                if (cf.memtable_allocator != null)
+                    cfDefs[j - 1].setMemtableAllocator(cf.memtable_allocator);
+                if (cf.compaction_strategy != null)
+                    cfDefs[j - 1].setCompactionStrategyClass(cf.compaction_strategy);
+                if (cf.compaction_strategy_options != null)
+                    cfDefs[j - 1].setCompactionStrategyOptions(cf.compaction_strategy_options);
+                if (cf.compression != null)
+                    cfDefs[j - 1].setCompression(cf.compression);
+                if (cf.compression_chunk_length_in_kb != null)
+                    cfDefs[j - 1].setCompressionChunkLengthInKb(cf.compression_chunk_length_in_kb);
+                if (cf.row_cache_size_in_mb != null)
+                    cfDefs[j - 1].setRowCacheSizeInMb(cf.row_cache_size_in_mb);
             }
             defs.add(new KSMetaData(keyspace.name,
                                     strategyClass,
                                     keyspace.strategy_options,
                                     keyspace.replication_factor,
+                                    keyspace.speculative_retry == null ? null : SpeculativeRetry.fromString(keyspace.speculative_retry),
                                     cfDefs));
         }
 
@@ -852,6 +906,16 @@ public class    DatabaseDescriptor
         return conf.concurrent_replicates;
     }
 
+    public static int getReplicateOnWriteCoalescingWindowInMS()
+    {
+        return conf.replicate_on_write_coalescing_window_in_ms;
+    }
+
+    public static void setReplicateOnWriteCoalescingWindowInMS(int value)
+    {
+        conf.replicate_on_write_coalescing_window_in_ms = value;
+    }
+
     public static int getFlushWriters()
     {
             return conf.memtable_flush_writers;
@@ -1029,15 +1093,15 @@ public class    DatabaseDescriptor
         return conf.rpc_recv_buff_size_in_bytes;
     }
 
-    public static double getCommitLogSyncBatchWindow()
-    {
-        return conf.commitlog_sync_batch_window_in_ms;
-    }
-
     public static int getCommitLogSyncPeriod() {
         return conf.commitlog_sync_period_in_ms;
     }
 
+    public static int getCommitLogTotalSpaceInMB()
+    {
+        return conf.commitlog_total_space_in_mb;
+    }
+
     public static Config.CommitLogSync getCommitLogSync()
     {
         return conf.commitlog_sync;
@@ -1073,6 +1137,56 @@ public class    DatabaseDescriptor
         return conf.compaction_thread_priority;
     }
 
+    public static int getMemtableTotalSpaceInMB()
+    {
+        return conf.memtable_total_space_in_mb;
+    }
+
+    public static void setMemtableTotalSpaceInMB(int value)
+    {
+        conf.memtable_total_space_in_mb = value;
+    }
+
+    public static int getConcurrentCompactors()
+    {
+        return conf.concurrent_compactors;
+    }
+
+    public static int getCompactionThroughputMbPerSec()
+    {
+        return conf.compaction_throughput_mb_per_sec;
+    }
+
+    public static void setCompactionThroughputMbPerSec(int value)
+    {
+        conf.compaction_throughput_mb_per_sec = value;
+    }
+
+    public static int getStreamThroughputOutboundMbPerSec()
+    {
+        return conf.stream_throughput_outbound_mb_per_sec;
+    }
+
+    public static void setStreamThroughputOutboundMbPerSec(int value)
+    {
+        conf.stream_throughput_outbound_mb_per_sec = value;
+    }
+
+    public static int getStreamThroughputOutboundPerHostMbPerSec()
+    {
+        return conf.stream_throughput_outbound_per_host_mb_per_sec;
+    }
+
+    public static void setStreamThroughputOutboundPerHostMbPerSec(int value)
+    {
+        conf.stream_throughput_outbound_per_host_mb_per_sec = value;
+    }
+
+    public static int getStreamingConnectionsPerHost()
+    {
+        return conf.streaming_connections_per_host;
+    }
+
     public static boolean isSnapshotBeforeCompaction()
     {
         return conf.snapshot_before_compaction;
@@ -1088,6 +1202,11 @@ public class    DatabaseDescriptor
         return conf.hinted_handoff_enabled;
     }
 
+    public static int getHintedHandoffThrottleInKB()
+    {
+        return conf.hinted_handoff_throttle_in_kb;
+    }
+
     public static AbstractType getValueValidator(String keyspace, String cf, ByteBuffer column)
     {
         return getCFMetaData(keyspace, cf).getValueValidator(column);
@@ -1103,6 +1222,11 @@ public class    DatabaseDescriptor
         return conf.index_interval;
     }
 
+    public static boolean isBloomFilterOffHeap()
+    {
+        return conf.bloom_filter_off_heap;
+    }
+
     public static File getSerializedRowCachePath(String ksName, String cfName)
     {
         return new File(conf.saved_caches_directory + File.separator + ksName + "-" + cfName + "-RowCache");
@@ -36,14 +36,21 @@ public final class KSMetaData
     public final Class<? extends AbstractReplicationStrategy> strategyClass;
     public final Map<String, String> strategyOptions;
     public final int replicationFactor;
+    public final SpeculativeRetry speculativeRetry;
     private final Map<String, CFMetaData> cfMetaData;
 
     public KSMetaData(String name, Class<? extends AbstractReplicationStrategy> strategyClass, Map<String, String> strategyOptions, int replicationFactor, CFMetaData... cfDefs)
+    {
+        this(name, strategyClass, strategyOptions, replicationFactor, SpeculativeRetry.NONE, cfDefs);
+    }
+
+    public KSMetaData(String name, Class<? extends AbstractReplicationStrategy> strategyClass, Map<String, String> strategyOptions, int replicationFactor, SpeculativeRetry speculativeRetry, CFMetaData... cfDefs)
     {
         this.name = name;
         this.strategyClass = strategyClass == null ? SimpleStrategy.class : strategyClass;
         this.strategyOptions = strategyOptions;
         this.replicationFactor = replicationFactor;
+        this.speculativeRetry = speculativeRetry == null ? SpeculativeRetry.NONE : speculativeRetry;
         Map<String, CFMetaData> cfmap = new HashMap<String, CFMetaData>();
         for (CFMetaData cfm : cfDefs)
             cfmap.put(cfm.cfName, cfm);
@@ -64,6 +71,7 @@ public final class KSMetaData
                 && ObjectUtils.equals(other.strategyClass, strategyClass)
                 && ObjectUtils.equals(other.strategyOptions, strategyOptions)
                 && other.replicationFactor == replicationFactor
+                && other.speculativeRetry.equals(speculativeRetry)
                 && other.cfMetaData.size() == cfMetaData.size()
                 && other.cfMetaData.equals(cfMetaData);
     }
@@ -87,6 +95,7 @@ public final class KSMetaData
             }
         }
         ks.replication_factor = replicationFactor;
+        ks.speculative_retry = new Utf8(speculativeRetry.toString());
         ks.cf_defs = SerDeUtils.createArray(cfMetaData.size(), org.apache.cassandra.avro.CfDef.SCHEMA$);
         for (CFMetaData cfm : cfMetaData.values())
             ks.cf_defs.add(cfm.deflate());
@@ -114,13 +123,25 @@ public final class KSMetaData
                 strategyOptions.put(e.getKey().toString(), e.getValue().toString());
             }
         }
+        SpeculativeRetry speculativeRetry = SpeculativeRetry.NONE;
+        if (ks.speculative_retry != null)
+        {
+            try
+            {
+                speculativeRetry = SpeculativeRetry.fromString(ks.speculative_retry.toString());
+            }
+            catch (ConfigurationException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
         int cfsz = (int)ks.cf_defs.size();
         CFMetaData[] cfMetaData = new CFMetaData[cfsz];
         Iterator<org.apache.cassandra.avro.CfDef> cfiter = ks.cf_defs.iterator();
         for (int i = 0; i < cfsz; i++)
             cfMetaData[i] = CFMetaData.inflate(cfiter.next());
 
-        return new KSMetaData(ks.name.toString(), repStratClass, strategyOptions, ks.replication_factor, cfMetaData);
+        return new KSMetaData(ks.name.toString(), repStratClass, strategyOptions, ks.replication_factor, speculativeRetry, cfMetaData);
     }
 
     public static String convertOldStrategyName(String name)
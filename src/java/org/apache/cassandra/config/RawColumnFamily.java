@@ -21,6 +21,8 @@ package org.apache.cassandra.config;
  */
 
 
+import java.util.Map;
+
 import org.apache.cassandra.db.ColumnFamilyType;
 
 /**
@@ -47,4 +49,10 @@ public class RawColumnFamily
     public int memtable_flush_after_mins = CFMetaData.DEFAULT_MEMTABLE_LIFETIME_IN_MINS;
     public Integer memtable_throughput_in_mb;
     public Double memtable_operations_in_millions;
+    public String memtable_allocator;
+    public String compaction_strategy;
+    public Map<String, String> compaction_strategy_options;
+    public Boolean compression;
+    public Integer compression_chunk_length_in_kb;
+    public Integer row_cache_size_in_mb;
 }
@@ -32,5 +32,6 @@ public class RawKeyspace
     public String replica_placement_strategy;
     public Map<String,String> strategy_options;
     public Integer replication_factor;
+    public String speculative_retry;
     public RawColumnFamily[] column_families;
 }
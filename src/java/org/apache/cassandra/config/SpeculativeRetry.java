@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.config;
+
+/**
+ * When a strong read should send a redundant data request to another replica, because the one
+ * asked for the data has not answered yet:
+ *  - NONE: never
+ *  - Xpercentile: once the data replica has taken longer than the given percentile of its recent latencies
+ *  - Yms: once the data replica has taken longer than a fixed number of milliseconds
+ */
+public final class SpeculativeRetry
+{
+    public enum Type { NONE, PERCENTILE, CUSTOM }
+
+    public static final SpeculativeRetry NONE = new SpeculativeRetry(Type.NONE, 0);
+
+    private static final String PERCENTILE_SUFFIX = "percentile";
+    private static final String MS_SUFFIX = "ms";
+
+    public final Type type;
+    // the percentile or the number of milliseconds, depending on type
+    public final double value;
+
+    private SpeculativeRetry(Type type, double value)
+    {
+        this.type = type;
+        this.value = value;
+    }
+
+    public static SpeculativeRetry fromString(String retry) throws ConfigurationException
+    {
+        String name = retry.trim().toLowerCase();
+        try
+        {
+            if (name.equals("none"))
+                return NONE;
+            if (name.endsWith(PERCENTILE_SUFFIX))
+            {
+                double percentile = Double.parseDouble(name.substring(0, name.length() - PERCENTILE_SUFFIX.length()));
+                if (percentile > 0 && percentile < 100)
+                    return new SpeculativeRetry(Type.PERCENTILE, percentile);
+            }
+            else if (name.endsWith(MS_SUFFIX))
+            {
+                double ms = Double.parseDouble(name.substring(0, name.length() - MS_SUFFIX.length()));
+                if (ms >= 0)
+                    return new SpeculativeRetry(Type.CUSTOM, ms);
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            // fall through to the error below
+        }
+        throw new ConfigurationException("speculative_retry must be NONE, a percentile between 0 and 100 such as 99percentile, or a delay such as 50ms; not " + retry);
+    }
+
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof SpeculativeRetry))
+            return false;
+        SpeculativeRetry other = (SpeculativeRetry) obj;
+        return type == other.type && value == other.value;
+    }
+
+    public int hashCode()
+    {
+        return type.hashCode() + 31 * (int) Double.doubleToLongBits(value);
+    }
+
+    public String toString()
+    {
+        switch (type)
+        {
+            case PERCENTILE:
+                return value + PERCENTILE_SUFFIX.toUpperCase();
+            case CUSTOM:
+                return value + MS_SUFFIX.toUpperCase();
+            default:
+                return type.toString();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.cassandra.db;
+
+import java.lang.reflect.Constructor;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.config.ConfigurationException;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * Decides which sstables of a ColumnFamilyStore CompactionManager should compact together,
+ * and how the result should be laid out.  Strategies are chosen per column family
+ * (CFMetaData.getCompactionStrategyClass) and must have a public constructor taking the
+ * ColumnFamilyStore and a Map of options.
+ *
+ * Several compactions may run at once.  CompactionManager calls getBackgroundCandidates with
+ * the strategy's monitor held and then claims the result with ColumnFamilyStore.markCompacting,
+ * so candidates should come from ColumnFamilyStore.getUncompactingSSTables.
+ */
+public abstract class AbstractCompactionStrategy
+{
+    protected final ColumnFamilyStore cfs;
+    public final Map<String, String> options;
+
+    protected AbstractCompactionStrategy(ColumnFamilyStore cfs, Map<String, String> options)
+    {
+        assert cfs != null;
+        this.cfs = cfs;
+        this.options = options == null
+                     ? Collections.<String, String>emptyMap()
+                     : Collections.unmodifiableMap(new HashMap<String, String>(options));
+    }
+
+    /**
+     * @return the sstables that should be compacted next by a minor compaction, or an empty list
+     * if nothing needs compacting right now
+     */
+    public abstract List<SSTableReader> getBackgroundCandidates();
+
+    /**
+     * @return an estimate of the number of background compactions needed to bring the sstables
+     * to the layout this strategy wants
+     */
+    public abstract int getEstimatedRemainingTasks();
+
+    /**
+     * @return the size, in bytes, past which compaction should start a new output sstable
+     */
+    public long getMaxSSTableSize()
+    {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return true if a compaction may leave out some of the sstables it was asked to compact,
+     * e.g. when there isn't enough disk space for all of them
+     */
+    public boolean isPartialCompactionAllowed()
+    {
+        return true;
+    }
+
+    /**
+     * @return the level that the result of compacting the given sstables belongs to
+     */
+    public int getLevelForOutput(Collection<SSTableReader> sstables)
+    {
+        return 0;
+    }
+
+    /**
+     * @return the number of live sstables in each level, starting with level 0
+     */
+    public int[] getSSTableCountPerLevel()
+    {
+        return new int[]{ cfs.getSSTables().size() };
+    }
+
+    public static AbstractCompactionStrategy createCompactionStrategy(ColumnFamilyStore cfs,
+                                                                      Class<? extends AbstractCompactionStrategy> strategyClass,
+                                                                      Map<String, String> options)
+    {
+        try
+        {
+            Constructor<? extends AbstractCompactionStrategy> constructor = strategyClass.getConstructor(ColumnFamilyStore.class, Map.class);
+            return constructor.newInstance(cfs, options);
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static Class<AbstractCompactionStrategy> getClass(String cls) throws ConfigurationException
+    {
+        String className = cls.contains(".") ? cls : "org.apache.cassandra.db." + cls;
+        Class<AbstractCompactionStrategy> strategyClass = FBUtilities.classForName(className, "compaction strategy");
+        if (!AbstractCompactionStrategy.class.isAssignableFrom(strategyClass))
+            throw new ConfigurationException(className + " is not a compaction strategy");
+        return strategyClass;
+    }
+}
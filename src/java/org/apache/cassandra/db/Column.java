@@ -28,6 +28,7 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.utils.Allocator;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 
@@ -216,6 +217,11 @@ public class Column implements IColumn
     {
         return new Column(ByteBufferUtil.clone(name), ByteBufferUtil.clone(value), timestamp);
     }
+
+    public IColumn localCopy(Allocator allocator)
+    {
+        return new Column(allocator.clone(name), allocator.clone(value), timestamp);
+    }
     
     public String getString(AbstractType comparator)
     {
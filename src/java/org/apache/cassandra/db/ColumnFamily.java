@@ -39,6 +39,7 @@ import org.apache.cassandra.db.marshal.AbstractCommutativeType;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.io.ICompactSerializer2;
 import org.apache.cassandra.io.util.IIterableColumns;
+import org.apache.cassandra.utils.Allocator;
 import org.apache.cassandra.utils.FBUtilities;
 
 public class ColumnFamily implements IColumnContainer, IIterableColumns
@@ -136,6 +137,19 @@ public class ColumnFamily implements IColumnContainer, IIterableColumns
         delete(cf);
     }
 
+    /**
+     * Like addAll, but each column is first copied with the given allocator, so that
+     * this ColumnFamily does not hold on to the buffers of the one being added.
+     */
+    public void addAll(ColumnFamily cf, Allocator allocator)
+    {
+        for (IColumn column : cf.getSortedColumns())
+        {
+            addColumn(column.localCopy(allocator));
+        }
+        delete(cf);
+    }
+
     /**
      * FIXME: Gross.
      */
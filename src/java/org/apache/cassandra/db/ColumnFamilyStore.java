@@ -30,7 +30,6 @@ import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
 import com.google.common.collect.Iterables;
-import org.apache.commons.collections.IteratorUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -96,6 +95,11 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                                                new NamedThreadFactory("FlushWriter"),
                                                "internal");
     public static final ExecutorService postFlushExecutor = new JMXEnabledThreadPoolExecutor("MemtablePostFlusher");
+
+    /* an index row more than this many times wider than the most selective one is not worth intersecting with it */
+    private static final int INDEX_INTERSECTION_RATIO = 10;
+    /* index rows are sliced at least this many columns at a time when scanning */
+    private static final int MIN_INDEX_PAGE_SIZE = 64;
     
     private Set<Memtable> memtablesPendingFlush = new ConcurrentSkipListSet<Memtable>();
 
@@ -130,6 +134,10 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
     public final CFMetaData metadata;
 
+    private volatile AbstractCompactionStrategy compactionStrategy;
+    // sstables that a running compaction will replace; concurrent compactions must not share any
+    private final Set<SSTableReader> compacting = new HashSet<SSTableReader>();
+
     /* These are locally held copies to be changed from the config during runtime */
     private volatile DefaultInteger minCompactionThreshold;
     private volatile DefaultInteger maxCompactionThreshold;
@@ -761,6 +769,34 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return maybeSwitchMemtable(memtable, true);
     }
 
+    /**
+     * Flushes the memtable so that the commit log can discard the segments holding its writes.  If there is
+     * nothing to flush, tells the commit log directly that nothing written so far needs replaying for this CF.
+     */
+    public Future<?> forceFlushToRecycleCommitLog()
+    {
+        Table.flusherLock.writeLock().lock();
+        try
+        {
+            if (!memtable.isClean())
+                return maybeSwitchMemtable(memtable, true);
+
+            final CommitLogSegment.CommitLogContext ctx = CommitLog.instance.getContext();
+            // behind the flushes already under way, whose writes are older
+            return postFlushExecutor.submit(new WrappedRunnable()
+            {
+                public void runMayThrow() throws IOException
+                {
+                    CommitLog.instance.discardCompletedSegments(metadata.cfId, ctx);
+                }
+            });
+        }
+        finally
+        {
+            Table.flusherLock.writeLock().unlock();
+        }
+    }
+
     public void forceBlockingFlush() throws ExecutionException, InterruptedException
     {
         Future<?> future = forceFlush();
@@ -789,9 +825,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
         boolean flushRequested = memtable.isThresholdViolated();
         memtable.put(key, columnFamily);
-        ColumnFamily cachedRow = getRawCachedRow(key);
-        if (cachedRow != null)
-            cachedRow.addAll(columnFamily);
+        updateRowCache(key, columnFamily);
         writeStats.addNano(System.nanoTime() - start);
         
         return flushRequested ? memtable : null;
@@ -964,6 +998,91 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         ssTables.markCompacted(sstables);
     }
 
+    /**
+     * @return the compaction strategy configured for this column family, re-created if a schema
+     * change has modified the configuration since it was last used
+     */
+    public synchronized AbstractCompactionStrategy getCompactionStrategy()
+    {
+        AbstractCompactionStrategy strategy = compactionStrategy;
+        if (strategy == null
+            || strategy.getClass() != metadata.getCompactionStrategyClass()
+            || !strategy.options.equals(metadata.getCompactionStrategyOptions()))
+        {
+            strategy = AbstractCompactionStrategy.createCompactionStrategy(this,
+                                                                           metadata.getCompactionStrategyClass(),
+                                                                           metadata.getCompactionStrategyOptions());
+            compactionStrategy = strategy;
+        }
+        return strategy;
+    }
+
+    /**
+     * @return the live sstables that no running compaction has claimed
+     */
+    public Set<SSTableReader> getUncompactingSSTables()
+    {
+        synchronized (compacting)
+        {
+            Set<SSTableReader> sstables = new HashSet<SSTableReader>(ssTables.getSSTables());
+            sstables.removeAll(compacting);
+            return sstables;
+        }
+    }
+
+    /**
+     * Claims the given sstables for a compaction, so that no other compaction will pick them.
+     * @return false, claiming nothing, if any of them is already claimed or no longer live
+     */
+    public boolean markCompacting(Collection<SSTableReader> sstables)
+    {
+        synchronized (compacting)
+        {
+            Set<SSTableReader> live = ssTables.getSSTables();
+            for (SSTableReader sstable : sstables)
+            {
+                if (compacting.contains(sstable) || !live.contains(sstable))
+                    return false;
+            }
+            compacting.addAll(sstables);
+            return true;
+        }
+    }
+
+    /**
+     * Claims every live sstable that no running compaction has claimed.
+     * @return the sstables claimed
+     */
+    public Set<SSTableReader> markUncompactingSSTables()
+    {
+        synchronized (compacting)
+        {
+            Set<SSTableReader> sstables = new HashSet<SSTableReader>(ssTables.getSSTables());
+            sstables.removeAll(compacting);
+            compacting.addAll(sstables);
+            return sstables;
+        }
+    }
+
+    public void unmarkCompacting(Collection<SSTableReader> sstables)
+    {
+        synchronized (compacting)
+        {
+            compacting.removeAll(sstables);
+        }
+    }
+
+    /**
+     * @return true if some compaction has claimed sstables of this column family
+     */
+    public boolean isCompacting()
+    {
+        synchronized (compacting)
+        {
+            return !compacting.isEmpty();
+        }
+    }
+
     boolean isCompleteSSTables(Collection<SSTableReader> sstables)
     {
         return ssTables.getSSTables().equals(new HashSet<SSTableReader>(sstables));
@@ -1013,6 +1132,37 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return getMemtableThreadSafe().getCurrentThroughput();
     }
 
+    public long getMemtableLiveSize()
+    {
+        return getMemtableThreadSafe().getLiveSize();
+    }
+
+    /**
+     * @return the estimated heap size of the live memtable, together with those of the secondary indexes,
+     * which are flushed along with it
+     */
+    public long getTotalMemtableLiveSize()
+    {
+        long size = getMemtableLiveSize();
+        for (ColumnFamilyStore indexCfs : indexedColumns.values())
+            size += indexCfs.getMemtableLiveSize();
+        return size;
+    }
+
+    /**
+     * @return the estimated heap size of the memtables waiting to be flushed, including those of the secondary indexes
+     */
+    public long getTotalPendingFlushSize()
+    {
+        long size = 0;
+        for (ColumnFamilyStore cfs : Iterables.concat(indexedColumns.values(), Arrays.asList(this)))
+        {
+            for (Memtable memtable : cfs.memtablesPendingFlush)
+                size += memtable.getLiveSize();
+        }
+        return size;
+    }
+
     public int getMemtableSwitchCount()
     {
         return memtableSwitchCount;
@@ -1046,6 +1196,20 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return ssTables.getSSTables();
     }
 
+    /**
+     * @return the live sstables whose contents have not been repaired yet
+     */
+    public List<SSTableReader> getUnrepairedSSTables()
+    {
+        List<SSTableReader> sstables = new ArrayList<SSTableReader>();
+        for (SSTableReader sstable : ssTables.getSSTables())
+        {
+            if (!sstable.isRepaired())
+                sstables.add(sstable);
+        }
+        return sstables;
+    }
+
     public long[] getRecentSSTablesPerReadHistogram()
     {
         return recentSSTablesPerRead.get(true);
@@ -1132,6 +1296,26 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return (int) (System.currentTimeMillis() / 1000) - metadata.getGcGraceSeconds();
     }
 
+    /**
+     * Applies a write to the cached copy of its row, if any. A cache that holds serialized copies can't be
+     * updated in place, so the row is invalidated instead, to be re-read on the next access.
+     */
+    private void updateRowCache(DecoratedKey key, ColumnFamily columnFamily)
+    {
+        if (ssTables.getRowCache().getCapacity() == 0)
+            return;
+
+        if (ssTables.getRowCache().isPutCopying())
+        {
+            invalidateCachedRow(key);
+            return;
+        }
+
+        ColumnFamily cachedRow = getRawCachedRow(key);
+        if (cachedRow != null)
+            cachedRow.addAll(columnFamily);
+    }
+
     private ColumnFamily cacheRow(DecoratedKey key)
     {
         ColumnFamily cached;
@@ -1231,6 +1415,13 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
     private ColumnFamily getTopLevelColumns(QueryFilter filter, int gcBefore)
     {
+        if (filter.filter instanceof NamesQueryFilter
+            && metadata.cfType == ColumnFamilyType.Standard
+            && !metadata.getDefaultValidator().isCommutative())
+        {
+            return getTimeOrderedColumns(filter, gcBefore);
+        }
+
         // we are querying top-level columns, do a merging fetch with indexes.
         List<IColumnIterator> iterators = new ArrayList<IColumnIterator>();
         final ColumnFamily returnCF = ColumnFamily.create(metadata);
@@ -1312,13 +1503,8 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             recentSSTablesPerRead.add(sstablesToIterate);
             sstablesPerRead.add(sstablesToIterate);
 
-            Comparator<IColumn> comparator = filter.filter.getColumnComparator(getComparator());
-            Iterator collated = IteratorUtils.collatedIterator(comparator, iterators);
-          
-                     
-            filter.collectCollatedColumns(returnCF, collated, gcBefore);
-          
-            
+            filter.collateColumns(returnCF, iterators, getComparator(), gcBefore);
+
             // Caller is responsible for final removeDeletedCF.  This is important for cacheRow to work correctly:
             // we need to distinguish between "there is no data at all for this row" (BF will let us rebuild that efficiently)
             // and "there used to be data, but it's gone now" (we should cache the empty CF so we don't need to rebuild that slower)
@@ -1345,6 +1531,82 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         }
     }
 
+    /**
+     * Names query on a standard, non-counter CF: since each requested column reconciles purely on timestamp,
+     * we can visit the sstables newest-first and stop as soon as every requested column has been found with
+     * a timestamp newer than anything the remaining sstables can hold.
+     */
+    private ColumnFamily getTimeOrderedColumns(QueryFilter filter, int gcBefore)
+    {
+        SortedSet<ByteBuffer> names = ((NamesQueryFilter) filter.filter).columns;
+        ColumnFamily container = ColumnFamily.create(metadata);
+        try
+        {
+            /* add the current memtable, then the memtables being flushed */
+            addToContainer(filter.getMemtableColumnIterator(getMemtableThreadSafe(), getComparator()), container);
+            for (Memtable memtable : memtablesPendingFlush)
+                addToContainer(filter.getMemtableColumnIterator(memtable, getComparator()), container);
+
+            /* add the SSTables on disk, newest first, until nothing older can change the result */
+            List<SSTableReader> sstables = new ArrayList<SSTableReader>(ssTables.getSSTables());
+            Collections.sort(sstables, SSTableReader.maxTimestampComparator);
+            int sstablesToIterate = 0;
+            for (SSTableReader sstable : sstables)
+            {
+                if (isShadowingAllNames(container, names, sstable.getMaxTimestamp()))
+                    break;
+                addToContainer(filter.getSSTableColumnIterator(sstable), container);
+                sstablesToIterate++;
+            }
+            recentSSTablesPerRead.add(sstablesToIterate);
+            sstablesPerRead.add(sstablesToIterate);
+
+            // Caller is responsible for final removeDeletedCF, as in getTopLevelColumns
+            ColumnFamily returnCF = container.cloneMeShallow();
+            filter.collectCollatedColumns(returnCF, filter.getMemtableColumnIterator(container, filter.key, getComparator()), gcBefore);
+            return returnCF;
+        }
+        catch (IOException e)
+        {
+            throw new IOError(e);
+        }
+    }
+
+    private static void addToContainer(IColumnIterator iter, ColumnFamily container) throws IOException
+    {
+        if (iter == null)
+            return;
+        try
+        {
+            if (iter.getColumnFamily() == null)
+                return;
+            container.delete(iter.getColumnFamily());
+            while (iter.hasNext())
+                container.addColumn(iter.next());
+        }
+        finally
+        {
+            iter.close();
+        }
+    }
+
+    /**
+     * @return true if data with timestamps up to maxTimestamp cannot change any of the requested columns:
+     * either the row tombstone, or a version of each column, is strictly newer.
+     */
+    private static boolean isShadowingAllNames(ColumnFamily container, SortedSet<ByteBuffer> names, long maxTimestamp)
+    {
+        if (container.getMarkedForDeleteAt() > maxTimestamp)
+            return true;
+        for (ByteBuffer name : names)
+        {
+            IColumn column = container.getColumn(name);
+            if (column == null || column.timestamp() <= maxTimestamp)
+                return false;
+        }
+        return true;
+    }
+
     /**
       * Fetch a range of rows and columns from memtables/sstables.
       * 
@@ -1433,177 +1695,331 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
     public List<Row> scan(IndexClause clause, AbstractBounds range, IFilter dataFilter)
     {
-        // Start with the most-restrictive indexed clause, then apply remaining clauses
-        // to each row matching that clause.
-        // TODO: allow merge join instead of just one index + loop
-        IndexExpression primary = highestSelectivityPredicate(clause);
+        // Start with the most-restrictive indexed clause, intersect its index row with those of the
+        // other indexed clauses that are selective enough to be worth reading, then apply the remaining
+        // clauses to each row matching all of those.
+        List<IndexExpression> indexed = indexedPredicatesBySelectivity(clause);
+        IndexExpression primary = indexed.get(0);
         ColumnFamilyStore indexCFS = getIndexedColumnFamilyStore(primary.column_name);
         if (logger.isDebugEnabled())
             logger.debug("Primary scan clause is " + getComparator().getString(primary.column_name));
         assert indexCFS != null;
-        DecoratedKey indexKey = indexCFS.partitioner.decorateKey(primary.value);
+        AbstractType indexComparator = indexCFS.getComparator();
 
         // if the slicepredicate doesn't contain all the columns for which we have expressions to evaluate,
-        // it needs to be expanded to include those too
+        // it needs to be expanded to include those too.  This includes the indexed expressions, since the
+        // index entries that led to a row may be stale.
         IFilter firstFilter = dataFilter;
         NamesQueryFilter extraFilter = null;
-        if (clause.expressions.size() > 1)
+        if (dataFilter instanceof SliceQueryFilter)
         {
-            if (dataFilter instanceof SliceQueryFilter)
+            // if we have a high chance of getting all the columns in a single index slice, do that.
+            // otherwise, create an extraFilter to fetch by name the columns referenced by the additional expressions.
+            if (getMaxRowSize() < DatabaseDescriptor.getColumnIndexSize())
             {
-                // if we have a high chance of getting all the columns in a single index slice, do that.
-                // otherwise, create an extraFilter to fetch by name the columns referenced by the additional expressions.
-                if (getMaxRowSize() < DatabaseDescriptor.getColumnIndexSize())
-                {
-                    logger.debug("Expanding slice filter to entire row to cover additional expressions");
-                    firstFilter = new SliceQueryFilter(FBUtilities.EMPTY_BYTE_BUFFER,
-                                                       FBUtilities.EMPTY_BYTE_BUFFER,
-                                                       ((SliceQueryFilter) dataFilter).reversed,
-                                                       Integer.MAX_VALUE);
-                }
-                else
-                {
-                    logger.debug("adding extraFilter to cover additional expressions");
-                    SortedSet<ByteBuffer> columns = new TreeSet<ByteBuffer>(getComparator());
-                    for (IndexExpression expr : clause.expressions)
-                    {
-                        if (expr == primary)
-                            continue;
-                        columns.add(expr.column_name);
-                    }
-                    extraFilter = new NamesQueryFilter(columns);
-                }
+                logger.debug("Expanding slice filter to entire row to cover additional expressions");
+                firstFilter = new SliceQueryFilter(FBUtilities.EMPTY_BYTE_BUFFER,
+                                                   FBUtilities.EMPTY_BYTE_BUFFER,
+                                                   ((SliceQueryFilter) dataFilter).reversed,
+                                                   Integer.MAX_VALUE);
             }
             else
             {
-                logger.debug("adding columns to firstFilter to cover additional expressions");
-                // just add in columns that are not part of the resultset
-                assert dataFilter instanceof NamesQueryFilter;
+                logger.debug("adding extraFilter to cover additional expressions");
                 SortedSet<ByteBuffer> columns = new TreeSet<ByteBuffer>(getComparator());
                 for (IndexExpression expr : clause.expressions)
-                {
-                    if (expr == primary || ((NamesQueryFilter) dataFilter).columns.contains(expr.column_name))
-                        continue;
                     columns.add(expr.column_name);
-                }
-                if (columns.size() > 0)
-                {
-                    columns.addAll(((NamesQueryFilter) dataFilter).columns);
-                    firstFilter = new NamesQueryFilter(columns);
-                }
+                extraFilter = new NamesQueryFilter(columns);
             }
         }
+        else
+        {
+            logger.debug("adding columns to firstFilter to cover additional expressions");
+            // just add in columns that are not part of the resultset
+            assert dataFilter instanceof NamesQueryFilter;
+            SortedSet<ByteBuffer> columns = new TreeSet<ByteBuffer>(getComparator());
+            for (IndexExpression expr : clause.expressions)
+            {
+                if (((NamesQueryFilter) dataFilter).columns.contains(expr.column_name))
+                    continue;
+                columns.add(expr.column_name);
+            }
+            if (columns.size() > 0)
+            {
+                columns.addAll(((NamesQueryFilter) dataFilter).columns);
+                firstFilter = new NamesQueryFilter(columns);
+            }
+        }
+
+        /* we don't have a way to get the key back from the DK -- we just have a token --
+         * so, we need to start with start_key and skip ahead until we get to keys in the given `range`.
+         * But, if the calling StorageProxy is doing a good job estimating data from each range, the range
+         * should be pretty close to `start_key`. */
+        int pageSize = Math.max(clause.count, MIN_INDEX_PAGE_SIZE);
+        IndexedKeyIterator primaryKeys = new IndexedKeyIterator(indexCFS, primary.value, clause.start_key, pageSize);
+        List<IndexedKeyIterator> otherKeys = new ArrayList<IndexedKeyIterator>(indexed.size() - 1);
+        for (IndexExpression expr : indexed.subList(1, indexed.size()))
+            otherKeys.add(new IndexedKeyIterator(getIndexedColumnFamilyStore(expr.column_name), expr.value, clause.start_key, pageSize));
 
         List<Row> rows = new ArrayList<Row>();
-        ByteBuffer startKey = clause.start_key;
         QueryPath path = new QueryPath(columnFamily);
 
-        // fetch row keys matching the primary expression, fetch the slice predicate for each
-        // and filter by remaining expressions.  repeat until finished w/ assigned range or index row is exhausted.
+        // walk the row keys matching the primary expression, skipping any key that is missing from one of the
+        // other index rows; fetch the slice predicate for each surviving key and filter by remaining expressions.
+        // repeat until finished w/ assigned range or an index row is exhausted.
+        ByteBuffer dataKey;
         outer:
-        while (true)
+        while ((dataKey = primaryKeys.current()) != null)
         {
-            /* we don't have a way to get the key back from the DK -- we just have a token --
-             * so, we need to loop after starting with start_key, until we get to keys in the given `range`.
-             * But, if the calling StorageProxy is doing a good job estimating data from each range, the range
-             * should be pretty close to `start_key`. */
-            if (logger.isDebugEnabled())
-                logger.debug(String.format("Scanning index row %s:%s starting with %s",
-                                           indexCFS.columnFamily, indexKey, indexCFS.getComparator().getString(startKey)));
-            QueryFilter indexFilter = QueryFilter.getSliceFilter(indexKey,
-                                                                 new QueryPath(indexCFS.getColumnFamilyName()),
-                                                                 startKey,
-                                                                 FBUtilities.EMPTY_BYTE_BUFFER,
-                                                                 false,
-                                                                 clause.count);
-            ColumnFamily indexRow = indexCFS.getColumnFamily(indexFilter);
-            logger.debug("fetched {}", indexRow);
-            if (indexRow == null)
+            DecoratedKey dk = partitioner.decorateKey(dataKey);
+            if (!range.right.equals(partitioner.getMinimumToken()) && range.right.compareTo(dk.token) < 0)
                 break;
+            if (!range.contains(dk.token))
+            {
+                primaryKeys.advance();
+                continue;
+            }
 
-            ByteBuffer dataKey = null;
-            int n = 0;
-            for (IColumn column : indexRow.getSortedColumns())
+            // leapfrog: every index row is sorted the same way, so if another index's next key is past this one,
+            // nothing in between can match and the primary index can skip straight to it.
+            for (IndexedKeyIterator other : otherKeys)
             {
-                if (column.isMarkedForDelete())
-                    continue;
-                dataKey = column.name();
-                n++;
-                DecoratedKey dk = partitioner.decorateKey(dataKey);
-                if (!range.right.equals(partitioner.getMinimumToken()) && range.right.compareTo(dk.token) < 0)
+                other.skipTo(dataKey);
+                ByteBuffer otherKey = other.current();
+                if (otherKey == null)
                     break outer;
-                if (!range.contains(dk.token))
-                    continue;
+                if (indexComparator.compare(otherKey, dataKey) > 0)
+                {
+                    primaryKeys.skipTo(otherKey);
+                    continue outer;
+                }
+            }
 
-                // get the row columns requested, and additional columns for the expressions if necessary
-                ColumnFamily data = getColumnFamily(new QueryFilter(dk, path, firstFilter));
-                logger.debug("fetched data row {}", data);
-                if (extraFilter != null)
+            // get the row columns requested, and additional columns for the expressions if necessary
+            ColumnFamily data = getColumnFamily(new QueryFilter(dk, path, firstFilter));
+            logger.debug("fetched data row {}", data);
+            if (extraFilter != null)
+            {
+                // we might have gotten the expression columns in with the main data slice, but
+                // we can't know for sure until that slice is done.  So, we'll do the extra query
+                // if we go through and any expression columns are not present -- including when
+                // the slice matched nothing at all.
+                for (IndexExpression expr : clause.expressions)
                 {
-                    // we might have gotten the expression columns in with the main data slice, but
-                    // we can't know for sure until that slice is done.  So, we'll do the extra query
-                    // if we go through and any expression columns are not present.
-                    for (IndexExpression expr : clause.expressions)
+                    if (data == null || data.getColumn(expr.column_name) == null)
                     {
-                        if (expr != primary && data.getColumn(expr.column_name) == null)
+                        ColumnFamily extraData = getColumnFamily(new QueryFilter(dk, path, extraFilter));
+                        if (extraData != null)
                         {
-                            data.addAll(getColumnFamily(new QueryFilter(dk, path, extraFilter)));
-                            break;
+                            if (data == null)
+                                data = extraData.cloneMeShallow();
+                            data.addAll(extraData);
                         }
+                        break;
                     }
                 }
+            }
 
-                if (satisfies(data, clause, primary))
+            // writes don't remove the index entries of the values they replace (see Table.apply), so check
+            // the entries that led here against the data row, deleting those that no longer match it.  Every
+            // read above included the indexed columns, so a missing column really is missing from the row
+            boolean stale = false;
+            for (int i = 0; i < indexed.size(); i++)
+            {
+                IndexExpression expression = indexed.get(i);
+                IColumn column = data == null ? null : data.getColumn(expression.column_name);
+                if (column == null || !column.value().equals(expression.value))
                 {
-                    logger.debug("row {} satisfies all clauses", data);
-                    // cut the resultset back to what was requested, if necessary
-                    if (firstFilter != dataFilter)
-                    {
-                        ColumnFamily expandedData = data;
-                        data = expandedData.cloneMeShallow();
-                        IColumnIterator iter = dataFilter.getMemtableColumnIterator(expandedData, dk, getComparator());
-                        new QueryFilter(dk, path, dataFilter).collectCollatedColumns(data, iter, gcBefore());
-                    }
+                    IndexedKeyIterator keys = i == 0 ? primaryKeys : otherKeys.get(i - 1);
+                    deleteStaleIndexEntry(expression, dataKey, keys.currentTimestamp());
+                    stale = true;
+                }
+            }
 
-                    rows.add(new Row(dk, data));
+            if (!stale && satisfies(data, clause, indexed))
+            {
+                logger.debug("row {} satisfies all clauses", data);
+                // cut the resultset back to what was requested, if necessary
+                if (firstFilter != dataFilter)
+                {
+                    ColumnFamily expandedData = data;
+                    data = expandedData.cloneMeShallow();
+                    IColumnIterator iter = dataFilter.getMemtableColumnIterator(expandedData, dk, getComparator());
+                    new QueryFilter(dk, path, dataFilter).collectCollatedColumns(data, iter, gcBefore());
                 }
 
-                if (rows.size() == clause.count)
-                    break outer;
+                rows.add(new Row(dk, data));
             }
-            if (n < clause.count || startKey.equals(dataKey))
+
+            if (rows.size() == clause.count)
                 break;
-            startKey = dataKey;
+            primaryKeys.advance();
         }
 
         return rows;
     }
 
-    private IndexExpression highestSelectivityPredicate(IndexClause clause)
+    /**
+     * Deletes the entry for the given row key from the index row for the expression's value.  The tombstone
+     * has the timestamp of the entry, so that an entry written again for a newer value survives it.
+     */
+    private void deleteStaleIndexEntry(IndexExpression expression, ByteBuffer dataKey, long timestamp)
     {
-        IndexExpression best = null;
-        int bestMeanCount = Integer.MAX_VALUE;
+        if (logger.isDebugEnabled())
+            logger.debug("deleting stale index entry for row {} from {}",
+                         getComparator().getString(dataKey), getComparator().getString(expression.column_name));
+        ColumnFamily cfi = newIndexedColumnFamily(expression.column_name);
+        cfi.addTombstone(dataKey, (int) (System.currentTimeMillis() / 1000), timestamp);
+        Table.flusherLock.readLock().lock();
+        try
+        {
+            // ignore a full index memtable -- we flush those when the "master" one is full
+            getIndexedColumnFamilyStore(expression.column_name).apply(getIndexKeyFor(expression.column_name, expression.value), cfi);
+        }
+        finally
+        {
+            Table.flusherLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the indexed EQ expressions that the scan should read index rows for, most selective first.
+     * Selectivity is estimated from the mean row width of each index CF, i.e. the average number of rows
+     * holding a given value; an index is only intersected with the primary one if reading its (narrow)
+     * index row is likely to be cheaper than reading the data rows it would eliminate.
+     */
+    private List<IndexExpression> indexedPredicatesBySelectivity(IndexClause clause)
+    {
+        final Map<IndexExpression, Integer> meanColumns = new HashMap<IndexExpression, Integer>();
+        List<IndexExpression> candidates = new ArrayList<IndexExpression>();
         for (IndexExpression expression : clause.expressions)
         {
             ColumnFamilyStore cfs = getIndexedColumnFamilyStore(expression.column_name);
-            if (cfs == null || !expression.op.equals(IndexOperator.EQ))
+            if (cfs == null || !expression.op.equals(IndexOperator.EQ) || meanColumns.containsKey(expression))
                 continue;
-            int columns = cfs.getMeanColumns();
-            if (columns < bestMeanCount)
+            meanColumns.put(expression, cfs.getMeanColumns());
+            candidates.add(expression);
+        }
+        Collections.sort(candidates, new Comparator<IndexExpression>()
+        {
+            public int compare(IndexExpression e1, IndexExpression e2)
+            {
+                return meanColumns.get(e1).compareTo(meanColumns.get(e2));
+            }
+        });
+
+        List<IndexExpression> indexed = new ArrayList<IndexExpression>(candidates.size());
+        long threshold = Math.max(1L, meanColumns.get(candidates.get(0))) * INDEX_INTERSECTION_RATIO;
+        for (IndexExpression expression : candidates)
+        {
+            if (!indexed.isEmpty() && meanColumns.get(expression) > threshold)
+                break;
+            indexed.add(expression);
+        }
+        return indexed;
+    }
+
+    /**
+     * Pages through the live columns (i.e. data row keys) of one index row, in index comparator order.
+     */
+    private static class IndexedKeyIterator
+    {
+        private final ColumnFamilyStore indexCFS;
+        private final DecoratedKey indexKey;
+        private final int pageSize;
+
+        private List<IColumn> page;
+        private int position;
+        private boolean lastPage;
+
+        IndexedKeyIterator(ColumnFamilyStore indexCFS, ByteBuffer value, ByteBuffer startKey, int pageSize)
+        {
+            assert pageSize > 1;
+            this.indexCFS = indexCFS;
+            this.indexKey = indexCFS.partitioner.decorateKey(value);
+            this.pageSize = pageSize;
+            fetch(startKey);
+        }
+
+        private void fetch(ByteBuffer startKey)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug(String.format("Scanning index row %s:%s starting with %s",
+                                           indexCFS.columnFamily, indexKey, indexCFS.getComparator().getString(startKey)));
+            QueryFilter indexFilter = QueryFilter.getSliceFilter(indexKey,
+                                                                 new QueryPath(indexCFS.getColumnFamilyName()),
+                                                                 startKey,
+                                                                 FBUtilities.EMPTY_BYTE_BUFFER,
+                                                                 false,
+                                                                 pageSize);
+            ColumnFamily indexRow = indexCFS.getColumnFamily(indexFilter);
+            logger.debug("fetched {}", indexRow);
+            page = new ArrayList<IColumn>(pageSize);
+            if (indexRow != null)
             {
-                best = expression;
-                bestMeanCount = columns;
+                for (IColumn column : indexRow.getSortedColumns())
+                {
+                    if (!column.isMarkedForDelete())
+                        page.add(column);
+                }
+            }
+            position = 0;
+            lastPage = page.size() < pageSize;
+        }
+
+        /**
+         * @return the current row key, or null once the index row is exhausted
+         */
+        ByteBuffer current()
+        {
+            return position < page.size() ? page.get(position).name() : null;
+        }
+
+        /**
+         * @return the timestamp of the index entry for the current row key
+         */
+        long currentTimestamp()
+        {
+            return page.get(position).timestamp();
+        }
+
+        void advance()
+        {
+            assert position < page.size();
+            position++;
+            if (position == page.size() && !lastPage)
+            {
+                // slices are inclusive, so the next page starts with the key we just passed
+                ByteBuffer last = page.get(position - 1).name();
+                fetch(last);
+                if (!page.isEmpty() && page.get(0).name().equals(last))
+                    position = 1;
+            }
+        }
+
+        /**
+         * Moves to the first row key that is not before the given one, re-slicing the index row
+         * from that key when it is past the current page.
+         */
+        void skipTo(ByteBuffer key)
+        {
+            AbstractType comparator = indexCFS.getComparator();
+            while (current() != null && comparator.compare(current(), key) < 0)
+            {
+                if (!lastPage && comparator.compare(page.get(page.size() - 1).name(), key) < 0)
+                    fetch(key);
+                else
+                    advance();
             }
         }
-        return best;
     }
 
-    private static boolean satisfies(ColumnFamily data, IndexClause clause, IndexExpression first)
+    private static boolean satisfies(ColumnFamily data, IndexClause clause, Collection<IndexExpression> indexed)
     {
         for (IndexExpression expression : clause.expressions)
         {
-            // (we can skip "first" since we already know it's satisfied)
-            if (expression == first)
+            // (we can skip the indexed expressions since we already know they're satisfied)
+            if (indexed.contains(expression))
                 continue;
             // check column data vs expression
             IColumn column = data.getColumn(expression.column_name);
@@ -39,7 +39,14 @@ public interface ColumnFamilyStoreMBean
      * @return The size in bytes.
      */
     public int getMemtableDataSize();
-    
+
+    /**
+     * Returns an estimate of the heap used by the memtable.
+     *
+     * @return The size in bytes.
+     */
+    public long getMemtableLiveSize();
+
     /**
      * Returns the total number of columns present in the memtable.
      * 
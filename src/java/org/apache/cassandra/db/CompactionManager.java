@@ -26,19 +26,22 @@ import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.*;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
 import org.apache.commons.collections.PredicateUtils;
-import org.apache.commons.collections.iterators.CollatingIterator;
 import org.apache.commons.collections.iterators.FilterIterator;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.columniterator.IColumnIterator;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.io.AbstractCompactedRow;
 import org.apache.cassandra.io.CompactionIterator;
@@ -57,7 +60,8 @@ public class CompactionManager implements CompactionManagerMBean
     public static final String MBEAN_OBJECT_NAME = "org.apache.cassandra.db:type=CompactionManager";
     private static final Logger logger = LoggerFactory.getLogger(CompactionManager.class);
     public static final CompactionManager instance;
-    private final ReentrantLock compactionLock = new ReentrantLock();
+    // every compaction task holds the read lock, so that migrations can take the write lock to stop them all
+    private final ReentrantReadWriteLock compactionLock = new ReentrantReadWriteLock();
     // todo: should provide a way to unlock in mbean?
 
     static
@@ -77,15 +81,19 @@ public class CompactionManager implements CompactionManagerMBean
     private CompactionExecutor executor = new CompactionExecutor();
     private Map<ColumnFamilyStore, Integer> estimatedCompactions = new NonBlockingHashMap<ColumnFamilyStore, Integer>();
     
+    /**
+     * @return the lock that excludes every compaction task while it is held
+     */
     public Lock getCompactionLock()
     {
-        return compactionLock;
+        return compactionLock.writeLock();
     }
 
     /**
      * Call this whenever a compaction might be needed on the given columnfamily.
-     * It's okay to over-call (within reason) since the compactions are single-threaded,
-     * and if a call is unnecessary, it will just be no-oped in the bucketing phase.
+     * It's okay to over-call (within reason) since the sstables a compaction works on are
+     * claimed for its duration, and if a call is unnecessary, it will just be no-oped when
+     * the strategy finds nothing (unclaimed) to compact.
      */
     public Future<Integer> submitMinorIfNeeded(final ColumnFamilyStore cfs)
     {
@@ -93,7 +101,7 @@ public class CompactionManager implements CompactionManagerMBean
         {
             public Integer call() throws IOException
             {
-                compactionLock.lock();
+                compactionLock.readLock().lock();
                 try
                 {
                     if (cfs.isInvalid())
@@ -107,51 +115,54 @@ public class CompactionManager implements CompactionManagerMBean
                         return 0;
                     }
                     logger.debug("Checking to see if compaction of " + cfs.columnFamily + " would be useful");
-                    Set<List<SSTableReader>> buckets = getBuckets(convertSSTablesToPairs(cfs.getSSTables()), 50L * 1024L * 1024L);
-                    updateEstimateFor(cfs, buckets);
-                    
-                    for (List<SSTableReader> sstables : buckets)
+                    AbstractCompactionStrategy strategy = cfs.getCompactionStrategy();
+                    List<SSTableReader> sstables;
+                    synchronized (strategy)
                     {
-                        if (sstables.size() >= minThreshold)
-                        {
-                            // if we have too many to compact all at once, compact older ones first -- this avoids
-                            // re-compacting files we just created.
-                            Collections.sort(sstables);
-                            int gcBefore = cfs.isIndex()
-                                         ? Integer.MAX_VALUE
-                                         : (int) (System.currentTimeMillis() / 1000) - cfs.metadata.getGcGraceSeconds();
-                            return doCompaction(cfs,
-                                                sstables.subList(0, Math.min(sstables.size(), maxThreshold)),
-                                                gcBefore);
-                        }
+                        estimatedCompactions.put(cfs, strategy.getEstimatedRemainingTasks());
+                        sstables = strategy.getBackgroundCandidates();
+                        if (sstables.isEmpty() || !cfs.markCompacting(sstables))
+                            return 0;
+                    }
+
+                    int compacted;
+                    try
+                    {
+                        int gcBefore = cfs.isIndex()
+                                     ? Integer.MAX_VALUE
+                                     : (int) (System.currentTimeMillis() / 1000) - cfs.metadata.getGcGraceSeconds();
+                        compacted = doCompaction(cfs, sstables, gcBefore);
                     }
+                    finally
+                    {
+                        cfs.unmarkCompacting(sstables);
+                    }
+                    // look for more work once the sstables are released, so that the check sees a settled state
+                    if (compacted > 0)
+                        submitMinorIfNeeded(cfs);
+                    return compacted;
                 }
                 finally 
                 {
-                    compactionLock.unlock();
+                    compactionLock.readLock().unlock();
                 }
-                return 0;
             }
         };
         return executor.submit(callable);
     }
 
-    private void updateEstimateFor(ColumnFamilyStore cfs, Set<List<SSTableReader>> buckets)
+    private void updateEstimateFor(ColumnFamilyStore cfs)
     {
         Integer minThreshold = cfs.getMinimumCompactionThreshold();
         Integer maxThreshold = cfs.getMaximumCompactionThreshold();
 
         if (minThreshold > 0 && maxThreshold > 0)
         {
-            int n = 0;
-            for (List<SSTableReader> sstables : buckets)
+            AbstractCompactionStrategy strategy = cfs.getCompactionStrategy();
+            synchronized (strategy)
             {
-                if (sstables.size() >= minThreshold)
-                {
-                    n += Math.ceil((double)sstables.size() / maxThreshold);
-                }
+                estimatedCompactions.put(cfs, strategy.getEstimatedRemainingTasks());
             }
-            estimatedCompactions.put(cfs, n);
         }
         else
         {
@@ -165,7 +176,7 @@ public class CompactionManager implements CompactionManagerMBean
         {
             public Object call() throws IOException
             {
-                compactionLock.lock();
+                compactionLock.readLock().lock();
                 try 
                 {
                     if (!cfStore.isInvalid())
@@ -174,7 +185,7 @@ public class CompactionManager implements CompactionManagerMBean
                 }
                 finally 
                 {
-                    compactionLock.unlock();
+                    compactionLock.readLock().unlock();
                 }
             }
         };
@@ -192,47 +203,92 @@ public class CompactionManager implements CompactionManagerMBean
         {
             public Object call() throws IOException
             {
-                compactionLock.lock();
+                compactionLock.readLock().lock();
                 try
                 {
                     if (cfStore.isInvalid())
                         return this;
-                    Collection<SSTableReader> sstables;
-                    if (skip > 0)
+                    Collection<SSTableReader> sstables = markForMajor(cfStore);
+                    int compacted = 0;
+                    try
                     {
-                        sstables = new ArrayList<SSTableReader>();
-                        for (SSTableReader sstable : cfStore.getSSTables())
+                        if (skip > 0)
                         {
-                            if (sstable.length() < skip * 1024L * 1024L * 1024L)
+                            Collection<SSTableReader> skipped = new ArrayList<SSTableReader>();
+                            for (SSTableReader sstable : sstables)
                             {
-                                sstables.add(sstable);
+                                if (sstable.length() >= skip * 1024L * 1024L * 1024L)
+                                {
+                                    skipped.add(sstable);
+                                }
                             }
+                            cfStore.unmarkCompacting(skipped);
+                            sstables.removeAll(skipped);
+                        }
+
+                        // keep repaired and unrepaired data apart, unless the strategy needs everything compacted at once
+                        List<Collection<SSTableReader>> groups = groupByRepairedStatus(sstables);
+                        if (groups.size() > 1 && cfStore.getCompactionStrategy().isPartialCompactionAllowed())
+                        {
+                            for (Collection<SSTableReader> group : groups)
+                                compacted += doCompaction(cfStore, group, gcBefore);
+                        }
+                        else
+                        {
+                            compacted = doCompaction(cfStore, sstables, gcBefore);
                         }
                     }
-                    else
+                    finally
                     {
-                        sstables = cfStore.getSSTables();
+                        cfStore.unmarkCompacting(sstables);
                     }
-    
-                    doCompaction(cfStore, sstables, gcBefore);
+                    if (compacted > 0)
+                        submitMinorIfNeeded(cfStore);
                     return this;
                 }
                 finally 
                 {
-                    compactionLock.unlock();
+                    compactionLock.readLock().unlock();
                 }
             }
         };
         return executor.submit(callable);
     }
 
+    /**
+     * Claims the sstables for a major compaction: those that no other compaction is working on,
+     * or, if the strategy cannot compact a subset of the sstables, all of them once the running
+     * compactions of the column family are done.
+     */
+    private Collection<SSTableReader> markForMajor(ColumnFamilyStore cfs)
+    {
+        AbstractCompactionStrategy strategy = cfs.getCompactionStrategy();
+        while (true)
+        {
+            synchronized (strategy)
+            {
+                if (strategy.isPartialCompactionAllowed() || !cfs.isCompacting())
+                    return cfs.markUncompactingSSTables();
+            }
+            logger.debug("Waiting for running compactions of {} to finish before a major compaction", cfs.columnFamily);
+            try
+            {
+                Thread.sleep(1000);
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
     public Future<Object> submitValidation(final ColumnFamilyStore cfStore, final AntiEntropyService.Validator validator)
     {
         Callable<Object> callable = new Callable<Object>()
         {
             public Object call() throws IOException
             {
-                compactionLock.lock();
+                compactionLock.readLock().lock();
                 try
                 {
                     if (!cfStore.isInvalid())
@@ -241,7 +297,7 @@ public class CompactionManager implements CompactionManagerMBean
                 }
                 finally
                 {
-                    compactionLock.unlock();
+                    compactionLock.readLock().unlock();
                 }
             }
         };
@@ -261,7 +317,8 @@ public class CompactionManager implements CompactionManagerMBean
 
     /**
      * For internal use and testing only.  The rest of the system should go through the submit* methods,
-     * which are properly serialized.
+     * which claim the sstables (ColumnFamilyStore.markCompacting) so concurrent compactions don't overlap,
+     * release them once this returns, and then look for further compactions to do.
      */
     int doCompaction(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, int gcBefore) throws IOException
     {
@@ -274,8 +331,9 @@ public class CompactionManager implements CompactionManagerMBean
         String compactionFileLocation = table.getDataFileLocation(cfs.getExpectedCompactedFileSize(sstables));
         // If the compaction file path is null that means we have no space left for this compaction.
         // try again w/o the largest one.
+        AbstractCompactionStrategy strategy = cfs.getCompactionStrategy();
         List<SSTableReader> smallerSSTables = new ArrayList<SSTableReader>(sstables);
-        while (compactionFileLocation == null && smallerSSTables.size() > 1)
+        while (compactionFileLocation == null && smallerSSTables.size() > 1 && strategy.isPartialCompactionAllowed())
         {
             logger.warn("insufficient space to compact all requested files " + StringUtils.join(smallerSSTables, ", "));
             smallerSSTables.remove(cfs.getMaxSizeFile(smallerSSTables));
@@ -283,30 +341,45 @@ public class CompactionManager implements CompactionManagerMBean
         }
         if (compactionFileLocation == null)
         {
-            logger.error("insufficient space to compact even the two smallest files, aborting");
+            logger.error(strategy.isPartialCompactionAllowed()
+                         ? "insufficient space to compact even the two smallest files, aborting"
+                         : "insufficient space to compact all requested files, aborting");
             return 0;
         }
         sstables = smallerSSTables;
 
-        // new sstables from flush can be added during a compaction, but only the compaction can remove them,
-        // so in our single-threaded compaction world this is a valid way of determining if we're compacting
-        // all the sstables (that existed when we started)
+        // new sstables from flush can be added during a compaction, but only the compaction that claimed them
+        // can remove them, so this is a valid way of determining if we're compacting all the sstables (that
+        // existed when we started)
         boolean major = cfs.isCompleteSSTables(sstables);
 
         long startTime = System.currentTimeMillis();
         long totalkeysWritten = 0;
 
+        // the strategy may ask for the output to be split into several sstables of bounded size;
+        // size the bloom filters for the share of the keys each of them should receive
+        long maxSSTableSize = strategy.getMaxSSTableSize();
+        long totalBytes = SSTable.getTotalBytes(sstables);
+        long estimatedKeys = SSTableReader.getApproximateKeyCount(sstables);
+        if (maxSSTableSize < totalBytes && totalBytes > 0)
+            estimatedKeys = (long) Math.ceil(estimatedKeys * ((double) maxSSTableSize / totalBytes));
         // TODO the int cast here is potentially buggy
-        int expectedBloomFilterSize = Math.max(DatabaseDescriptor.getIndexInterval(), (int)SSTableReader.getApproximateKeyCount(sstables));
+        int expectedBloomFilterSize = Math.max(DatabaseDescriptor.getIndexInterval(), (int)estimatedKeys);
         if (logger.isDebugEnabled())
           logger.debug("Expected bloom filter size : " + expectedBloomFilterSize);
+        int level = strategy.getLevelForOutput(sstables);
+        long maxDataAge = getMaxDataAge(sstables);
+        long repairedAt = getRepairedAt(sstables);
 
-        SSTableWriter writer;
+        SSTableWriter writer = null;
         CompactionIterator ci = new CompactionIterator(cfs, sstables, gcBefore, major); // retain a handle so we can call close()
         Iterator<AbstractCompactedRow> nni = new FilterIterator(ci, PredicateUtils.notNullPredicate());
         executor.beginCompaction(cfs, ci);
 
-        Map<DecoratedKey, Long> cachedKeys = new HashMap<DecoratedKey, Long>();
+        List<SSTableReader> results = new ArrayList<SSTableReader>();
+        // the data and promoted header positions of the rows that were in the key cache
+        Map<SSTableReader, Map<DecoratedKey, Pair<Long, Long>>> cachedKeyMap = new HashMap<SSTableReader, Map<DecoratedKey, Pair<Long, Long>>>();
+        Map<DecoratedKey, Pair<Long, Long>> cachedKeys = new HashMap<DecoratedKey, Pair<Long, Long>>();
 
         try
         {
@@ -319,22 +392,37 @@ public class CompactionManager implements CompactionManagerMBean
                 return 0;
             }
 
-            String newFilename = new File(cfs.getTempSSTablePath(compactionFileLocation)).getAbsolutePath();
-            writer = new SSTableWriter(newFilename, expectedBloomFilterSize, cfs.metadata, cfs.partitioner);
             while (nni.hasNext())
             {
+                if (writer == null)
+                {
+                    String newFilename = new File(cfs.getTempSSTablePath(compactionFileLocation)).getAbsolutePath();
+                    writer = new SSTableWriter(newFilename, expectedBloomFilterSize, cfs.metadata, cfs.partitioner);
+                    writer.setSSTableLevel(level);
+                    writer.setRepairedAt(repairedAt);
+                }
+
                 AbstractCompactedRow row = nni.next();
                 long position = writer.append(row);
                 totalkeysWritten++;
 
                 for (SSTableReader sstable : sstables)
                 {
-                    if (sstable.getCachedPosition(row.key) != null)
+                    if (sstable.getCachedPosition(row.key) >= 0)
                     {
-                        cachedKeys.put(row.key, position);
+                        cachedKeys.put(row.key, new Pair<Long, Long>(position, writer.getLastHeaderPosition()));
                         break;
                     }
                 }
+
+                if (writer.getFilePointer() > maxSSTableSize)
+                {
+                    SSTableReader toIndex = writer.closeAndOpenReader(maxDataAge);
+                    cachedKeyMap.put(toIndex, cachedKeys);
+                    results.add(toIndex);
+                    writer = null;
+                    cachedKeys = new HashMap<DecoratedKey, Pair<Long, Long>>();
+                }
             }
         }
         finally
@@ -342,18 +430,29 @@ public class CompactionManager implements CompactionManagerMBean
             ci.close();
         }
 
-        SSTableReader ssTable = writer.closeAndOpenReader(getMaxDataAge(sstables));
-        cfs.replaceCompactedSSTables(sstables, Arrays.asList(ssTable));
-        for (Entry<DecoratedKey, Long> entry : cachedKeys.entrySet())
-            ssTable.cacheKey(entry.getKey(), entry.getValue());
-        submitMinorIfNeeded(cfs);
+        if (writer != null)
+        {
+            SSTableReader toIndex = writer.closeAndOpenReader(maxDataAge);
+            cachedKeyMap.put(toIndex, cachedKeys);
+            results.add(toIndex);
+        }
+        cfs.replaceCompactedSSTables(sstables, results);
+        for (Entry<SSTableReader, Map<DecoratedKey, Pair<Long, Long>>> ssTableEntry : cachedKeyMap.entrySet())
+        {
+            SSTableReader key = ssTableEntry.getKey();
+            for (Entry<DecoratedKey, Pair<Long, Long>> entry : ssTableEntry.getValue().entrySet())
+               key.cacheKey(entry.getKey(), entry.getValue().left, entry.getValue().right);
+        }
 
         long dTime = System.currentTimeMillis() - startTime;
-        long startsize = SSTable.getTotalBytes(sstables);
-        long endsize = ssTable.length();
+        long startsize = totalBytes;
+        long endsize = SSTable.getTotalBytes(results);
         double ratio = (double)endsize / (double)startsize;
-        logger.info(String.format("Compacted to %s.  %,d to %,d (~%d%% of original) bytes for %,d keys.  Time: %,dms.",
-                                  writer.getFilename(), startsize, endsize, (int) (ratio * 100), totalkeysWritten, dTime));
+        StringBuilder builder = new StringBuilder();
+        for (SSTableReader reader : results)
+            builder.append(reader.getFilename()).append(",");
+        logger.info(String.format("Compacted to [%s].  %,d to %,d (~%d%% of original) bytes for %,d keys.  Time: %,dms.",
+                                  builder.toString(), startsize, endsize, (int) (ratio * 100), totalkeysWritten, dTime));
         return sstables.size();
     }
 
@@ -368,6 +467,43 @@ public class CompactionManager implements CompactionManagerMBean
         return max;
     }
 
+    /**
+     * @return when all of the given sstables were last repaired: UNREPAIRED_SSTABLE if any of them never was
+     */
+    private static long getRepairedAt(Collection<SSTableReader> sstables)
+    {
+        long min = Long.MAX_VALUE;
+        for (SSTableReader sstable : sstables)
+        {
+            if (!sstable.isRepaired())
+                return SSTableMetadata.UNREPAIRED_SSTABLE;
+            min = Math.min(min, sstable.getRepairedAt());
+        }
+        return sstables.isEmpty() ? SSTableMetadata.UNREPAIRED_SSTABLE : min;
+    }
+
+    /**
+     * Splits the given sstables into the unrepaired and the repaired ones, leaving out empty groups.
+     */
+    private static List<Collection<SSTableReader>> groupByRepairedStatus(Collection<SSTableReader> sstables)
+    {
+        List<SSTableReader> unrepaired = new ArrayList<SSTableReader>();
+        List<SSTableReader> repaired = new ArrayList<SSTableReader>();
+        for (SSTableReader sstable : sstables)
+        {
+            if (sstable.isRepaired())
+                repaired.add(sstable);
+            else
+                unrepaired.add(sstable);
+        }
+        List<Collection<SSTableReader>> groups = new ArrayList<Collection<SSTableReader>>(2);
+        if (!unrepaired.isEmpty())
+            groups.add(unrepaired);
+        if (!repaired.isEmpty())
+            groups.add(repaired);
+        return groups;
+    }
+
     /**
      * This function is used to do the anti compaction process , it spits out the file which has keys that belong to a given range
      * If the target is not specified it spits out the file as a compacted file with the unecessary ranges wiped out.
@@ -420,6 +556,7 @@ public class CompactionManager implements CompactionManagerMBean
                     FileUtils.createDirectory(compactionFileLocation);
                     String newFilename = new File(cfs.getTempSSTablePath(compactionFileLocation)).getAbsolutePath();
                     writer = new SSTableWriter(newFilename, expectedBloomFilterSize, cfs.metadata, cfs.partitioner);
+                    writer.setRepairedAt(getRepairedAt(sstables));
                 }
                 writer.append(row);
                 totalkeysWritten++;
@@ -453,11 +590,29 @@ public class CompactionManager implements CompactionManagerMBean
      */
     private void doCleanupCompaction(ColumnFamilyStore cfs) throws IOException
     {
-        Collection<SSTableReader> originalSSTables = cfs.getSSTables();
-        List<SSTableReader> sstables = doAntiCompaction(cfs, originalSSTables, StorageService.instance.getLocalRanges(cfs.table.name), null);
-        if (!sstables.isEmpty())
+        Collection<SSTableReader> originalSSTables;
+        synchronized (cfs.getCompactionStrategy())
         {
-            cfs.replaceCompactedSSTables(originalSSTables, sstables);
+            originalSSTables = cfs.markUncompactingSSTables();
+        }
+        try
+        {
+            int skipped = cfs.getSSTables().size() - originalSSTables.size();
+            if (skipped > 0)
+                logger.warn(String.format("Skipping %d sstables of %s that are being compacted; run cleanup again once they are done",
+                                          skipped, cfs.columnFamily));
+            // clean repaired and unrepaired sstables separately, so that the repaired ones stay repaired
+            List<SSTableReader> sstables = new ArrayList<SSTableReader>();
+            for (Collection<SSTableReader> group : groupByRepairedStatus(originalSSTables))
+                sstables.addAll(doAntiCompaction(cfs, group, StorageService.instance.getLocalRanges(cfs.table.name), null));
+            if (!sstables.isEmpty())
+            {
+                cfs.replaceCompactedSSTables(originalSSTables, sstables);
+            }
+        }
+        finally
+        {
+            cfs.unmarkCompacting(originalSSTables);
         }
     }
 
@@ -481,7 +636,9 @@ public class CompactionManager implements CompactionManagerMBean
             throw new AssertionError(e);
         }
 
-        CompactionIterator ci = new ValidationCompactionIterator(cfs);
+        // the repaired sstables already agree with the other replicas: only the rest needs validating
+        List<SSTableReader> sstables = cfs.getUnrepairedSSTables();
+        CompactionIterator ci = new ValidationCompactionIterator(cfs, sstables);
         executor.beginCompaction(cfs, ci);
         try
         {
@@ -494,6 +651,8 @@ public class CompactionManager implements CompactionManagerMBean
                 AbstractCompactedRow row = nni.next();
                 validator.add(row);
             }
+            // remember what was validated, to mark it repaired once the session is over
+            AntiEntropyService.instance.validated(validator.request, sstables);
             validator.complete();
         }
         finally
@@ -556,23 +715,13 @@ public class CompactionManager implements CompactionManagerMBean
         return buckets.keySet();
     }
 
-    private static Collection<Pair<SSTableReader, Long>> convertSSTablesToPairs(Collection<SSTableReader> collection)
-    {
-        Collection<Pair<SSTableReader, Long>> tablePairs = new ArrayList<Pair<SSTableReader, Long>>();
-        for(SSTableReader table: collection)
-        {
-            tablePairs.add(new Pair<SSTableReader, Long>(table, table.length()));
-        }
-        return tablePairs;
-    }
-    
     public Future submitIndexBuild(final ColumnFamilyStore cfs, final Table.IndexBuilder builder)
     {
         Runnable runnable = new Runnable()
         {
             public void run()
             {
-                compactionLock.lock();
+                compactionLock.readLock().lock();
                 try
                 {
                     if (cfs.isInvalid())
@@ -582,7 +731,8 @@ public class CompactionManager implements CompactionManagerMBean
                 }
                 finally
                 {
-                    compactionLock.unlock();
+                    executor.finishCompaction();
+                    compactionLock.readLock().unlock();
                 }
             }
         };
@@ -591,7 +741,7 @@ public class CompactionManager implements CompactionManagerMBean
         // future that will be immediately immediately get()ed and executed. Happens during a migration, which locks
         // the compaction thread and then reinitializes a ColumnFamilyStore. Under normal circumstances, CFS spawns
         // index jobs to the compaction manager (this) and blocks on them.
-        if (compactionLock.isHeldByCurrentThread())
+        if (compactionLock.isWriteLockedByCurrentThread())
             return new SimpleFuture(runnable);
         else
             return executor.submit(runnable);
@@ -605,7 +755,7 @@ public class CompactionManager implements CompactionManagerMBean
         {
             public SSTableReader call() throws IOException
             {
-                compactionLock.lock();
+                compactionLock.readLock().lock();
                 try
                 {
                     executor.beginCompaction(builder.cfs, builder);
@@ -613,7 +763,7 @@ public class CompactionManager implements CompactionManagerMBean
                 }
                 finally
                 {
-                    compactionLock.unlock();
+                    compactionLock.readLock().unlock();
                 }
             }
         };
@@ -622,9 +772,9 @@ public class CompactionManager implements CompactionManagerMBean
 
     private static class ValidationCompactionIterator extends CompactionIterator
     {
-        public ValidationCompactionIterator(ColumnFamilyStore cfs) throws IOException
+        public ValidationCompactionIterator(ColumnFamilyStore cfs, Collection<SSTableReader> sstables) throws IOException
         {
-            super(cfs, cfs.getSSTables(), (int) (System.currentTimeMillis() / 1000) - cfs.metadata.getGcGraceSeconds(), true);
+            super(cfs, sstables, (int) (System.currentTimeMillis() / 1000) - cfs.metadata.getGcGraceSeconds(), true);
         }
 
         @Override
@@ -636,45 +786,32 @@ public class CompactionManager implements CompactionManagerMBean
 
     private static class AntiCompactionIterator extends CompactionIterator
     {
-        private Set<SSTableScanner> scanners;
-
         public AntiCompactionIterator(ColumnFamilyStore cfStore, Collection<SSTableReader> sstables, Collection<Range> ranges, int gcBefore, boolean isMajor)
                 throws IOException
         {
-            super(cfStore, getCollatedRangeIterator(sstables, ranges), gcBefore, isMajor);
+            this(cfStore, getDirectScanners(sstables), ranges, gcBefore, isMajor);
         }
 
-        private static Iterator getCollatedRangeIterator(Collection<SSTableReader> sstables, final Collection<Range> ranges)
-                throws IOException
+        private AntiCompactionIterator(ColumnFamilyStore cfStore, List<SSTableScanner> scanners, Collection<Range> ranges, int gcBefore, boolean isMajor)
         {
-            org.apache.commons.collections.Predicate rangesPredicate = new org.apache.commons.collections.Predicate()
-            {
-                public boolean evaluate(Object row)
-                {
-                    return Range.isTokenInRanges(((SSTableIdentityIterator)row).getKey().token, ranges);
-                }
-            };
-            // TODO CollatingIterator iter = FBUtilities.<SSTableIdentityIterator>getCollatingIterator();
-            CollatingIterator iter = FBUtilities.getCollatingIterator();
-            for (SSTableReader sstable : sstables)
-            {
-                SSTableScanner scanner = sstable.getDirectScanner(FILE_BUFFER_SIZE);
-                iter.addIterator(new FilterIterator(scanner, rangesPredicate));
-            }
-            return iter;
+            super(cfStore, scanners, getRangeIterators(scanners, ranges), gcBefore, isMajor);
         }
 
-        public Iterable<SSTableScanner> getScanners()
+        private static List<Iterator<IColumnIterator>> getRangeIterators(List<SSTableScanner> scanners, final Collection<Range> ranges)
         {
-            if (scanners == null)
+            Predicate<IColumnIterator> rangesPredicate = new Predicate<IColumnIterator>()
             {
-                scanners = new HashSet<SSTableScanner>();
-                for (Object o : ((CollatingIterator)source).getIterators())
+                public boolean apply(IColumnIterator row)
                 {
-                    scanners.add((SSTableScanner)((FilterIterator)o).getIterator());
+                    return Range.isTokenInRanges(row.getKey().token, ranges);
                 }
+            };
+            List<Iterator<IColumnIterator>> iterators = new ArrayList<Iterator<IColumnIterator>>();
+            for (SSTableScanner scanner : scanners)
+            {
+                iterators.add(Iterators.filter(scanner, rangesPredicate));
             }
-            return scanners;
+            return iterators;
         }
 
         public String getTaskType()
@@ -693,8 +830,7 @@ public class CompactionManager implements CompactionManagerMBean
                 public void run ()
                 {
                     logger.debug("Estimating compactions for " + cfs.columnFamily);
-                    final Set<List<SSTableReader>> buckets = getBuckets(convertSSTablesToPairs(cfs.getSSTables()), 50L * 1024L * 1024L);
-                    updateEstimateFor(cfs, buckets);
+                    updateEstimateFor(cfs);
                 }
             };
             executor.submit(runnable);
@@ -710,67 +846,109 @@ public class CompactionManager implements CompactionManagerMBean
 
     private static class CompactionExecutor extends DebuggableThreadPoolExecutor
     {
-        private volatile ColumnFamilyStore cfs;
-        private volatile ICompactionInfo ci;
+        // what each thread is working on, if anything
+        private final Map<Thread, Pair<ColumnFamilyStore, ICompactionInfo>> running = new NonBlockingHashMap<Thread, Pair<ColumnFamilyStore, ICompactionInfo>>();
 
         public CompactionExecutor()
         {
-            super("CompactionExecutor", DatabaseDescriptor.getCompactionThreadPriority());
+            super(DatabaseDescriptor.getConcurrentCompactors(),
+                  DatabaseDescriptor.getConcurrentCompactors(),
+                  Integer.MAX_VALUE,
+                  TimeUnit.SECONDS,
+                  new LinkedBlockingQueue<Runnable>(),
+                  new NamedThreadFactory("CompactionExecutor", DatabaseDescriptor.getCompactionThreadPriority()));
         }
 
         @Override
         public void afterExecute(Runnable r, Throwable t)
         {
             super.afterExecute(r, t);
-            cfs = null;
-            ci = null;
+            finishCompaction();
         }
 
         void beginCompaction(ColumnFamilyStore cfs, ICompactionInfo ci)
         {
-            this.cfs = cfs;
-            this.ci = ci;
+            running.put(Thread.currentThread(), new Pair<ColumnFamilyStore, ICompactionInfo>(cfs, ci));
         }
 
-        public String getColumnFamilyName()
+        void finishCompaction()
         {
-            return cfs == null ? null : cfs.getColumnFamilyName();
+            running.remove(Thread.currentThread());
         }
 
-        public Long getBytesTotal()
+        public Collection<Pair<ColumnFamilyStore, ICompactionInfo>> getCompactions()
         {
-            return ci == null ? null : ci.getTotalBytes();
+            return running.values();
         }
 
-        public Long getBytesCompleted()
+        /**
+         * @return one of the running compactions, or null if there are none
+         */
+        public Pair<ColumnFamilyStore, ICompactionInfo> getAnyCompaction()
         {
-            return ci == null ? null : ci.getBytesRead();
+            Iterator<Pair<ColumnFamilyStore, ICompactionInfo>> iter = running.values().iterator();
+            return iter.hasNext() ? iter.next() : null;
         }
+    }
 
-        public String getType()
-        {
-            return ci == null ? null : ci.getTaskType();
-        }
+    /**
+     * @return the number of compaction tasks that are currently running
+     */
+    public int getActiveCompactions()
+    {
+        return executor.getCompactions().size();
     }
 
     public String getColumnFamilyInProgress()
     {
-        return executor.getColumnFamilyName();
+        Pair<ColumnFamilyStore, ICompactionInfo> compaction = executor.getAnyCompaction();
+        return compaction == null ? null : compaction.left.getColumnFamilyName();
     }
 
     public Long getBytesTotalInProgress()
     {
-        return executor.getBytesTotal();
+        Pair<ColumnFamilyStore, ICompactionInfo> compaction = executor.getAnyCompaction();
+        return compaction == null ? null : compaction.right.getTotalBytes();
     }
 
     public Long getBytesCompacted()
     {
-        return executor.getBytesCompleted();
+        Pair<ColumnFamilyStore, ICompactionInfo> compaction = executor.getAnyCompaction();
+        return compaction == null ? null : compaction.right.getBytesRead();
     }
 
     public String getCompactionType()
     {
-        return executor.getType();
+        Pair<ColumnFamilyStore, ICompactionInfo> compaction = executor.getAnyCompaction();
+        return compaction == null ? null : compaction.right.getTaskType();
+    }
+
+    public List<Map<String, String>> getCompactions()
+    {
+        List<Map<String, String>> compactions = new ArrayList<Map<String, String>>();
+        for (Pair<ColumnFamilyStore, ICompactionInfo> compaction : executor.getCompactions())
+        {
+            Map<String, String> info = new HashMap<String, String>();
+            info.put(COMPACTION_KEYSPACE, compaction.left.table.name);
+            info.put(COMPACTION_COLUMNFAMILY, compaction.left.getColumnFamilyName());
+            info.put(COMPACTION_TYPE, compaction.right.getTaskType());
+            info.put(COMPACTION_BYTES_COMPACTED, Long.toString(compaction.right.getBytesRead()));
+            info.put(COMPACTION_BYTES_TOTAL, Long.toString(compaction.right.getTotalBytes()));
+            compactions.add(info);
+        }
+        return compactions;
+    }
+
+    public int getCompactionThroughputMbPerSec()
+    {
+        return DatabaseDescriptor.getCompactionThroughputMbPerSec();
+    }
+
+    public void setCompactionThroughputMbPerSec(int value)
+    {
+        if (value < 0)
+            throw new IllegalArgumentException("compaction throughput must not be negative");
+        DatabaseDescriptor.setCompactionThroughputMbPerSec(value);
     }
 
     public int getPendingTasks()
@@ -785,6 +963,20 @@ public class CompactionManager implements CompactionManagerMBean
     {
         return executor.getCompletedTaskCount();
     }
+
+    public String getCompactionStrategy(String ksname, String cfname)
+    {
+        return Table.open(ksname).getColumnFamilyStore(cfname).getCompactionStrategy().getClass().getName();
+    }
+
+    public int[] getSSTableCountPerLevel(String ksname, String cfname)
+    {
+        AbstractCompactionStrategy strategy = Table.open(ksname).getColumnFamilyStore(cfname).getCompactionStrategy();
+        synchronized (strategy)
+        {
+            return strategy.getSSTableCountPerLevel();
+        }
+    }
     
     private static class SimpleFuture implements Future
     {
@@ -18,29 +18,43 @@
 
 package org.apache.cassandra.db;
 
+import java.util.List;
+import java.util.Map;
+
 public interface CompactionManagerMBean
 {    
+    /** keys of the maps returned by getCompactions */
+    public static final String COMPACTION_KEYSPACE = "keyspace";
+    public static final String COMPACTION_COLUMNFAMILY = "columnfamily";
+    public static final String COMPACTION_TYPE = "taskType";
+    public static final String COMPACTION_BYTES_COMPACTED = "bytesCompacted";
+    public static final String COMPACTION_BYTES_TOTAL = "bytesTotal";
 
     /**
-     * @return the columnfamily currently being compacted; null if none
+     * @return the columnfamily of one of the compactions currently running; null if none
      */
     public String getColumnFamilyInProgress();
 
     /**
-     * @return the total (data, not including index and filter) bytes being compacted; null if none
+     * @return the total (data, not including index and filter) bytes of one of the compactions currently running; null if none
      */
     public Long getBytesTotalInProgress();
 
     /**
-     * @return the progress on the current compaction; null if none
+     * @return the progress of one of the compactions currently running; null if none
      */
     public Long getBytesCompacted();
 
     /**
-     * @return the type of compaction operation currently in progress; null if none
+     * @return the type of one of the compaction operations currently running; null if none
      */
     public String getCompactionType();
 
+    /**
+     * @return one map per running compaction, describing it by the COMPACTION_* keys
+     */
+    public List<Map<String, String>> getCompactions();
+
     /**
      * @return estimated number of compactions remaining to perform
      */
@@ -50,4 +64,22 @@ public interface CompactionManagerMBean
      * @return number of completed compactions since server [re]start
      */
     public long getCompletedTasks();
+
+    /**
+     * @return the class name of the compaction strategy used by the given column family
+     */
+    public String getCompactionStrategy(String ksname, String cfname);
+
+    /**
+     * @return the number of sstables in each level of the given column family, starting at level 0;
+     * strategies that do not use levels report every sstable in level 0
+     */
+    public int[] getSSTableCountPerLevel(String ksname, String cfname);
+
+    /**
+     * @return the throughput, in MB/s of data read, shared by all running compactions; 0 if unthrottled
+     */
+    public int getCompactionThroughputMbPerSec();
+
+    public void setCompactionThroughputMbPerSec(int value);
 }
@@ -28,6 +28,7 @@ import org.apache.log4j.Logger;
 import org.apache.cassandra.db.context.CounterContext;
 import org.apache.cassandra.db.context.IContext.ContextRelationship;
 import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.utils.Allocator;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 
@@ -232,6 +233,18 @@ public class CounterColumn extends Column
             timestampOfLastDelete);
     }
 
+    @Override
+    public IColumn localCopy(Allocator allocator)
+    {
+        // the value stays on the heap: it is read with value.arrayOffset() as its start, which a slab slice would break
+        return new CounterColumn(
+            allocator.clone(name),
+            ByteBufferUtil.clone(value),
+            timestamp,
+            partitionedCounter,
+            timestampOfLastDelete);
+    }
+
     @Override
     public String getString(AbstractType comparator)
     {
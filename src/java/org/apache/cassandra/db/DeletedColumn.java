@@ -23,6 +23,7 @@ import java.nio.ByteBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.utils.Allocator;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 
@@ -71,4 +72,10 @@ public class DeletedColumn extends Column
     {
         return new DeletedColumn(ByteBufferUtil.clone(name), ByteBufferUtil.clone(value), timestamp);
     }
+
+    @Override
+    public IColumn localCopy(Allocator allocator)
+    {
+        return new DeletedColumn(allocator.clone(name), allocator.clone(value), timestamp);
+    }
 }
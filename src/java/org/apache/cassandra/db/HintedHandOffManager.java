@@ -22,8 +22,9 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Deque;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeoutException;
 
@@ -39,12 +40,13 @@ import org.apache.cassandra.gms.FailureDetector;
 import org.apache.cassandra.gms.Gossiper;
 import org.apache.cassandra.net.Message;
 import org.apache.cassandra.net.MessagingService;
-import org.apache.cassandra.service.DigestMismatchException;
 import org.apache.cassandra.service.IWriteResponseHandler;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.service.WriteResponseHandler;
-import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.Pair;
+import org.apache.cassandra.utils.Throttle;
 import org.apache.cassandra.utils.WrappedRunnable;
 import org.cliffc.high_scale_lib.NonBlockingHashSet;
 
@@ -53,29 +55,23 @@ import static com.google.common.base.Charsets.UTF_8;
 
 /**
  * For each endpoint for which we have hints, there is a row in the system hints CF.
- * SuperColumns in that row are keys for which we have hinted data.
- * Subcolumns names within that supercolumn are keyspace+CF, concatenated with SEPARATOR.
- * Subcolumn values are always empty; instead, we store the row data "normally"
- * in the application table it belongs in.
+ * Each SuperColumn in that row is one hint, named by a TimeUUID, whose HINT_MUTATION
+ * subcolumn holds the serialized RowMutation that the endpoint missed.  The hint expires
+ * after the smallest gc_grace_seconds of the mutation's column families, since replaying
+ * it any later could resurrect deleted data.
  *
- * When FailureDetector signals that a node that was down is back up, we read its
- * hints row to see what rows we need to forward data for, then reach each row in its
- * entirety and send it over.
+ * When FailureDetector signals that a node that was down is back up, we page through its
+ * hints row and send the mutations to it, keeping up to MAX_HINTS_IN_FLIGHT of them
+ * unacknowledged at a time and throttled to hinted_handoff_throttle_in_kb.  Each hint is
+ * deleted once the endpoint acknowledges it; delivery stops at the first timeout, leaving
+ * the remaining hints for the next attempt.
  *
  * deliverHints is also exposed to JMX so it can be run manually if FD ever misses
  * its cue somehow.
  *
- * HHM never deletes the row from Application tables; usually (but not for CL.ANY!)
- * the row belongs on this node, as well.  instead, we rely on cleanup compactions
- * to remove data that doesn't belong.  (Cleanup compactions may be started manually
- * -- on a per node basis -- with "nodeprobe cleanup.")
- *
- * TODO this avoids our hint rows from growing excessively large by offloading the
- * message data into application tables.  But, this means that cleanup compactions
- * will nuke HH data.  Probably better would be to store the RowMutation messages
- * in a HHData (non-super) CF, modifying the above to store a UUID value in the
- * HH subcolumn value, which we use as a key to a [standard] HHData system CF
- * that would contain the message bytes.
+ * Hints written by older versions instead name a row by its key, with subcolumns for each
+ * keyspace+CF concatenated with SEPARATOR; those are still delivered by reading the row
+ * from the application table and sending it in its entirety.
  */
 
 public class HintedHandOffManager
@@ -84,7 +80,11 @@ public class HintedHandOffManager
 
     private static final Logger logger_ = LoggerFactory.getLogger(HintedHandOffManager.class);
     public static final String HINTS_CF = "HintsColumnFamily";
+    public static final ByteBuffer HINT_MUTATION = ByteBufferUtil.bytes("mutation");
     private static final int PAGE_SIZE = 10000;
+    // hints hold whole mutations, so page through them in smaller steps than columns
+    private static final int HINTS_PAGE_SIZE = 128;
+    private static final int MAX_HINTS_IN_FLIGHT = 32;
     private static final String SEPARATOR = "-";
 
     private final NonBlockingHashSet<InetAddress> queuedDeliveries = new NonBlockingHashSet<InetAddress>();
@@ -142,12 +142,19 @@ public class HintedHandOffManager
         RowMutation rm = new RowMutation(Table.SYSTEM_TABLE, endpointAddress);
         rm.delete(new QueryPath(HINTS_CF, key, tableCF), timestamp);
         rm.apply();
-    }                                                         
+    }
+
+    private static void deleteHint(ByteBuffer endpointAddress, ByteBuffer hintId) throws IOException
+    {
+        RowMutation rm = new RowMutation(Table.SYSTEM_TABLE, endpointAddress);
+        rm.delete(new QueryPath(HINTS_CF, hintId), System.currentTimeMillis());
+        rm.apply();
+    }
 
     public static void deleteHintsForEndPoint(InetAddress endpoint)
     {
         ColumnFamilyStore hintStore = Table.open(Table.SYSTEM_TABLE).getColumnFamilyStore(HINTS_CF);
-        RowMutation rm = new RowMutation(Table.SYSTEM_TABLE, ByteBuffer.wrap(endpoint.getAddress()));
+        RowMutation rm = new RowMutation(Table.SYSTEM_TABLE, ByteBuffer.wrap(endpoint.getHostAddress().getBytes(UTF_8)));
         rm.delete(new QueryPath(HINTS_CF), System.currentTimeMillis());
         try {
             logger_.info("Deleting any stored hints for " + endpoint);
@@ -186,52 +193,149 @@ public class HintedHandOffManager
         return parts;
 
     }
-            
-    private void deliverHintsToEndpoint(InetAddress endpoint) throws IOException, DigestMismatchException, InvalidRequestException, TimeoutException
+
+    /**
+     * Delivers a hint written by an older version, by sending each of the rows it names.
+     * @return false if delivery should stop
+     */
+    private static boolean deliverLegacyHint(InetAddress endpoint, ByteBuffer endpointKey, IColumn keyColumn) throws IOException
+    {
+        for (IColumn tableCF : keyColumn.getSubColumns())
+        {
+            String[] parts = getTableAndCFNames(tableCF.name());
+            if (!sendMessage(endpoint, parts[0], parts[1], keyColumn.name()))
+                return false;
+            deleteHintKey(endpointKey, keyColumn.name(), tableCF.name(), tableCF.timestamp());
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the oldest hint in flight to be acknowledged, and deletes it if it was.
+     * @return false if it timed out
+     */
+    private static boolean awaitOldestHint(ByteBuffer endpointKey, Deque<Pair<IWriteResponseHandler, ByteBuffer>> inFlight) throws IOException
+    {
+        Pair<IWriteResponseHandler, ByteBuffer> oldest = inFlight.poll();
+        try
+        {
+            oldest.left.get();
+        }
+        catch (TimeoutException e)
+        {
+            return false;
+        }
+        deleteHint(endpointKey, oldest.right);
+        return true;
+    }
+
+    private void deliverHintsToEndpoint(InetAddress endpoint) throws IOException
     {
         logger_.info("Started hinted handoff for endpoint " + endpoint);
         queuedDeliveries.remove(endpoint);
 
-        // 1. Get the key of the endpoint we need to handoff
-        // 2. For each column read the list of rows: subcolumns are KS + SEPARATOR + CF
-        // 3. Delete the subcolumn if the write was successful
+        if (!Gossiper.instance.isKnownEndpoint(endpoint))
+        {
+            logger_.warn("Hints found for endpoint " + endpoint + " which is not part of the gossip network.  discarding.");
+            deleteHintsForEndPoint(endpoint);
+            return;
+        }
+
+        // 1. Page through the hints of the endpoint we need to hand off to
+        // 2. Send each hinted mutation, up to MAX_HINTS_IN_FLIGHT at a time
+        // 3. Delete each hint as its write is acknowledged
         // 4. Force a flush
         // 5. Do major compaction to clean up all deletes etc.
-        DecoratedKey epkey =  StorageService.getPartitioner().decorateKey(ByteBuffer.wrap(endpoint.getHostAddress().getBytes(UTF_8)));
+        ByteBuffer endpointKey = ByteBuffer.wrap(endpoint.getHostAddress().getBytes(UTF_8));
+        DecoratedKey epkey =  StorageService.getPartitioner().decorateKey(endpointKey);
         int rowsReplayed = 0;
         ColumnFamilyStore hintStore = Table.open(Table.SYSTEM_TABLE).getColumnFamilyStore(HINTS_CF);
         ByteBuffer startColumn = FBUtilities.EMPTY_BYTE_BUFFER;
+        // hints sent but not yet acknowledged, oldest first
+        Deque<Pair<IWriteResponseHandler, ByteBuffer>> inFlight = new ArrayDeque<Pair<IWriteResponseHandler, ByteBuffer>>();
+        Throttle throttle = new Throttle("hinted handoff to " + endpoint, new Throttle.ThroughputFunction()
+        {
+            public int targetThroughput()
+            {
+                return DatabaseDescriptor.getHintedHandoffThrottleInKB() * 1024 / 1000;
+            }
+        });
+        long bytesSent = 0;
         delivery:
             while (true)
             {
-                QueryFilter filter = QueryFilter.getSliceFilter(epkey, new QueryPath(HINTS_CF), startColumn, FBUtilities.EMPTY_BYTE_BUFFER, false, PAGE_SIZE);
+                if (!FailureDetector.instance.isAlive(endpoint))
+                {
+                    logger_.info("Could not complete hinted handoff to " + endpoint);
+                    break;
+                }
+
+                QueryFilter filter = QueryFilter.getSliceFilter(epkey, new QueryPath(HINTS_CF), startColumn, FBUtilities.EMPTY_BYTE_BUFFER, false, HINTS_PAGE_SIZE);
                 ColumnFamily hintColumnFamily = ColumnFamilyStore.removeDeleted(hintStore.getColumnFamily(filter), Integer.MAX_VALUE);
                 if (pagingFinished(hintColumnFamily, startColumn))
                     break;
-                Collection<IColumn> keyColumns = hintColumnFamily.getSortedColumns();
-                for (IColumn keyColumn : keyColumns)
+                for (IColumn hint : hintColumnFamily.getSortedColumns())
                 {
-                    startColumn = keyColumn.name();
-                    Collection<IColumn> tableCFs = keyColumn.getSubColumns();
-                    for (IColumn tableCF : tableCFs)
+                    // the start of each page was sent with the previous one
+                    if (hint.name().equals(startColumn))
+                        continue;
+                    startColumn = hint.name();
+
+                    IColumn mutationColumn = hint.getSubColumn(HINT_MUTATION);
+                    if (mutationColumn == null)
                     {
-                        String[] parts = getTableAndCFNames(tableCF.name());
-                        if (sendMessage(endpoint, parts[0], parts[1], keyColumn.name()))
+                        if (!deliverLegacyHint(endpoint, endpointKey, hint))
                         {
-                            deleteHintKey(ByteBuffer.wrap(endpoint.getHostAddress().getBytes(UTF_8)), keyColumn.name(), tableCF.name(), tableCF.timestamp());
-                            rowsReplayed++;
+                            logger_.info("Could not complete hinted handoff to " + endpoint);
+                            break delivery;
                         }
-                        else
+                        rowsReplayed++;
+                        continue;
+                    }
+
+                    byte[] mutationBytes = ByteBufferUtil.getArray(mutationColumn.value());
+                    RowMutation rm;
+                    try
+                    {
+                        rm = RowMutation.fromBytes(mutationBytes);
+                    }
+                    catch (UnserializableColumnFamilyException e)
+                    {
+                        rm = null;
+                    }
+                    // the keyspace or column family was dropped (or renamed) since the hint was written
+                    if (rm == null || DatabaseDescriptor.getTableDefinition(rm.getTable()) == null)
+                    {
+                        logger_.debug("Discarding hint for a column family that no longer exists");
+                        deleteHint(endpointKey, hint.name());
+                        continue;
+                    }
+
+                    IWriteResponseHandler responseHandler = WriteResponseHandler.create(endpoint);
+                    MessagingService.instance.sendRR(rm.makeRowMutationMessage(), Arrays.asList(endpoint), responseHandler);
+                    inFlight.add(new Pair<IWriteResponseHandler, ByteBuffer>(responseHandler, hint.name()));
+                    bytesSent += mutationBytes.length;
+                    throttle.throttle(bytesSent);
+
+                    if (inFlight.size() >= MAX_HINTS_IN_FLIGHT)
+                    {
+                        if (!awaitOldestHint(endpointKey, inFlight))
                         {
                             logger_.info("Could not complete hinted handoff to " + endpoint);
                             break delivery;
                         }
-
-                        startColumn = keyColumn.name();
+                        rowsReplayed++;
                     }
                 }
             }
 
+        // the hints still in flight may have been acknowledged even if delivery stopped early
+        while (!inFlight.isEmpty())
+        {
+            if (awaitOldestHint(endpointKey, inFlight))
+                rowsReplayed++;
+        }
+
         if (rowsReplayed > 0)
         {
             hintStore.forceFlush();
@@ -0,0 +1,263 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.cassandra.db;
+
+import java.util.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.io.sstable.SSTable;
+import org.apache.cassandra.io.sstable.SSTableReader;
+
+/**
+ * Arranges sstables of a fixed size (sstable_size_in_mb, default 5) in levels.  Flushed sstables
+ * go to level 0; every other level is made of sstables whose key ranges don't overlap, so that a
+ * read needs to look at no more than one sstable per level, and level N holds up to
+ * 10^N * sstable_size_in_mb of data.
+ *
+ * When level 0 reaches min_compaction_threshold sstables, they are compacted together with the
+ * level 1 sstables they overlap.  When another level grows past its size, one of its sstables is
+ * compacted with the sstables of the next level it overlaps, moving round-robin through the key
+ * space.  Either way, the output replaces the overlapped sstables in the next level.
+ *
+ * The level of each sstable is kept in its metadata, so there is no other state to persist.
+ *
+ * Compactions of a leveled column family run one at a time: candidates are chosen from the whole
+ * of the next level, which a concurrent compaction could be rewriting.
+ */
+public class LeveledCompactionStrategy extends AbstractCompactionStrategy
+{
+    private static final Logger logger = LoggerFactory.getLogger(LeveledCompactionStrategy.class);
+
+    public static final String SSTABLE_SIZE_OPTION = "sstable_size_in_mb";
+    public static final int DEFAULT_SSTABLE_SIZE_IN_MB = 5;
+    // each level holds this many times more data than the one below it
+    static final int LEVEL_FANOUT = 10;
+
+    private static final Comparator<SSTableReader> firstKeyComparator = new Comparator<SSTableReader>()
+    {
+        public int compare(SSTableReader o1, SSTableReader o2)
+        {
+            return o1.getFirst().compareTo(o2.getFirst());
+        }
+    };
+
+    private final long maxSSTableSize;
+    // the last key compacted from each level, so successive compactions of a level move through the whole key space
+    private final Map<Integer, DecoratedKey> lastCompactedKeys = new HashMap<Integer, DecoratedKey>();
+
+    public LeveledCompactionStrategy(ColumnFamilyStore cfs, Map<String, String> options)
+    {
+        super(cfs, options);
+        int sizeInMB = DEFAULT_SSTABLE_SIZE_IN_MB;
+        if (options != null && options.containsKey(SSTABLE_SIZE_OPTION))
+            sizeInMB = Integer.parseInt(options.get(SSTABLE_SIZE_OPTION));
+        if (sizeInMB <= 0)
+            throw new IllegalArgumentException(SSTABLE_SIZE_OPTION + " must be positive, not " + sizeInMB);
+        maxSSTableSize = sizeInMB * 1024L * 1024L;
+    }
+
+    @Override
+    public long getMaxSSTableSize()
+    {
+        return maxSSTableSize;
+    }
+
+    /**
+     * Leaving out part of the candidates would let the output overlap the sstables that were left out.
+     */
+    @Override
+    public boolean isPartialCompactionAllowed()
+    {
+        return false;
+    }
+
+    long getMaxBytesForLevel(int level)
+    {
+        assert level > 0;
+        return (long) Math.pow(LEVEL_FANOUT, level) * maxSSTableSize;
+    }
+
+    public List<SSTableReader> getBackgroundCandidates()
+    {
+        if (cfs.isCompacting())
+            return Collections.emptyList();
+
+        List<List<SSTableReader>> levels = getLevels();
+
+        // compact the level that is the furthest past its limit
+        int bestLevel = -1;
+        double bestScore = 0;
+        for (int level = 0; level < levels.size(); level++)
+        {
+            double score = getScore(level, levels.get(level));
+            if (logger.isDebugEnabled())
+                logger.debug("Compaction score for level {} of {}: {}", new Object[]{ level, cfs.columnFamily, score });
+            if (score >= 1 && score > bestScore && (level == 0 || score > 1))
+            {
+                bestLevel = level;
+                bestScore = score;
+            }
+        }
+        if (bestLevel < 0)
+            return Collections.emptyList();
+        return getCandidatesFor(bestLevel, levels);
+    }
+
+    private double getScore(int level, List<SSTableReader> sstables)
+    {
+        if (level == 0)
+            return (double) sstables.size() / cfs.getMinimumCompactionThreshold();
+        return (double) SSTable.getTotalBytes(sstables) / getMaxBytesForLevel(level);
+    }
+
+    private List<SSTableReader> getCandidatesFor(int level, List<List<SSTableReader>> levels)
+    {
+        List<SSTableReader> candidates = new ArrayList<SSTableReader>();
+        List<SSTableReader> sstables = levels.get(level);
+        if (level == 0)
+        {
+            // oldest first, as many as a compaction may take
+            candidates.addAll(sstables.subList(0, Math.min(sstables.size(), cfs.getMaximumCompactionThreshold())));
+        }
+        else
+        {
+            // the first sstable past where we left off last time, wrapping around to the start of the level
+            DecoratedKey lastCompactedKey = lastCompactedKeys.get(level);
+            SSTableReader next = sstables.get(0);
+            if (lastCompactedKey != null)
+            {
+                for (SSTableReader sstable : sstables)
+                {
+                    if (sstable.getFirst().compareTo(lastCompactedKey) > 0)
+                    {
+                        next = sstable;
+                        break;
+                    }
+                }
+            }
+            lastCompactedKeys.put(level, next.getLast());
+            candidates.add(next);
+        }
+
+        // the output will cover everything from the smallest to the largest candidate key, so it replaces
+        // whatever the next level has in that range
+        if (level + 1 < levels.size())
+        {
+            DecoratedKey start = candidates.get(0).getFirst();
+            DecoratedKey end = candidates.get(0).getLast();
+            for (SSTableReader sstable : candidates)
+            {
+                if (sstable.getFirst().compareTo(start) < 0)
+                    start = sstable.getFirst();
+                if (sstable.getLast().compareTo(end) > 0)
+                    end = sstable.getLast();
+            }
+            candidates.addAll(getOverlapping(start, end, levels.get(level + 1)));
+        }
+        return candidates;
+    }
+
+    static List<SSTableReader> getOverlapping(DecoratedKey start, DecoratedKey end, Collection<SSTableReader> sstables)
+    {
+        List<SSTableReader> overlapping = new ArrayList<SSTableReader>();
+        for (SSTableReader sstable : sstables)
+        {
+            if (sstable.getFirst().compareTo(end) <= 0 && sstable.getLast().compareTo(start) >= 0)
+                overlapping.add(sstable);
+        }
+        return overlapping;
+    }
+
+    @Override
+    public int getLevelForOutput(Collection<SSTableReader> sstables)
+    {
+        if (sstables.isEmpty())
+            return 0;
+
+        if (cfs.isCompleteSSTables(sstables))
+        {
+            // everything is being compacted together: use the lowest level that can hold the result
+            long bytes = SSTable.getTotalBytes(sstables);
+            int level = 1;
+            while (bytes > getMaxBytesForLevel(level))
+                level++;
+            return level;
+        }
+
+        // a level's candidates, plus what they overlap in the next level if anything, go to the next level
+        int minLevel = Integer.MAX_VALUE;
+        int maxLevel = 0;
+        for (SSTableReader sstable : sstables)
+        {
+            minLevel = Math.min(minLevel, sstable.getSSTableLevel());
+            maxLevel = Math.max(maxLevel, sstable.getSSTableLevel());
+        }
+        return minLevel == maxLevel ? maxLevel + 1 : maxLevel;
+    }
+
+    public int getEstimatedRemainingTasks()
+    {
+        List<List<SSTableReader>> levels = getLevels();
+        int n = 0;
+        int level0 = levels.get(0).size();
+        if (level0 >= cfs.getMinimumCompactionThreshold())
+            n += Math.ceil((double) level0 / cfs.getMaximumCompactionThreshold());
+        for (int level = 1; level < levels.size(); level++)
+        {
+            long excess = SSTable.getTotalBytes(levels.get(level)) - getMaxBytesForLevel(level);
+            if (excess > 0)
+                n += Math.ceil((double) excess / maxSSTableSize);
+        }
+        return n;
+    }
+
+    @Override
+    public int[] getSSTableCountPerLevel()
+    {
+        List<List<SSTableReader>> levels = getLevels();
+        int[] counts = new int[levels.size()];
+        for (int level = 0; level < levels.size(); level++)
+            counts[level] = levels.get(level).size();
+        return counts;
+    }
+
+    /**
+     * @return the live sstables, grouped by level: level 0 ordered oldest first, the others by first key
+     */
+    private List<List<SSTableReader>> getLevels()
+    {
+        List<List<SSTableReader>> levels = new ArrayList<List<SSTableReader>>();
+        levels.add(new ArrayList<SSTableReader>());
+        for (SSTableReader sstable : cfs.getSSTables())
+        {
+            int level = sstable.getSSTableLevel();
+            while (levels.size() <= level)
+                levels.add(new ArrayList<SSTableReader>());
+            levels.get(level).add(sstable);
+        }
+
+        Collections.sort(levels.get(0));
+        for (int level = 1; level < levels.size(); level++)
+            Collections.sort(levels.get(level), firstKeyComparator);
+        return levels;
+    }
+}
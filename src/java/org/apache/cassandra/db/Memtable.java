@@ -30,6 +30,7 @@ import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
@@ -44,6 +45,8 @@ import org.apache.cassandra.db.filter.SliceQueryFilter;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.sstable.SSTableWriter;
+import org.apache.cassandra.utils.Allocator;
+import org.apache.cassandra.utils.HeapAllocator;
 import org.apache.cassandra.utils.WrappedRunnable;
 
 public class Memtable implements Comparable<Memtable>, IFlushable
@@ -54,10 +57,20 @@ public class Memtable implements Comparable<Memtable>, IFlushable
 
     private final AtomicInteger currentThroughput = new AtomicInteger(0);
     private final AtomicInteger currentOperations = new AtomicInteger(0);
+    // estimate of the heap used by the memtable, which is several times its serialized size
+    private final AtomicLong liveSize = new AtomicLong(0);
+
+    // rough heap overheads, beyond the bytes of names and values: a row costs its skip list node, decorated key,
+    // token and ColumnFamily; a column its skip list node, Column object and name and value buffers.
+    private static final int ROW_OVERHEAD = 400;
+    private static final int SUPER_COLUMN_OVERHEAD = 250;
+    private static final int COLUMN_OVERHEAD = 200;
 
     private final long creationTime;
     private final ConcurrentNavigableMap<DecoratedKey, ColumnFamily> columnFamilies = new ConcurrentSkipListMap<DecoratedKey, ColumnFamily>();
     public final ColumnFamilyStore cfs;
+    // copies of column names and values are carved out of this; it goes away along with the memtable
+    private final Allocator allocator;
 
     private final int THRESHOLD;
     private final int THRESHOLD_COUNT;
@@ -69,6 +82,21 @@ public class Memtable implements Comparable<Memtable>, IFlushable
         creationTime = System.currentTimeMillis();
         this.THRESHOLD = cfs.getMemtableThroughputInMB() * 1024 * 1024;
         this.THRESHOLD_COUNT = (int) (cfs.getMemtableOperationsInMillions() * 1024 * 1024);
+        this.allocator = newAllocator(cfs.metadata.getMemtableAllocator());
+    }
+
+    private static Allocator newAllocator(Class<? extends Allocator> allocatorClass)
+    {
+        if (allocatorClass == HeapAllocator.class)
+            return HeapAllocator.instance;
+        try
+        {
+            return allocatorClass.newInstance();
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException("Unable to create memtable allocator " + allocatorClass.getName(), e);
+        }
     }
 
     /**
@@ -98,6 +126,15 @@ public class Memtable implements Comparable<Memtable>, IFlushable
         return currentOperations.get();
     }
 
+    /**
+     * @return the estimated heap size of the memtable.  Overwritten columns are not subtracted,
+     * so this errs on the high side.
+     */
+    public long getLiveSize()
+    {
+        return liveSize.get();
+    }
+
     boolean isThresholdViolated()
     {
         return currentThroughput.get() >= this.THRESHOLD || currentOperations.get() >= this.THRESHOLD_COUNT;
@@ -128,12 +165,53 @@ public class Memtable implements Comparable<Memtable>, IFlushable
     {
         currentThroughput.addAndGet(cf.size());
         currentOperations.addAndGet(cf.getColumnCount());
+        liveSize.addAndGet(estimateLiveSize(cf));
 
-        ColumnFamily oldCf = columnFamilies.putIfAbsent(key, cf);
-        if (oldCf == null)
+        if (allocator == HeapAllocator.instance)
+        {
+            // the columns of a deserialized mutation already have buffers of their own; keep them as they are
+            ColumnFamily oldCf = columnFamilies.putIfAbsent(key, cf);
+            if (oldCf == null)
+            {
+                liveSize.addAndGet(ROW_OVERHEAD + key.key.remaining());
+                return;
+            }
+
+            oldCf.resolve(cf);
             return;
+        }
+
+        ColumnFamily previous = columnFamilies.get(key);
+        if (previous == null)
+        {
+            ColumnFamily empty = cf.cloneMeShallow();
+            previous = columnFamilies.putIfAbsent(new DecoratedKey(key.token, allocator.clone(key.key)), empty);
+            if (previous == null)
+            {
+                liveSize.addAndGet(ROW_OVERHEAD + key.key.remaining());
+                previous = empty;
+            }
+        }
+        previous.addAll(cf, allocator);
+    }
 
-        oldCf.resolve(cf);
+    static long estimateLiveSize(ColumnFamily cf)
+    {
+        long size = 0;
+        for (IColumn column : cf.getSortedColumns())
+        {
+            if (cf.isSuper())
+            {
+                size += SUPER_COLUMN_OVERHEAD + column.name().remaining();
+                for (IColumn subColumn : column.getSubColumns())
+                    size += COLUMN_OVERHEAD + subColumn.name().remaining() + subColumn.value().remaining();
+            }
+            else
+            {
+                size += COLUMN_OVERHEAD + column.name().remaining() + column.value().remaining();
+            }
+        }
+        return size;
     }
 
     // for debugging
@@ -190,8 +268,8 @@ public class Memtable implements Comparable<Memtable>, IFlushable
 
     public String toString()
     {
-        return String.format("Memtable-%s@%s(%s bytes, %s operations)",
-                             cfs.getColumnFamilyName(), hashCode(), currentThroughput, currentOperations);
+        return String.format("Memtable-%s@%s(%s bytes, %s operations, %s estimated live bytes)",
+                             cfs.getColumnFamilyName(), hashCode(), currentThroughput, currentOperations, liveSize);
     }
 
     /**
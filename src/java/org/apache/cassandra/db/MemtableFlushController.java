@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.service.StorageService;
+
+/**
+ * Keeps the memtables of all the column families on the node within memtable_total_space_in_mb,
+ * which the per-CF thresholds cannot guarantee in aggregate: once the estimated heap size of the
+ * live memtables and of those being flushed crosses it, the largest live memtables are flushed.
+ * Secondary index memtables count towards the size of their parent, with which they are flushed.
+ */
+public class MemtableFlushController implements MemtableFlushControllerMBean, Runnable
+{
+    private static final Logger logger = LoggerFactory.getLogger(MemtableFlushController.class);
+    public static final String MBEAN_OBJECT_NAME = "org.apache.cassandra.db:type=MemtableFlushController";
+    public static final MemtableFlushController instance = new MemtableFlushController();
+
+    final static long INTERVAL_IN_MS = 1000;
+
+    private MemtableFlushController()
+    {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            mbs.registerMBean(this, new ObjectName(MBEAN_OBJECT_NAME));
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void start()
+    {
+        StorageService.scheduledTasks.scheduleWithFixedDelay(this, INTERVAL_IN_MS, INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void run()
+    {
+        long allowed = DatabaseDescriptor.getMemtableTotalSpaceInMB() * 1024L * 1024L;
+        long flushing = getTotalPendingFlushSize();
+        long live = 0;
+        final List<ColumnFamilyStore> stores = new ArrayList<ColumnFamilyStore>();
+        for (ColumnFamilyStore cfs : ColumnFamilyStore.all())
+        {
+            stores.add(cfs);
+            live += cfs.getTotalMemtableLiveSize();
+        }
+        if (live + flushing <= allowed)
+            return;
+
+        logger.info(String.format("Memtables use an estimated %d live and %d flushing bytes, over the %d allowed; flushing the largest",
+                                  live, flushing, allowed));
+        // sizes keep changing under us, so sort on a snapshot of them
+        final long[] sizes = new long[stores.size()];
+        List<Integer> order = new ArrayList<Integer>(stores.size());
+        for (int i = 0; i < sizes.length; i++)
+        {
+            sizes[i] = stores.get(i).getTotalMemtableLiveSize();
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>()
+        {
+            public int compare(Integer i, Integer j)
+            {
+                return Long.signum(sizes[j] - sizes[i]);
+            }
+        });
+
+        for (int i : order)
+        {
+            if (live + flushing <= allowed || sizes[i] == 0)
+                break;
+            ColumnFamilyStore cfs = stores.get(i);
+            // a CF whose last flush is still being written would only queue a smaller one behind it
+            if (!cfs.getMemtablesPendingFlush().isEmpty())
+                continue;
+            logger.info("Flushing " + cfs.getColumnFamilyName() + " (estimated " + sizes[i] + " bytes) to relieve memtable space");
+            cfs.forceFlush();
+            live -= sizes[i];
+        }
+    }
+
+    public long getTotalMemtableLiveSize()
+    {
+        long size = 0;
+        for (ColumnFamilyStore cfs : ColumnFamilyStore.all())
+            size += cfs.getTotalMemtableLiveSize();
+        return size;
+    }
+
+    public long getTotalPendingFlushSize()
+    {
+        long size = 0;
+        for (ColumnFamilyStore cfs : ColumnFamilyStore.all())
+            size += cfs.getTotalPendingFlushSize();
+        return size;
+    }
+
+    public int getMemtableTotalSpaceInMB()
+    {
+        return DatabaseDescriptor.getMemtableTotalSpaceInMB();
+    }
+
+    public void setMemtableTotalSpaceInMB(int value)
+    {
+        if (value <= 0)
+            throw new IllegalArgumentException("memtable_total_space_in_mb must be positive");
+        DatabaseDescriptor.setMemtableTotalSpaceInMB(value);
+    }
+}
@@ -3,13 +3,22 @@ package org.apache.cassandra.db;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 
+import org.apache.cassandra.concurrent.Stage;
+import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.db.marshal.AbstractCommutativeType;
 import org.apache.cassandra.db.marshal.AbstractType;
@@ -17,64 +26,167 @@ import org.apache.cassandra.net.Message;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.Pair;
 
+/**
+ * Reads the current value of the replicate_on_write columns of a row that was just written to, and sends it to
+ * the other live replicas.  Updates to a row are coalesced while its task waits to run, for at most
+ * replicate_on_write_coalescing_window_in_ms plus the time spent in the REPLICATE_ON_WRITE stage queue,
+ * so that a hot row is read and replicated once for all of them instead of once each.
+ */
 public class ReplicateOnWriteTask implements Runnable
 {
-    private RowMutation mutation;
     private static Logger logger = Logger.getLogger(ReplicateOnWriteTask.class);
 
-    public ReplicateOnWriteTask(RowMutation mutation)
+    // the task of each row that has updates waiting to be replicated
+    private static final ConcurrentMap<Pair<String, ByteBuffer>, ReplicateOnWriteTask> pending
+        = new ConcurrentHashMap<Pair<String, ByteBuffer>, ReplicateOnWriteTask>();
+    private static final AtomicLong updates = new AtomicLong();
+    private static final AtomicLong replications = new AtomicLong();
+
+    private final String table;
+    private final ByteBuffer key;
+    // names of the columns to read, by CF and super column (null for standard CFs)
+    private final Map<Pair<String, ByteBuffer>, Set<ByteBuffer>> columnNames = new HashMap<Pair<String, ByteBuffer>, Set<ByteBuffer>>();
+    private boolean started;
+
+    private ReplicateOnWriteTask(String table, ByteBuffer key)
     {
-        this.mutation = mutation;
+        this.table = table;
+        this.key = key;
     }
 
-    public void run()
+    /**
+     * Replicates the replicate_on_write columns of a mutation that has been applied locally, along with
+     * any other updates to the same row still waiting to be.
+     */
+    public static void replicate(RowMutation mutation)
     {
-        // construct SliceByNamesReadCommand for CFs to repair
-        List<ReadCommand> readCommands = new LinkedList<ReadCommand>();
+        Pair<String, ByteBuffer> row = new Pair<String, ByteBuffer>(mutation.getTable(), mutation.key());
+        while (true)
+        {
+            ReplicateOnWriteTask task = pending.get(row);
+            if (task == null)
+            {
+                task = new ReplicateOnWriteTask(mutation.getTable(), mutation.key());
+                if (!task.add(mutation))
+                    return; // nothing to replicate
+                if (pending.putIfAbsent(row, task) == null)
+                {
+                    updates.incrementAndGet();
+                    task.schedule();
+                    return;
+                }
+                continue;
+            }
+            if (task.add(mutation))
+            {
+                updates.incrementAndGet();
+                return;
+            }
+            // that task has already read the row; if it is still registered, it is about to unregister itself
+            pending.remove(row, task);
+        }
+    }
+
+    /** @return the number of rows with updates waiting to be replicated */
+    public static int getPendingRows()
+    {
+        return pending.size();
+    }
+
+    /** @return the number of updates submitted for replication */
+    public static long getUpdates()
+    {
+        return updates.get();
+    }
+
+    /** @return the number of reads and replications done for them */
+    public static long getReplications()
+    {
+        return replications.get();
+    }
+
+    private void schedule()
+    {
+        final Runnable submit = new Runnable()
+        {
+            public void run()
+            {
+                StageManager.getStage(Stage.REPLICATE_ON_WRITE).execute(ReplicateOnWriteTask.this);
+            }
+        };
+        long window = DatabaseDescriptor.getReplicateOnWriteCoalescingWindowInMS();
+        if (window > 0)
+            StorageService.scheduledTasks.schedule(submit, window, TimeUnit.MILLISECONDS);
+        else
+            submit.run();
+    }
+
+    /**
+     * Merges the replicate_on_write column names of mutation into those this task will read.
+     * @return false if the task has already started, or if there is nothing to replicate in mutation
+     */
+    private synchronized boolean add(RowMutation mutation)
+    {
+        if (started)
+            return false;
+
+        boolean added = false;
         for (ColumnFamily columnFamily : mutation.getColumnFamilies())
         {
             // filter out non-repair CFs
             if (!columnFamily.metadata().getReplicateOnWrite())
                 continue;
 
-            // CF type: regular
+            String cfName = columnFamily.metadata().cfName;
             if (!columnFamily.isSuper())
             {
-                QueryPath queryPath = new QueryPath(columnFamily.metadata().cfName);
-                ReadCommand readCommand = new SliceByNamesReadCommand(
-                    mutation.getTable(),
-                    mutation.key(),
-                    queryPath,
-                    columnFamily.getColumnNames()
-                    );
-
-                readCommands.add(readCommand);
+                namesFor(cfName, null).addAll(columnFamily.getColumnNames());
+                added = true;
                 continue;
             }
 
-            // CF type: super
             for (IColumn superColumn : columnFamily.getSortedColumns())
             {
-                QueryPath queryPath = new QueryPath(columnFamily.metadata().cfName, superColumn.name());
-
-                // construct set of sub-column names
-                Collection<IColumn> subColumns = superColumn.getSubColumns();
-                Collection<ByteBuffer> subColNames = new HashSet<ByteBuffer>(subColumns.size());
-                for (IColumn subCol : subColumns)
-                {
+                Set<ByteBuffer> subColNames = namesFor(cfName, superColumn.name());
+                for (IColumn subCol : superColumn.getSubColumns())
                     subColNames.add(subCol.name());
-                }
-
-                ReadCommand readCommand = new SliceByNamesReadCommand(
-                    mutation.getTable(),
-                    mutation.key(),
-                    queryPath,
-                    subColNames
-                    );
-                readCommands.add(readCommand);
+                added = true;
             }
         }
+        return added;
+    }
+
+    private Set<ByteBuffer> namesFor(String cfName, ByteBuffer superColumnName)
+    {
+        Pair<String, ByteBuffer> path = new Pair<String, ByteBuffer>(cfName, superColumnName);
+        Set<ByteBuffer> names = columnNames.get(path);
+        if (names == null)
+        {
+            names = new HashSet<ByteBuffer>();
+            columnNames.put(path, names);
+        }
+        return names;
+    }
+
+    public void run()
+    {
+        // updates arriving from now on may not be seen by our read, so they need a task of their own
+        synchronized (this)
+        {
+            started = true;
+        }
+        pending.remove(new Pair<String, ByteBuffer>(table, key), this);
+        replications.incrementAndGet();
+
+        // construct SliceByNamesReadCommand for CFs to repair
+        List<ReadCommand> readCommands = new LinkedList<ReadCommand>();
+        for (Map.Entry<Pair<String, ByteBuffer>, Set<ByteBuffer>> entry : columnNames.entrySet())
+        {
+            QueryPath queryPath = new QueryPath(entry.getKey().left, entry.getKey().right);
+            readCommands.add(new SliceByNamesReadCommand(table, key, queryPath, entry.getValue()));
+        }
 
         if (0 == readCommands.size())
             return;
@@ -83,17 +195,22 @@ public class ReplicateOnWriteTask implements Runnable
         {
             // send repair to non-local replicas
             List<InetAddress> foreignReplicas = StorageService.instance.getLiveNaturalEndpoints(
-                mutation.getTable(),
-                mutation.key()
+                table,
+                key
                 );
             foreignReplicas.remove(FBUtilities.getLocalAddress()); // remove local replica
+            if (foreignReplicas.isEmpty())
+                return;
 
             // create a repair RowMutation
-            RowMutation repairRowMutation = new RowMutation(mutation.getTable(), mutation.key());
+            RowMutation repairRowMutation = new RowMutation(table, key);
             for (ReadCommand readCommand : readCommands)
             {
                 Table table = Table.open(readCommand.table);
                 Row row = readCommand.getRow(table);
+                // the row may have been removed since it was written
+                if (row.cf == null)
+                    continue;
                 AbstractType defaultValidator = row.cf.metadata().getDefaultValidator();
                 if (defaultValidator.isCommutative())
                 {
@@ -111,6 +228,8 @@ public class ReplicateOnWriteTask implements Runnable
                 }
                 repairRowMutation.add(row.cf);
             }
+            if (repairRowMutation.isEmpty())
+                return;
 
             // send repair to non-local replicas
             for (InetAddress foreignReplica : foreignReplicas)
@@ -20,28 +20,24 @@ package org.apache.cassandra.db;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Iterator;
-import java.util.List;
 
 import org.apache.cassandra.db.columniterator.IColumnIterator;
-import org.apache.cassandra.utils.ReducingIterator;
+import org.apache.cassandra.utils.MergeIterator;
 
 /**
  * Row iterator that allows us to close the underlying iterators.
  */
 public class RowIterator implements Closeable, Iterator<Row>
 {
-    private ReducingIterator<IColumnIterator, Row> reduced;
-    private List<Iterator<IColumnIterator>> iterators;
+    private final MergeIterator<IColumnIterator, Row> reduced;
 
     /**
-     * @param reduced   Reducing iterator that takes multiple iterators and provides us with
-     *                  one row at the time.
-     * @param iterators The underlying iterators that we will close when done.
+     * @param reduced   Merging iterator that takes multiple iterators and provides us with
+     *                  one row at the time, and closes them when done.
      */
-    public RowIterator(ReducingIterator<IColumnIterator, Row> reduced, List<Iterator<IColumnIterator>> iterators)
+    public RowIterator(MergeIterator<IColumnIterator, Row> reduced)
     {
         this.reduced = reduced;
-        this.iterators = iterators;
     }
 
     public boolean hasNext()
@@ -61,12 +57,6 @@ public class RowIterator implements Closeable, Iterator<Row>
 
     public void close() throws IOException
     {
-        for (Iterator iter : iterators)
-        {
-            if (iter instanceof Closeable)
-            {
-                ((Closeable)iter).close();
-            }
-        }
-	}
+        reduced.close();
+    }
 }
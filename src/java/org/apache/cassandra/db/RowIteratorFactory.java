@@ -26,14 +26,13 @@ import java.util.Map.Entry;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterators;
-import org.apache.commons.collections.IteratorUtils;
 
 import org.apache.cassandra.db.columniterator.IColumnIterator;
 import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.sstable.SSTableScanner;
-import org.apache.cassandra.utils.ReducingIterator;
+import org.apache.cassandra.utils.MergeIterator;
 
 public class RowIteratorFactory
 {
@@ -98,11 +97,10 @@ public class RowIteratorFactory
             iterators.add(scanner);
         }
 
-        Iterator<IColumnIterator> collated = IteratorUtils.collatedIterator(COMPARE_BY_KEY, iterators);
         final Memtable firstMemtable = memtables.iterator().next();
 
         // reduce rows from all sources into a single row
-        ReducingIterator<IColumnIterator, Row> reduced = new ReducingIterator<IColumnIterator, Row>(collated)
+        MergeIterator.Reducer<IColumnIterator, Row> reducer = new MergeIterator.Reducer<IColumnIterator, Row>()
         {
             private final int gcBefore = (int) (System.currentTimeMillis() / 1000) - cfs.metadata.getGcGraceSeconds();
             private final List<IColumnIterator> colIters = new ArrayList<IColumnIterator>();
@@ -114,17 +112,8 @@ public class RowIteratorFactory
                 this.key = current.getKey();
             }
 
-            @Override
-            protected boolean isEqual(IColumnIterator o1, IColumnIterator o2)
-            {
-                return COMPARE_BY_KEY.compare(o1, o2) == 0;
-            }
-
             protected Row getReduced()
             {
-                Comparator<IColumn> colComparator = filter.filter.getColumnComparator(comparator);
-                Iterator<IColumn> colCollated = IteratorUtils.collatedIterator(colComparator, colIters);
-
                 ColumnFamily returnCF;
                 // First check if this row is in the rowCache. If it is we can skip the rest
                 ColumnFamily cached = cfs.getRawCachedRow(key);
@@ -133,7 +122,7 @@ public class RowIteratorFactory
                     QueryFilter keyFilter = new QueryFilter(key, filter.path, filter.filter);
                     returnCF = cfs.filterColumnFamily(cached, keyFilter, gcBefore);
                 }
-                else if (colCollated.hasNext())
+                else if (hasColumns(colIters))
                 {
                     returnCF = firstMemtable.getColumnFamily(key);
                     // TODO this is a little subtle: the Memtable ColumnIterator has to be a shallow clone of the source CF,
@@ -156,7 +145,7 @@ public class RowIteratorFactory
                         }
                     }
                     returnCF.markedForDeleteAt.set(lastDeletedAt);
-                    filter.collectCollatedColumns(returnCF, colCollated, gcBefore);
+                    filter.collateColumns(returnCF, colIters, comparator, gcBefore);
                 }
                 else
                 {
@@ -170,7 +159,17 @@ public class RowIteratorFactory
             }
         };
 
-        return new RowIterator(reduced, iterators);
+        return new RowIterator(MergeIterator.get(iterators, COMPARE_BY_KEY, reducer));
+    }
+
+    private static boolean hasColumns(List<IColumnIterator> iterators)
+    {
+        for (IColumnIterator iterator : iterators)
+        {
+            if (iterator.hasNext())
+                return true;
+        }
+        return false;
     }
 
     /** 
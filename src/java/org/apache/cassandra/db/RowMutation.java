@@ -39,6 +39,7 @@ import org.apache.cassandra.thrift.Deletion;
 import org.apache.cassandra.thrift.Mutation;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.UUIDGen;
 
 public class RowMutation
 {
@@ -98,14 +99,23 @@ public class RowMutation
         return modifications_.values();
     }
 
+    /**
+     * Adds a hint holding all of rm to this mutation of the target's hints row.  The hint expires
+     * after the shortest gc_grace_seconds of the CFs rm touches, since delivering it any later
+     * could resurrect data whose tombstones have been collected.
+     */
     void addHints(RowMutation rm) throws IOException
     {
+        int ttl = Integer.MAX_VALUE;
         for (ColumnFamily cf : rm.getColumnFamilies())
-        {
-            ByteBuffer combined = HintedHandOffManager.makeCombinedName(rm.getTable(), cf.metadata().cfName);
-            QueryPath path = new QueryPath(HintedHandOffManager.HINTS_CF, rm.key(), combined);
-            add(path, FBUtilities.EMPTY_BYTE_BUFFER, System.currentTimeMillis(), cf.metadata().getGcGraceSeconds());
-        }
+            ttl = Math.min(ttl, cf.metadata().getGcGraceSeconds());
+        // a hint that may not outlive its tombstones may not be stored at all
+        if (ttl == 0)
+            return;
+
+        ByteBuffer hintId = ByteBuffer.wrap(UUIDGen.decompose(UUIDGen.makeType1UUIDFromHost(FBUtilities.getLocalAddress())));
+        QueryPath path = new QueryPath(HintedHandOffManager.HINTS_CF, hintId, HintedHandOffManager.HINT_MUTATION);
+        add(path, ByteBuffer.wrap(rm.getSerializedBuffer()), System.currentTimeMillis(), ttl);
     }
 
     /*
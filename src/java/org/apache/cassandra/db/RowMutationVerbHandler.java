@@ -29,8 +29,6 @@ import com.google.common.base.Charsets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.concurrent.Stage;
-import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.net.IVerbHandler;
 import org.apache.cassandra.net.Message;
 import org.apache.cassandra.net.MessagingService;
@@ -63,7 +61,8 @@ public class RowMutationVerbHandler implements IVerbHandler
                         logger_.debug("Adding hint for " + InetAddress.getByName(ByteBufferUtil.string(addressBytes, Charsets.UTF_8)));
                     RowMutation hintedMutation = new RowMutation(Table.SYSTEM_TABLE, addressBytes);
                     hintedMutation.addHints(rm);
-                    hintedMutation.apply();
+                    if (!hintedMutation.isEmpty())
+                        hintedMutation.apply();
                 }
             }
         
@@ -81,8 +80,7 @@ public class RowMutationVerbHandler implements IVerbHandler
             MessagingService.instance.sendOneWay(responseMessage, message.getFrom());
 
             // repair-on-write (remote message)
-            ReplicateOnWriteTask replicateOnWriteTask = new ReplicateOnWriteTask(rm);
-            StageManager.getStage(Stage.REPLICATE_ON_WRITE).execute(replicateOnWriteTask);
+            ReplicateOnWriteTask.replicate(rm);
         }
         catch (IOException e)
         {
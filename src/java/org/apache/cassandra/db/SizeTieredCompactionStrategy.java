@@ -0,0 +1,89 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.cassandra.db;
+
+import java.util.*;
+
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * The default strategy: groups sstables of similar size into buckets, and compacts a bucket
+ * once it holds at least min_compaction_threshold sstables.
+ */
+public class SizeTieredCompactionStrategy extends AbstractCompactionStrategy
+{
+    // sstables smaller than this are all considered to be the same size
+    static final long MIN_SSTABLE_SIZE = 50L * 1024L * 1024L;
+
+    public SizeTieredCompactionStrategy(ColumnFamilyStore cfs, Map<String, String> options)
+    {
+        super(cfs, options);
+    }
+
+    public List<SSTableReader> getBackgroundCandidates()
+    {
+        int minThreshold = cfs.getMinimumCompactionThreshold();
+        int maxThreshold = cfs.getMaximumCompactionThreshold();
+
+        for (List<SSTableReader> sstables : getBuckets())
+        {
+            if (sstables.size() >= minThreshold)
+            {
+                // if we have too many to compact all at once, compact older ones first -- this avoids
+                // re-compacting files we just created.
+                Collections.sort(sstables);
+                return sstables.subList(0, Math.min(sstables.size(), maxThreshold));
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    public int getEstimatedRemainingTasks()
+    {
+        int minThreshold = cfs.getMinimumCompactionThreshold();
+        int maxThreshold = cfs.getMaximumCompactionThreshold();
+
+        int n = 0;
+        for (List<SSTableReader> sstables : getBuckets())
+        {
+            if (sstables.size() >= minThreshold)
+                n += Math.ceil((double)sstables.size() / maxThreshold);
+        }
+        return n;
+    }
+
+    /**
+     * Repaired and unrepaired sstables are bucketed separately, so that compacting a bucket never mixes them.
+     */
+    private Set<List<SSTableReader>> getBuckets()
+    {
+        Collection<Pair<SSTableReader, Long>> unrepairedPairs = new ArrayList<Pair<SSTableReader, Long>>();
+        Collection<Pair<SSTableReader, Long>> repairedPairs = new ArrayList<Pair<SSTableReader, Long>>();
+        for (SSTableReader table : cfs.getUncompactingSSTables())
+        {
+            Collection<Pair<SSTableReader, Long>> tablePairs = table.isRepaired() ? repairedPairs : unrepairedPairs;
+            tablePairs.add(new Pair<SSTableReader, Long>(table, table.length()));
+        }
+        Set<List<SSTableReader>> buckets = new HashSet<List<SSTableReader>>(CompactionManager.getBuckets(unrepairedPairs, MIN_SSTABLE_SIZE));
+        buckets.addAll(CompactionManager.getBuckets(repairedPairs, MIN_SSTABLE_SIZE));
+        return buckets;
+    }
+}
@@ -35,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.io.ICompactSerializer2;
 import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.utils.Allocator;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 
@@ -309,6 +310,19 @@ public class SuperColumn implements IColumn, IColumnContainer
         return sc;
     }
 
+    public IColumn localCopy(Allocator allocator)
+    {
+        SuperColumn sc = new SuperColumn(allocator.clone(name_), this.getComparator());
+        sc.markForDeleteAt(localDeletionTime.get(), markedForDeleteAt.get());
+
+        for (IColumn c : columns_.values())
+        {
+            sc.addColumn(c.localCopy(allocator));
+        }
+
+        return sc;
+    }
+
     public IColumn reconcile(IColumn c)
     {
         throw new UnsupportedOperationException("This operation is unsupported on super columns.");
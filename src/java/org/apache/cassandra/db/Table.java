@@ -87,7 +87,6 @@ public class Table
     public final String name;
     /* ColumnFamilyStore per column family */
     public final Map<Integer, ColumnFamilyStore> columnFamilyStores = new HashMap<Integer, ColumnFamilyStore>(); // TODO make private again
-    private final Object[] indexLocks;
     private ScheduledFuture<?> flushTask;
     private volatile AbstractReplicationStrategy replicationStrategy;
 
@@ -262,9 +261,6 @@ public class Table
             throw new RuntimeException(e);
         }
 
-        indexLocks = new Object[DatabaseDescriptor.getConcurrentWriters() * 128];
-        for (int i = 0; i < indexLocks.length; i++)
-            indexLocks[i] = new Object();
         // create data directories.
         for (String dataDir : DatabaseDescriptor.getAllDataFileLocations())
         {
@@ -416,7 +412,7 @@ public class Table
                 SortedSet<ByteBuffer> mutatedIndexedColumns = null;
                 for (ByteBuffer column : cfs.getIndexedColumns())
                 {
-                    if (cf.getColumnNames().contains(column) || cf.isMarkedForDelete())
+                    if (cf.getColumnNames().contains(column))
                     {
                         if (mutatedIndexedColumns == null)
                             mutatedIndexedColumns = new TreeSet<ByteBuffer>();
@@ -425,37 +421,26 @@ public class Table
                         {
                             // can't actually use validator to print value here, because we overload value
                             // for deletion timestamp as well (which may not be a well-formed value for the column type)
-                            ByteBuffer value = cf.getColumn(column) == null ? null : cf.getColumn(column).value(); // may be null on row-level deletion
+                            ByteBuffer value = cf.getColumn(column).value();
                             logger.debug(String.format("mutating indexed column %s value %s",
                                                        cf.getComparator().getString(column),
-                                                       value == null ? "null" : FBUtilities.bytesToHex(value)));
+                                                       FBUtilities.bytesToHex(value)));
                         }
                     }
                 }
 
-                synchronized (indexLockFor(mutation.key()))
-                {
-                    ColumnFamily oldIndexedColumns = null;
-                    if (mutatedIndexedColumns != null)
-                    {
-                        // with the raw data CF, we can just apply every update in any order and let
-                        // read-time resolution throw out obsolete versions, thus avoiding read-before-write.
-                        // but for indexed data we need to make sure that we're not creating index entries
-                        // for obsolete writes.
-                        oldIndexedColumns = readCurrentIndexedColumns(key, cfs, mutatedIndexedColumns);
-                        logger.debug("Pre-mutation index row is {}", oldIndexedColumns);
-                        ignoreObsoleteMutations(cf, mutatedIndexedColumns, oldIndexedColumns);
-                    }
-
-                    Memtable fullMemtable = cfs.apply(key, cf);
-                    if (fullMemtable != null)
-                        memtablesToFlush = addFullMemtable(memtablesToFlush, fullMemtable);
+                Memtable fullMemtable = cfs.apply(key, cf);
+                if (fullMemtable != null)
+                    memtablesToFlush = addFullMemtable(memtablesToFlush, fullMemtable);
 
-                    if (mutatedIndexedColumns != null)
-                    {
-                        // ignore full index memtables -- we flush those when the "master" one is full
-                        applyIndexUpdates(mutation.key(), cf, cfs, mutatedIndexedColumns, oldIndexedColumns);
-                    }
+                // index entries are only ever added here: reading the old values to remove their entries would
+                // mean a read (possibly from disk) before every write.  An entry left behind by an update, a deletion
+                // or an obsolete write is removed by the first scan that finds it no longer matches the data row.
+                // The data is applied first, so that a scan finding the new entry also finds the data it points to.
+                if (mutatedIndexedColumns != null)
+                {
+                    // ignore full index memtables -- we flush those when the "master" one is full
+                    applyIndexUpdates(mutation.key(), cf, cfs, mutatedIndexedColumns);
                 }
             }
         }
@@ -478,32 +463,6 @@ public class Table
         return memtablesToFlush;
     }
 
-    private static void ignoreObsoleteMutations(ColumnFamily cf, SortedSet<ByteBuffer> mutatedIndexedColumns, ColumnFamily oldIndexedColumns)
-    {
-        if (oldIndexedColumns == null)
-            return;
-
-        ColumnFamily cf2 = cf.cloneMe();
-        for (IColumn oldColumn : oldIndexedColumns)
-        {
-            cf2.addColumn(oldColumn);
-        }
-        ColumnFamily resolved = ColumnFamilyStore.removeDeleted(cf2, Integer.MAX_VALUE);
-
-        for (IColumn oldColumn : oldIndexedColumns)
-        {
-            IColumn resolvedColumn = resolved == null ? null : resolved.getColumn(oldColumn.name());
-            if (resolvedColumn != null && resolvedColumn.equals(oldColumn))
-            {
-                if (logger.isDebugEnabled())
-                    logger.debug("ignoring obsolete mutation of " + cf.getComparator().getString(oldColumn.name()));
-                cf.remove(oldColumn.name());
-                mutatedIndexedColumns.remove(oldColumn.name());
-                oldIndexedColumns.remove(oldColumn.name());
-            }
-        }
-    }
-
     private static ColumnFamily readCurrentIndexedColumns(DecoratedKey key, ColumnFamilyStore cfs, SortedSet<ByteBuffer> mutatedIndexedColumns)
     {
         QueryFilter filter = QueryFilter.getNamesFilter(key, new QueryPath(cfs.getColumnFamilyName()), mutatedIndexedColumns);
@@ -511,14 +470,13 @@ public class Table
     }
 
     /**
-     * removes obsolete index entries and creates new ones for the given row key and mutated columns.
+     * creates index entries for the given row key and mutated columns.
      * @return list of full (index CF) memtables
      */
     private static List<Memtable> applyIndexUpdates(ByteBuffer key,
                                                     ColumnFamily cf,
                                                     ColumnFamilyStore cfs,
-                                                    SortedSet<ByteBuffer> mutatedIndexedColumns,
-                                                    ColumnFamily oldIndexedColumns)
+                                                    SortedSet<ByteBuffer> mutatedIndexedColumns)
     {
         List<Memtable> fullMemtables = Collections.emptyList();
 
@@ -547,27 +505,6 @@ public class Table
                 fullMemtables = addFullMemtable(fullMemtables, fullMemtable);
         }
 
-        // remove the old index entries
-        if (oldIndexedColumns != null)
-        {
-            int localDeletionTime = (int) (System.currentTimeMillis() / 1000);
-            for (Map.Entry<ByteBuffer, IColumn> entry : oldIndexedColumns.getColumnsMap().entrySet())
-            {
-                ByteBuffer columnName = entry.getKey();
-                IColumn column = entry.getValue();
-                if (column.isMarkedForDelete())
-                    continue;
-                DecoratedKey<LocalToken> valueKey = cfs.getIndexKeyFor(columnName, column.value());
-                ColumnFamily cfi = cfs.newIndexedColumnFamily(columnName);
-                cfi.addTombstone(key, localDeletionTime, column.timestamp());
-                Memtable fullMemtable = cfs.getIndexedColumnFamilyStore(columnName).apply(valueKey, cfi);
-                if (logger.isDebugEnabled())
-                    logger.debug("applying index tombstones {}:{}", valueKey, cfi);
-                if (fullMemtable != null)
-                    fullMemtables = addFullMemtable(fullMemtables, fullMemtable);
-            }
-        }
-
         return fullMemtables;
     }
 
@@ -604,12 +541,9 @@ public class Table
                 flusherLock.readLock().lock();
                 try
                 {
-                    synchronized (indexLockFor(key.key))
-                    {
-                        ColumnFamily cf = readCurrentIndexedColumns(key, cfs, columns);
-                        if (cf != null)
-                            memtablesToFlush = applyIndexUpdates(key.key, cf, cfs, cf.getColumnNames(), null);
-                    }
+                    ColumnFamily cf = readCurrentIndexedColumns(key, cfs, columns);
+                    if (cf != null)
+                        memtablesToFlush = applyIndexUpdates(key.key, cf, cfs, cf.getColumnNames());
                 }
                 finally
                 {
@@ -647,11 +581,6 @@ public class Table
         }
     }
 
-    private Object indexLockFor(ByteBuffer key)
-    {
-        return indexLocks[Math.abs(key.hashCode() % indexLocks.length)];
-    }
-
     public List<Future<?>> flush() throws IOException
     {
         List<Future<?>> futures = new ArrayList<Future<?>>();
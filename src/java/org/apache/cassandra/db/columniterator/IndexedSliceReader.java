@@ -50,6 +50,7 @@ class IndexedSliceReader extends AbstractIterator<IColumn> implements IColumnIte
     private final ColumnFamily emptyColumnFamily;
 
     private final List<IndexHelper.IndexInfo> indexes;
+    private final FileDataInput header;
     private final FileDataInput file;
     private final ByteBuffer startColumn;
     private final ByteBuffer finishColumn;
@@ -59,8 +60,13 @@ class IndexedSliceReader extends AbstractIterator<IColumn> implements IColumnIte
     private Deque<IColumn> blockColumns = new ArrayDeque<IColumn>();
     private AbstractType comparator;
 
-    public IndexedSliceReader(SSTableReader sstable, FileDataInput input, ByteBuffer startColumn, ByteBuffer finishColumn, boolean reversed)
+    /**
+     * @param header the row header: either the data file itself, or the copy of the header promoted into the
+     * index, in which case the data file must be positioned at the first column.
+     */
+    public IndexedSliceReader(SSTableReader sstable, FileDataInput header, FileDataInput input, ByteBuffer startColumn, ByteBuffer finishColumn, boolean reversed)
     {
+        this.header = header;
         this.file = input;
         this.startColumn = startColumn;
         this.finishColumn = finishColumn;
@@ -68,10 +74,10 @@ class IndexedSliceReader extends AbstractIterator<IColumn> implements IColumnIte
         comparator = sstable.metadata.comparator;
         try
         {
-            IndexHelper.skipBloomFilter(file);
-            indexes = IndexHelper.deserializeIndex(file);
+            IndexHelper.skipBloomFilter(header);
+            indexes = IndexHelper.deserializeIndex(header);
 
-            emptyColumnFamily = ColumnFamily.serializer().deserializeFromSSTableNoColumns(ColumnFamily.create(sstable.metadata), file);
+            emptyColumnFamily = ColumnFamily.serializer().deserializeFromSSTableNoColumns(ColumnFamily.create(sstable.metadata), header);
             fetcher = indexes == null ? new SimpleBlockFetcher() : new IndexedBlockFetcher();
         }
         catch (IOException e)
@@ -143,7 +149,7 @@ class IndexedSliceReader extends AbstractIterator<IColumn> implements IColumnIte
 
         IndexedBlockFetcher() throws IOException
         {
-            file.readInt(); // column count
+            header.readInt(); // column count
             this.mark = file.mark();
             curRangeIndex = IndexHelper.indexFor(startColumn, indexes, comparator, reversed);
             if (reversed && curRangeIndex == indexes.size())
@@ -203,7 +209,7 @@ class IndexedSliceReader extends AbstractIterator<IColumn> implements IColumnIte
     {
         private SimpleBlockFetcher() throws IOException
         {
-            int columns = file.readInt();
+            int columns = header.readInt();
             for (int i = 0; i < columns; i++)
             {
                 IColumn column = emptyColumnFamily.getColumnSerializer().deserialize(file);
@@ -35,6 +35,7 @@ import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.IColumn;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.io.sstable.IndexHelper;
+import org.apache.cassandra.io.sstable.RowIndexEntry;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileMark;
@@ -57,18 +58,29 @@ public class SSTableNamesIterator extends SimpleAbstractColumnIterator implement
         this.columns = columns;
         this.key = key;
 
-        FileDataInput file = sstable.getFileDataInput(key, DatabaseDescriptor.getIndexedReadBufferSizeInKB() * 1024);
-        if (file == null)
+        RowIndexEntry entry = sstable.getIndexEntry(key, SSTableReader.Operator.EQ);
+        if (entry == null)
             return;
 
+        int bufferSize = DatabaseDescriptor.getIndexedReadBufferSizeInKB() * 1024;
+        FileDataInput file = null;
         try
         {
+            if (entry.isPromoted())
+            {
+                // the row header is in the index: go straight to the columns
+                file = sstable.getFileDataInput(entry.columnsPosition(key), bufferSize);
+                read(sstable, entry.header(file.getPath()), file);
+                return;
+            }
+
+            file = sstable.getFileDataInput(entry.position, bufferSize);
             DecoratedKey keyInDisk = SSTableReader.decodeKey(sstable.partitioner,
                                                              sstable.descriptor,
                                                              FBUtilities.readShortByteArray(file));
             assert keyInDisk.equals(key) : String.format("%s != %s in %s", keyInDisk, key, file.getPath());
             SSTableReader.readRowSize(file, sstable.descriptor);
-            read(sstable, file);
+            read(sstable, file, file);
         }
         catch (IOException e)
         {
@@ -88,7 +100,7 @@ public class SSTableNamesIterator extends SimpleAbstractColumnIterator implement
 
         try
         {
-            read(sstable, file);
+            read(sstable, file, file);
         }
         catch (IOException ioe)
         {
@@ -96,19 +108,23 @@ public class SSTableNamesIterator extends SimpleAbstractColumnIterator implement
         }
     }
 
-    private void read(SSTableReader sstable, FileDataInput file)
+    /**
+     * @param header the row header: either the data file itself, or the copy of the header promoted into the
+     * index, in which case the data file must be positioned at the first column.
+     */
+    private void read(SSTableReader sstable, FileDataInput header, FileDataInput file)
     throws IOException
     {
 
         // read the requested columns into `cf`
         /* Read the bloom filter summarizing the columns */
 
-        Filter bf = IndexHelper.defreezeBloomFilter(file, sstable.descriptor.usesOldBloomFilter);
-        List<IndexHelper.IndexInfo> indexList = IndexHelper.deserializeIndex(file);
+        Filter bf = IndexHelper.defreezeBloomFilter(header, sstable.descriptor.usesOldBloomFilter);
+        List<IndexHelper.IndexInfo> indexList = IndexHelper.deserializeIndex(header);
 
         // we can stop early if bloom filter says none of the columns actually exist -- but,
         // we can't stop before initializing the cf above, in case there's a relevant tombstone
-        cf = ColumnFamily.serializer().deserializeFromSSTableNoColumns(ColumnFamily.create(sstable.metadata), file);
+        cf = ColumnFamily.serializer().deserializeFromSSTableNoColumns(ColumnFamily.create(sstable.metadata), header);
 
         List<ByteBuffer> filteredColumnNames = new ArrayList<ByteBuffer>(columns.size());
         for (ByteBuffer name : columns)
@@ -121,8 +137,9 @@ public class SSTableNamesIterator extends SimpleAbstractColumnIterator implement
         if (filteredColumnNames.isEmpty())
             return;
 
+        int columnCount = header.readInt();
         if (indexList == null)
-            readSimpleColumns(file, columns, filteredColumnNames);
+            readSimpleColumns(file, columnCount, columns, filteredColumnNames);
         else
             readIndexedColumns(sstable.metadata, file, columns, filteredColumnNames, indexList);
 
@@ -130,9 +147,8 @@ public class SSTableNamesIterator extends SimpleAbstractColumnIterator implement
         iter = cf.getSortedColumns().iterator();
     }
 
-    private void readSimpleColumns(FileDataInput file, SortedSet<ByteBuffer> columnNames, List<ByteBuffer> filteredColumnNames) throws IOException
+    private void readSimpleColumns(FileDataInput file, int columns, SortedSet<ByteBuffer> columnNames, List<ByteBuffer> filteredColumnNames) throws IOException
     {
-        int columns = file.readInt();
         int n = 0;
         for (int i = 0; i < columns; i++)
         {
@@ -149,8 +165,6 @@ public class SSTableNamesIterator extends SimpleAbstractColumnIterator implement
     private void readIndexedColumns(CFMetaData metadata, FileDataInput file, SortedSet<ByteBuffer> columnNames, List<ByteBuffer> filteredColumnNames, List<IndexHelper.IndexInfo> indexList)
     throws IOException
     {
-        file.readInt(); // column count
-
         /* get the various column ranges we have to read */
         AbstractType comparator = metadata.comparator;
         SortedSet<IndexHelper.IndexInfo> ranges = new TreeSet<IndexHelper.IndexInfo>(IndexHelper.getComparator(comparator));
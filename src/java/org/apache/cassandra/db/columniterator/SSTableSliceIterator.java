@@ -30,6 +30,7 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.IColumn;
+import org.apache.cassandra.io.sstable.RowIndexEntry;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.utils.FBUtilities;
@@ -46,10 +47,23 @@ public class SSTableSliceIterator implements IColumnIterator
     public SSTableSliceIterator(SSTableReader sstable, DecoratedKey key, ByteBuffer startColumn, ByteBuffer finishColumn, boolean reversed)
     {
         this.key = key;
-        fileToClose = sstable.getFileDataInput(this.key, DatabaseDescriptor.getSlicedReadBufferSizeInKB() * 1024);
-        if (fileToClose == null)
+        RowIndexEntry entry = sstable.getIndexEntry(this.key, SSTableReader.Operator.EQ);
+        if (entry == null)
+        {
+            fileToClose = null;
+            return;
+        }
+
+        int bufferSize = DatabaseDescriptor.getSlicedReadBufferSizeInKB() * 1024;
+        if (entry.isPromoted() && !isSimpleSlice(startColumn, reversed))
+        {
+            // the row header is in the index: go straight to the columns
+            fileToClose = sstable.getFileDataInput(entry.columnsPosition(key), bufferSize);
+            reader = new IndexedSliceReader(sstable, entry.header(fileToClose.getPath()), fileToClose, startColumn, finishColumn, reversed);
             return;
+        }
 
+        fileToClose = sstable.getFileDataInput(entry.position, bufferSize);
         try
         {
             DecoratedKey keyInDisk = SSTableReader.decodeKey(sstable.partitioner,
@@ -88,9 +102,17 @@ public class SSTableSliceIterator implements IColumnIterator
 
     private static IColumnIterator createReader(SSTableReader sstable, FileDataInput file, ByteBuffer startColumn, ByteBuffer finishColumn, boolean reversed)
     {
-        return startColumn.remaining() == 0 && !reversed
+        return isSimpleSlice(startColumn, reversed)
                  ? new SimpleSliceReader(sstable, file, finishColumn)
-                 : new IndexedSliceReader(sstable, file, startColumn, finishColumn, reversed);
+                 : new IndexedSliceReader(sstable, file, file, startColumn, finishColumn, reversed);
+    }
+
+    /**
+     * A slice from the start of the row is read sequentially, without the column index.
+     */
+    private static boolean isSimpleSlice(ByteBuffer startColumn, boolean reversed)
+    {
+        return startColumn.remaining() == 0 && !reversed;
     }
 
     public DecoratedKey getKey()
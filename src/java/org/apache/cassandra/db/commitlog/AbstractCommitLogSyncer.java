@@ -0,0 +1,123 @@
+package org.apache.cassandra.db.commitlog;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.concurrent.IExecutorMBean;
+import org.apache.cassandra.utils.WrappedRunnable;
+
+/**
+ * Forces the commit log to disk from a dedicated thread, on behalf of the threads appending to it.
+ */
+public abstract class AbstractCommitLogSyncer implements IExecutorMBean
+{
+    private static final Logger logger = LoggerFactory.getLogger(AbstractCommitLogSyncer.class);
+
+    protected final CommitLog commitLog;
+    protected volatile long completedSyncs = 0;
+
+    protected AbstractCommitLogSyncer(CommitLog commitLog)
+    {
+        this.commitLog = commitLog;
+    }
+
+    protected void start()
+    {
+        Runnable runnable = new WrappedRunnable()
+        {
+            public void runMayThrow() throws Exception
+            {
+                syncLoop();
+            }
+        };
+        new Thread(runnable, "COMMIT-LOG-SYNCER").start();
+
+        registerMBean(this);
+    }
+
+    protected static void registerMBean(Object o)
+    {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            mbs.registerMBean(o, new ObjectName("org.apache.cassandra.db:type=Commitlog"));
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs forever on the syncer thread.
+     */
+    protected abstract void syncLoop() throws Exception;
+
+    /**
+     * Called by an appending thread once its entry is written, to block until the entry is durable if necessary.
+     * @throws IOException if the sync the appender waited for failed
+     */
+    public abstract void afterAppend() throws IOException;
+
+    /**
+     * Forces the commit log to disk. Failures, including the IOErrors of the mapped segments, are logged and
+     * returned instead of thrown, so that the syncer thread survives them and can retry on the next sync.
+     * @return null if the sync succeeded, or what made it fail
+     */
+    protected Throwable sync()
+    {
+        try
+        {
+            commitLog.sync();
+        }
+        catch (Throwable t)
+        {
+            logger.error("Unable to sync the commit log", t);
+            return t;
+        }
+        completedSyncs++;
+        return null;
+    }
+
+    /**
+     * Get the current number of running tasks
+     */
+    public int getActiveCount()
+    {
+        return 1;
+    }
+
+    /**
+     * Get the number of completed syncs
+     */
+    public long getCompletedTasks()
+    {
+        return completedSyncs;
+    }
+}
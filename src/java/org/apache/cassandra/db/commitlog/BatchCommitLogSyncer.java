@@ -0,0 +1,94 @@
+package org.apache.cassandra.db.commitlog;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Group commit: appenders block until the commit log has been synced after their entry was written,
+ * and every appender that arrived during one sync is released together by the next.
+ */
+class BatchCommitLogSyncer extends AbstractCommitLogSyncer implements BatchCommitLogSyncerMBean
+{
+    // an appender waits on the sync point that was current when it finished writing. the syncer replaces
+    // the sync point before waiting for in-progress appends, so everyone waiting on the old one is covered
+    private volatile SyncPoint nextSync = new SyncPoint();
+    private final Semaphore syncRequested = new Semaphore(0);
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public BatchCommitLogSyncer(CommitLog commitLog)
+    {
+        super(commitLog);
+        start();
+    }
+
+    protected void syncLoop() throws Exception
+    {
+        while (true)
+        {
+            syncRequested.acquire();
+            syncRequested.drainPermits();
+
+            SyncPoint syncPoint = nextSync;
+            nextSync = new SyncPoint();
+            // a failed sync still releases its appenders, with the error, rather than leaving them waiting
+            syncPoint.error = sync();
+            syncPoint.done.countDown();
+        }
+    }
+
+    public void afterAppend() throws IOException
+    {
+        SyncPoint syncPoint = nextSync;
+        waiting.incrementAndGet();
+        syncRequested.release();
+        try
+        {
+            syncPoint.done.await();
+            if (syncPoint.error != null)
+                throw new IOException("Unable to sync the commit log", syncPoint.error);
+        }
+        catch (InterruptedException e)
+        {
+            throw new AssertionError(e);
+        }
+        finally
+        {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public long getPendingTasks()
+    {
+        return waiting.get();
+    }
+
+    private static class SyncPoint
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+        // written before done is counted down, so visible to the appenders it releases
+        Throwable error;
+    }
+}
@@ -20,6 +20,6 @@ package org.apache.cassandra.db.commitlog;
 
 import org.apache.cassandra.concurrent.IExecutorMBean;
 
-public interface BatchCommitLogExecutorServiceMBean extends IExecutorMBean
+public interface BatchCommitLogSyncerMBean extends IExecutorMBean
 {
 }
\ No newline at end of file
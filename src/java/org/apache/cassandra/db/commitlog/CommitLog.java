@@ -20,11 +20,8 @@ package org.apache.cassandra.db.commitlog;
 
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
 import org.apache.commons.lang.StringUtils;
@@ -43,6 +40,7 @@ import org.apache.cassandra.db.UnserializableColumnFamilyException;
 import org.apache.cassandra.io.DeletionService;
 import org.apache.cassandra.io.util.BufferedRandomAccessFile;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.WrappedRunnable;
 
@@ -66,6 +64,16 @@ import org.apache.cassandra.utils.WrappedRunnable;
  * Every Commit Log is rolled over everytime it reaches its threshold in size;
  * the new log inherits the "dirty" bits from the old.
  *
+ * A single rarely-written CF can keep every segment after its oldest unflushed write alive, so once the
+ * segments take more than commitlog_total_space_in_mb, the CFs still dirty in the oldest one are flushed.
+ * Segments that are no longer needed are set aside and reused for new segments, up to that total, rather
+ * than deleted and allocated again.
+ *
+ * Mutations are appended by the writing threads themselves, which reserve room for
+ * their entry in the memory-mapped current segment and serialize into it concurrently.
+ * A syncer thread forces the segments to disk, either periodically or, in batch mode,
+ * on behalf of (and then releasing) all the writers that are waiting for a sync.
+ *
  * Over time there could be a number of commit logs that would be generated.
  * To allow cleaning up non-active commit logs, whenever we flush a column family and update its bit flag in
  * the active CL, we take the dirty bit array and bitwise & it with the headers of the older logs.
@@ -83,14 +91,19 @@ public class CommitLog
 
     public static final CommitLog instance = new CommitLog();
 
+    // guarded by this
     private final Deque<CommitLogSegment> segments = new ArrayDeque<CommitLogSegment>();
+    // the last of the segments, which is the one appended to
+    private volatile CommitLogSegment currentSegment;
+    // files of discarded segments, to reuse for new ones; guarded by this
+    private final Deque<File> recycledSegments = new ArrayDeque<File>();
 
     public static void setSegmentSize(int size)
     {
         SEGMENT_SIZE = size;
     }
 
-    private final ICommitLogExecutorService executor;
+    private final AbstractCommitLogSyncer syncer;
 
     /**
      * param @ table - name of table for which we are maintaining
@@ -110,57 +123,38 @@ public class CommitLog
         }
 
         // all old segments are recovered and deleted before CommitLog is instantiated.
-        // All we need to do is create a new one.
-        segments.add(new CommitLogSegment());
-
-        if (DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.batch)
+        // All we need to do is create a new one, reusing any file set aside before a restart.
+        File[] recycled = new File(DatabaseDescriptor.getCommitLogLocation()).listFiles(new FilenameFilter()
         {
-            executor = new BatchCommitLogExecutorService();
-        }
-        else
-        {
-            executor = new PeriodicCommitLogExecutorService();
-            final Callable syncer = new Callable()
+            public boolean accept(File dir, String name)
             {
-                public Object call() throws Exception
-                {
-                    sync();
-                    return null;
-                }
-            };
+                return CommitLogSegment.recycledCommitLogFile(name);
+            }
+        });
+        if (recycled != null)
+            recycledSegments.addAll(Arrays.asList(recycled));
+        activateSegment(new CommitLogSegment(SEGMENT_SIZE, recycledSegments.poll()));
 
-            new Thread(new Runnable()
-            {
-                public void run()
-                {
-                    while (true)
-                    {
-                        try
-                        {
-                            executor.submit(syncer).get();
-                            Thread.sleep(DatabaseDescriptor.getCommitLogSyncPeriod());
-                        }
-                        catch (InterruptedException e)
-                        {
-                            throw new AssertionError(e);
-                        }
-                        catch (ExecutionException e)
-                        {
-                            throw new RuntimeException(e);
-                        }
-                    }
-                }
-            }, "PERIODIC-COMMIT-LOG-SYNCER").start();
-        }
+        syncer = DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.batch
+               ? new BatchCommitLogSyncer(this)
+               : new PeriodicCommitLogSyncer(this);
+    }
+
+    private synchronized void activateSegment(CommitLogSegment segment)
+    {
+        segments.add(segment);
+        currentSegment = segment;
     }
 
-    public void resetUnsafe()
+    public synchronized void resetUnsafe()
     {
+        for (CommitLogSegment segment : segments)
+            segment.close();
         segments.clear();
-        segments.add(new CommitLogSegment());
+        activateSegment(new CommitLogSegment(SEGMENT_SIZE));
     }
 
-    private boolean manages(String name)
+    private synchronized boolean manages(String name)
     {
         for (CommitLogSegment segment : segments)
         {
@@ -189,7 +183,16 @@ public class CommitLog
             return;
         }
 
-        Arrays.sort(files, new FileUtils.FileComparator());
+        // by id, which is the order the segments were created in even when their files were reused
+        Arrays.sort(files, new Comparator<File>()
+        {
+            public int compare(File f, File f2)
+            {
+                long id = CommitLogSegment.idFromFilename(f.getName());
+                long id2 = CommitLogSegment.idFromFilename(f2.getName());
+                return id < id2 ? -1 : (id == id2 ? 0 : 1);
+            }
+        });
         logger.info("Replaying " + StringUtils.join(files, ", "));
         recover(files);
         for (File f : files)
@@ -212,6 +215,8 @@ public class CommitLog
         {
             int bufferSize = (int)Math.min(file.length(), 32 * 1024 * 1024);
             BufferedRandomAccessFile reader = new BufferedRandomAccessFile(new File(file.getAbsolutePath()), "r", bufferSize, true);
+            // a file not named for a segment (as in tests) can't have been reused, so checking against any id will do
+            long segmentId = CommitLogSegment.possibleCommitLogFile(file.getName()) ? CommitLogSegment.idFromFilename(file.getName()) : 0;
 
             try
             {
@@ -246,7 +251,7 @@ public class CommitLog
 
                     long claimedCRC32;
 
-                    Checksum checksum = new CRC32();
+                    Checksum checksum = CommitLogSegment.newChecksum(segmentId);
                     int serializedSize;
                     try
                     {
@@ -359,43 +364,82 @@ public class CommitLog
         FBUtilities.waitOnFutures(futures);
     }
 
-    private CommitLogSegment currentSegment()
-    {
-        return segments.getLast();
-    }
-    
+    /**
+     * Only meaningful while no mutations are being added, which callers ensure by holding the flusher lock
+     * of every table.
+     */
     public CommitLogSegment.CommitLogContext getContext()
     {
-        Callable<CommitLogSegment.CommitLogContext> task = new Callable<CommitLogSegment.CommitLogContext>()
-        {
-            public CommitLogSegment.CommitLogContext call() throws Exception
-            {
-                return currentSegment().getContext();
-            }
-        };
-        try
-        {
-            return executor.submit(task).get();
-        }
-        catch (InterruptedException e)
-        {
-            throw new RuntimeException(e);
-        }
-        catch (ExecutionException e)
-        {
-            throw new RuntimeException(e);
-        }
+        return currentSegment.getContext();
     }
 
     /*
-     * Adds the specified row to the commit log. This method will reset the
-     * file offset to what it is before the start of the operation in case
-     * of any problems. This way we can assume that the subsequent commit log
-     * entry will override the garbage left over by the previous write.
+     * Adds the specified row to the commit log, rolling over to a new segment if the
+     * current one is full. In batch mode, this blocks until the row has been synced.
     */
     public void add(RowMutation rowMutation) throws IOException
     {
-        executor.add(new LogRecordAdder(rowMutation));
+        CommitLogSegment segment = currentSegment;
+        while (segment.write(rowMutation) == null)
+            segment = nextSegment(segment, rowMutation.getSerializedBuffer().length);
+        syncer.afterAppend();
+    }
+
+    /**
+     * @return the segment to append to now that the given one is full
+     */
+    private synchronized CommitLogSegment nextSegment(CommitLogSegment full, int entrySize)
+    {
+        // another writer may have already moved on to a new segment
+        if (currentSegment == full)
+        {
+            // an entry larger than a whole segment gets a segment to itself
+            int size = Math.max(SEGMENT_SIZE, CommitLogSegment.ENTRY_OVERHEAD_SIZE + entrySize);
+            activateSegment(new CommitLogSegment(size, size == SEGMENT_SIZE ? recycledSegments.poll() : null));
+            maybeFlushOldestSegment();
+        }
+        return currentSegment;
+    }
+
+    private long totalSpace()
+    {
+        return DatabaseDescriptor.getCommitLogTotalSpaceInMB() * 1024L * 1024L;
+    }
+
+    /**
+     * Once the segments take more than the total space allowed, flushes the CFs that keep the oldest one
+     * from being discarded.  Must hold the lock on this.
+     */
+    private void maybeFlushOldestSegment()
+    {
+        long size = 0;
+        for (CommitLogSegment segment : segments)
+            size += segment.capacity();
+        if (size <= totalSpace())
+            return;
+
+        CommitLogSegment oldest = segments.getFirst();
+        final Set<Integer> dirtyCFs;
+        synchronized (oldest.getHeader())
+        {
+            dirtyCFs = oldest.getHeader().getDirtyCFs();
+        }
+        logger.info(String.format("Commit log segments take %d bytes, over the %d allowed; flushing the CFs dirty in %s",
+                                  size, totalSpace(), oldest));
+        // flushing takes the flusher lock, which writers adding to the log may hold
+        StorageService.scheduledTasks.execute(new WrappedRunnable()
+        {
+            public void runMayThrow()
+            {
+                for (Integer cfId : dirtyCFs)
+                {
+                    CFMetaData cfm = DatabaseDescriptor.getCFMetaData(cfId);
+                    if (cfm == null)
+                        continue; // dropped
+                    Table.open(cfm.tableName).getColumnFamilyStore(cfm.cfName).forceFlushToRecycleCommitLog();
+                }
+            }
+        });
     }
 
     /*
@@ -404,32 +448,13 @@ public class CommitLog
      * The bit flag associated with this column family is set in the
      * header and this is used to decide if the log file can be deleted.
     */
-    public void discardCompletedSegments(final Integer cfId, final CommitLogSegment.CommitLogContext context) throws IOException
+    public synchronized void discardCompletedSegments(Integer cfId, CommitLogSegment.CommitLogContext context) throws IOException
     {
-        Callable task = new Callable()
-        {
-            public Object call() throws IOException
-            {
-                discardCompletedSegmentsInternal(context, cfId);
-                return null;
-            }
-        };
-        try
-        {
-            executor.submit(task).get();
-        }
-        catch (InterruptedException e)
-        {
-            throw new RuntimeException(e);
-        }
-        catch (ExecutionException e)
-        {
-            throw new RuntimeException(e);
-        }
+        discardCompletedSegmentsInternal(context, cfId);
     }
 
     /**
-     * Delete log segments whose contents have been turned into SSTables. NOT threadsafe.
+     * Delete log segments whose contents have been turned into SSTables. Must hold the lock on this.
      *
      * param @ context The commitLog context .
      * param @ id id of the columnFamily being flushed to disk.
@@ -459,18 +484,34 @@ public class CommitLog
                 // the replay point for this CF, instead.
                 if (logger.isDebugEnabled())
                     logger.debug("Marking replay position " + context.position + " on commit log " + segment);
-                header.turnOn(id, context.position);
-                segment.writeHeader();
+                synchronized (header)
+                {
+                    header.turnOn(id, context.position);
+                    segment.writeHeader();
+                }
                 break;
             }
 
-            header.turnOff(id);
-            if (header.isSafeToDelete() && iter.hasNext())
+            boolean safeToDelete;
+            synchronized (header)
+            {
+                header.turnOff(id);
+                safeToDelete = header.isSafeToDelete();
+            }
+            if (safeToDelete && iter.hasNext())
             {
-                logger.info("Discarding obsolete commit log:" + segment);
-                segment.close();
-                DeletionService.submitDelete(segment.getHeaderPath());
-                DeletionService.submitDelete(segment.getPath());
+                if (segment.capacity() == SEGMENT_SIZE && (segments.size() + recycledSegments.size()) * (long) SEGMENT_SIZE <= totalSpace())
+                {
+                    logger.info("Recycling obsolete commit log:" + segment);
+                    recycledSegments.add(segment.recycle());
+                }
+                else
+                {
+                    logger.info("Discarding obsolete commit log:" + segment);
+                    segment.close();
+                    DeletionService.submitDelete(segment.getHeaderPath());
+                    DeletionService.submitDelete(segment.getPath());
+                }
                 // usually this will be the first (remaining) segment, but not always, if segment A contains
                 // writes to a CF that is unflushed but is followed by segment B whose CFs are all flushed.
                 iter.remove();
@@ -484,44 +525,17 @@ public class CommitLog
         }
     }
     
+    /**
+     * Forces every segment to disk. Only called by the syncer.
+     */
     void sync() throws IOException
     {
-        currentSegment().sync();
-    }
-
-    // TODO this should be a Runnable since it doesn't actually return anything, but it's difficult to do that
-    // without breaking the fragile CheaterFutureTask in BatchCLES.
-    class LogRecordAdder implements Callable, Runnable
-    {
-        final RowMutation rowMutation;
-
-        LogRecordAdder(RowMutation rm)
-        {
-            this.rowMutation = rm;
-        }
-
-        public void run()
-        {
-            try
-            {
-                currentSegment().write(rowMutation);
-                // roll log if necessary
-                if (currentSegment().length() >= SEGMENT_SIZE)
-                {
-                    sync();
-                    segments.add(new CommitLogSegment());
-                }
-            }
-            catch (IOException e)
-            {
-                throw new IOError(e);
-            }
-        }
-
-        public Object call() throws Exception
+        List<CommitLogSegment> activeSegments;
+        synchronized (this)
         {
-            run();
-            return null;
+            activeSegments = new ArrayList<CommitLogSegment>(segments);
         }
+        for (CommitLogSegment segment : activeSegments)
+            segment.sync();
     }
 }
@@ -21,7 +21,9 @@ package org.apache.cassandra.db.commitlog;
 import java.io.*;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -81,13 +83,21 @@ public class CommitLogHeader
         cfDirtiedAt.remove(cfId);
     }
 
+    /**
+     * @return the ids of the CFs whose writes this segment still has to keep
+     */
+    Set<Integer> getDirtyCFs()
+    {
+        return new HashSet<Integer>(cfDirtiedAt.keySet());
+    }
+
     boolean isSafeToDelete() throws IOException
     {
         return cfDirtiedAt.isEmpty();
     }
     
     // we use cf ids. getting the cf names would be pretty pretty expensive.
-    public String toString()
+    public synchronized String toString()
     {
         StringBuilder sb = new StringBuilder("");
         sb.append("CLH(dirty+flushed={");
@@ -99,7 +109,7 @@ public class CommitLogHeader
         return sb.toString();
     }
 
-    public String dirtyString()
+    public synchronized String dirtyString()
     {
         StringBuilder sb = new StringBuilder();
         for (Map.Entry<Integer, Integer> entry : cfDirtiedAt.entrySet())
@@ -23,6 +23,14 @@ package org.apache.cassandra.db.commitlog;
 import java.io.File;
 import java.io.IOError;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -33,24 +41,68 @@ import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.RowMutation;
-import org.apache.cassandra.io.util.BufferedRandomAccessFile;
+import org.apache.cassandra.io.util.FileUtils;
 
+/**
+ * A commit log segment is a file of fixed size, allocated and memory-mapped up front. Appending threads reserve
+ * space for their entry by advancing the allocation position with a CAS, and then serialize into their
+ * reservation concurrently; the syncer forces the mapped file to disk on their behalf.
+ *
+ * Segments whose contents have been flushed are recycled: the file is renamed and mapped again for a new segment,
+ * so the tail of a segment may hold entries from its previous life.  Entry checksums start from the id of the
+ * segment, so replay stops at the first entry that was not written since the file became this segment.
+ */
 public class CommitLogSegment
 {
     private static final Logger logger = LoggerFactory.getLogger(CommitLogSegment.class);
 
-    private final BufferedRandomAccessFile logWriter;
+    // each entry is its length and the checksum of the length, the serialized mutation, and the checksum of both
+    static final int ENTRY_OVERHEAD_SIZE = 4 + 8 + 8;
+
+    // segment names are timestamps, which must be unique even when segments are created in quick succession
+    private static final AtomicLong lastId = new AtomicLong();
+
+    private final long id;
+    private final String path;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
     private final CommitLogHeader header;
 
-    public CommitLogSegment()
+    // the position at which the next entry will be written: appenders reserve space by advancing it
+    private final AtomicInteger allocatePosition = new AtomicInteger();
+    // appenders hold the read lock while they write into their reservation, so that a sync can wait them out
+    private final ReadWriteLock appendLock = new ReentrantReadWriteLock();
+    // the end of the entries that have been forced to disk
+    private int syncedPosition = 0;
+
+    public CommitLogSegment(int size)
+    {
+        this(size, null);
+    }
+
+    /**
+     * @param recycled a file left by a segment that is no longer needed, to reuse instead of allocating a new one
+     */
+    public CommitLogSegment(int size, File recycled)
     {
         this.header = new CommitLogHeader();
-        String logFile = DatabaseDescriptor.getCommitLogLocation() + File.separator + "CommitLog-" + System.currentTimeMillis() + ".log";
-        logger.info("Creating new commitlog segment " + logFile);
+        id = nextId();
+        path = DatabaseDescriptor.getCommitLogLocation() + File.separator + "CommitLog-" + id + ".log";
 
         try
         {
-            logWriter = createWriter(logFile);
+            if (recycled != null && !recycled.renameTo(new File(path)))
+            {
+                logger.warn("Unable to reuse recycled commitlog segment " + recycled);
+                FileUtils.deleteWithConfirm(recycled);
+                recycled = null;
+            }
+            logger.info((recycled == null ? "Creating new" : "Reusing " + recycled.getName() + " as") + " commitlog segment " + path);
+
+            file = new RandomAccessFile(path, "rw");
+            if (file.length() != size)
+                file.setLength(size);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
 
             writeHeader();
         }
@@ -60,79 +112,159 @@ public class CommitLogSegment
         }
     }
 
+    private static long nextId()
+    {
+        while (true)
+        {
+            long last = lastId.get();
+            long id = Math.max(System.currentTimeMillis(), last + 1);
+            if (lastId.compareAndSet(last, id))
+                return id;
+        }
+    }
+
     public static boolean possibleCommitLogFile(String filename)
     {
         return filename.matches("CommitLog-\\d+.log");
     }
 
-    public void writeHeader() throws IOException
+    public static boolean recycledCommitLogFile(String filename)
+    {
+        return filename.matches("CommitLog-\\d+.log.recycled");
+    }
+
+    /**
+     * @return the id of the segment in the given commit log file
+     */
+    public static long idFromFilename(String filename)
+    {
+        return Long.parseLong(filename.substring("CommitLog-".length(), filename.indexOf(".log")));
+    }
+
+    /**
+     * @return the checksum that the entries of the given segment start from
+     */
+    static Checksum newChecksum(long segmentId)
     {
-        CommitLogHeader.writeCommitLogHeader(header, getHeaderPath());
+        Checksum checksum = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8)
+            checksum.update((int) (segmentId >>> shift));
+        return checksum;
     }
 
-    private static BufferedRandomAccessFile createWriter(String file) throws IOException
+    public void writeHeader() throws IOException
     {
-        return new BufferedRandomAccessFile(new File(file), "rw", 128 * 1024, true);
+        synchronized (header)
+        {
+            CommitLogHeader.writeCommitLogHeader(header, getHeaderPath());
+        }
     }
 
+    /**
+     * Appends the mutation to this segment. Safe to call concurrently.
+     * @return the position of the entry, or null if there isn't enough room left in this segment for it.
+     */
     public CommitLogSegment.CommitLogContext write(RowMutation rowMutation) throws IOException
     {
-        long currentPosition = -1L;
+        byte[] serializedRow = rowMutation.getSerializedBuffer();
+        appendLock.readLock().lock();
         try
         {
-            currentPosition = logWriter.getFilePointer();
-            CommitLogSegment.CommitLogContext cLogCtx = new CommitLogSegment.CommitLogContext(currentPosition);
+            // any position we are given will be at or after this one, so it is safe to replay from
+            markDirty(rowMutation, allocatePosition.get());
+
+            int position = allocate(ENTRY_OVERHEAD_SIZE + serializedRow.length);
+            if (position < 0)
+                return null;
+
+            // write mutation, w/ checksum on the size and data
+            ByteBuffer out = buffer.duplicate();
+            out.position(position);
+            Checksum checksum = newChecksum(id);
+            checksum.update(serializedRow.length);
+            out.putInt(serializedRow.length);
+            out.putLong(checksum.getValue());
+            out.put(serializedRow);
+            checksum.update(serializedRow, 0, serializedRow.length);
+            out.putLong(checksum.getValue());
+
+            return new CommitLogSegment.CommitLogContext(position);
+        }
+        finally
+        {
+            appendLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the start of a region of the given size that the caller now owns, or -1 if the segment is full.
+     */
+    private int allocate(int size)
+    {
+        while (true)
+        {
+            int position = allocatePosition.get();
+            int next = position + size;
+            if (next > buffer.capacity() || next < 0)
+                return -1;
+            if (allocatePosition.compareAndSet(position, next))
+                return position;
+        }
+    }
 
-            // update header
-            for (ColumnFamily columnFamily : rowMutation.getColumnFamilies())
+    private void markDirty(RowMutation rowMutation, int position) throws IOException
+    {
+        for (ColumnFamily columnFamily : rowMutation.getColumnFamilies())
+        {
+            // we can ignore the serialized map in the header (and avoid deserializing it) since we know we are
+            // writing the cfs as they exist now.  check for null cfm in case a cl write goes through after the cf is
+            // defined but before a new segment is created.
+            CFMetaData cfm = DatabaseDescriptor.getCFMetaData(columnFamily.id());
+            if (cfm == null)
             {
-                // we can ignore the serialized map in the header (and avoid deserializing it) since we know we are
-                // writing the cfs as they exist now.  check for null cfm in case a cl write goes through after the cf is 
-                // defined but before a new segment is created.
-                CFMetaData cfm = DatabaseDescriptor.getCFMetaData(columnFamily.id());
-                if (cfm == null)
-                {
-                    logger.error("Attempted to write commit log entry for unrecognized column family: " + columnFamily.id());
-                }
-                else
+                logger.error("Attempted to write commit log entry for unrecognized column family: " + columnFamily.id());
+            }
+            else
+            {
+                Integer id = cfm.cfId;
+                synchronized (header)
                 {
-                    Integer id = cfm.cfId;
                     if (!header.isDirty(id))
                     {
-                        header.turnOn(id, logWriter.getFilePointer());
+                        header.turnOn(id, position);
                         writeHeader();
                     }
                 }
             }
+        }
+    }
 
-            // write mutation, w/ checksum on the size and data
-            Checksum checksum = new CRC32();
-            byte[] serializedRow = rowMutation.getSerializedBuffer();
-            checksum.update(serializedRow.length);
-            logWriter.writeInt(serializedRow.length);
-            logWriter.writeLong(checksum.getValue());
-            logWriter.write(serializedRow);
-            checksum.update(serializedRow, 0, serializedRow.length);
-            logWriter.writeLong(checksum.getValue());
-
-            return cLogCtx;
+    /**
+     * Forces the entries appended so far to disk, first waiting for any appends in progress to complete.
+     */
+    public synchronized void sync() throws IOException
+    {
+        int position;
+        appendLock.writeLock().lock();
+        try
+        {
+            position = allocatePosition.get();
         }
-        catch (IOException e)
+        finally
         {
-            if (currentPosition != -1)
-                logWriter.seek(currentPosition);
-            throw e;
+            appendLock.writeLock().unlock();
         }
-    }
 
-    public void sync() throws IOException
-    {
-        logWriter.sync();
+        if (position > syncedPosition)
+        {
+            buffer.force();
+            syncedPosition = position;
+        }
     }
 
     public CommitLogContext getContext()
     {
-        return new CommitLogContext(logWriter.getFilePointer());
+        return new CommitLogContext(allocatePosition.get());
     }
 
     public CommitLogHeader getHeader()
@@ -142,7 +274,7 @@ public class CommitLogSegment
 
     public String getPath()
     {
-        return logWriter.getPath();
+        return path;
     }
 
     public String getHeaderPath()
@@ -150,34 +282,46 @@ public class CommitLogSegment
         return CommitLogHeader.getHeaderPathFromSegment(this);
     }
 
+    /**
+     * @return the length of the entries appended to this segment so far
+     */
     public long length()
     {
-        try
-        {
-            return logWriter.length();
-        }
-        catch (IOException e)
-        {
-            throw new IOError(e);
-        }
+        return allocatePosition.get();
+    }
+
+    /**
+     * @return the size of the segment file
+     */
+    public long capacity()
+    {
+        return buffer.capacity();
     }
 
     public void close()
     {
-        try
-        {
-            logWriter.close();
-        }
-        catch (IOException e)
-        {
-            throw new IOError(e);
-        }
+        // the mapping stays valid (and is synced as needed) until it is garbage collected
+        FileUtils.closeQuietly(file);
+    }
+
+    /**
+     * Closes the segment and sets its file aside, under a name replay ignores, for a later segment to reuse.
+     * @return the file set aside
+     */
+    public File recycle() throws IOException
+    {
+        close();
+        FileUtils.delete(getHeaderPath());
+        File recycled = new File(path + ".recycled");
+        if (!new File(path).renameTo(recycled))
+            throw new IOException("Unable to rename " + path + " to " + recycled);
+        return recycled;
     }
 
     @Override
     public String toString()
     {
-        return "CommitLogSegment(" + logWriter.getPath() + ')';
+        return "CommitLogSegment(" + path + ')';
     }
 
     public class CommitLogContext
@@ -199,7 +343,7 @@ public class CommitLogSegment
         public String toString()
         {
             return "CommitLogContext(" +
-                   "file='" + logWriter.getPath() + '\'' +
+                   "file='" + path + '\'' +
                    ", position=" + position +
                    ')';
         }
@@ -0,0 +1,56 @@
+package org.apache.cassandra.db.commitlog;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+
+/**
+ * Appenders return as soon as their entry is written, and the commit log is synced every
+ * commitlog_sync_period_in_ms.
+ */
+class PeriodicCommitLogSyncer extends AbstractCommitLogSyncer implements PeriodicCommitLogSyncerMBean
+{
+    public PeriodicCommitLogSyncer(CommitLog commitLog)
+    {
+        super(commitLog);
+        start();
+    }
+
+    protected void syncLoop() throws Exception
+    {
+        while (true)
+        {
+            // a failure is logged by sync, and the next period retries
+            sync();
+            Thread.sleep(DatabaseDescriptor.getCommitLogSyncPeriod());
+        }
+    }
+
+    public void afterAppend()
+    {
+    }
+
+    public long getPendingTasks()
+    {
+        return 0;
+    }
+}
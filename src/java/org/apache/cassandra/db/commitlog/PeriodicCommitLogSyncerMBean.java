@@ -20,6 +20,6 @@ package org.apache.cassandra.db.commitlog;
 
 import org.apache.cassandra.concurrent.IExecutorMBean;
 
-public interface PeriodicCommitLogExecutorServiceMBean extends IExecutorMBean
+public interface PeriodicCommitLogSyncerMBean extends IExecutorMBean
 {
 }
\ No newline at end of file
@@ -19,8 +19,6 @@ package org.apache.cassandra.db.context;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.*;
-
 import org.apache.commons.lang.ArrayUtils;
 
 import org.apache.cassandra.db.DBConstants;
@@ -30,7 +28,7 @@ import org.apache.cassandra.utils.FBUtilities;
  * An implementation of a partitioned counter context.
  *
  * The data structure is:
- *   a vector of (node id, logical clock, count) tuples.
+ *   a vector of (node id, logical clock, count) tuples, sorted by node id.
  *
  * On update, the node will:
  *   1) increment the logical clock, and
@@ -40,13 +38,19 @@ import org.apache.cassandra.utils.FBUtilities;
  * by the node.  The aggregated count can be determined
  * by rolling up all the counts from each tuple.
  *
+ * Keeping the tuples sorted lets update find its tuple by binary search
+ * and change it in place, and merge and diff walk both contexts at once.
+ * Contexts written by earlier versions kept the most recently updated
+ * tuples first; they are still accepted, working on a sorted copy, and
+ * are written back sorted.
+ *
  * NOTE: only a given node id may increment its associated count and
  * care must be taken to ensure that tuples are correctly made consistent.
  */
 public class CounterContext implements IContext
 {
     private static final int idLength;
-    private static final FBUtilities.ByteArrayWrapper idWrapper;
+    private static final byte[] localId;
     private static final int clockLength = DBConstants.longSize_;
     private static final int countLength = DBConstants.longSize_;
     private static final int stepLength; // length: id + logical clock + count
@@ -59,9 +63,8 @@ public class CounterContext implements IContext
 
     static
     {
-        byte[] id  = FBUtilities.getLocalAddress().getAddress();
-        idLength   = id.length;
-        idWrapper  = new FBUtilities.ByteArrayWrapper(id);
+        localId    = FBUtilities.getLocalAddress().getAddress();
+        idLength   = localId.length;
         stepLength = idLength + clockLength + countLength;
     }
 
@@ -80,12 +83,6 @@ public class CounterContext implements IContext
         return new byte[0];
     }
     
-    // write a tuple (node id, clock, count) at the front
-    protected static void writeElement(byte[] context, byte[] id, long clock, long count)
-    {
-        writeElementAtStepOffset(context, 0, id, clock, count);
-    }
-
     // write a tuple (node id, clock, count) at step offset
     protected static void writeElementAtStepOffset(byte[] context, int stepOffset, byte[] id, long clock, long count)
     {
@@ -100,42 +97,71 @@ public class CounterContext implements IContext
         // calculate node id
         byte[] nodeId = node.getAddress();
 
-        // look for this node id
-        for (int offset = 0; offset < context.length; offset += stepLength)
+        context = sorted(context);
+        int index = binarySearch(context, nodeId);
+        if (index >= 0)
         {
-            if (FBUtilities.compareByteSubArrays(nodeId, 0, context, offset, idLength) != 0)
-                continue;
-
-            // node id found: increment clock, update count; shift to front
+            // node id found: increment clock, update count in place
+            int offset = index * stepLength;
             long clock = FBUtilities.byteArrayToLong(context, offset + idLength);
             long count = FBUtilities.byteArrayToLong(context, offset + idLength + clockLength);
-
-            System.arraycopy(
-                context,
-                0,
-                context,
-                stepLength,
-                offset);
-            writeElement(context, nodeId, clock + 1L, count + delta);
-
+            writeElementAtStepOffset(context, index, nodeId, clock + 1L, count + delta);
             return context;
         }
 
-        // node id not found: widen context
+        // node id not found: widen context, inserting its tuple in order
+        int insertOffset = (-index - 1) * stepLength;
         byte[] previous = context;
         context = new byte[previous.length + stepLength];
-
-        writeElement(context, nodeId, 1L, delta);
+        System.arraycopy(previous, 0, context, 0, insertOffset);
+        writeElementAtStepOffset(context, -index - 1, nodeId, 1L, delta);
         System.arraycopy(
             previous,
-            0,
+            insertOffset,
             context,
-            stepLength,
-            previous.length);
+            insertOffset + stepLength,
+            previous.length - insertOffset);
 
         return context;
     }
 
+    // step offset of the tuple for id in a sorted context, or (-(insertion step offset) - 1) if there is none
+    protected static int binarySearch(byte[] context, byte[] id)
+    {
+        int low = 0;
+        int high = context.length / stepLength - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int cmp = FBUtilities.compareByteSubArrays(context, mid * stepLength, id, 0, idLength);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    // whether the node ids of context are in increasing order
+    protected static boolean isSorted(byte[] context)
+    {
+        for (int offset = stepLength; offset < context.length; offset += stepLength)
+        {
+            if (FBUtilities.compareByteSubArrays(context, offset - stepLength, context, offset, idLength) >= 0)
+                return false;
+        }
+        return true;
+    }
+
+    // context if it is sorted, or a sorted copy of a context written by an earlier version;
+    // contexts may be shared with concurrent readers, so they are never reordered in place
+    protected static byte[] sorted(byte[] context)
+    {
+        return isSorted(context) ? context : sortElementsById(ArrayUtils.clone(context));
+    }
+
     // swap bytes of step length in context
     protected static void swapElement(byte[] context, int left, int right)
     {
@@ -213,8 +239,8 @@ public class CounterContext implements IContext
      */
     public ContextRelationship diff(byte[] left, byte[] right)
     {
-        left  = sortElementsById(left);
-        right = sortElementsById(right);
+        left  = sorted(left);
+        right = sorted(right);
 
         ContextRelationship relationship = ContextRelationship.EQUAL;
 
@@ -340,38 +366,6 @@ public class CounterContext implements IContext
         return relationship;
     }
 
-    private class CounterNode
-    {
-        public final long clock;
-        public final long count;
-
-        public CounterNode(long clock, long count)
-        {
-            this.clock = clock;
-            this.count = count;
-        }
-
-        public int compareClockTo(CounterNode o)
-        {
-            if (clock == o.clock)
-            {
-                return 0;
-            }
-            else if (clock > o.clock)
-            {
-                return 1;
-            }
-            // clock < o.clock
-            return -1;
-        }
-
-        @Override
-        public String toString()
-        {
-            return "(" + clock + "," + count + ")";
-        }
-    }
-
     /**
      * Return a context w/ an aggregated count for each node id.
      *
@@ -382,87 +376,73 @@ public class CounterContext implements IContext
      */
     public byte[] merge(byte[] left, byte[] right)
     {
-        // strategy:
-        //   1) map id -> (clock, count)
-        //      a) local id:  sum clocks, counts
-        //      b) remote id: keep highest clock, count (reconcile)
-        //   2) create a context from sorted array
-        Map<FBUtilities.ByteArrayWrapper, CounterNode> contextsMap =
-            new HashMap<FBUtilities.ByteArrayWrapper, CounterNode>();
-
-        // map left context: id -> (clock, count)
-        for (int offset = 0; offset < left.length; offset += stepLength)
+        // strategy: walk both sorted contexts at once, and for each id
+        //   a) local id:  sum clocks, counts
+        //   b) remote id: keep highest clock, count (reconcile)
+        left  = sorted(left);
+        right = sorted(right);
+
+        // size the merged context first, so that it is the only allocation
+        int length = 0;
+        int leftOffset  = 0;
+        int rightOffset = 0;
+        while (leftOffset < left.length && rightOffset < right.length)
         {
-            FBUtilities.ByteArrayWrapper id = new FBUtilities.ByteArrayWrapper(
-                ArrayUtils.subarray(left, offset, offset + idLength));
-            long clock = FBUtilities.byteArrayToLong(left, offset + idLength);
-            long count = FBUtilities.byteArrayToLong(left, offset + idLength + clockLength);
-
-            contextsMap.put(id, new CounterNode(clock, count));
+            int compareId = FBUtilities.compareByteSubArrays(left, leftOffset, right, rightOffset, idLength);
+            if (compareId <= 0)
+                leftOffset += stepLength;
+            if (compareId >= 0)
+                rightOffset += stepLength;
+            length += stepLength;
         }
+        length += (left.length - leftOffset) + (right.length - rightOffset);
 
-        // map right context: id -> (clock, count)
-        for (int offset = 0; offset < right.length; offset += stepLength)
+        byte[] merged = new byte[length];
+        int mergedOffset = 0;
+        leftOffset  = 0;
+        rightOffset = 0;
+        while (leftOffset < left.length && rightOffset < right.length)
         {
-            FBUtilities.ByteArrayWrapper id = new FBUtilities.ByteArrayWrapper(
-                ArrayUtils.subarray(right, offset, offset + idLength));
-            long clock = FBUtilities.byteArrayToLong(right, offset + idLength);
-            long count = FBUtilities.byteArrayToLong(right, offset + idLength + clockLength);
-
-            if (!contextsMap.containsKey(id))
+            int compareId = FBUtilities.compareByteSubArrays(left, leftOffset, right, rightOffset, idLength);
+            if (compareId < 0)
             {
-                contextsMap.put(id, new CounterNode(clock, count));
-                continue;
+                System.arraycopy(left, leftOffset, merged, mergedOffset, stepLength);
+                leftOffset += stepLength;
             }
-
-            CounterNode node = contextsMap.get(id);
-
-            // local id: sum clocks, counts
-            if (this.idWrapper.equals(id))
-            {
-                contextsMap.put(id, new CounterNode(
-                    clock + node.clock,
-                    count + node.count));
-                continue;
-            }
-
-            // remote id: keep highest clock and its count
-            if (node.clock < clock)
+            else if (compareId > 0)
             {
-                contextsMap.put(id, new CounterNode(clock, count));
+                System.arraycopy(right, rightOffset, merged, mergedOffset, stepLength);
+                rightOffset += stepLength;
             }
-        }
-
-        // sort merged tuples
-        List<Map.Entry<FBUtilities.ByteArrayWrapper, CounterNode>> contextsList =
-            new ArrayList<Map.Entry<FBUtilities.ByteArrayWrapper, CounterNode>>(
-                    contextsMap.entrySet());
-        Collections.sort(
-            contextsList,
-            new Comparator<Map.Entry<FBUtilities.ByteArrayWrapper, CounterNode>>()
+            else
             {
-                public int compare(
-                    Map.Entry<FBUtilities.ByteArrayWrapper, CounterNode> e1,
-                    Map.Entry<FBUtilities.ByteArrayWrapper, CounterNode> e2)
+                long leftClock  = FBUtilities.byteArrayToLong(left,  leftOffset + idLength);
+                long rightClock = FBUtilities.byteArrayToLong(right, rightOffset + idLength);
+                if (FBUtilities.compareByteSubArrays(left, leftOffset, localId, 0, idLength) == 0)
                 {
-                    // reversed
-                    return e2.getValue().compareClockTo(e1.getValue());
+                    // local id: sum clocks, counts
+                    long leftCount  = FBUtilities.byteArrayToLong(left,  leftOffset + idLength + clockLength);
+                    long rightCount = FBUtilities.byteArrayToLong(right, rightOffset + idLength + clockLength);
+                    writeElementAtStepOffset(merged, mergedOffset / stepLength, localId, leftClock + rightClock, leftCount + rightCount);
                 }
-            });
-
-        // create merged context
-        int length = contextsList.size();
-        byte[] merged = new byte[length * stepLength];
-        for (int i = 0; i < length; i++)
-        {
-            Map.Entry<FBUtilities.ByteArrayWrapper, CounterNode> entry = contextsList.get(i);
-            writeElementAtStepOffset(
-                merged,
-                i,
-                entry.getKey().data,
-                entry.getValue().clock,
-                entry.getValue().count);
+                else if (leftClock < rightClock)
+                {
+                    // remote id: keep highest clock and its count
+                    System.arraycopy(right, rightOffset, merged, mergedOffset, stepLength);
+                }
+                else
+                {
+                    System.arraycopy(left, leftOffset, merged, mergedOffset, stepLength);
+                }
+                leftOffset  += stepLength;
+                rightOffset += stepLength;
+            }
+            mergedOffset += stepLength;
         }
+        System.arraycopy(left, leftOffset, merged, mergedOffset, left.length - leftOffset);
+        mergedOffset += left.length - leftOffset;
+        System.arraycopy(right, rightOffset, merged, mergedOffset, right.length - rightOffset);
+
         return merged;
     }
 
@@ -525,24 +505,21 @@ public class CounterContext implements IContext
         // calculate node id
         byte[] nodeId = node.getAddress();
 
-        // look for this node id
-        for (int offset = 0; offset < context.length; offset += stepLength)
-        {
-            if (FBUtilities.compareByteSubArrays(context, offset, nodeId, 0, idLength) != 0)
-                continue;
-
-            // node id found: remove node count
-            byte[] truncatedContext = new byte[context.length - stepLength];
-            System.arraycopy(context, 0, truncatedContext, 0, offset);
-            System.arraycopy(
-                context,
-                offset + stepLength,
-                truncatedContext,
-                offset,
-                context.length - (offset + stepLength));
-            return truncatedContext;
-        }
+        byte[] sortedContext = sorted(context);
+        int index = binarySearch(sortedContext, nodeId);
+        if (index < 0)
+            return context;
 
-        return context;
+        // node id found: remove node count
+        int offset = index * stepLength;
+        byte[] truncatedContext = new byte[sortedContext.length - stepLength];
+        System.arraycopy(sortedContext, 0, truncatedContext, 0, offset);
+        System.arraycopy(
+            sortedContext,
+            offset + stepLength,
+            truncatedContext,
+            offset,
+            sortedContext.length - (offset + stepLength));
+        return truncatedContext;
     }
 }
@@ -22,8 +22,10 @@ package org.apache.cassandra.db.filter;
 
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -38,7 +40,7 @@ import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.thrift.SlicePredicate;
 import org.apache.cassandra.thrift.SliceRange;
-import org.apache.cassandra.utils.ReducingIterator;
+import org.apache.cassandra.utils.MergeIterator;
 
 public class QueryFilter
 {
@@ -101,18 +103,22 @@ public class QueryFilter
     }
     
     public void collectCollatedColumns(final ColumnFamily returnCF, Iterator<IColumn> collatedColumns, final int gcBefore)
+    {
+        collateColumns(returnCF, Collections.singletonList(collatedColumns), returnCF.getComparator(), gcBefore);
+    }
+
+    /**
+     * Merges the sorted columns of several sources into returnCF.
+     * @param comparator the comparator of the column family's top-level column names
+     */
+    public void collateColumns(final ColumnFamily returnCF, List<? extends Iterator<IColumn>> toCollate, AbstractType comparator, final int gcBefore)
     {
         // define a 'reduced' iterator that merges columns w/ the same name, which
         // greatly simplifies computing liveColumns in the presence of tombstones.
-        ReducingIterator<IColumn, IColumn> reduced = new ReducingIterator<IColumn, IColumn>(collatedColumns)
+        MergeIterator.Reducer<IColumn, IColumn> reducer = new MergeIterator.Reducer<IColumn, IColumn>()
         {
             ColumnFamily curCF = returnCF.cloneMeShallow();
 
-            protected boolean isEqual(IColumn o1, IColumn o2)
-            {
-                return o1.name().equals(o2.name());
-            }
-
             public void reduce(IColumn current)
             {
                 curCF.addColumn(current);
@@ -138,6 +144,7 @@ public class QueryFilter
                 return c;
             }
         };
+        Iterator<IColumn> reduced = MergeIterator.get(toCollate, filter.getColumnComparator(comparator), reducer);
 
         (superFilter == null ? filter : superFilter).collectReducedColumns(returnCF, reduced, gcBefore);
     }
@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.security.MessageDigest;
 
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.io.sstable.SSTableMetadata;
 
 /**
  * a CompactedRow is an object that takes a bunch of rows (keys + columnfamilies)
@@ -48,4 +49,9 @@ public abstract class AbstractCompactedRow
     public abstract boolean isEmpty();
 
     public abstract int columnCount();
+
+    /**
+     * @return the timestamps and local deletion times of the data written by write()
+     */
+    public abstract SSTableMetadata.TimestampCollector timestamps();
 }
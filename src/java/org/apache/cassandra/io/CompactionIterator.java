@@ -24,99 +24,135 @@ package org.apache.cassandra.io;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
-import org.apache.commons.collections.iterators.CollatingIterator;
+import com.google.common.collect.AbstractIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.CompactionManager;
+import org.apache.cassandra.db.columniterator.IColumnIterator;
 import org.apache.cassandra.io.sstable.SSTableIdentityIterator;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.sstable.SSTableScanner;
 import org.apache.cassandra.utils.FBUtilities;
-import org.apache.cassandra.utils.ReducingIterator;
+import org.apache.cassandra.utils.MergeIterator;
+import org.apache.cassandra.utils.Throttle;
 
-public class CompactionIterator extends ReducingIterator<SSTableIdentityIterator, AbstractCompactedRow>
+public class CompactionIterator extends AbstractIterator<AbstractCompactedRow>
 implements Closeable, ICompactionInfo
 {
     private static Logger logger = LoggerFactory.getLogger(CompactionIterator.class);
 
     protected static final int FILE_BUFFER_SIZE = 1024 * 1024;
 
+    private static final Comparator<IColumnIterator> COMPARE_BY_KEY = new Comparator<IColumnIterator>()
+    {
+        public int compare(IColumnIterator o1, IColumnIterator o2)
+        {
+            return o1.getKey().compareTo(o2.getKey());
+        }
+    };
+
     protected final List<SSTableIdentityIterator> rows = new ArrayList<SSTableIdentityIterator>();
     private final ColumnFamilyStore cfs;
     private final int gcBefore;
     private final boolean major;
+    private final List<SSTableScanner> scanners;
+    private final MergeIterator<IColumnIterator, AbstractCompactedRow> source;
 
     private long totalBytes;
-    private long bytesRead;
-    private long row;
+    private volatile long bytesRead;
+    private final Throttle throttle;
 
     public CompactionIterator(ColumnFamilyStore cfs, Iterable<SSTableReader> sstables, int gcBefore, boolean major) throws IOException
     {
-        this(cfs, getCollatingIterator(sstables), gcBefore, major);
+        this(cfs, getDirectScanners(sstables), gcBefore, major);
+    }
+
+    private CompactionIterator(ColumnFamilyStore cfs, List<SSTableScanner> scanners, int gcBefore, boolean major)
+    {
+        this(cfs, scanners, scanners, gcBefore, major);
     }
 
-    @SuppressWarnings("unchecked")
-    protected CompactionIterator(ColumnFamilyStore cfs, Iterator iter, int gcBefore, boolean major)
+    /**
+     * @param scanners the scanners over the sstables compacted
+     * @param rowIterators the rows to compact, from the scanners: merged by key
+     */
+    protected CompactionIterator(ColumnFamilyStore cfs, List<SSTableScanner> scanners, List<? extends Iterator<IColumnIterator>> rowIterators, int gcBefore, boolean major)
     {
-        super(iter);
-        row = 0;
+        this.scanners = scanners;
+        source = MergeIterator.get(rowIterators, COMPARE_BY_KEY, new Reducer());
         totalBytes = bytesRead = 0;
-        for (SSTableScanner scanner : getScanners())
+        for (SSTableScanner scanner : scanners)
         {
             totalBytes += scanner.getFileLength();
         }
         this.cfs = cfs;
         this.gcBefore = gcBefore;
         this.major = major;
+        this.throttle = new Throttle(cfs.getColumnFamilyName() + " compaction", new Throttle.ThroughputFunction()
+        {
+            /** Divides the total compaction throughput among the running compactions. */
+            public int targetThroughput()
+            {
+                if (DatabaseDescriptor.getCompactionThroughputMbPerSec() < 1)
+                    // throttling disabled
+                    return 0;
+                int totalBytesPerMS = DatabaseDescriptor.getCompactionThroughputMbPerSec() * 1024 * 1024 / 1000;
+                return totalBytesPerMS / Math.max(1, CompactionManager.instance.getActiveCompactions());
+            }
+        });
     }
 
-    @SuppressWarnings("unchecked")
-    protected static CollatingIterator getCollatingIterator(Iterable<SSTableReader> sstables) throws IOException
+    protected static List<SSTableScanner> getDirectScanners(Iterable<SSTableReader> sstables) throws IOException
     {
-        // TODO CollatingIterator iter = FBUtilities.<SSTableIdentityIterator>getCollatingIterator();
-        CollatingIterator iter = FBUtilities.getCollatingIterator();
+        List<SSTableScanner> scanners = new ArrayList<SSTableScanner>();
         for (SSTableReader sstable : sstables)
         {
-            iter.addIterator(sstable.getDirectScanner(FILE_BUFFER_SIZE));
+            scanners.add(sstable.getDirectScanner(FILE_BUFFER_SIZE));
         }
-        return iter;
+        return scanners;
     }
 
-    @Override
-    protected boolean isEqual(SSTableIdentityIterator o1, SSTableIdentityIterator o2)
+    protected AbstractCompactedRow computeNext()
     {
-        return o1.getKey().equals(o2.getKey());
+        if (!source.hasNext())
+            return endOfData();
+        // empty rows are returned as nulls
+        return source.next();
     }
 
-    public void reduce(SSTableIdentityIterator current)
+    private class Reducer extends MergeIterator.Reducer<IColumnIterator, AbstractCompactedRow>
     {
-        rows.add(current);
-    }
-
-    protected AbstractCompactedRow getReduced()
-    {
-        assert rows.size() > 0;
-
-        try
+        public void reduce(IColumnIterator current)
         {
-            AbstractCompactedRow compactedRow = getCompactedRow();
-            return compactedRow.isEmpty() ? null : compactedRow;
+            rows.add((SSTableIdentityIterator) current);
         }
-        finally
+
+        protected AbstractCompactedRow getReduced()
         {
-            rows.clear();
-            if ((row++ % 1000) == 0)
+            assert rows.size() > 0;
+
+            try
+            {
+                AbstractCompactedRow compactedRow = getCompactedRow();
+                return compactedRow.isEmpty() ? null : compactedRow;
+            }
+            finally
             {
-                bytesRead = 0;
+                rows.clear();
+                long n = 0;
                 for (SSTableScanner scanner : getScanners())
                 {
-                    bytesRead += scanner.getFilePointer();
+                    n += scanner.getFilePointer();
                 }
+                bytesRead = n;
+                throttle.throttle(bytesRead);
             }
         }
     }
@@ -148,7 +184,7 @@ implements Closeable, ICompactionInfo
 
     protected Iterable<SSTableScanner> getScanners()
     {
-        return ((CollatingIterator)source).getIterators();
+        return scanners;
     }
 
     public long getTotalBytes()
@@ -38,6 +38,7 @@ import org.apache.cassandra.db.IColumn;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.SSTableIdentityIterator;
+import org.apache.cassandra.io.sstable.SSTableMetadata;
 import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.io.util.IIterableColumns;
 import org.apache.cassandra.utils.ReducingIterator;
@@ -63,6 +64,7 @@ public class LazilyCompactedRow extends AbstractCompactedRow implements IIterabl
     private LazyColumnIterator iter;
     private int columnCount;
     private long columnSerializedSize;
+    private final SSTableMetadata.TimestampCollector timestamps = new SSTableMetadata.TimestampCollector();
 
     public LazilyCompactedRow(ColumnFamilyStore cfStore, List<SSTableIdentityIterator> rows, boolean major, int gcBefore)
     {
@@ -82,6 +84,7 @@ public class LazilyCompactedRow extends AbstractCompactedRow implements IIterabl
                 emptyColumnFamily.delete(cf);
         }
         this.shouldPurge = major || !cfStore.isKeyInRemainingSSTables(key, sstables);
+        timestamps.update(emptyColumnFamily);
 
         // initialize row header so isEmpty can be called
         headerBuffer = new DataOutputBuffer();
@@ -182,6 +185,11 @@ public class LazilyCompactedRow extends AbstractCompactedRow implements IIterabl
         return columnCount;
     }
 
+    public SSTableMetadata.TimestampCollector timestamps()
+    {
+        return timestamps;
+    }
+
     private class LazyColumnIterator extends ReducingIterator<IColumn, IColumn>
     {
         ColumnFamily container = emptyColumnFamily.cloneMeShallow();
@@ -215,6 +223,7 @@ public class LazilyCompactedRow extends AbstractCompactedRow implements IIterabl
                 return null;
             }
             container.clear();
+            timestamps.update(reduced);
             serializedSize += reduced.serializedSize();
             size++;
             return reduced;
@@ -37,6 +37,7 @@ import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.SSTableIdentityIterator;
+import org.apache.cassandra.io.sstable.SSTableMetadata;
 import org.apache.cassandra.io.util.DataOutputBuffer;
 
 /**
@@ -48,11 +49,13 @@ public class PrecompactedRow extends AbstractCompactedRow
 
     private final DataOutputBuffer buffer;
     private int columnCount = 0;
+    private final SSTableMetadata.TimestampCollector timestamps = new SSTableMetadata.TimestampCollector();
 
     public PrecompactedRow(DecoratedKey key, DataOutputBuffer buffer)
     {
         super(key);
         this.buffer = buffer;
+        timestamps.updateUnknown();
     }
 
     public PrecompactedRow(ColumnFamilyStore cfStore, List<SSTableIdentityIterator> rows, boolean major, int gcBefore)
@@ -95,6 +98,7 @@ public class PrecompactedRow extends AbstractCompactedRow
             if (cfPurged == null)
                 return;
             columnCount = ColumnFamily.serializer().serializeWithIndexes(cfPurged, buffer);
+            timestamps.update(cfPurged);
         }
         else
         {
@@ -103,6 +107,8 @@ public class PrecompactedRow extends AbstractCompactedRow
             {
                 rows.get(0).echoData(buffer);
                 columnCount = rows.get(0).columnCount;
+                // the row is copied without being deserialized, so we can only bound it by its sstable
+                timestamps.update(rows.get(0).sstable.getSSTableMetadata());
             }
             catch (IOException e)
             {
@@ -131,4 +137,9 @@ public class PrecompactedRow extends AbstractCompactedRow
     {
         return columnCount;
     }
+
+    public SSTableMetadata.TimestampCollector timestamps()
+    {
+        return timestamps;
+    }
 }
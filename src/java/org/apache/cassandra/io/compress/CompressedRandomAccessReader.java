@@ -0,0 +1,254 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.cassandra.io.compress;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.cassandra.io.util.FileMark;
+import org.apache.cassandra.io.util.RandomAccessFileDataInput;
+
+/**
+ * Reads a file written by CompressedSequentialWriter. All positions are positions in the uncompressed
+ * data; reading from a position decompresses the single chunk that holds it, which is then kept
+ * around to serve following reads.
+ */
+public class CompressedRandomAccessReader extends RandomAccessFile implements RandomAccessFileDataInput
+{
+    private final String filePath;
+    private final CompressionMetadata metadata;
+    private final FileChannel channel;
+    // where the decompression state comes from and goes back to on close, or null to discard it
+    private final Queue<Decompressor> pool;
+    private final Decompressor decompressor;
+    private final Inflater inflater;
+
+    // the decompressed chunk starting at `bufferOffset`, of which `validBufferBytes` are valid
+    private final byte[] buffer;
+    private long bufferOffset = -1;
+    private int validBufferBytes;
+
+    private long current;
+    private long markedPointer;
+    private boolean closed;
+
+    public CompressedRandomAccessReader(String path, CompressionMetadata metadata) throws IOException
+    {
+        this(path, metadata, null);
+    }
+
+    /**
+     * @param pool decompression state left by readers of the same file that have been closed, to reuse
+     * rather than allocating a chunk buffer and an Inflater per reader; this reader returns its own on close
+     */
+    public CompressedRandomAccessReader(String path, CompressionMetadata metadata, Queue<Decompressor> pool) throws IOException
+    {
+        super(new File(path), "r");
+        this.filePath = path;
+        this.metadata = metadata;
+        this.pool = pool;
+        channel = getChannel();
+        Decompressor pooled = pool == null ? null : pool.poll();
+        decompressor = pooled == null ? new Decompressor(metadata.chunkLength) : pooled;
+        inflater = decompressor.inflater;
+        buffer = decompressor.buffer;
+    }
+
+    private void reBuffer() throws IOException
+    {
+        int chunk = metadata.chunkFor(current);
+        long chunkOffset = metadata.chunkOffset(chunk);
+        int length = metadata.chunkCompressedLength(chunk);
+        if (decompressor.compressed.length < length)
+            decompressor.compressed = new byte[length];
+        byte[] compressed = decompressor.compressed;
+
+        ByteBuffer bb = ByteBuffer.wrap(compressed, 0, length);
+        while (bb.hasRemaining())
+        {
+            if (channel.read(bb, chunkOffset + bb.position()) < 0)
+                throw new EOFException("unexpected end of " + filePath + " reading chunk " + chunk);
+        }
+
+        inflater.reset();
+        inflater.setInput(compressed, 0, length);
+        try
+        {
+            int n = 0;
+            while (!inflater.finished())
+            {
+                int inflated = inflater.inflate(buffer, n, buffer.length - n);
+                // no progress with the chunk unfinished: it is truncated, or longer than a chunk
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary() || n == buffer.length))
+                    throw new IOException("corrupt chunk " + chunk + " in " + filePath);
+                n += inflated;
+            }
+            validBufferBytes = n;
+        }
+        catch (DataFormatException e)
+        {
+            throw new IOException("corrupt chunk " + chunk + " in " + filePath, e);
+        }
+        bufferOffset = (long) chunk * metadata.chunkLength;
+    }
+
+    private boolean isCurrentBuffered()
+    {
+        return bufferOffset >= 0 && current >= bufferOffset && current < bufferOffset + validBufferBytes;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (isEOF())
+            return -1;
+        if (!isCurrentBuffered())
+            reBuffer();
+        return buffer[(int) (current++ - bufferOffset)] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException
+    {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int offset, int length) throws IOException
+    {
+        if (length == 0)
+            return 0;
+        if (isEOF())
+            return -1;
+        if (!isCurrentBuffered())
+            reBuffer();
+
+        int position = (int) (current - bufferOffset);
+        int n = Math.min(length, validBufferBytes - position);
+        System.arraycopy(buffer, position, b, offset, n);
+        current += n;
+        return n;
+    }
+
+    @Override
+    public void seek(long position) throws IOException
+    {
+        if (position < 0 || position > metadata.dataLength)
+            throw new IOException(String.format("unable to seek to position %d in %s (%d bytes)", position, filePath, metadata.dataLength));
+        current = position;
+    }
+
+    @Override
+    public int skipBytes(int count) throws IOException
+    {
+        if (count <= 0)
+            return 0;
+        int n = (int) Math.min(count, bytesRemaining());
+        current += n;
+        return n;
+    }
+
+    @Override
+    public long getFilePointer()
+    {
+        return current;
+    }
+
+    /**
+     * @return the uncompressed length of the file
+     */
+    @Override
+    public long length()
+    {
+        return metadata.dataLength;
+    }
+
+    public String getPath()
+    {
+        return filePath;
+    }
+
+    public boolean isEOF()
+    {
+        return current == metadata.dataLength;
+    }
+
+    public long bytesRemaining()
+    {
+        return metadata.dataLength - current;
+    }
+
+    public FileMark mark()
+    {
+        markedPointer = current;
+        return new CompressedSequentialWriter.CompressedFileMark(markedPointer);
+    }
+
+    public void reset(FileMark mark) throws IOException
+    {
+        assert mark instanceof CompressedSequentialWriter.CompressedFileMark;
+        seek(((CompressedSequentialWriter.CompressedFileMark) mark).pointer);
+    }
+
+    public int bytesPastMark(FileMark mark)
+    {
+        assert mark instanceof CompressedSequentialWriter.CompressedFileMark;
+        long bytes = current - ((CompressedSequentialWriter.CompressedFileMark) mark).pointer;
+        assert bytes >= 0;
+        if (bytes > Integer.MAX_VALUE)
+            throw new UnsupportedOperationException("Overflow: " + bytes);
+        return (int) bytes;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        // the decompressor must only be released once, or two readers could end up sharing it
+        if (closed)
+            return;
+        closed = true;
+        if (pool == null || !pool.offer(decompressor))
+            inflater.end();
+        super.close();
+    }
+
+    /**
+     * The buffers and Inflater a reader decompresses chunks with, which outlive it when pooled.
+     */
+    public static class Decompressor
+    {
+        private final Inflater inflater = new Inflater();
+        private final byte[] buffer;
+        private byte[] compressed;
+
+        Decompressor(int chunkLength)
+        {
+            buffer = new byte[chunkLength];
+            compressed = new byte[chunkLength + (chunkLength >> 4) + 64];
+        }
+    }
+}
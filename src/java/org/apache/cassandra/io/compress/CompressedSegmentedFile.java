@@ -0,0 +1,100 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.cassandra.io.compress;
+
+import java.io.IOError;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.apache.cassandra.io.util.FileDataInput;
+import org.apache.cassandra.io.util.SegmentedFile;
+
+/**
+ * A SegmentedFile over a compressed data file: the length of the file is its uncompressed length, and
+ * segments decompress chunks as they are read.
+ */
+public class CompressedSegmentedFile extends SegmentedFile
+{
+    // the most decompressors kept for reuse, about the number of reads that can be in progress at once
+    private static final int MAX_POOLED_DECOMPRESSORS = 32;
+
+    public final CompressionMetadata metadata;
+    // the chunk buffers and Inflaters of closed segments, reused by the next ones
+    private final Queue<CompressedRandomAccessReader.Decompressor> decompressors
+        = new ArrayBlockingQueue<CompressedRandomAccessReader.Decompressor>(MAX_POOLED_DECOMPRESSORS);
+
+    public CompressedSegmentedFile(String path, CompressionMetadata metadata)
+    {
+        super(path, metadata.dataLength);
+        this.metadata = metadata;
+    }
+
+    public static class Builder extends SegmentedFile.Builder
+    {
+        /**
+         * Adds a position that would be a safe place for a segment boundary in the file. For a block/row based file
+         * format, safe boundaries are block/row edges.
+         * @param boundary The absolute position of the potential boundary in the file.
+         */
+        public void addPotentialBoundary(long boundary)
+        {
+            // only one segment in a compressed file
+        }
+
+        /**
+         * Called after all potential boundaries have been added to apply this Builder to a concrete file on disk.
+         * @param path The file on disk.
+         */
+        public SegmentedFile complete(String path)
+        {
+            try
+            {
+                return new CompressedSegmentedFile(path, CompressionMetadata.create(path));
+            }
+            catch (IOException e)
+            {
+                throw new IOError(e);
+            }
+        }
+    }
+
+    public FileDataInput getSegment(long position, int bufferSize)
+    {
+        try
+        {
+            CompressedRandomAccessReader file = openReader();
+            file.seek(position);
+            return file;
+        }
+        catch (IOException e)
+        {
+            throw new IOError(e);
+        }
+    }
+
+    /**
+     * @return a reader positioned at the start of the file, which reuses the decompression state of closed ones
+     */
+    public CompressedRandomAccessReader openReader() throws IOException
+    {
+        return new CompressedRandomAccessReader(path, metadata, decompressors);
+    }
+}
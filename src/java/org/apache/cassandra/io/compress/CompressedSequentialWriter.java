@@ -0,0 +1,232 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.cassandra.io.compress;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.cassandra.io.util.FileDataOutput;
+import org.apache.cassandra.io.util.FileMark;
+
+/**
+ * Writes a data file as a sequence of independently deflated chunks of chunkLength (uncompressed) bytes,
+ * recording the offset of each chunk so that it can be read back with a CompressedRandomAccessReader.
+ * The chunk offsets are written to the given metadata file on close.
+ *
+ * Positions exposed by this class (getFilePointer, marks) are positions in the uncompressed data.
+ */
+public class CompressedSequentialWriter extends RandomAccessFile implements FileDataOutput
+{
+    private final String filePath;
+    private final String metadataPath;
+    private final int chunkLength;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    // uncompressed data not yet written: `bufferOffset` is its position in the uncompressed data
+    private final byte[] buffer;
+    private int bufferCount;
+    private long bufferOffset;
+
+    private byte[] compressed;
+    private long[] chunkOffsets = new long[64];
+    private int chunkCount;
+    // length of the compressed data written to disk so far
+    private long compressedLength;
+    private boolean closed;
+
+    public CompressedSequentialWriter(File file, String metadataPath, int chunkLength) throws IOException
+    {
+        super(file, "rw");
+        this.filePath = file.getAbsolutePath();
+        this.metadataPath = metadataPath;
+        this.chunkLength = chunkLength;
+        buffer = new byte[chunkLength];
+        compressed = new byte[chunkLength + (chunkLength >> 4) + 64];
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        if (bufferCount == chunkLength)
+            flushChunk();
+        buffer[bufferCount++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException
+    {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int offset, int length) throws IOException
+    {
+        while (length > 0)
+        {
+            if (bufferCount == chunkLength)
+                flushChunk();
+            int n = Math.min(length, chunkLength - bufferCount);
+            System.arraycopy(b, offset, buffer, bufferCount, n);
+            bufferCount += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Compresses the buffered data as a new chunk and appends it to the file.
+     */
+    private void flushChunk() throws IOException
+    {
+        deflater.reset();
+        deflater.setInput(buffer, 0, bufferCount);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished())
+        {
+            if (length == compressed.length)
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        if (chunkCount == chunkOffsets.length)
+            chunkOffsets = Arrays.copyOf(chunkOffsets, chunkOffsets.length * 2);
+        chunkOffsets[chunkCount++] = compressedLength;
+        super.write(compressed, 0, length);
+        compressedLength += length;
+
+        bufferOffset += bufferCount;
+        bufferCount = 0;
+    }
+
+    @Override
+    public long getFilePointer()
+    {
+        return bufferOffset + bufferCount;
+    }
+
+    @Override
+    public long length()
+    {
+        return getFilePointer();
+    }
+
+    @Override
+    public void seek(long position) throws IOException
+    {
+        throw new UnsupportedOperationException("compressed files can only be written sequentially");
+    }
+
+    public String getPath()
+    {
+        return filePath;
+    }
+
+    public FileMark mark()
+    {
+        return new CompressedFileMark(getFilePointer());
+    }
+
+    /**
+     * Rewinds to the given mark. If the mark lies in a chunk that has already been written, that
+     * chunk is read back and decompressed, and it and any later chunks are removed from the file.
+     */
+    public void reset(FileMark mark) throws IOException
+    {
+        assert mark instanceof CompressedFileMark;
+        long pointer = ((CompressedFileMark) mark).pointer;
+        assert pointer <= getFilePointer();
+
+        if (pointer >= bufferOffset)
+        {
+            bufferCount = (int) (pointer - bufferOffset);
+            return;
+        }
+
+        int chunk = (int) (pointer / chunkLength);
+        long chunkOffset = chunkOffsets[chunk];
+        int length = (int) ((chunk + 1 < chunkCount ? chunkOffsets[chunk + 1] : compressedLength) - chunkOffset);
+        if (compressed.length < length)
+            compressed = new byte[length];
+        super.seek(chunkOffset);
+        readFully(compressed, 0, length);
+
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(compressed, 0, length);
+            int n = 0;
+            while (!inflater.finished())
+                n += inflater.inflate(buffer, n, chunkLength - n);
+            assert n == chunkLength;
+        }
+        catch (DataFormatException e)
+        {
+            throw new IOException("unable to re-read chunk " + chunk + " of " + filePath, e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+
+        bufferOffset = (long) chunk * chunkLength;
+        bufferCount = (int) (pointer - bufferOffset);
+        chunkCount = chunk;
+        compressedLength = chunkOffset;
+        super.seek(chunkOffset);
+        setLength(chunkOffset);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        // closing the channel calls back into close()
+        if (closed)
+            return;
+        closed = true;
+
+        if (bufferCount > 0)
+            flushChunk();
+        getChannel().force(true);
+        deflater.end();
+        super.close();
+
+        CompressionMetadata metadata = new CompressionMetadata(chunkLength,
+                                                               bufferOffset,
+                                                               compressedLength,
+                                                               Arrays.copyOf(chunkOffsets, chunkCount));
+        metadata.write(metadataPath);
+    }
+
+    protected static class CompressedFileMark implements FileMark
+    {
+        final long pointer;
+
+        public CompressedFileMark(long pointer)
+        {
+            this.pointer = pointer;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.cassandra.io.compress;
+
+import java.io.*;
+
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.util.FileUtils;
+
+/**
+ * Describes the layout of a compressed data file: the uncompressed data is cut into chunks of
+ * chunkLength bytes, each of which is compressed independently, and the offset in the compressed
+ * file of every chunk is recorded so that any uncompressed position can be reached by reading and
+ * decompressing a single chunk.
+ */
+public class CompressionMetadata
+{
+    public final int chunkLength;
+    /** length of the data before compression */
+    public final long dataLength;
+    /** length of the compressed file on disk */
+    public final long compressedFileLength;
+    private final long[] chunkOffsets;
+
+    public CompressionMetadata(int chunkLength, long dataLength, long compressedFileLength, long[] chunkOffsets)
+    {
+        assert chunkLength > 0 && chunkOffsets.length == (dataLength + chunkLength - 1) / chunkLength;
+        this.chunkLength = chunkLength;
+        this.dataLength = dataLength;
+        this.compressedFileLength = compressedFileLength;
+        this.chunkOffsets = chunkOffsets;
+    }
+
+    /**
+     * Reads the compression metadata stored alongside the given data file.
+     */
+    public static CompressionMetadata create(String dataFilePath) throws IOException
+    {
+        return read(Descriptor.fromFilename(dataFilePath).filenameFor(Component.COMPRESSION_INFO));
+    }
+
+    public static CompressionMetadata read(String path) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+        try
+        {
+            int chunkLength = in.readInt();
+            long dataLength = in.readLong();
+            long compressedFileLength = in.readLong();
+            long[] chunkOffsets = new long[in.readInt()];
+            for (int i = 0; i < chunkOffsets.length; i++)
+                chunkOffsets[i] = in.readLong();
+            return new CompressionMetadata(chunkLength, dataLength, compressedFileLength, chunkOffsets);
+        }
+        finally
+        {
+            FileUtils.closeQuietly(in);
+        }
+    }
+
+    public void write(String path) throws IOException
+    {
+        FileOutputStream fos = new FileOutputStream(path);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        out.writeInt(chunkLength);
+        out.writeLong(dataLength);
+        out.writeLong(compressedFileLength);
+        out.writeInt(chunkOffsets.length);
+        for (long offset : chunkOffsets)
+            out.writeLong(offset);
+        out.flush();
+        fos.getFD().sync();
+        out.close();
+    }
+
+    public int chunkCount()
+    {
+        return chunkOffsets.length;
+    }
+
+    /**
+     * @return the index of the chunk holding the given uncompressed position
+     */
+    public int chunkFor(long position)
+    {
+        assert position >= 0 && position < dataLength : position + " not in [0," + dataLength + ")";
+        return (int) (position / chunkLength);
+    }
+
+    /**
+     * @return the position in the compressed file of the given chunk
+     */
+    public long chunkOffset(int chunk)
+    {
+        return chunkOffsets[chunk];
+    }
+
+    /**
+     * @return the compressed length of the given chunk
+     */
+    public int chunkCompressedLength(int chunk)
+    {
+        long end = chunk + 1 < chunkOffsets.length ? chunkOffsets[chunk + 1] : compressedFileLength;
+        return (int) (end - chunkOffsets[chunk]);
+    }
+}
@@ -38,7 +38,7 @@ import org.apache.cassandra.utils.Pair;
 public class Descriptor
 {
     public static final String LEGACY_VERSION = "a";
-    public static final String CURRENT_VERSION = "f";
+    public static final String CURRENT_VERSION = "k";
 
     public final File directory;
     public final String version;
@@ -53,6 +53,11 @@ public class Descriptor
     public final boolean hasEncodedKeys;
     public final boolean isLatestVersion;
     public final boolean usesOldBloomFilter;
+    public final boolean hasTimestampStats;
+    public final boolean hasSSTableLevel;
+    public final boolean usesBlockedBloomFilter;
+    public final boolean hasPromotedIndexes;
+    public final boolean hasRepairedAt;
 
     /**
      * A descriptor that assumes CURRENT_VERSION.
@@ -78,6 +83,11 @@ public class Descriptor
         hasEncodedKeys = version.compareTo("e") < 0;
         isLatestVersion = version.compareTo(CURRENT_VERSION) == 0;
         usesOldBloomFilter = version.compareTo("f") < 0;
+        hasTimestampStats = version.compareTo("g") >= 0;
+        hasSSTableLevel = version.compareTo("h") >= 0;
+        usesBlockedBloomFilter = version.compareTo("i") >= 0;
+        hasPromotedIndexes = version.compareTo("j") >= 0;
+        hasRepairedAt = version.compareTo("k") >= 0;
     }
 
     public String filenameFor(Component component)
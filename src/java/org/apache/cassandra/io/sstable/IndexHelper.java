@@ -68,6 +68,61 @@ public class IndexHelper
             throw new EOFException();
 	}
     
+    /**
+     * Skip the row header promoted into a primary index entry, if the sstable has them
+     * @param in the index input, positioned after the data position of the entry
+     * @throws IOException
+     */
+    public static void skipPromotedIndex(DataInput in, Descriptor desc) throws IOException
+    {
+        if (!desc.hasPromotedIndexes)
+            return;
+        int size = in.readInt();
+        if (in.skipBytes(size) != size)
+            throw new EOFException();
+    }
+
+    /**
+     * Read the row header promoted into a primary index entry
+     * @param in the index input, positioned after the data position of the entry
+     * @return the header, or null if the row has none in the index
+     * @throws IOException
+     */
+    public static byte[] readPromotedIndex(DataInput in, Descriptor desc) throws IOException
+    {
+        if (!desc.hasPromotedIndexes)
+            return null;
+        int size = in.readInt();
+        if (size == 0)
+            return null;
+        byte[] header = new byte[size];
+        in.readFully(header);
+        return header;
+    }
+
+    /**
+     * The size of the header of a serialized row: its column bloom filter, column index, deletion info and
+     * column count. Only rows with a column index have their header promoted into the primary index.
+     * @param row the serialized row, starting at its column bloom filter
+     * @param length the number of bytes of the row available
+     * @return the size of the header, 0 if the row has no column index, or the negation of the number of
+     * bytes needed to tell when fewer than that are available
+     */
+    public static int promotableHeaderSize(byte[] row, int offset, int length)
+    {
+        if (length < 4)
+            return -4;
+        ByteBuffer bytes = ByteBuffer.wrap(row);
+        int indexSizeEnd = 4 + bytes.getInt(offset) + 4;
+        if (length < indexSizeEnd)
+            return -indexSizeEnd;
+        int indexSize = bytes.getInt(offset + indexSizeEnd - 4);
+        if (indexSize == 0)
+            return 0;
+        // deletion info, then the column count
+        return indexSizeEnd + indexSize + 4 + 8 + 4;
+    }
+
     /**
      * Deserialize the index into a structure and return it
      * @throws IOException
@@ -21,29 +21,69 @@ package org.apache.cassandra.io.sstable;
  */
 
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.ByteOrderedPartitioner;
+import org.apache.cassandra.dht.BigIntegerToken;
+import org.apache.cassandra.dht.BytesToken;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.RandomPartitioner;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.utils.FBUtilities;
 
 /**
  * Two approaches to building an IndexSummary:
  * 1. Call maybeAddEntry with every potential index entry
  * 2. Call shouldAddEntry, [addEntry,] incrementRowid
+ *
+ * Sampled keys are packed end to end into a single byte array, with an offset table
+ * marking where each key begins and a parallel array of index positions, so that
+ * the summary costs a handful of objects per sstable rather than several per entry.
  */
 public class IndexSummary
 {
-    private ArrayList<KeyPosition> indexPositions;
     private long keysWritten = 0;
 
+    // the sampled keys, concatenated: key i spans [keyOffsets[i], keyOffsets[i + 1]), the last ending at keysLength
+    private byte[] keys;
+    private int keysLength;
+    private int[] keyOffsets;
+    // the position in the index file of each sampled key
+    private long[] indexPositions;
+    private int size;
+
+    // the tokens of the sampled keys, computed on the first search so that probes don't decorate the samples:
+    // for the random partitioner, each as TOKEN_LENGTH unsigned big-endian bytes; otherwise, as Token objects
+    private volatile byte[] packedTokens;
+    private volatile Token[] tokens;
+    private static final int TOKEN_LENGTH = 16;
+
     public IndexSummary(long expectedKeys)
     {
         long expectedEntries = expectedKeys / DatabaseDescriptor.getIndexInterval();
         if (expectedEntries > Integer.MAX_VALUE)
             // TODO: that's a _lot_ of keys, or a very low interval
             throw new RuntimeException("Cannot use index_interval of " + DatabaseDescriptor.getIndexInterval() + " with " + expectedKeys + " (expected) keys.");
-        indexPositions = new ArrayList<KeyPosition>((int)expectedEntries);
+        int capacity = Math.max((int) expectedEntries, 1);
+        keyOffsets = new int[capacity];
+        indexPositions = new long[capacity];
+        keys = new byte[capacity * 16];
+    }
+
+    private IndexSummary(byte[] keys, int[] keyOffsets, long[] indexPositions)
+    {
+        this.keys = keys;
+        this.keysLength = keys.length;
+        this.keyOffsets = keyOffsets;
+        this.indexPositions = indexPositions;
+        this.size = indexPositions.length;
     }
 
     public void incrementRowid()
@@ -58,7 +98,21 @@ public class IndexSummary
 
     public void addEntry(DecoratedKey decoratedKey, long indexPosition)
     {
-        indexPositions.add(new KeyPosition(decoratedKey, indexPosition));
+        ByteBuffer key = decoratedKey.key;
+        int length = key.remaining();
+        if (size == indexPositions.length)
+        {
+            keyOffsets = Arrays.copyOf(keyOffsets, size * 2);
+            indexPositions = Arrays.copyOf(indexPositions, size * 2);
+        }
+        if (keysLength + length > keys.length)
+            keys = Arrays.copyOf(keys, Math.max(keys.length * 2, keysLength + length));
+
+        key.duplicate().get(keys, keysLength, length);
+        keyOffsets[size] = keysLength;
+        indexPositions[size] = indexPosition;
+        keysLength += length;
+        size++;
     }
 
     public void maybeAddEntry(DecoratedKey decoratedKey, long indexPosition)
@@ -68,41 +122,171 @@ public class IndexSummary
         incrementRowid();
     }
 
-    public List<KeyPosition> getIndexPositions()
+    public void complete()
     {
-        return indexPositions;
+        keys = Arrays.copyOf(keys, keysLength);
+        keyOffsets = Arrays.copyOf(keyOffsets, size);
+        indexPositions = Arrays.copyOf(indexPositions, size);
+        packedTokens = null;
+        tokens = null;
     }
 
-    public void complete()
+    /** @return the number of sampled keys */
+    public int size()
+    {
+        return size;
+    }
+
+    /** @return the (undecorated) key of the i'th sample; the buffer shares the summary's storage */
+    public ByteBuffer getKey(int i)
     {
-        indexPositions.trimToSize();
+        int start = keyOffsets[i];
+        return ByteBuffer.wrap(keys, start, keyEnd(i) - start).slice();
+    }
+
+    /** @return the position in the index file of the i'th sample */
+    public long getPosition(int i)
+    {
+        return indexPositions[i];
+    }
+
+    private int keyEnd(int i)
+    {
+        return i + 1 < size ? keyOffsets[i + 1] : keysLength;
     }
 
     /**
-     * This is a simple container for the index Key and its corresponding position
-     * in the index file. Binary search is performed on a list of these objects
-     * to find where to start looking for the index entry containing the data position
-     * (which will be turned into a PositionSize object)
+     * Binary search for the given key, with the same contract as Collections.binarySearch:
+     * @return the index of the matching sample, or (-(insertion point) - 1) if there is none.
      */
-    public static final class KeyPosition implements Comparable<KeyPosition>
+    public int binarySearch(DecoratedKey key, IPartitioner partitioner)
     {
-        public final DecoratedKey key;
-        public final long indexPosition;
+        // the byte ordered partitioner uses the key itself as the token, so the packed keys
+        // can be compared in place; otherwise compare with the tokens of the samples
+        if (partitioner instanceof ByteOrderedPartitioner)
+            return binarySearch(keys, keyOffsets, ((BytesToken) key.token).token);
+        if (partitioner instanceof RandomPartitioner)
+        {
+            BigInteger token = ((BigIntegerToken) key.token).token;
+            // the minimum token sorts before any key
+            if (token.signum() < 0)
+                return -1;
+            return binarySearch(packedTokens(), null, pack(token, new byte[TOKEN_LENGTH], 0));
+        }
 
-        public KeyPosition(DecoratedKey key, long indexPosition)
+        Token[] sampleTokens = tokens(partitioner);
+        int low = 0, high = size - 1;
+        while (low <= high)
         {
-            this.key = key;
-            this.indexPosition = indexPosition;
+            int mid = (low + high) >>> 1;
+            int cmp = sampleTokens[mid].compareTo(key.token);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
         }
+        return -(low + 1);
+    }
 
-        public int compareTo(KeyPosition kp)
+    /**
+     * Binary search over the entries packed end to end in bytes: entry i starts at offsets[i], or at
+     * i * TOKEN_LENGTH if offsets is null, and ends where the next one starts.
+     */
+    private int binarySearch(byte[] bytes, int[] offsets, byte[] target)
+    {
+        int low = 0, high = size - 1;
+        while (low <= high)
         {
-            return key.compareTo(kp.key);
+            int mid = (low + high) >>> 1;
+            int start = offsets == null ? mid * TOKEN_LENGTH : offsets[mid];
+            int end = offsets == null ? start + TOKEN_LENGTH : keyEnd(mid);
+            int cmp = FBUtilities.compareUnsigned(bytes, target, start, 0, end, target.length);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
         }
+        return -(low + 1);
+    }
+
+    private byte[] packedTokens()
+    {
+        byte[] packed = packedTokens;
+        if (packed == null)
+        {
+            // racing searches may both compute these; they compute the same thing
+            packed = new byte[size * TOKEN_LENGTH];
+            for (int i = 0; i < size; i++)
+                pack(FBUtilities.md5hash(getKey(i)), packed, i * TOKEN_LENGTH);
+            packedTokens = packed;
+        }
+        return packed;
+    }
+
+    private Token[] tokens(IPartitioner partitioner)
+    {
+        Token[] sampleTokens = tokens;
+        if (sampleTokens == null)
+        {
+            sampleTokens = new Token[size];
+            for (int i = 0; i < size; i++)
+                sampleTokens[i] = partitioner.getToken(getKey(i));
+            tokens = sampleTokens;
+        }
+        return sampleTokens;
+    }
+
+    /**
+     * Writes a non-negative random partitioner token, which is less than 2^128, as TOKEN_LENGTH unsigned
+     * big-endian bytes, so that comparing the bytes orders tokens like comparing the numbers.
+     */
+    private static byte[] pack(BigInteger token, byte[] to, int offset)
+    {
+        byte[] bytes = token.toByteArray();
+        // toByteArray may add a leading zero byte for the sign, or need fewer bytes than TOKEN_LENGTH
+        int skip = Math.max(0, bytes.length - TOKEN_LENGTH);
+        int length = bytes.length - skip;
+        assert token.signum() >= 0 && length <= TOKEN_LENGTH : token;
+        Arrays.fill(to, offset, offset + TOKEN_LENGTH - length, (byte) 0);
+        System.arraycopy(bytes, skip, to, offset + TOKEN_LENGTH - length, length);
+        return to;
+    }
+
+    public static void serialize(IndexSummary summary, DataOutput out) throws IOException
+    {
+        out.writeInt(DatabaseDescriptor.getIndexInterval());
+        out.writeInt(summary.size);
+        out.writeInt(summary.keysLength);
+        for (int i = 0; i < summary.size; i++)
+        {
+            out.writeInt(summary.keyOffsets[i]);
+            out.writeLong(summary.indexPositions[i]);
+        }
+        out.write(summary.keys, 0, summary.keysLength);
+    }
 
-        public String toString()
+    /**
+     * @return the deserialized summary, or null if it was sampled at a different index_interval
+     * than the one currently configured.
+     */
+    public static IndexSummary deserialize(DataInput in) throws IOException
+    {
+        if (in.readInt() != DatabaseDescriptor.getIndexInterval())
+            return null;
+        int size = in.readInt();
+        byte[] keys = new byte[in.readInt()];
+        int[] keyOffsets = new int[size];
+        long[] indexPositions = new long[size];
+        for (int i = 0; i < size; i++)
         {
-            return key + ":" + indexPosition;
+            keyOffsets[i] = in.readInt();
+            indexPositions[i] = in.readLong();
         }
+        in.readFully(keys);
+        return new IndexSummary(keys, keyOffsets, indexPositions);
     }
 }
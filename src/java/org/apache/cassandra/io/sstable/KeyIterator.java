@@ -63,6 +63,7 @@ public class KeyIterator extends AbstractIterator<DecoratedKey> implements Itera
                 return endOfData();
             DecoratedKey key = SSTableReader.decodeKey(StorageService.getPartitioner(), desc, FBUtilities.readShortByteArray(in));
             in.readLong(); // skip data position
+            IndexHelper.skipPromotedIndex(in, desc);
             return key;
         }
         catch (IOException e)
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.io.sstable;
+
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.io.util.FileDataInput;
+import org.apache.cassandra.io.util.MappedFileDataInput;
+
+/**
+ * The position of a row in the data file, along with the header of the row (its column bloom filter,
+ * column index, deletion info and column count) when that was promoted into the primary index.
+ */
+public class RowIndexEntry
+{
+    public final long position;
+    private final byte[] header;
+
+    public RowIndexEntry(long position, byte[] header)
+    {
+        this.position = position;
+        this.header = header;
+    }
+
+    public boolean isPromoted()
+    {
+        return header != null;
+    }
+
+    /**
+     * @return the position of the first column of the row in the data file: the row header is
+     * preceded by the key and the row size.
+     */
+    public long columnsPosition(DecoratedKey key)
+    {
+        assert header != null;
+        return position + 2 + key.key.remaining() + 8 + header.length;
+    }
+
+    /**
+     * @return an input over the promoted row header, in place of the header in the data file.
+     */
+    public FileDataInput header(String path)
+    {
+        assert header != null;
+        return new MappedFileDataInput(ByteBuffer.wrap(header), path, 0);
+    }
+}
@@ -67,8 +67,8 @@ public abstract class SSTable
     public final CFMetaData metadata;
     public final IPartitioner partitioner;
 
-    protected final EstimatedHistogram estimatedRowSize;
-    protected final EstimatedHistogram estimatedColumnCount;
+    // replaced when the sstable is marked repaired
+    protected volatile SSTableMetadata sstableMetadata;
 
     protected SSTable(Descriptor descriptor, CFMetaData metadata, IPartitioner partitioner)
     {
@@ -77,20 +77,10 @@ public abstract class SSTable
 
     protected SSTable(Descriptor descriptor, Set<Component> components, CFMetaData metadata, IPartitioner partitioner)
     {
-        this(descriptor, components, metadata, partitioner, defaultRowHistogram(), defaultColumnHistogram());
+        this(descriptor, components, metadata, partitioner, SSTableMetadata.createDefaultInstance());
     }
 
-    static EstimatedHistogram defaultColumnHistogram()
-    {
-        return new EstimatedHistogram(114);
-    }
-
-    static EstimatedHistogram defaultRowHistogram()
-    {
-        return new EstimatedHistogram(150);
-    }
-
-    protected SSTable(Descriptor descriptor, Set<Component> components, CFMetaData metadata, IPartitioner partitioner, EstimatedHistogram rowSizes, EstimatedHistogram columnCounts)
+    protected SSTable(Descriptor descriptor, Set<Component> components, CFMetaData metadata, IPartitioner partitioner, SSTableMetadata sstableMetadata)
     {
         this.descriptor = descriptor;
         Set<Component> dataComponents = new HashSet<Component>(components);
@@ -99,18 +89,67 @@ public abstract class SSTable
         this.components = Collections.unmodifiableSet(dataComponents);
         this.metadata = metadata;
         this.partitioner = partitioner;
-        estimatedRowSize = rowSizes;
-        estimatedColumnCount = columnCounts;
+        this.sstableMetadata = sstableMetadata;
     }
 
     public EstimatedHistogram getEstimatedRowSize()
     {
-        return estimatedRowSize;
+        return sstableMetadata.estimatedRowSize;
     }
 
     public EstimatedHistogram getEstimatedColumnCount()
     {
-        return estimatedColumnCount;
+        return sstableMetadata.estimatedColumnCount;
+    }
+
+    public SSTableMetadata getSSTableMetadata()
+    {
+        return sstableMetadata;
+    }
+
+    /**
+     * @return the smallest timestamp of any column or tombstone in this sstable
+     */
+    public long getMinTimestamp()
+    {
+        return sstableMetadata.minTimestamp;
+    }
+
+    /**
+     * @return the largest timestamp of any column or tombstone in this sstable
+     */
+    public long getMaxTimestamp()
+    {
+        return sstableMetadata.maxTimestamp;
+    }
+
+    /**
+     * @return the largest local deletion time of any tombstone or expiring column in this sstable
+     */
+    public int getMaxLocalDeletionTime()
+    {
+        return sstableMetadata.maxLocalDeletionTime;
+    }
+
+    /**
+     * @return the level this sstable was written to by leveled compaction; 0 for flushed or unleveled sstables
+     */
+    public int getSSTableLevel()
+    {
+        return sstableMetadata.sstableLevel;
+    }
+
+    /**
+     * @return when the contents of this sstable were last repaired, or UNREPAIRED_SSTABLE
+     */
+    public long getRepairedAt()
+    {
+        return sstableMetadata.repairedAt;
+    }
+
+    public boolean isRepaired()
+    {
+        return sstableMetadata.repairedAt != SSTableMetadata.UNREPAIRED_SSTABLE;
     }
 
     /**
@@ -137,6 +176,9 @@ public abstract class SSTable
                     continue;
                 FileUtils.deleteWithConfirm(desc.filenameFor(component));
             }
+            // the SUMMARY may have been saved after the components were listed
+            if (!components.contains(Component.SUMMARY))
+                FileUtils.delete(desc.filenameFor(Component.SUMMARY));
             // remove the COMPACTED_MARKER component last if it exists
             FileUtils.delete(desc.filenameFor(Component.COMPACTED_MARKER));
         }
@@ -219,7 +261,7 @@ public abstract class SSTable
     }
 
     /** @return An estimate of the number of keys contained in the given index file. */
-    static long estimateRowsFromIndex(BufferedRandomAccessFile ifile) throws IOException
+    static long estimateRowsFromIndex(BufferedRandomAccessFile ifile, Descriptor desc) throws IOException
     {
         // collect sizes for the first 10000 keys, or first 10 megabytes of data
         final int SAMPLES_CAP = 10000, BYTES_CAP = (int)Math.min(10000000, ifile.length());
@@ -228,6 +270,7 @@ public abstract class SSTable
         {
             FBUtilities.skipShortByteArray(ifile);
             ifile.skipBytes(8);
+            IndexHelper.skipPromotedIndex(ifile, desc);
             keys++;
         }
         assert keys > 0 && ifile.getFilePointer() > 0 && ifile.length() > 0;
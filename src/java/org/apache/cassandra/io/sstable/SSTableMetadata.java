@@ -0,0 +1,249 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.cassandra.io.sstable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.ExpiringColumn;
+import org.apache.cassandra.db.IColumn;
+import org.apache.cassandra.db.SuperColumn;
+import org.apache.cassandra.utils.EstimatedHistogram;
+
+/**
+ * Metadata for a SSTable, kept in the statistics component:
+ *  - estimated row size and column count histograms
+ *  - the range of timestamps (columns and tombstones) contained in the sstable
+ *  - the largest local deletion time of any tombstone or expiring column
+ *  - the level the sstable belongs to, for leveled compaction
+ *  - when the contents of the sstable were last repaired, if ever
+ *
+ * The timestamp range lets the read path skip sstables that cannot contain anything
+ * newer than what has already been read.  SSTables written before the range was
+ * recorded get a range that covers everything.
+ *
+ * Repaired sstables are left out of validation, since their contents already agree with the
+ * other replicas, and are never compacted together with unrepaired ones.
+ */
+public class SSTableMetadata
+{
+    public static final SSTableMetadataSerializer serializer = new SSTableMetadataSerializer();
+
+    public static final long UNREPAIRED_SSTABLE = 0;
+
+    public final EstimatedHistogram estimatedRowSize;
+    public final EstimatedHistogram estimatedColumnCount;
+    public final long minTimestamp;
+    public final long maxTimestamp;
+    public final int maxLocalDeletionTime;
+    public final int sstableLevel;
+    public final long repairedAt;
+
+    SSTableMetadata(EstimatedHistogram rowSizes, EstimatedHistogram columnCounts, long minTimestamp, long maxTimestamp, int maxLocalDeletionTime, int sstableLevel, long repairedAt)
+    {
+        this.estimatedRowSize = rowSizes;
+        this.estimatedColumnCount = columnCounts;
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.maxLocalDeletionTime = maxLocalDeletionTime;
+        this.sstableLevel = sstableLevel;
+        this.repairedAt = repairedAt;
+    }
+
+    /**
+     * @return metadata for an sstable we know nothing about: empty histograms and unbounded timestamps.
+     */
+    static SSTableMetadata createDefaultInstance()
+    {
+        return new SSTableMetadata(defaultRowHistogram(), defaultColumnHistogram(), Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, 0, UNREPAIRED_SSTABLE);
+    }
+
+    /**
+     * @return a copy of this metadata, for the same sstable repaired at the given time.
+     */
+    public SSTableMetadata withRepairedAt(long repairedAt)
+    {
+        return new SSTableMetadata(estimatedRowSize, estimatedColumnCount, minTimestamp, maxTimestamp, maxLocalDeletionTime, sstableLevel, repairedAt);
+    }
+
+    public static Collector createCollector()
+    {
+        return new Collector();
+    }
+
+    static EstimatedHistogram defaultColumnHistogram()
+    {
+        return new EstimatedHistogram(114);
+    }
+
+    static EstimatedHistogram defaultRowHistogram()
+    {
+        return new EstimatedHistogram(150);
+    }
+
+    /**
+     * Tracks the timestamp range and largest local deletion time of the data it is shown.
+     */
+    public static class TimestampCollector
+    {
+        protected long minTimestamp = Long.MAX_VALUE;
+        protected long maxTimestamp = Long.MIN_VALUE;
+        protected int maxLocalDeletionTime = Integer.MIN_VALUE;
+
+        public void updateTimestamp(long timestamp)
+        {
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+
+        public void updateLocalDeletionTime(int localDeletionTime)
+        {
+            maxLocalDeletionTime = Math.max(maxLocalDeletionTime, localDeletionTime);
+        }
+
+        /**
+         * Includes the row tombstone and every column of the given row.
+         */
+        public void update(ColumnFamily cf)
+        {
+            if (cf.isMarkedForDelete())
+            {
+                updateTimestamp(cf.getMarkedForDeleteAt());
+                updateLocalDeletionTime(cf.getLocalDeletionTime());
+            }
+            for (IColumn column : cf.getSortedColumns())
+                update(column);
+        }
+
+        public void update(IColumn column)
+        {
+            if (column instanceof SuperColumn)
+            {
+                if (column.isMarkedForDelete())
+                {
+                    updateTimestamp(column.getMarkedForDeleteAt());
+                    updateLocalDeletionTime(column.getLocalDeletionTime());
+                }
+                for (IColumn subColumn : column.getSubColumns())
+                    update(subColumn);
+                return;
+            }
+
+            updateTimestamp(column.timestamp());
+            if (column instanceof ExpiringColumn || column.isMarkedForDelete())
+                updateLocalDeletionTime(column.getLocalDeletionTime());
+        }
+
+        public void update(TimestampCollector other)
+        {
+            minTimestamp = Math.min(minTimestamp, other.minTimestamp);
+            maxTimestamp = Math.max(maxTimestamp, other.maxTimestamp);
+            updateLocalDeletionTime(other.maxLocalDeletionTime);
+        }
+
+        /**
+         * Widens the collected ranges to cover those of the given sstable, for data copied
+         * verbatim from it without being deserialized.
+         */
+        public void update(SSTableMetadata metadata)
+        {
+            minTimestamp = Math.min(minTimestamp, metadata.minTimestamp);
+            maxTimestamp = Math.max(maxTimestamp, metadata.maxTimestamp);
+            updateLocalDeletionTime(metadata.maxLocalDeletionTime);
+        }
+
+        /**
+         * Used when data of unknown content is written (e.g. pre-serialized rows): the
+         * resulting sstable must be assumed to contain any timestamp.
+         */
+        public void updateUnknown()
+        {
+            minTimestamp = Long.MIN_VALUE;
+            maxTimestamp = Long.MAX_VALUE;
+            maxLocalDeletionTime = Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Accumulates metadata while an sstable is being written.
+     */
+    public static class Collector extends TimestampCollector
+    {
+        protected final EstimatedHistogram estimatedRowSize = defaultRowHistogram();
+        protected final EstimatedHistogram estimatedColumnCount = defaultColumnHistogram();
+        protected int sstableLevel = 0;
+        protected long repairedAt = UNREPAIRED_SSTABLE;
+
+        public void addRowSize(long rowSize)
+        {
+            estimatedRowSize.add(rowSize);
+        }
+
+        public void addColumnCount(long columnCount)
+        {
+            estimatedColumnCount.add(columnCount);
+        }
+
+        public void setSSTableLevel(int sstableLevel)
+        {
+            this.sstableLevel = sstableLevel;
+        }
+
+        public void setRepairedAt(long repairedAt)
+        {
+            this.repairedAt = repairedAt;
+        }
+
+        public SSTableMetadata finalizeMetadata()
+        {
+            return new SSTableMetadata(estimatedRowSize, estimatedColumnCount, minTimestamp, maxTimestamp, maxLocalDeletionTime, sstableLevel, repairedAt);
+        }
+    }
+
+    public static class SSTableMetadataSerializer
+    {
+        public void serialize(SSTableMetadata sstableStats, DataOutputStream dos) throws IOException
+        {
+            EstimatedHistogram.serializer.serialize(sstableStats.estimatedRowSize, dos);
+            EstimatedHistogram.serializer.serialize(sstableStats.estimatedColumnCount, dos);
+            dos.writeLong(sstableStats.minTimestamp);
+            dos.writeLong(sstableStats.maxTimestamp);
+            dos.writeInt(sstableStats.maxLocalDeletionTime);
+            dos.writeInt(sstableStats.sstableLevel);
+            dos.writeLong(sstableStats.repairedAt);
+        }
+
+        public SSTableMetadata deserialize(DataInputStream dis, Descriptor desc) throws IOException
+        {
+            EstimatedHistogram rowSizes = EstimatedHistogram.serializer.deserialize(dis);
+            EstimatedHistogram columnCounts = EstimatedHistogram.serializer.deserialize(dis);
+            if (!desc.hasTimestampStats)
+                return new SSTableMetadata(rowSizes, columnCounts, Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, 0, UNREPAIRED_SSTABLE);
+            long minTimestamp = dis.readLong();
+            long maxTimestamp = dis.readLong();
+            int maxLocalDeletionTime = dis.readInt();
+            int sstableLevel = desc.hasSSTableLevel ? dis.readInt() : 0;
+            long repairedAt = desc.hasRepairedAt ? dis.readLong() : UNREPAIRED_SSTABLE;
+            return new SSTableMetadata(rowSizes, columnCounts, minTimestamp, maxTimestamp, maxLocalDeletionTime, sstableLevel, repairedAt);
+        }
+    }
+}
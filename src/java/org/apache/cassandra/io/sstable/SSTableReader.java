@@ -25,12 +25,10 @@ import java.lang.ref.ReferenceQueue;
 import java.nio.ByteBuffer;
 import java.util.*;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Collections2;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.cache.InstrumentedCache;
+import org.apache.cassandra.cache.KeyCache;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
@@ -40,9 +38,12 @@ import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.io.ICompactSerializer2;
+import org.apache.cassandra.io.compress.CompressedSegmentedFile;
 import org.apache.cassandra.io.util.BufferedRandomAccessFile;
 import org.apache.cassandra.io.util.FileDataInput;
+import org.apache.cassandra.io.util.FileMark;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.RandomAccessFileDataInput;
 import org.apache.cassandra.io.util.SegmentedFile;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.*;
@@ -55,6 +56,17 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
 {
     private static final Logger logger = LoggerFactory.getLogger(SSTableReader.class);
 
+    /** orders sstables newest first, by the largest timestamp they contain */
+    public static final Comparator<SSTableReader> maxTimestampComparator = new Comparator<SSTableReader>()
+    {
+        public int compare(SSTableReader o1, SSTableReader o2)
+        {
+            long ts1 = o1.getMaxTimestamp();
+            long ts2 = o2.getMaxTimestamp();
+            return ts1 > ts2 ? -1 : (ts1 == ts2 ? 0 : 1);
+        }
+    };
+
     // guesstimated size of INDEX_INTERVAL index entries
     private static final int INDEX_FILE_BUFFER_BYTES = 16 * DatabaseDescriptor.getIndexInterval();
 
@@ -114,7 +126,11 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
     private IndexSummary indexSummary;
     private Filter bf;
 
-    private InstrumentedCache<Pair<Descriptor,DecoratedKey>, Long> keyCache;
+    // the smallest and largest keys in this sstable
+    DecoratedKey first;
+    DecoratedKey last;
+
+    private KeyCache keyCache;
 
     private BloomFilterTracker bloomFilterTracker = new BloomFilterTracker();
 
@@ -153,8 +169,7 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
         long start = System.currentTimeMillis();
         logger.info("Opening " + descriptor);
 
-        EstimatedHistogram rowSizes;
-        EstimatedHistogram columnCounts;
+        SSTableMetadata sstableMetadata;
         File statsFile = new File(descriptor.filenameFor(SSTable.COMPONENT_STATS));
         if (statsFile.exists())
         {
@@ -163,8 +178,7 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
             {
                 logger.debug("Load statistics for {}", descriptor);
                 dis = new DataInputStream(new BufferedInputStream(new FileInputStream(statsFile)));
-                rowSizes = EstimatedHistogram.serializer.deserialize(dis);
-                columnCounts = EstimatedHistogram.serializer.deserialize(dis);
+                sstableMetadata = SSTableMetadata.serializer.deserialize(dis, descriptor);
             }
             finally
             {
@@ -174,11 +188,10 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
         else
         {
             logger.debug("No statistics for {}", descriptor);
-            rowSizes = SSTable.defaultRowHistogram();
-            columnCounts = SSTable.defaultColumnHistogram();
+            sstableMetadata = SSTableMetadata.createDefaultInstance();
         }
 
-        SSTableReader sstable = new SSTableReader(descriptor, components, metadata, partitioner, null, null, null, null, System.currentTimeMillis(), rowSizes, columnCounts);
+        SSTableReader sstable = new SSTableReader(descriptor, components, metadata, partitioner, null, null, null, null, System.currentTimeMillis(), sstableMetadata);
         sstable.setTrackedBy(tracker);
 
         // versions before 'c' encoded keys as utf-16 before hashing to the filter
@@ -203,11 +216,10 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
     /**
      * Open a RowIndexedReader which already has its state initialized (by SSTableWriter).
      */
-    static SSTableReader internalOpen(Descriptor desc, Set<Component> components, CFMetaData metadata, IPartitioner partitioner, SegmentedFile ifile, SegmentedFile dfile, IndexSummary isummary, Filter bf, long maxDataAge, EstimatedHistogram rowsize,
-                                      EstimatedHistogram columncount) throws IOException
+    static SSTableReader internalOpen(Descriptor desc, Set<Component> components, CFMetaData metadata, IPartitioner partitioner, SegmentedFile ifile, SegmentedFile dfile, IndexSummary isummary, Filter bf, long maxDataAge, SSTableMetadata sstableMetadata) throws IOException
     {
         assert desc != null && partitioner != null && ifile != null && dfile != null && isummary != null && bf != null;
-        return new SSTableReader(desc, components, metadata, partitioner, ifile, dfile, isummary, bf, maxDataAge, rowsize, columncount);
+        return new SSTableReader(desc, components, metadata, partitioner, ifile, dfile, isummary, bf, maxDataAge, sstableMetadata);
     }
 
     private SSTableReader(Descriptor desc,
@@ -219,11 +231,10 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
                           IndexSummary indexSummary,
                           Filter bloomFilter,
                           long maxDataAge,
-                          EstimatedHistogram rowSizes,
-                          EstimatedHistogram columnCounts)
+                          SSTableMetadata sstableMetadata)
     throws IOException
     {
-        super(desc, components, metadata, partitioner, rowSizes, columnCounts);
+        super(desc, components, metadata, partitioner, sstableMetadata);
         this.maxDataAge = maxDataAge;
 
         this.ifile = ifile;
@@ -252,6 +263,10 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
             {
                 bf = LegacyBloomFilter.serializer().deserialize(stream);
             }
+            else if (descriptor.usesBlockedBloomFilter)
+            {
+                bf = BlockedBloomFilter.serializer(DatabaseDescriptor.isBloomFilterOffHeap()).deserialize(stream);
+            }
             else
             {
                 bf = BloomFilter.serializer().deserialize(stream);
@@ -270,7 +285,50 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
     {
         boolean cacheLoading = keyCache != null && !keysToLoadInCache.isEmpty();
         SegmentedFile.Builder ibuilder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
-        SegmentedFile.Builder dbuilder = SegmentedFile.getBuilder(DatabaseDescriptor.getDiskAccessMode());
+        SegmentedFile.Builder dbuilder = getDataBuilder();
+
+        // the saved summary saves us a scan of the index, unless we need to visit every key anyway
+        if (recreatebloom || cacheLoading || !loadSummary(ibuilder, dbuilder))
+        {
+            // start over with fresh builders, since a failed load may have left them partially restored
+            ibuilder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
+            dbuilder = getDataBuilder();
+            buildSummary(recreatebloom, keysToLoadInCache, ibuilder, dbuilder);
+            // older sstables are left untouched: compaction will rewrite them with a summary
+            if (first != null && descriptor.isLatestVersion)
+            {
+                try
+                {
+                    saveSummary(descriptor, indexSummary, first, last, ibuilder, dbuilder);
+                }
+                catch (IOException e)
+                {
+                    // not fatal: the summary will be rebuilt again next time
+                    logger.warn("Cannot save the summary of " + descriptor, e);
+                    new File(descriptor.filenameFor(Component.SUMMARY)).delete();
+                }
+            }
+        }
+
+        // finalize the state of the reader
+        ifile = ibuilder.complete(descriptor.filenameFor(Component.PRIMARY_INDEX));
+        dfile = dbuilder.complete(descriptor.filenameFor(Component.DATA));
+    }
+
+    private SegmentedFile.Builder getDataBuilder()
+    {
+        return components.contains(Component.COMPRESSION_INFO)
+               ? new CompressedSegmentedFile.Builder()
+               : SegmentedFile.getBuilder(DatabaseDescriptor.getDiskAccessMode());
+    }
+
+    /**
+     * Scans the whole index to sample the summary and segment boundaries, optionally recreating the bloom filter
+     * and populating the key cache along the way.
+     */
+    private void buildSummary(boolean recreatebloom, Set<DecoratedKey> keysToLoadInCache, SegmentedFile.Builder ibuilder, SegmentedFile.Builder dbuilder) throws IOException
+    {
+        boolean cacheLoading = keyCache != null && !keysToLoadInCache.isEmpty();
 
         // we read the positions in a BRAF so we don't have to worry about an entry spanning a mmap boundary.
         BufferedRandomAccessFile input = new BufferedRandomAccessFile(new File(descriptor.filenameFor(Component.PRIMARY_INDEX)),
@@ -283,31 +341,40 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
                 keyCache.updateCapacity(keyCache.getSize() + keysToLoadInCache.size());
 
             long indexSize = input.length();
-            long estimatedKeys = SSTable.estimateRowsFromIndex(input);
+            long estimatedKeys = SSTable.estimateRowsFromIndex(input, descriptor);
             indexSummary = new IndexSummary(estimatedKeys);
             if (recreatebloom)
                 // estimate key count based on index length
                 bf = LegacyBloomFilter.getFilter(estimatedKeys, 15);
+            long lastIndexPosition = -1;
             while (true)
             {
                 long indexPosition = input.getFilePointer();
                 if (indexPosition == indexSize)
                     break;
+                lastIndexPosition = indexPosition;
 
                 boolean shouldAddEntry = indexSummary.shouldAddEntry();
                 ByteBuffer key = (ByteBuffer) ((shouldAddEntry || cacheLoading || recreatebloom)
                              ? FBUtilities.readShortByteArray(input)
                              : FBUtilities.skipShortByteArray(input));
                 long dataPosition = input.readLong();
+                long headerPosition = input.getFilePointer();
+                IndexHelper.skipPromotedIndex(input, descriptor);
+                // an entry without a promoted header only has its (zero) size, if anything
+                if (input.getFilePointer() - headerPosition <= 4)
+                    headerPosition = -1;
                 if (key != null)
                 {
                     DecoratedKey decoratedKey = decodeKey(partitioner, descriptor, key);
+                    if (first == null)
+                        first = decoratedKey;
                     if (recreatebloom)
                         bf.add(decoratedKey.key);
                     if (shouldAddEntry)
                         indexSummary.addEntry(decoratedKey, indexPosition);
                     if (cacheLoading && keysToLoadInCache.contains(decoratedKey))
-                        keyCache.put(new Pair(descriptor, decoratedKey), dataPosition);
+                        keyCache.put(descriptor.generation, decoratedKey.key, dataPosition, headerPosition);
                 }
 
                 indexSummary.incrementRowid();
@@ -315,34 +382,106 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
                 dbuilder.addPotentialBoundary(dataPosition);
             }
             indexSummary.complete();
+
+            // the last key is usually skipped above, so go back for it
+            if (lastIndexPosition >= 0)
+            {
+                input.seek(lastIndexPosition);
+                last = decodeKey(partitioner, descriptor, FBUtilities.readShortByteArray(input));
+            }
         }
         finally
         {
             FileUtils.closeQuietly(input);
         }
+    }
 
-        // finalize the state of the reader
-        ifile = ibuilder.complete(descriptor.filenameFor(Component.PRIMARY_INDEX));
-        dfile = dbuilder.complete(descriptor.filenameFor(Component.DATA));
+    /**
+     * Restores the summary, the first and last keys and the segment boundaries from the SUMMARY component.
+     * @return false if there is no usable summary, in which case the index must be scanned.
+     */
+    private boolean loadSummary(SegmentedFile.Builder ibuilder, SegmentedFile.Builder dbuilder)
+    {
+        File summaryFile = new File(descriptor.filenameFor(Component.SUMMARY));
+        if (!descriptor.isLatestVersion || !summaryFile.exists())
+            return false;
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(summaryFile)));
+            IndexSummary summary = IndexSummary.deserialize(in);
+            if (summary == null)
+            {
+                logger.debug("Index interval has changed since the summary of {} was saved", descriptor);
+                return false;
+            }
+            if (summary.size() == 0)
+                // an empty sstable has no first or last key to restore: it costs nothing to scan
+                return false;
+            DecoratedKey firstKey = partitioner.decorateKey(FBUtilities.readShortByteArray(in));
+            DecoratedKey lastKey = partitioner.decorateKey(FBUtilities.readShortByteArray(in));
+            ibuilder.deserializeBounds(in);
+            dbuilder.deserializeBounds(in);
+
+            indexSummary = summary;
+            first = firstKey;
+            last = lastKey;
+            return true;
+        }
+        catch (IOException e)
+        {
+            logger.debug("Cannot use the saved summary of " + descriptor + ": rebuilding it", e);
+            return false;
+        }
+        finally
+        {
+            FileUtils.closeQuietly(in);
+        }
     }
 
-    /** get the position in the index file to start scanning to find the given key (at most indexInterval keys away) */
-    private IndexSummary.KeyPosition getIndexScanPosition(DecoratedKey decoratedKey)
+    /**
+     * Saves the summary, the first and last keys and the segment boundaries of an sstable as its SUMMARY component.
+     * The builders must not have been completed yet.
+     */
+    static void saveSummary(Descriptor descriptor, IndexSummary summary, DecoratedKey first, DecoratedKey last, SegmentedFile.Builder ibuilder, SegmentedFile.Builder dbuilder) throws IOException
     {
-        assert indexSummary.getIndexPositions() != null && indexSummary.getIndexPositions().size() > 0;
-        int index = Collections.binarySearch(indexSummary.getIndexPositions(), new IndexSummary.KeyPosition(decoratedKey, -1));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(descriptor.filenameFor(Component.SUMMARY))));
+        try
+        {
+            IndexSummary.serialize(summary, out);
+            // an sstable with no rows has no first or last key, and an empty summary
+            FBUtilities.writeShortByteArray(first == null ? FBUtilities.EMPTY_BYTE_BUFFER : first.key, out);
+            FBUtilities.writeShortByteArray(last == null ? FBUtilities.EMPTY_BYTE_BUFFER : last.key, out);
+            ibuilder.serializeBounds(out);
+            dbuilder.serializeBounds(out);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * get the position in the index file to start scanning to find the given key (at most indexInterval keys away),
+     * or -1 if the key sorts before the first sample
+     */
+    private long getIndexScanPosition(DecoratedKey decoratedKey)
+    {
+        assert indexSummary != null && indexSummary.size() > 0;
+        int index = indexSummary.binarySearch(decoratedKey, partitioner);
         if (index < 0)
         {
             // binary search gives us the first index _greater_ than the key searched for,
             // i.e., its insertion position
             int greaterThan = (index + 1) * -1;
             if (greaterThan == 0)
-                return null;
-            return indexSummary.getIndexPositions().get(greaterThan - 1);
+                return -1;
+            return indexSummary.getPosition(greaterThan - 1);
         }
         else
         {
-            return indexSummary.getIndexPositions().get(index);
+            return indexSummary.getPosition(index);
         }
     }
 
@@ -362,7 +501,7 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
     /**
      * @return The key cache: for monitoring purposes.
      */
-    public InstrumentedCache getKeyCache()
+    public KeyCache getKeyCache()
     {
         return keyCache;
     }
@@ -372,7 +511,7 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
      */
     public long estimatedKeys()
     {
-        return indexSummary.getIndexPositions().size() * DatabaseDescriptor.getIndexInterval();
+        return indexSummary.size() * DatabaseDescriptor.getIndexInterval();
     }
 
     /**
@@ -380,13 +519,18 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
      */
     public Collection<DecoratedKey> getKeySamples()
     {
-        return Collections2.transform(indexSummary.getIndexPositions(),
-                                      new Function<IndexSummary.KeyPosition, DecoratedKey>(){
-                                          public DecoratedKey apply(IndexSummary.KeyPosition kp)
-                                          {
-                                              return kp.key;
-                                          }
-                                      });
+        return new AbstractList<DecoratedKey>()
+        {
+            public DecoratedKey get(int index)
+            {
+                return partitioner.decorateKey(indexSummary.getKey(index));
+            }
+
+            public int size()
+            {
+                return indexSummary.size();
+            }
+        };
     }
 
     /**
@@ -415,20 +559,28 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
         return positions;
     }
 
-    public void cacheKey(DecoratedKey key, Long info)
+    /**
+     * @param headerPosition the position in the index file of the promoted header of the row, or -1 if it has none
+     */
+    public void cacheKey(DecoratedKey key, long position, long headerPosition)
     {
-        keyCache.put(new Pair<Descriptor, DecoratedKey>(descriptor, key), info);
+        keyCache.put(descriptor.generation, key.key, position, headerPosition);
     }
 
-    public Long getCachedPosition(DecoratedKey key)
+    /**
+     * @return the data file position of the key if it is in the key cache, or -1
+     */
+    public long getCachedPosition(DecoratedKey key)
     {
-        return getCachedPosition(new Pair<Descriptor, DecoratedKey>(descriptor, key));
+        KeyCache.Entry entry = getCachedEntry(key);
+        return entry == null ? -1 : entry.position;
     }
 
-    private Long getCachedPosition(Pair<Descriptor, DecoratedKey> unifiedKey)
+    private KeyCache.Entry getCachedEntry(DecoratedKey key)
     {
-        if (keyCache != null && keyCache.getCapacity() > 0)
-            return keyCache.get(unifiedKey);
+        // keys used as range bounds carry only a token, and can't be cached
+        if (keyCache != null && keyCache.getCapacity() > 0 && key.key != null)
+            return keyCache.getEntry(descriptor.generation, key.key);
         return null;
     }
 
@@ -438,34 +590,58 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
      * @return The position in the data file to find the key, or -1 if the key is not present
      */
     public long getPosition(DecoratedKey decoratedKey, Operator op)
+    {
+        RowIndexEntry entry = getIndexEntry(decoratedKey, op);
+        return entry == null ? -1 : entry.position;
+    }
+
+    /**
+     * Like getPosition, but an exact match also carries the row header, if that was promoted into the index.
+     * @return The index entry of the key, or null if the key is not present
+     */
+    public RowIndexEntry getIndexEntry(DecoratedKey decoratedKey, Operator op)
     {
         // first, check bloom filter
         if (op == Operator.EQ && !bf.isPresent(decoratedKey.key))
-            return -1;
+            return null;
+
+        // a key past the end of the sstable can't be present: don't bother scanning the last index segment
+        if (op == Operator.EQ && last != null && decoratedKey.compareTo(last) > 0)
+        {
+            bloomFilterTracker.addFalsePositive();
+            return null;
+        }
 
         // next, the key cache
-        Pair<Descriptor, DecoratedKey> unifiedKey = new Pair<Descriptor, DecoratedKey>(descriptor, decoratedKey);
-        Long cachedPosition = getCachedPosition(unifiedKey);
-        if (cachedPosition != null)
-            return cachedPosition;
+        KeyCache.Entry cached = getCachedEntry(decoratedKey);
+        if (cached != null)
+        {
+            if (cached.headerPosition < 0 || op != Operator.EQ)
+                return new RowIndexEntry(cached.position, null);
+            return new RowIndexEntry(cached.position, readPromotedHeader(cached.headerPosition));
+        }
 
         // next, see if the sampled index says it's impossible for the key to be present
-        IndexSummary.KeyPosition sampledPosition = getIndexScanPosition(decoratedKey);
-        if (sampledPosition == null)
+        long sampledPosition = getIndexScanPosition(decoratedKey);
+        if (sampledPosition == -1)
         {
             if (op == Operator.EQ)
                 bloomFilterTracker.addFalsePositive();
             // we matched the -1th position: if the operator might match forward, return the 0th position
-            return op.apply(1) >= 0 ? 0 : -1;
+            return op.apply(1) >= 0 ? new RowIndexEntry(0, null) : null;
         }
 
         // scan the on-disk index, starting at the nearest sampled position
-        Iterator<FileDataInput> segments = ifile.iterator(sampledPosition.indexPosition, INDEX_FILE_BUFFER_BYTES);
+        Iterator<FileDataInput> segments = ifile.iterator(sampledPosition, INDEX_FILE_BUFFER_BYTES);
+        // segments are contiguous: track where each starts, to know the index file position of a promoted header
+        long segmentPosition = sampledPosition;
         while (segments.hasNext())
         {
             FileDataInput input = segments.next();
             try
             {
+                FileMark segmentStart = input.mark();
+                long segmentLength = input.bytesRemaining();
                 while (!input.isEOF())
                 {
                     // read key & data position from index entry
@@ -474,24 +650,33 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
 
                     int comparison = indexDecoratedKey.compareTo(decoratedKey);
                     int v = op.apply(comparison);
+                    int headerOffset = input.bytesPastMark(segmentStart);
+                    byte[] promotedHeader = null;
+                    if (v == 0 && op == Operator.EQ)
+                        promotedHeader = IndexHelper.readPromotedIndex(input, descriptor);
+                    else
+                        IndexHelper.skipPromotedIndex(input, descriptor);
                     if (v == 0)
                     {
                         if (comparison == 0 && keyCache != null && keyCache.getCapacity() > 0)
                         {
                             if (op == Operator.EQ)
                                 bloomFilterTracker.addTruePositive();
-                            // store exact match for the key
-                            keyCache.put(unifiedKey, Long.valueOf(dataPosition));
+                            // store exact match for the key, along with where to find its promoted header:
+                            // an entry without one only has its (zero) size, if anything
+                            boolean promoted = input.bytesPastMark(segmentStart) - headerOffset > 4;
+                            cacheKey(indexDecoratedKey, dataPosition, promoted ? segmentPosition + headerOffset : -1);
                         }
-                        return dataPosition;
+                        return new RowIndexEntry(dataPosition, promotedHeader);
                     }
                     if (v < 0)
                     {
                         if (op == Operator.EQ)
                             bloomFilterTracker.addFalsePositive();
-                        return -1;
+                        return null;
                     }
                 }
+                segmentPosition += segmentLength;
             }
             catch (IOException e)
             {
@@ -505,11 +690,32 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
 
         if (op == Operator.EQ)
             bloomFilterTracker.addFalsePositive();
-        return -1;
+        return null;
     }
 
     /**
-     * @return The length in bytes of the data file for this SSTable.
+     * @return the promoted row header at the given position in the index file
+     */
+    private byte[] readPromotedHeader(long headerPosition)
+    {
+        FileDataInput input = ifile.getSegment(headerPosition, INDEX_FILE_BUFFER_BYTES);
+        try
+        {
+            return IndexHelper.readPromotedIndex(input, descriptor);
+        }
+        catch (IOException e)
+        {
+            throw new IOError(e);
+        }
+        finally
+        {
+            FileUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * @return The length in bytes of the data file for this SSTable. For a compressed sstable, this is
+     * the uncompressed length, since that is what row positions refer to.
      */
     public long length()
     {
@@ -532,6 +738,99 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
         phantomReference.deleteOnCleanup();
     }
 
+    /**
+     * Records that the contents of this sstable were repaired at the given time, by replacing its
+     * statistics component.  SSTables of older versions have nowhere to record it, and stay unrepaired
+     * until they are compacted.
+     */
+    public void markRepaired(long repairedAt) throws IOException
+    {
+        assert descriptor.hasRepairedAt : "cannot mark " + this + " repaired";
+        if (logger.isDebugEnabled())
+            logger.debug("Marking " + getFilename() + " repaired at " + repairedAt);
+        SSTableMetadata repaired = sstableMetadata.withRepairedAt(repairedAt);
+        // write a temporary copy first, so that a crash leaves either the old statistics or the new ones
+        Descriptor tmpdesc = descriptor.asTemporary(true);
+        SSTableWriter.writeMetadata(tmpdesc, repaired);
+        FBUtilities.renameWithConfirm(tmpdesc.filenameFor(Component.STATS), descriptor.filenameFor(Component.STATS));
+        sstableMetadata = repaired;
+    }
+
+    /**
+     * Writes the index, bloom filter and statistics of the rows within the given sections of the data file
+     * as the components of the given temporary descriptor, so that they can be streamed along with the
+     * sections. Positions in the new index are those of the rows in the concatenated sections, as the
+     * receiver will write them.
+     */
+    public void writeComponentsForSections(Descriptor target, List<Pair<Long,Long>> sections) throws IOException
+    {
+        assert descriptor.isLatestVersion && target.temporary && !sections.isEmpty();
+        long sectionsLength = 0;
+        for (Pair<Long,Long> section : sections)
+            sectionsLength += section.right - section.left;
+        long estimatedRows = Math.max(1, (long) (estimatedKeys() * ((double) sectionsLength / length())));
+
+        SSTableWriter.IndexWriter iwriter = new SSTableWriter.IndexWriter(target, partitioner, estimatedRows);
+        SSTableMetadata.Collector collector = SSTableMetadata.createCollector();
+        // rows are copied verbatim, so the timestamps of this sstable bound theirs
+        collector.update(sstableMetadata);
+
+        BufferedRandomAccessFile input = new BufferedRandomAccessFile(new File(descriptor.filenameFor(Component.PRIMARY_INDEX)),
+                                                                      "r",
+                                                                      BufferedRandomAccessFile.DEFAULT_BUFFER_SIZE,
+                                                                      true);
+        try
+        {
+            Iterator<Pair<Long,Long>> iter = sections.iterator();
+            Pair<Long,Long> section = iter.next();
+            long sectionOffset = 0;
+            // an entry is only written once the position of the following row tells us its size
+            ByteBuffer pendingKey = null;
+            long pendingPosition = -1;
+            byte[] pendingHeader = null;
+            long indexSize = input.length();
+            while (input.getFilePointer() < indexSize)
+            {
+                ByteBuffer key = FBUtilities.readShortByteArray(input);
+                long dataPosition = input.readLong();
+                byte[] header = IndexHelper.readPromotedIndex(input, descriptor);
+                if (pendingKey != null)
+                {
+                    appendSectionEntry(iwriter, collector, pendingKey, pendingPosition, pendingHeader, dataPosition, section, sectionOffset);
+                    pendingKey = null;
+                }
+
+                while (section != null && dataPosition >= section.right)
+                {
+                    sectionOffset += section.right - section.left;
+                    section = iter.hasNext() ? iter.next() : null;
+                }
+                if (section == null)
+                    break;
+                if (dataPosition >= section.left)
+                {
+                    pendingKey = key;
+                    pendingPosition = dataPosition;
+                    pendingHeader = header;
+                }
+            }
+            if (pendingKey != null)
+                appendSectionEntry(iwriter, collector, pendingKey, pendingPosition, pendingHeader, length(), section, sectionOffset);
+        }
+        finally
+        {
+            FileUtils.closeQuietly(input);
+        }
+        iwriter.close();
+        SSTableWriter.writeMetadata(target, collector.finalizeMetadata());
+    }
+
+    private void appendSectionEntry(SSTableWriter.IndexWriter iwriter, SSTableMetadata.Collector collector, ByteBuffer key, long position, byte[] header, long end, Pair<Long,Long> section, long sectionOffset) throws IOException
+    {
+        collector.addRowSize(end - position);
+        iwriter.afterAppend(decodeKey(partitioner, descriptor, key), sectionOffset + position - section.left, header);
+    }
+
     /**
      * @param bufferSize Buffer size in bytes for this Scanner.
      * @param filter filter to use when reading the columns
@@ -553,6 +852,16 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
         return new SSTableScanner(this, bufferSize, true);
     }
 
+    /**
+     * Opens the data file for sequential reads from arbitrary positions, decompressing it if necessary.
+     */
+    public RandomAccessFileDataInput openDataReader(int bufferSize, boolean skipCache) throws IOException
+    {
+        if (dfile instanceof CompressedSegmentedFile)
+            return ((CompressedSegmentedFile) dfile).openReader();
+        return new BufferedRandomAccessFile(new File(getFilename()), "r", bufferSize, skipCache);
+    }
+
     public FileDataInput getFileDataInput(DecoratedKey decoratedKey, int bufferSize)
     {
         long position = getPosition(decoratedKey, Operator.EQ);
@@ -562,6 +871,31 @@ public class SSTableReader extends SSTable implements Comparable<SSTableReader>
         return dfile.getSegment(position, bufferSize);
     }
 
+    /**
+     * @return the data file, positioned anywhere within a row: for instance at its first column, when its header
+     * was promoted into the index.
+     */
+    public FileDataInput getFileDataInput(long position, int bufferSize)
+    {
+        return dfile.getSegment(position, bufferSize);
+    }
+
+
+    /**
+     * @return the smallest key in this sstable
+     */
+    public DecoratedKey getFirst()
+    {
+        return first;
+    }
+
+    /**
+     * @return the largest key in this sstable
+     */
+    public DecoratedKey getLast()
+    {
+        return last;
+    }
 
     public int compareTo(SSTableReader o)
     {
@@ -20,7 +20,6 @@
 package org.apache.cassandra.io.sstable;
 
 import java.io.Closeable;
-import java.io.File;
 import java.io.IOError;
 import java.io.IOException;
 import java.util.Arrays;
@@ -32,7 +31,7 @@ import org.slf4j.LoggerFactory;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.columniterator.IColumnIterator;
 import org.apache.cassandra.db.filter.QueryFilter;
-import org.apache.cassandra.io.util.BufferedRandomAccessFile;
+import org.apache.cassandra.io.util.RandomAccessFileDataInput;
 import org.apache.cassandra.utils.FBUtilities;
 
 
@@ -40,7 +39,7 @@ public class SSTableScanner implements Iterator<IColumnIterator>, Closeable
 {
     private static Logger logger = LoggerFactory.getLogger(SSTableScanner.class);
 
-    private final BufferedRandomAccessFile file;
+    private final RandomAccessFileDataInput file;
     private final SSTableReader sstable;
     private IColumnIterator row;
     private boolean exhausted = false;
@@ -54,7 +53,7 @@ public class SSTableScanner implements Iterator<IColumnIterator>, Closeable
     {
         try
         {
-            this.file = new BufferedRandomAccessFile(new File(sstable.getFilename()), "r", bufferSize, skipCache);
+            this.file = sstable.openDataReader(bufferSize, skipCache);
         }
         catch (IOException e)
         {
@@ -71,7 +70,7 @@ public class SSTableScanner implements Iterator<IColumnIterator>, Closeable
     {
         try
         {
-            this.file = new BufferedRandomAccessFile(sstable.getFilename(), "r", bufferSize);
+            this.file = sstable.openDataReader(bufferSize, false);
         }
         catch (IOException e)
         {
@@ -25,15 +25,20 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.cache.ConcurrentLinkedHashCache;
+import org.apache.cassandra.cache.ICache;
 import org.apache.cassandra.cache.JMXInstrumentedCache;
+import org.apache.cassandra.cache.KeyCache;
+import org.apache.cassandra.cache.SerializingCache;
+import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.io.util.FileUtils;
-import org.apache.cassandra.utils.Pair;
 
 public class SSTableTracker implements Iterable<SSTableReader>
 {
@@ -46,21 +51,41 @@ public class SSTableTracker implements Iterable<SSTableReader>
     private final String ksname;
     private final String cfname;
 
-    private final JMXInstrumentedCache<Pair<Descriptor,DecoratedKey>,Long> keyCache;
-    private final JMXInstrumentedCache<DecoratedKey, ColumnFamily> rowCache;
+    private final KeyCache keyCache;
+    // replaced when the column family switches between on- and off-heap row caching
+    private volatile JMXInstrumentedCache<DecoratedKey, ColumnFamily> rowCache;
 
     public SSTableTracker(String ksname, String cfname)
     {
         this.ksname = ksname;
         this.cfname = cfname;
         sstables = Collections.emptySet();
-        keyCache = new JMXInstrumentedCache<Pair<Descriptor,DecoratedKey>,Long>(ksname, cfname + "KeyCache", 0);
-        rowCache = new JMXInstrumentedCache<DecoratedKey, ColumnFamily>(ksname, cfname + "RowCache", 3);
+        keyCache = new KeyCache(ksname, cfname + "KeyCache", 0);
+        rowCache = createRowCache(rowCacheSizeInMb());
     }
 
-    protected class CacheWriter<K, V>
+    private int rowCacheSizeInMb()
     {
-        public void saveCache(JMXInstrumentedCache<K, V> cache, File savedCachePath, Function<K, ByteBuffer> converter) throws IOException
+        CFMetaData cfm = DatabaseDescriptor.getCFMetaData(ksname, cfname);
+        if (cfm == null || cfm.getRowCacheSizeInMb() == 0 || !SerializingCache.isAvailable())
+            return 0;
+        return cfm.getRowCacheSizeInMb();
+    }
+
+    /**
+     * @param sizeInMb the native memory to cache serialized rows in, or zero to cache live rows on the heap
+     */
+    private JMXInstrumentedCache<DecoratedKey, ColumnFamily> createRowCache(int sizeInMb)
+    {
+        ICache<DecoratedKey, ColumnFamily> map = sizeInMb > 0
+                                               ? new SerializingCache<DecoratedKey, ColumnFamily>(sizeInMb * 1024, ColumnFamily.serializer())
+                                               : ConcurrentLinkedHashCache.<DecoratedKey, ColumnFamily>create(3);
+        return new JMXInstrumentedCache<DecoratedKey, ColumnFamily>(ksname, cfname + "RowCache", map);
+    }
+
+    protected class CacheWriter<K>
+    {
+        public void saveCache(Set<K> keys, File savedCachePath, Function<K, ByteBuffer> converter) throws IOException
         {
             long start = System.currentTimeMillis();
             String msgSuffix = savedCachePath.getName() + " for " + cfname + " of " + ksname;
@@ -75,7 +100,7 @@ public class SSTableTracker implements Iterable<SSTableReader>
                 fout = new FileOutputStream(tmpFile);
                 out = new ObjectOutputStream(new BufferedOutputStream(fout));
                 FileDescriptor fd = fout.getFD();
-                for (K key : cache.getKeySet())
+                for (K key : keys)
                 {
                     ByteBuffer bytes = converter.apply(key);
                     out.writeInt(bytes.remaining());
@@ -99,15 +124,8 @@ public class SSTableTracker implements Iterable<SSTableReader>
 
     public void saveKeyCache() throws IOException
     {
-        Function<Pair<Descriptor, DecoratedKey>, ByteBuffer> function = new Function<Pair<Descriptor, DecoratedKey>, ByteBuffer>()
-        {
-            public ByteBuffer apply(Pair<Descriptor, DecoratedKey> key)
-            {
-                return key.right.key;
-            }
-        };
-        CacheWriter<Pair<Descriptor, DecoratedKey>, Long> writer = new CacheWriter<Pair<Descriptor, DecoratedKey>, Long>();
-        writer.saveCache(keyCache, DatabaseDescriptor.getSerializedKeyCachePath(ksname, cfname), function);
+        CacheWriter<ByteBuffer> writer = new CacheWriter<ByteBuffer>();
+        writer.saveCache(keyCache.getKeySet(), DatabaseDescriptor.getSerializedKeyCachePath(ksname, cfname), Functions.<ByteBuffer>identity());
     }
 
     public void saveRowCache() throws IOException
@@ -119,8 +137,8 @@ public class SSTableTracker implements Iterable<SSTableReader>
                 return key.key;
             }
         };
-        CacheWriter<DecoratedKey, ColumnFamily> writer = new CacheWriter<DecoratedKey, ColumnFamily>();
-        writer.saveCache(rowCache, DatabaseDescriptor.getSerializedRowCachePath(ksname, cfname), function);
+        CacheWriter<DecoratedKey> writer = new CacheWriter<DecoratedKey>();
+        writer.saveCache(rowCache.getKeySet(), DatabaseDescriptor.getSerializedRowCachePath(ksname, cfname), function);
     }
 
     public synchronized void replace(Collection<SSTableReader> oldSSTables, Iterable<SSTableReader> replacements)
@@ -181,7 +199,21 @@ public class SSTableTracker implements Iterable<SSTableReader>
             }
         }
 
-        if (!rowCache.isCapacitySetManually())
+        int rowCacheSizeInMb = rowCacheSizeInMb();
+        if ((rowCacheSizeInMb > 0) != rowCache.isPutCopying())
+        {
+            logger.info("switching to {} row cache for {}", rowCacheSizeInMb > 0 ? "an off-heap" : "an on-heap", cfname);
+            rowCache.clear();
+            rowCache = createRowCache(rowCacheSizeInMb);
+        }
+
+        if (rowCacheSizeInMb > 0)
+        {
+            // an off-heap cache is sized in kilobytes, independent of the number of keys
+            if (!rowCache.isCapacitySetManually() && rowCache.getCapacity() != rowCacheSizeInMb * 1024)
+                rowCache.updateCapacity(rowCacheSizeInMb * 1024);
+        }
+        else if (!rowCache.isCapacitySetManually())
         {
             int rowCacheSize = DatabaseDescriptor.getRowsCachedFor(ksname, cfname, keys);
             if (rowCacheSize != rowCache.getCapacity())
@@ -245,7 +277,7 @@ public class SSTableTracker implements Iterable<SSTableReader>
         totalSize.addAndGet(-size);
     }
 
-    public JMXInstrumentedCache<Pair<Descriptor, DecoratedKey>, Long> getKeyCache()
+    public KeyCache getKeyCache()
     {
         return keyCache;
     }
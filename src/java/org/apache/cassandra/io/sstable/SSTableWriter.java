@@ -38,13 +38,17 @@ import org.apache.cassandra.db.marshal.AbstractCommutativeType;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.io.AbstractCompactedRow;
 import org.apache.cassandra.io.ICompactionInfo;
+import org.apache.cassandra.io.compress.CompressedSegmentedFile;
+import org.apache.cassandra.io.compress.CompressedSequentialWriter;
 import org.apache.cassandra.io.util.BufferedRandomAccessFile;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.FileDataOutput;
 import org.apache.cassandra.io.util.FileMark;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.SegmentedFile;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.streaming.OperationType;
-import org.apache.cassandra.utils.BloomFilter;
+import org.apache.cassandra.utils.BlockedBloomFilter;
 import org.apache.cassandra.utils.EstimatedHistogram;
 import org.apache.cassandra.utils.FBUtilities;
 
@@ -54,9 +58,15 @@ public class SSTableWriter extends SSTable
 
     private IndexWriter iwriter;
     private SegmentedFile.Builder dbuilder;
-    private final BufferedRandomAccessFile dataFile;
+    private final FileDataOutput dataFile;
+    // the data file if it can seek back to fill in row sizes, i.e. if it is not compressed
+    private final BufferedRandomAccessFile seekableDataFile;
+    private DecoratedKey firstWrittenKey;
     private DecoratedKey lastWrittenKey;
     private FileMark dataMark;
+    private final SSTableMetadata.Collector sstableMetadataCollector;
+    // reused to serialize the rows of a compressed data file, since their size precedes them
+    private final DataOutputBuffer rowBuffer = new DataOutputBuffer();
 
     public SSTableWriter(String filename, long keyCount) throws IOException
     {
@@ -66,16 +76,36 @@ public class SSTableWriter extends SSTable
     public SSTableWriter(String filename, long keyCount, CFMetaData metadata, IPartitioner partitioner) throws IOException
     {
         super(Descriptor.fromFilename(filename),
-              new HashSet<Component>(Arrays.asList(Component.DATA, Component.FILTER, Component.PRIMARY_INDEX, Component.STATS)),
+              components(metadata),
               metadata,
               partitioner,
-              SSTable.defaultRowHistogram(),
-              SSTable.defaultColumnHistogram());
+              SSTableMetadata.createDefaultInstance());
         iwriter = new IndexWriter(descriptor, partitioner, keyCount);
-        dbuilder = SegmentedFile.getBuilder(DatabaseDescriptor.getDiskAccessMode());
-        dataFile = new BufferedRandomAccessFile(new File(getFilename()), "rw", DatabaseDescriptor.getInMemoryCompactionLimit(), true);
+        if (metadata.getCompression())
+        {
+            dbuilder = new CompressedSegmentedFile.Builder();
+            dataFile = new CompressedSequentialWriter(new File(getFilename()),
+                                                      descriptor.filenameFor(Component.COMPRESSION_INFO),
+                                                      metadata.getCompressionChunkLengthInKb() * 1024);
+            seekableDataFile = null;
+        }
+        else
+        {
+            dbuilder = SegmentedFile.getBuilder(DatabaseDescriptor.getDiskAccessMode());
+            seekableDataFile = new BufferedRandomAccessFile(new File(getFilename()), "rw", DatabaseDescriptor.getInMemoryCompactionLimit(), true);
+            dataFile = seekableDataFile;
+        }
+        sstableMetadataCollector = SSTableMetadata.createCollector();
     }
     
+    private static Set<Component> components(CFMetaData metadata)
+    {
+        Set<Component> components = new HashSet<Component>(Arrays.asList(Component.DATA, Component.FILTER, Component.PRIMARY_INDEX, Component.STATS, Component.SUMMARY));
+        if (metadata.getCompression())
+            components.add(Component.COMPRESSION_INFO);
+        return components;
+    }
+
     public void mark()
     {
         dataMark = dataFile.mark();
@@ -111,13 +141,15 @@ public class SSTableWriter extends SSTable
         return (lastWrittenKey == null) ? 0 : dataFile.getFilePointer();
     }
 
-    private void afterAppend(DecoratedKey decoratedKey, long dataPosition) throws IOException
+    private void afterAppend(DecoratedKey decoratedKey, long dataPosition, byte[] promotedHeader) throws IOException
     {
+        if (firstWrittenKey == null)
+            firstWrittenKey = decoratedKey;
         lastWrittenKey = decoratedKey;
 
         if (logger.isTraceEnabled())
             logger.trace("wrote " + decoratedKey + " at " + dataPosition);
-        iwriter.afterAppend(decoratedKey, dataPosition);
+        iwriter.afterAppend(decoratedKey, dataPosition, promotedHeader);
         dbuilder.addPotentialBoundary(dataPosition);
     }
 
@@ -125,10 +157,12 @@ public class SSTableWriter extends SSTable
     {
         long currentPosition = beforeAppend(row.key);
         FBUtilities.writeShortByteArray(row.key.key, dataFile);
-        row.write(dataFile);
-        estimatedRowSize.add(dataFile.getFilePointer() - currentPosition);
-        estimatedColumnCount.add(row.columnCount());
-        afterAppend(row.key, currentPosition);
+        HeaderCapturingStream capture = new HeaderCapturingStream(dataFile);
+        row.write(new DataOutputStream(capture));
+        sstableMetadataCollector.addRowSize(dataFile.getFilePointer() - currentPosition);
+        sstableMetadataCollector.addColumnCount(row.columnCount());
+        sstableMetadataCollector.update(row.timestamps());
+        afterAppend(row.key, currentPosition, capture.promotedHeader());
         return currentPosition;
     }
 
@@ -136,20 +170,40 @@ public class SSTableWriter extends SSTable
     {
         long startPosition = beforeAppend(decoratedKey);
         FBUtilities.writeShortByteArray(decoratedKey.key, dataFile);
-        // write placeholder for the row size, since we don't know it yet
-        long sizePosition = dataFile.getFilePointer();
-        dataFile.writeLong(-1);
-        // write out row data
-        int columnCount = ColumnFamily.serializer().serializeWithIndexes(cf, dataFile);
-        // seek back and write the row size (not including the size Long itself)
+        int columnCount;
+        byte[] promotedHeader;
+        if (seekableDataFile != null)
+        {
+            // write placeholder for the row size, since we don't know it yet
+            long sizePosition = dataFile.getFilePointer();
+            HeaderCapturingStream capture = new HeaderCapturingStream(dataFile);
+            DataOutputStream out = new DataOutputStream(capture);
+            out.writeLong(-1);
+            // write out row data
+            columnCount = ColumnFamily.serializer().serializeWithIndexes(cf, out);
+            // seek back and write the row size (not including the size Long itself)
+            long rowEndPosition = dataFile.getFilePointer();
+            seekableDataFile.seek(sizePosition);
+            dataFile.writeLong(rowEndPosition - (sizePosition + 8));
+            // finally, reset for next row
+            seekableDataFile.seek(rowEndPosition);
+            promotedHeader = capture.promotedHeader();
+        }
+        else
+        {
+            // serialize the row first, since its size (not including the size Long itself) precedes it
+            // and a compressed data file can't seek back to fill it in
+            rowBuffer.reset();
+            columnCount = ColumnFamily.serializer().serializeWithIndexes(cf, rowBuffer);
+            dataFile.writeLong(rowBuffer.getLength());
+            dataFile.write(rowBuffer.getData(), 0, rowBuffer.getLength());
+            promotedHeader = promotedHeader(rowBuffer.getData(), 0, rowBuffer.getLength());
+        }
         long endPosition = dataFile.getFilePointer();
-        dataFile.seek(sizePosition);
-        dataFile.writeLong(endPosition - (sizePosition + 8));
-        // finally, reset for next row
-        dataFile.seek(endPosition);
-        afterAppend(decoratedKey, startPosition);
-        estimatedRowSize.add(endPosition - startPosition);
-        estimatedColumnCount.add(columnCount);
+        afterAppend(decoratedKey, startPosition, promotedHeader);
+        sstableMetadataCollector.addRowSize(endPosition - startPosition);
+        sstableMetadataCollector.addColumnCount(columnCount);
+        sstableMetadataCollector.update(cf);
     }
 
     public void append(DecoratedKey decoratedKey, ByteBuffer value) throws IOException
@@ -159,7 +213,99 @@ public class SSTableWriter extends SSTable
         assert value.remaining() > 0;
         dataFile.writeLong(value.remaining());
         dataFile.write(value.array(),value.position()+value.arrayOffset(),value.remaining());
-        afterAppend(decoratedKey, currentPosition);
+        // the row is already serialized, so we can't tell which timestamps it holds
+        sstableMetadataCollector.updateUnknown();
+        // nor whether it is well-formed: leave promoting its header to compaction
+        afterAppend(decoratedKey, currentPosition, null);
+    }
+
+    /**
+     * @return a copy of the header of the serialized row, if the row has a column index, or null
+     */
+    private static byte[] promotedHeader(byte[] row, int offset, int length)
+    {
+        int size = IndexHelper.promotableHeaderSize(row, offset, length);
+        assert size >= 0 : "incomplete row of " + length + " bytes";
+        return size == 0 ? null : Arrays.copyOfRange(row, offset, offset + size);
+    }
+
+    /**
+     * Passes a serialized row, starting with its size, through to the data file, keeping a copy of the row
+     * header along the way. Once the header is complete, or turns out to have no column index, the rest of
+     * the row is passed through untouched.
+     */
+    private static class HeaderCapturingStream extends OutputStream
+    {
+        private final DataOutput out;
+        private final DataOutputBuffer header = new DataOutputBuffer();
+        private int rowSizeRemaining = 8;
+        private boolean complete;
+
+        HeaderCapturingStream(DataOutput out)
+        {
+            this.out = out;
+        }
+
+        public void write(int b) throws IOException
+        {
+            if (complete)
+                out.write(b);
+            else
+                write(new byte[]{ (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            while (len > 0 && !complete)
+            {
+                int n;
+                if (rowSizeRemaining > 0)
+                {
+                    n = Math.min(rowSizeRemaining, len);
+                    rowSizeRemaining -= n;
+                }
+                else
+                {
+                    int size = IndexHelper.promotableHeaderSize(header.getData(), 0, header.getLength());
+                    n = Math.min((size < 0 ? -size : size) - header.getLength(), len);
+                    if (size == 0 || n == 0)
+                    {
+                        complete = true;
+                        break;
+                    }
+                    header.write(b, off, n);
+                }
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * @return the header of the row written, if it has a column index, or null
+         */
+        byte[] promotedHeader()
+        {
+            int size = IndexHelper.promotableHeaderSize(header.getData(), 0, header.getLength());
+            assert size >= 0 : "incomplete row header of " + header.getLength() + " bytes";
+            return size == 0 ? null : Arrays.copyOf(header.getData(), size);
+        }
+    }
+
+    /**
+     * Sets the level recorded in the metadata of this sstable, for leveled compaction.
+     */
+    public void setSSTableLevel(int sstableLevel)
+    {
+        sstableMetadataCollector.setSSTableLevel(sstableLevel);
+    }
+
+    /**
+     * Sets when the data written was last repaired: only for the output of compacting repaired sstables.
+     */
+    public void setRepairedAt(long repairedAt)
+    {
+        sstableMetadataCollector.setRepairedAt(repairedAt);
     }
 
     public SSTableReader closeAndOpenReader() throws IOException
@@ -175,10 +321,16 @@ public class SSTableWriter extends SSTable
         // main data
         long position = dataFile.getFilePointer();
         dataFile.close(); // calls force
-        FileUtils.truncate(dataFile.getPath(), position);
+        // a compressed file is written exactly, and its length is not the uncompressed position
+        if (!components.contains(Component.COMPRESSION_INFO))
+            FileUtils.truncate(dataFile.getPath(), position);
 
         // write sstable statistics
-        writeStatistics(descriptor, estimatedRowSize, estimatedColumnCount);
+        SSTableMetadata sstableMetadata = sstableMetadataCollector.finalizeMetadata();
+        writeMetadata(descriptor, sstableMetadata);
+
+        // save the summary, so that reopening the sstable doesn't require a scan of the index
+        SSTableReader.saveSummary(descriptor, iwriter.summary, firstWrittenKey, lastWrittenKey, iwriter.builder, dbuilder);
 
         // remove the 'tmp' marker from all components
         final Descriptor newdesc = rename(descriptor, components);
@@ -186,17 +338,18 @@ public class SSTableWriter extends SSTable
         // finalize in-memory state for the reader
         SegmentedFile ifile = iwriter.builder.complete(newdesc.filenameFor(SSTable.COMPONENT_INDEX));
         SegmentedFile dfile = dbuilder.complete(newdesc.filenameFor(SSTable.COMPONENT_DATA));
-        SSTableReader sstable = SSTableReader.internalOpen(newdesc, components, metadata, partitioner, ifile, dfile, iwriter.summary, iwriter.bf, maxDataAge, estimatedRowSize, estimatedColumnCount);
+        SSTableReader sstable = SSTableReader.internalOpen(newdesc, components, metadata, partitioner, ifile, dfile, iwriter.summary, iwriter.bf, maxDataAge, sstableMetadata);
+        sstable.first = firstWrittenKey;
+        sstable.last = lastWrittenKey;
         iwriter = null;
         dbuilder = null;
         return sstable;
     }
 
-    private static void writeStatistics(Descriptor desc, EstimatedHistogram rowSizes, EstimatedHistogram columnnCounts) throws IOException
+    static void writeMetadata(Descriptor desc, SSTableMetadata sstableMetadata) throws IOException
     {
         DataOutputStream out = new DataOutputStream(new FileOutputStream(desc.filenameFor(SSTable.COMPONENT_STATS)));
-        EstimatedHistogram.serializer.serialize(rowSizes, out);
-        EstimatedHistogram.serializer.serialize(rowSizes, out);
+        SSTableMetadata.serializer.serialize(sstableMetadata, out);
         out.close();
     }
 
@@ -219,6 +372,14 @@ public class SSTableWriter extends SSTable
     {
         return dataFile.getFilePointer();
     }
+
+    /**
+     * @return the position in the index file of the promoted header of the last row appended, or -1 if it has none
+     */
+    public long getLastHeaderPosition()
+    {
+        return iwriter.lastHeaderPosition;
+    }
     
     public static Builder createBuilder(Descriptor desc, OperationType type)
     {
@@ -233,7 +394,7 @@ public class SSTableWriter extends SSTable
 
     /**
      * Removes the given SSTable from temporary status and opens it, rebuilding the
-     * bloom filter and row index from the data file.
+     * bloom filter and row index from the data file unless they were streamed with it.
      */
     public static class Builder implements ICompactionInfo
     {
@@ -264,8 +425,20 @@ public class SSTableWriter extends SSTable
                 return null;
             File ifile = new File(desc.filenameFor(SSTable.COMPONENT_INDEX));
             File ffile = new File(desc.filenameFor(SSTable.COMPONENT_FILTER));
-            assert !ifile.exists();
-            assert !ffile.exists();
+            File sfile = new File(desc.filenameFor(SSTable.COMPONENT_STATS));
+            if (ifile.exists() && ffile.exists() && !(indexer instanceof AESCommutativeRowIndexer))
+            {
+                // the index and filter were streamed along with the data
+                indexer.dfile.close();
+                logger.debug("Opening {} with its streamed index", desc);
+                return SSTableReader.open(rename(desc, SSTable.componentsFor(desc)));
+            }
+            // otherwise discard whatever was streamed: counter rows get rewritten, which moves them
+            for (File file : Arrays.asList(ifile, ffile, sfile))
+            {
+                if (file.exists())
+                    FileUtils.deleteWithConfirm(file);
+            }
 
             long estimatedRows = indexer.prepareIndexing();
 
@@ -357,8 +530,8 @@ public class SSTableWriter extends SSTable
 
         protected long doIndexing() throws IOException
         {
-            EstimatedHistogram rowSizes = SSTable.defaultRowHistogram();
-            EstimatedHistogram columnCounts = SSTable.defaultColumnHistogram();
+            EstimatedHistogram rowSizes = SSTableMetadata.defaultRowHistogram();
+            EstimatedHistogram columnCounts = SSTableMetadata.defaultColumnHistogram();
             long rows = 0;
             DecoratedKey key;
             long rowPosition = 0;
@@ -366,18 +539,28 @@ public class SSTableWriter extends SSTable
             {
                 // read key
                 key = SSTableReader.decodeKey(StorageService.getPartitioner(), desc, FBUtilities.readShortByteArray(dfile));
-                iwriter.afterAppend(key, rowPosition);
-
-                // seek to next key
                 long dataSize = SSTableReader.readRowSize(dfile, desc);
-                rowPosition = dfile.getFilePointer() + dataSize;
-                
+                long headerPosition = dfile.getFilePointer();
+
                 IndexHelper.skipBloomFilter(dfile);
-                IndexHelper.skipIndex(dfile);
+                int columnIndexSize = dfile.readInt();
+                dfile.skipBytes(columnIndexSize);
                 ColumnFamily.serializer().deserializeFromSSTableNoColumns(ColumnFamily.create(metadata), dfile);
                 rowSizes.add(dataSize);
                 columnCounts.add(dfile.readInt());
-                
+
+                // promote the header of rows with a column index
+                byte[] promotedHeader = null;
+                if (columnIndexSize > 0)
+                {
+                    promotedHeader = new byte[(int) (dfile.getFilePointer() - headerPosition)];
+                    dfile.seek(headerPosition);
+                    dfile.readFully(promotedHeader);
+                }
+                iwriter.afterAppend(key, rowPosition, promotedHeader);
+
+                // seek to next key
+                rowPosition = headerPosition + dataSize;
                 dfile.seek(rowPosition);
 
                 rows++;
@@ -388,6 +571,8 @@ public class SSTableWriter extends SSTable
 
     static class AESCommutativeRowIndexer extends RowIndexer
     {
+        private final DataOutputBuffer rowBuffer = new DataOutputBuffer();
+
         AESCommutativeRowIndexer(Descriptor desc, CFMetaData metadata) throws IOException
         {
             super(desc, new BufferedRandomAccessFile(new File(desc.filenameFor(SSTable.COMPONENT_DATA)), "rw", 8 * 1024 * 1024, true), metadata);
@@ -396,8 +581,8 @@ public class SSTableWriter extends SSTable
         @Override
         protected long doIndexing() throws IOException
         {
-            EstimatedHistogram rowSizes = SSTable.defaultRowHistogram();
-            EstimatedHistogram columnCounts = SSTable.defaultColumnHistogram();
+            EstimatedHistogram rowSizes = SSTableMetadata.defaultRowHistogram();
+            EstimatedHistogram columnCounts = SSTableMetadata.defaultColumnHistogram();
             long rows = 0L;
             ByteBuffer diskKey;
             DecoratedKey key;
@@ -428,22 +613,20 @@ public class SSTableWriter extends SSTable
                 readRowPosition = dfile.getFilePointer();
 
 
+                // serialize CF w/ bloom filter, column index
+                rowBuffer.reset();
+                ColumnFamily.serializer().serializeWithIndexes(cf, rowBuffer);
+
                 // update index writer
                 key = SSTableReader.decodeKey(StorageService.getPartitioner(), desc, diskKey);
-                iwriter.afterAppend(key, writeRowPosition);
-
+                iwriter.afterAppend(key, writeRowPosition, promotedHeader(rowBuffer.getData(), 0, rowBuffer.getLength()));
 
-                // write key
+                // write key, data size and row
                 dfile.seek(writeRowPosition);
                 FBUtilities.writeShortByteArray(diskKey, dfile);
-
-                // write data size; serialize CF w/ bloom filter, column index
-                long writeSizePosition = dfile.getFilePointer();
-                dfile.writeLong(-1L);
-                ColumnFamily.serializer().serializeWithIndexes(cf, dfile);
+                dfile.writeLong(rowBuffer.getLength());
+                dfile.write(rowBuffer.getData(), 0, rowBuffer.getLength());
                 long writeEndPosition = dfile.getFilePointer();
-                dfile.seek(writeSizePosition);
-                dfile.writeLong(writeEndPosition - (writeSizePosition + 8L));
 
                 writeRowPosition = writeEndPosition;
 
@@ -473,8 +656,10 @@ public class SSTableWriter extends SSTable
         public final IPartitioner partitioner;
         public final SegmentedFile.Builder builder;
         public final IndexSummary summary;
-        public final BloomFilter bf;
+        public final BlockedBloomFilter bf;
         private FileMark mark;
+        // where the promoted header of the last entry starts, or -1 if it has none
+        long lastHeaderPosition = -1;
 
         IndexWriter(Descriptor desc, IPartitioner part, long keyCount) throws IOException
         {
@@ -483,15 +668,28 @@ public class SSTableWriter extends SSTable
             indexFile = new BufferedRandomAccessFile(new File(desc.filenameFor(SSTable.COMPONENT_INDEX)), "rw", 8 * 1024 * 1024, true);
             builder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
             summary = new IndexSummary(keyCount);
-            bf = BloomFilter.getFilter(keyCount, 15);
+            bf = BlockedBloomFilter.getFilter(keyCount, 15, DatabaseDescriptor.isBloomFilterOffHeap());
         }
 
-        public void afterAppend(DecoratedKey key, long dataPosition) throws IOException
+        /**
+         * @param promotedHeader the header of the row, to store in its index entry, or null
+         */
+        public void afterAppend(DecoratedKey key, long dataPosition, byte[] promotedHeader) throws IOException
         {
             bf.add(key.key);
             long indexPosition = indexFile.getFilePointer();
             FBUtilities.writeShortByteArray(key.key, indexFile);
             indexFile.writeLong(dataPosition);
+            lastHeaderPosition = promotedHeader == null ? -1 : indexFile.getFilePointer();
+            if (promotedHeader == null)
+            {
+                indexFile.writeInt(0);
+            }
+            else
+            {
+                indexFile.writeInt(promotedHeader.length);
+                indexFile.write(promotedHeader);
+            }
             if (logger.isTraceEnabled())
                 logger.trace("wrote index of " + key + " at " + indexPosition);
 
@@ -506,8 +704,8 @@ public class SSTableWriter extends SSTable
         {
             // bloom filter
             FileOutputStream fos = new FileOutputStream(desc.filenameFor(SSTable.COMPONENT_FILTER));
-            DataOutputStream stream = new DataOutputStream(fos);
-            BloomFilter.serializer().serialize(bf, stream);
+            DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(fos));
+            BlockedBloomFilter.serializer().serialize(bf, stream);
             stream.flush();
             fos.getFD().sync();
             stream.close();
@@ -36,7 +36,7 @@ import org.apache.cassandra.utils.CLibrary;
  * overridden here relies on the implementation of those methods in the
  * superclass.
  */
-public class BufferedRandomAccessFile extends RandomAccessFile implements FileDataInput
+public class BufferedRandomAccessFile extends RandomAccessFile implements RandomAccessFileDataInput, FileDataOutput
 {
     private static final long MAX_BYTES_IN_PAGE_CACHE = (long) Math.pow(2, 27); // 128mb
     
@@ -0,0 +1,43 @@
+package org.apache.cassandra.io.util;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A file being written sequentially, which can be rewound to an earlier mark.
+ */
+public interface FileDataOutput extends DataOutput, Closeable
+{
+    public String getPath();
+
+    /**
+     * @return the number of bytes written so far: for a transformed (e.g., compressed) file, this is not
+     * necessarily the position in the file on disk
+     */
+    public long getFilePointer();
+
+    public FileMark mark();
+
+    public void reset(FileMark mark) throws IOException;
+}
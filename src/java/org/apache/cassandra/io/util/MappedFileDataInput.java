@@ -22,15 +22,15 @@ package org.apache.cassandra.io.util;
 
 
 import java.io.*;
-import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
 
 public class MappedFileDataInput extends InputStream implements FileDataInput
 {
-    private final MappedByteBuffer buffer;
+    private final ByteBuffer buffer;
     private final String filename;
     private int position;
 
-    public MappedFileDataInput(MappedByteBuffer buffer, String filename, int position)
+    public MappedFileDataInput(ByteBuffer buffer, String filename, int position)
     {
         assert buffer != null;
         this.buffer = buffer;
@@ -21,6 +21,8 @@ package org.apache.cassandra.io.util;
  */
 
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOError;
 import java.io.IOException;
@@ -139,6 +141,25 @@ public class MmappedSegmentedFile extends SegmentedFile
             }
         }
 
+        @Override
+        public void serializeBounds(DataOutput out) throws IOException
+        {
+            super.serializeBounds(out);
+            out.writeInt(boundaries.size());
+            for (long bound : boundaries)
+                out.writeLong(bound);
+        }
+
+        @Override
+        public void deserializeBounds(DataInput in) throws IOException
+        {
+            super.deserializeBounds(in);
+            boundaries.clear();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++)
+                boundaries.add(in.readLong());
+        }
+
         @Override
         public SegmentedFile complete(String path)
         {
@@ -1,4 +1,4 @@
-package org.apache.cassandra.db.commitlog;
+package org.apache.cassandra.io.util;
 /*
  * 
  * Licensed to the Apache Software Foundation (ASF) under one
@@ -20,22 +20,16 @@ package org.apache.cassandra.db.commitlog;
  * 
  */
 
-
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
-
-import org.apache.cassandra.concurrent.IExecutorMBean;
+import java.io.IOException;
 
 /**
- * Like ExecutorService, but customized for batch and periodic commitlog execution.
+ * A FileDataInput that can be positioned anywhere in the file, for sequential scans of a data file.
  */
-public interface ICommitLogExecutorService extends IExecutorMBean
+public interface RandomAccessFileDataInput extends FileDataInput
 {
-    public <T> Future<T> submit(Callable<T> task);
+    public void seek(long position) throws IOException;
 
-    /**
-     * submits the adder for execution and blocks for it to be synced, if necessary
-     */
-    public void add(CommitLog.LogRecordAdder adder);
+    public long getFilePointer();
 
+    public long length() throws IOException;
 }
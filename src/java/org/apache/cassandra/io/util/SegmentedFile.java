@@ -19,6 +19,8 @@
 
 package org.apache.cassandra.io.util;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOError;
 import java.io.IOException;
 import java.nio.MappedByteBuffer;
@@ -45,7 +47,7 @@ public abstract class SegmentedFile
     /**
      * Use getBuilder to get a Builder to construct a SegmentedFile.
      */
-    SegmentedFile(String path, long length)
+    protected SegmentedFile(String path, long length)
     {
         this.path = path;
         this.length = length;
@@ -88,6 +90,27 @@ public abstract class SegmentedFile
          * @param path The file on disk.
          */
         public abstract SegmentedFile complete(String path);
+
+        /**
+         * Persists the boundaries collected so far, so that a later Builder can be restored from them with
+         * deserializeBounds rather than by revisiting every potential boundary. Must be called before complete.
+         */
+        public void serializeBounds(DataOutput out) throws IOException
+        {
+            out.writeUTF(getClass().getName());
+        }
+
+        /**
+         * Restores boundaries written by serializeBounds.
+         * @throws IOException if the bounds were written by a different kind of Builder (e.g. because the access
+         * mode was changed), in which case the potential boundaries must be collected again.
+         */
+        public void deserializeBounds(DataInput in) throws IOException
+        {
+            String name = in.readUTF();
+            if (!name.equals(getClass().getName()))
+                throw new IOException("Bounds were written by " + name + " rather than " + getClass().getName());
+        }
     }
 
     static final class Segment extends Pair<Long, MappedByteBuffer> implements Comparable<Segment>
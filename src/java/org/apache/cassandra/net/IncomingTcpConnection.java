@@ -80,6 +80,8 @@ public class IncomingTcpConnection extends Thread
                     input.readFully(contentBytes);
                     
                     Message message = Message.serializer().deserialize(new DataInputStream(new ByteArrayInputStream(contentBytes)));
+                    // before the message is handled, so that its verb handler can tell how it was serialized
+                    MessagingService.instance.setVersion(message.getFrom(), version);
                     MessagingService.receive(message);
                 }
             }
@@ -31,6 +31,7 @@ import java.nio.channels.ServerSocketChannel;
 import java.security.MessageDigest;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.management.MBeanServer;
@@ -43,6 +44,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.util.DataOutputBuffer;
@@ -55,13 +57,17 @@ import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.streaming.FileStreamTask;
 import org.apache.cassandra.streaming.StreamHeader;
 import org.apache.cassandra.utils.ExpiringMap;
+import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.GuidGenerator;
 import org.apache.cassandra.utils.SimpleCondition;
 import org.cliffc.high_scale_lib.NonBlockingHashMap;
 
 public class MessagingService implements MessagingServiceMBean, ILatencyPublisher
 {
-    private static int version_ = 1;
+    public static final int VERSION_07 = 1;
+    // adds the offset of FILE_RETRY stream replies
+    public static final int VERSION_080 = 2;
+    private static int version_ = VERSION_080;
     //TODO: make this parameter dynamic somehow.  Not sure if config is appropriate.
     private static SerializerType serializerType_ = SerializerType.BINARY;
 
@@ -86,6 +92,9 @@ public class MessagingService implements MessagingServiceMBean, ILatencyPublishe
     public static final MessagingService instance = new MessagingService();
 
     private SocketThread socketThread;
+
+    // the messaging version of each peer, as found in the header of the messages it sends us
+    private final Map<InetAddress, Integer> versions = new NonBlockingHashMap<InetAddress, Integer>();
     private SimpleCondition listenGate;
     private static final Map<StorageService.Verb, AtomicInteger> droppedMessages = new EnumMap<StorageService.Verb, AtomicInteger>(StorageService.Verb.class);
     private final List<ILatencySubscriber> subscribers = new ArrayList<ILatencySubscriber>();
@@ -106,7 +115,13 @@ public class MessagingService implements MessagingServiceMBean, ILatencyPublishe
     {
         listenGate = new SimpleCondition();
         verbHandlers_ = new EnumMap<StorageService.Verb, IVerbHandler>(StorageService.Verb.class);
-        streamExecutor_ = new DebuggableThreadPoolExecutor("Streaming", DatabaseDescriptor.getCompactionThreadPriority());
+        // a thread per file being streamed: StreamOutSession limits how many go to each host at once
+        streamExecutor_ = new DebuggableThreadPoolExecutor(0,
+                                                           Integer.MAX_VALUE,
+                                                           60,
+                                                           TimeUnit.SECONDS,
+                                                           new SynchronousQueue<Runnable>(),
+                                                           new NamedThreadFactory("Streaming", DatabaseDescriptor.getCompactionThreadPriority()));
         Runnable logDropped = new Runnable()
         {
             public void run()
@@ -436,6 +451,30 @@ public class MessagingService implements MessagingServiceMBean, ILatencyPublishe
         targets.remove(messageId, from);
     }
 
+    public static int getVersion()
+    {
+        return version_;
+    }
+
+    public void setVersion(InetAddress endpoint, int version)
+    {
+        Integer old = versions.put(endpoint, version);
+        if (old != null && old != version && logger_.isDebugEnabled())
+            logger_.debug("messaging version of " + endpoint + " changed from " + old + " to " + version);
+    }
+
+    /**
+     * @return the messaging version of the given endpoint, assuming the oldest one we know of if it has not
+     * sent us anything yet
+     */
+    public int getVersion(InetAddress endpoint)
+    {
+        if (endpoint.equals(FBUtilities.getLocalAddress()))
+            return version_;
+        Integer version = versions.get(endpoint);
+        return version == null ? VERSION_07 : version;
+    }
+
     public static void validateMagic(int magic) throws IOException
     {
         if (magic != PROTOCOL_MAGIC)
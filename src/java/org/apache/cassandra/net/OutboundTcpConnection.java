@@ -21,13 +21,18 @@ package org.apache.cassandra.net;
  */
 
 
-import java.io.DataOutputStream;
+
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.Socket;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,79 +40,151 @@ import org.slf4j.LoggerFactory;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.utils.FBUtilities;
 
-public class OutboundTcpConnection extends Thread
+/**
+ * A queue of messages to an endpoint, written over a non-blocking socket by one of the
+ * OutboundTcpSelector threads. Everything that is queued when the socket is writable
+ * goes out together in a single gathering write, so under load many messages share a syscall.
+ *
+ * Only write, closeSocket and the statistics are called by other threads; the rest of this
+ * class is confined to its selector's thread.
+ */
+public class OutboundTcpConnection
 {
     private static final Logger logger = LoggerFactory.getLogger(OutboundTcpConnection.class);
 
-    private static final ByteBuffer CLOSE_SENTINEL = ByteBuffer.allocate(0);
     private static final int OPEN_RETRY_DELAY = 100; // ms between retries
+    // the most messages handed to a single gathering write
+    private static final int MAX_GATHERED_MESSAGES = 128;
 
     private final InetAddress endpoint;
-    private final BlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<ByteBuffer>();
-    private DataOutputStream output;
-    private Socket socket;
-    private long completedCount;
+    private final OutboundTcpSelector selector;
+    private final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // true while the connection is handed to (or being worked on by) the selector, so writers needn't wake it
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean resetRequested;
+    private volatile long completedCount;
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    // the messages taken off the queue and not yet completely written are batch[batchStart, batchEnd)
+    private final ByteBuffer[] batch = new ByteBuffer[MAX_GATHERED_MESSAGES];
+    private int batchStart;
+    private int batchEnd;
+    // while trying to connect, when to give up; and between attempts, when to try again
+    private long connectDeadline = -1;
+    private long retryAt = -1;
 
     public OutboundTcpConnection(InetAddress remoteEp)
     {
-        super("WRITE-" + remoteEp);
         this.endpoint = remoteEp;
+        this.selector = OutboundTcpSelector.next();
     }
 
     public void write(ByteBuffer buffer)
     {
-        try
-        {
-            queue.put(buffer);
-        }
-        catch (InterruptedException e)
-        {
-            throw new AssertionError(e);
-        }
+        queue.add(buffer);
+        pendingCount.incrementAndGet();
+        if (scheduled.compareAndSet(false, true))
+            selector.schedule(this);
     }
 
     void closeSocket()
     {
-        queue.clear();
-        write(CLOSE_SENTINEL);
+        while (queue.poll() != null)
+            pendingCount.decrementAndGet();
+        resetRequested = true;
+        // the selector must notice the reset even if it is waiting for the socket
+        scheduled.set(true);
+        selector.schedule(this);
+    }
+
+    public int getPendingMessages()
+    {
+        return pendingCount.get();
+    }
+
+    public long getCompletedMesssages()
+    {
+        return completedCount;
     }
 
-    public void run()
+    /**
+     * Called by the selector when the connection has been scheduled, or it is time to retry connecting.
+     */
+    void process(long now)
     {
-        while (true)
+        if (resetRequested)
         {
-            ByteBuffer bb = take();
-            if (bb == CLOSE_SENTINEL)
-            {
-                disconnect();
-                continue;
-            }
-            if (socket != null || connect())
-                writeConnected(bb);
-            else
-                // clear out the queue, else gossip messages back up.
-                queue.clear();            
+            resetRequested = false;
+            disconnect();
+            connectDeadline = -1;
+            retryAt = -1;
         }
+
+        if (channel == null)
+        {
+            if (batchStart == batchEnd && queue.isEmpty())
+                idle();
+            else if (now >= retryAt)
+                connect(now);
+            return;
+        }
+
+        // still connecting: OP_CONNECT will pick it up
+        if (channel.isConnectionPending())
+            return;
+        flush();
     }
 
-    public int getPendingMessages()
+    /**
+     * Called by the selector when the socket is ready.
+     */
+    void ready(SelectionKey readyKey, long now)
     {
-        return queue.size();
+        // the key may belong to a socket that has been closed since
+        if (readyKey != key || !key.isValid())
+            return;
+        if (key.isConnectable())
+            finishConnect(now);
+        else if (key.isWritable())
+            flush();
     }
 
-    public long getCompletedMesssages()
+    private void idle()
     {
-        return completedCount;
+        scheduled.set(false);
+        // a writer may have queued a message after we last looked, but before it could see that we stopped
+        if (!queue.isEmpty() && scheduled.compareAndSet(false, true))
+            selector.schedule(this);
     }
 
-    private void writeConnected(ByteBuffer bb)
+    private void flush()
     {
         try
         {
-            output.write(bb.array(), bb.position()+bb.arrayOffset(), bb.limit()+bb.arrayOffset());
-            if (queue.peek() == null)
+            while (true)
             {
-                output.flush();
+                if (batchStart == batchEnd && !fillBatch())
+                {
+                    key.interestOps(0);
+                    idle();
+                    return;
+                }
+
+                channel.write(batch, batchStart, batchEnd - batchStart);
+                while (batchStart < batchEnd && !batch[batchStart].hasRemaining())
+                {
+                    batch[batchStart++] = null;
+                    completedCount++;
+                }
+
+                if (batchStart < batchEnd)
+                {
+                    // the socket buffer is full: carry on when it drains
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
             }
         }
         catch (IOException e)
@@ -115,73 +192,117 @@ public class OutboundTcpConnection extends Thread
             logger.info("error writing to " + endpoint);
             logger.debug("error was ", e);
             disconnect();
+            // reconnect for whatever is still queued
+            selector.schedule(this);
         }
     }
 
-    private void disconnect()
+    /**
+     * Moves as many queued messages as fit into the (empty) batch.
+     * @return false if there were none
+     */
+    private boolean fillBatch()
     {
-        if (socket != null)
+        batchStart = 0;
+        batchEnd = 0;
+        ByteBuffer buffer;
+        while (batchEnd < batch.length && (buffer = queue.poll()) != null)
         {
-            try
-            {
-                socket.close();
-            }
-            catch (IOException e)
-            {
-                if (logger.isDebugEnabled())
-                    logger.debug("exception closing connection to " + endpoint, e);
-            }
-            output = null;
-            socket = null;
+            pendingCount.decrementAndGet();
+            batch[batchEnd++] = buffer;
         }
+        return batchEnd > 0;
     }
 
-    private ByteBuffer take()
+    private void connect(long now)
     {
-        ByteBuffer bb;
+        if (logger.isDebugEnabled())
+            logger.debug("attempting to connect to " + endpoint);
+        if (connectDeadline < 0)
+            connectDeadline = now + DatabaseDescriptor.getRpcTimeout();
         try
         {
-            bb = queue.take();
-            completedCount++;
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setKeepAlive(true);
+            channel.socket().setTcpNoDelay(true);
+            // zero means 'bind on any available port.'
+            channel.socket().bind(new InetSocketAddress(FBUtilities.getLocalAddress(), 0));
+            key = channel.register(selector.selector(), SelectionKey.OP_CONNECT, this);
+            if (channel.connect(new InetSocketAddress(endpoint, DatabaseDescriptor.getStoragePort())))
+                connected();
         }
-        catch (InterruptedException e)
+        catch (IOException e)
         {
-            throw new AssertionError(e);
+            connectFailed(now, e);
         }
-        return bb;
     }
 
-    private boolean connect()
+    private void finishConnect(long now)
     {
-        if (logger.isDebugEnabled())
-            logger.debug("attempting to connect to " + endpoint);
-        long start = System.currentTimeMillis();
-        while (System.currentTimeMillis() < start + DatabaseDescriptor.getRpcTimeout())
+        try
+        {
+            if (channel.finishConnect())
+                connected();
+        }
+        catch (IOException e)
+        {
+            connectFailed(now, e);
+        }
+    }
+
+    private void connected()
+    {
+        connectDeadline = -1;
+        retryAt = -1;
+        key.interestOps(0);
+        flush();
+    }
+
+    private void connectFailed(long now, IOException e)
+    {
+        if (logger.isTraceEnabled())
+            logger.trace("unable to connect to " + endpoint, e);
+        disconnect();
+        if (now < connectDeadline)
         {
+            retryAt = now + OPEN_RETRY_DELAY;
+            selector.retryLater(this);
+            return;
+        }
+
+        // clear out the queue, else gossip messages back up.
+        connectDeadline = -1;
+        retryAt = -1;
+        while (queue.poll() != null)
+            pendingCount.decrementAndGet();
+        idle();
+    }
+
+    long retryAt()
+    {
+        return retryAt;
+    }
+
+    private void disconnect()
+    {
+        Arrays.fill(batch, batchStart, batchEnd, null);
+        batchStart = batchEnd = 0;
+        if (channel != null)
+        {
+            if (key != null)
+                key.cancel();
             try
             {
-                // zero means 'bind on any available port.'
-                socket = new Socket(endpoint, DatabaseDescriptor.getStoragePort(), FBUtilities.getLocalAddress(), 0);
-                socket.setKeepAlive(true);
-                socket.setTcpNoDelay(true);
-                output = new DataOutputStream(socket.getOutputStream());
-                return true;
+                channel.close();
             }
             catch (IOException e)
             {
-                socket = null;
-                if (logger.isTraceEnabled())
-                    logger.trace("unable to connect to " + endpoint, e);
-                try
-                {
-                    Thread.sleep(OPEN_RETRY_DELAY);
-                }
-                catch (InterruptedException e1)
-                {
-                    throw new AssertionError(e1);
-                }
+                if (logger.isDebugEnabled())
+                    logger.debug("exception closing connection to " + endpoint, e);
             }
+            key = null;
+            channel = null;
         }
-        return false;
     }
 }
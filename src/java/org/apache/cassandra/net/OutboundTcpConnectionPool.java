@@ -30,9 +30,7 @@ class OutboundTcpConnectionPool
     OutboundTcpConnectionPool(InetAddress remoteEp)
     {
         cmdCon = new OutboundTcpConnection(remoteEp);
-        cmdCon.start();
         ackCon = new OutboundTcpConnection(remoteEp);
-        ackCon.start();
     }
 
     /**
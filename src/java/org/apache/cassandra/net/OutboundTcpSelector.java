@@ -0,0 +1,161 @@
+package org.apache.cassandra.net;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+
+import java.io.IOError;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One of a small, fixed pool of threads which multiplex the sockets of every OutboundTcpConnection.
+ */
+class OutboundTcpSelector extends Thread
+{
+    private static final Logger logger = LoggerFactory.getLogger(OutboundTcpSelector.class);
+
+    private static final OutboundTcpSelector[] selectors;
+    private static final AtomicInteger nextSelector = new AtomicInteger();
+    static
+    {
+        selectors = new OutboundTcpSelector[Math.min(4, Runtime.getRuntime().availableProcessors())];
+        for (int i = 0; i < selectors.length; i++)
+        {
+            selectors[i] = new OutboundTcpSelector("WRITE-SELECTOR-" + i);
+            selectors[i].start();
+        }
+    }
+
+    private final Selector selector;
+    // connections with messages to send (or a reset to perform), handed over by other threads
+    private final Queue<OutboundTcpConnection> scheduled = new ConcurrentLinkedQueue<OutboundTcpConnection>();
+    // connections waiting to retry connecting
+    private final List<OutboundTcpConnection> retrying = new ArrayList<OutboundTcpConnection>();
+
+    private OutboundTcpSelector(String name)
+    {
+        super(name);
+        try
+        {
+            selector = Selector.open();
+        }
+        catch (IOException e)
+        {
+            throw new IOError(e);
+        }
+    }
+
+    /**
+     * @return the selector to assign a new connection to
+     */
+    static OutboundTcpSelector next()
+    {
+        return selectors[Math.abs(nextSelector.getAndIncrement() % selectors.length)];
+    }
+
+    Selector selector()
+    {
+        return selector;
+    }
+
+    void schedule(OutboundTcpConnection connection)
+    {
+        scheduled.add(connection);
+        selector.wakeup();
+    }
+
+    /** only called from this thread */
+    void retryLater(OutboundTcpConnection connection)
+    {
+        if (!retrying.contains(connection))
+            retrying.add(connection);
+    }
+
+    public void run()
+    {
+        while (true)
+        {
+            try
+            {
+                select();
+            }
+            catch (Throwable t)
+            {
+                // keep the other connections going
+                logger.error("Error in " + getName(), t);
+            }
+        }
+    }
+
+    private void select() throws IOException
+    {
+        long timeout = 0;
+        if (!retrying.isEmpty())
+        {
+            long nextRetry = Long.MAX_VALUE;
+            for (OutboundTcpConnection connection : retrying)
+                nextRetry = Math.min(nextRetry, connection.retryAt());
+            timeout = Math.max(1, nextRetry - System.currentTimeMillis());
+        }
+        selector.select(timeout);
+
+        long now = System.currentTimeMillis();
+        Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+        while (iter.hasNext())
+        {
+            SelectionKey key = iter.next();
+            iter.remove();
+            ((OutboundTcpConnection) key.attachment()).ready(key, now);
+        }
+
+        OutboundTcpConnection connection;
+        while ((connection = scheduled.poll()) != null)
+            connection.process(now);
+
+        if (!retrying.isEmpty())
+        {
+            List<OutboundTcpConnection> due = new ArrayList<OutboundTcpConnection>();
+            Iterator<OutboundTcpConnection> retryIter = retrying.iterator();
+            while (retryIter.hasNext())
+            {
+                connection = retryIter.next();
+                if (connection.retryAt() <= now)
+                {
+                    retryIter.remove();
+                    due.add(connection);
+                }
+            }
+            for (OutboundTcpConnection dueConnection : due)
+                dueConnection.process(now);
+        }
+    }
+}
@@ -19,8 +19,8 @@
 package org.apache.cassandra.net;
 
 import java.net.InetAddress;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,7 +31,7 @@ import org.apache.cassandra.locator.ILatencySubscriber;
 public class ResponseVerbHandler implements IVerbHandler, ILatencyPublisher
 {
     private static final Logger logger_ = LoggerFactory.getLogger( ResponseVerbHandler.class );
-    private List<ILatencySubscriber>  subscribers = new ArrayList<ILatencySubscriber>();
+    private final List<ILatencySubscriber> subscribers = new CopyOnWriteArrayList<ILatencySubscriber>();
 
 
     public void doVerb(Message message)
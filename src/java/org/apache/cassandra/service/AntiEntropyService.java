@@ -39,10 +39,12 @@ import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.CompactionManager;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.Table;
+import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.AbstractCompactedRow;
 import org.apache.cassandra.io.ICompactSerializer;
+import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.net.CompactEndpointSerializationHelper;
 import org.apache.cassandra.net.IVerbHandler;
@@ -85,6 +87,12 @@ import org.apache.cassandra.utils.*;
  *   * A Differencer object is enqueued for each comparison.
  * 4. Differencers are executed in Stage.ANTIENTROPY, to compare the two trees, and perform repair via the
  *    streaming api.
+ * 5. Once every comparison of the session has completed, the initiator sends a RepairFinished message to
+ *    every node that built a tree, which marks the sstables it validated repaired (see markRepaired()).
+ *
+ * Only unrepaired sstables are validated and streamed: repaired ones already agree with the other replicas.
+ * Streamed data is written to new, unrepaired sstables, so that the next repair passes it on to the replicas
+ * that the session did not compare against.
  */
 public class AntiEntropyService
 {
@@ -109,6 +117,12 @@ public class AntiEntropyService
      */
     private final ConcurrentMap<String, RepairSession.Callback> sessions;
 
+    /**
+     * The sstables validated for each request, to be marked repaired when the session of the request finishes.
+     * Descriptors rather than readers are kept, so that compacted sstables can still be deleted meanwhile.
+     */
+    private final ExpiringMap<TreeRequest, Collection<Descriptor>> validated;
+
     /**
      * Protected constructor. Use AntiEntropyService.instance.
      */
@@ -116,6 +130,7 @@ public class AntiEntropyService
     {
         requests = new ExpiringMap<String, Map<TreeRequest, TreePair>>(REQUEST_TIMEOUT);
         sessions = new ConcurrentHashMap<String, RepairSession.Callback>();
+        validated = new ExpiringMap<TreeRequest, Collection<Descriptor>>(REQUEST_TIMEOUT);
     }
 
     /**
@@ -136,6 +151,80 @@ public class AntiEntropyService
         sessions.get(request.sessionid).completed(request);
     }
 
+    /**
+     * Records the sstables that were validated to build the tree for the given request.
+     */
+    public void validated(TreeRequest request, Collection<SSTableReader> sstables)
+    {
+        Collection<Descriptor> descriptors = new HashSet<Descriptor>();
+        for (SSTableReader sstable : sstables)
+            descriptors.add(sstable.descriptor);
+        validated.put(request, descriptors);
+    }
+
+    /**
+     * Called when the session of the given request has finished: marks the sstables validated for it
+     * repaired, if they are still live and hold only data in ranges that the session compared.
+     */
+    void markRepaired(TreeRequest request, long repairedAt) throws IOException
+    {
+        Collection<Descriptor> descriptors = validated.remove(request);
+        if (descriptors == null)
+        {
+            logger.info("No validated sstables to mark repaired for " + request);
+            return;
+        }
+
+        // the initiator compared all of its ranges; other nodes only those they share with the initiator
+        StorageService ss = StorageService.instance;
+        InetAddress local = FBUtilities.getLocalAddress();
+        Collection<Range> ranges = new HashSet<Range>(ss.getRangesForEndpoint(request.cf.left, local));
+        if (!local.equals(request.endpoint))
+            ranges.retainAll(ss.getRangesForEndpoint(request.cf.left, request.endpoint));
+
+        ColumnFamilyStore cfs = Table.open(request.cf.left).getColumnFamilyStore(request.cf.right);
+        int marked = 0;
+        for (SSTableReader sstable : cfs.getSSTables())
+        {
+            if (!descriptors.contains(sstable.descriptor) || !sstable.descriptor.hasRepairedAt)
+                continue;
+            if (!isCovered(sstable.getFirst().token, sstable.getLast().token, ranges))
+                continue;
+            sstable.markRepaired(repairedAt);
+            marked++;
+        }
+        logger.info("Marked " + marked + " of " + descriptors.size() + " validated sstables repaired for " + request);
+    }
+
+    /**
+     * @return true if every token from first to last (inclusive) falls in one of the given ranges
+     */
+    static boolean isCovered(Token first, Token last, Collection<Range> ranges)
+    {
+        Token minimum = StorageService.getPartitioner().getMinimumToken();
+        // the end of the span of tokens from first that the ranges cover without a gap
+        Token covered = null;
+        for (AbstractBounds range : AbstractBounds.normalize(ranges))
+        {
+            if (covered == null)
+            {
+                if (!range.contains(first))
+                    continue;
+            }
+            else if (range.left.compareTo(covered) > 0)
+            {
+                return false;
+            }
+            if (range.right.equals(minimum))
+                return true;
+            if (covered == null || range.right.compareTo(covered) > 0)
+                covered = range.right;
+            if (last.compareTo(covered) <= 0)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Returns the map of waiting rendezvous endpoints to trees for the given session.
      * Should only be called within Stage.ANTIENTROPY.
@@ -274,6 +363,8 @@ public class AntiEntropyService
         private transient long validated;
         private transient MerkleTree.TreeRange range;
         private transient MerkleTree.TreeRangeIterator ranges;
+        // reset by each digest() call, so one instance serves every row
+        private transient MessageDigest digest;
 
         public final static MerkleTree.RowHash EMPTY_ROW = new MerkleTree.RowHash(null, new byte[0]);
         
@@ -376,15 +467,17 @@ public class AntiEntropyService
         private MerkleTree.RowHash rowHash(AbstractCompactedRow row)
         {
             validated++;
-            // MerkleTree uses XOR internally, so we want lots of output bits here
-            MessageDigest digest = null;
-            try
+            if (digest == null)
             {
-                digest = MessageDigest.getInstance("SHA-256");
-            }
-            catch (NoSuchAlgorithmException e)
-            {
-                throw new AssertionError(e);
+                // MerkleTree uses XOR internally, so we want lots of output bits here
+                try
+                {
+                    digest = MessageDigest.getInstance("SHA-256");
+                }
+                catch (NoSuchAlgorithmException e)
+                {
+                    throw new AssertionError(e);
+                }
             }
             row.update(digest);
             return new MerkleTree.RowHash(row.key.token, digest.digest());
@@ -501,7 +594,8 @@ public class AntiEntropyService
             try
             {
                 List<Range> ranges = new ArrayList<Range>(differences);
-                Collection<SSTableReader> sstables = cfstore.getSSTables();
+                // the trees were only built from unrepaired data, so only that can differ
+                Collection<SSTableReader> sstables = cfstore.getUnrepairedSSTables();
                 Callback callback = new Callback();
                 // send ranges to the remote node
                 StreamOutSession outsession = StreamOutSession.create(request.cf.left, request.endpoint, callback);
@@ -668,6 +762,47 @@ public class AntiEntropyService
         }
     }
 
+    /**
+     * Handler for the message an initiator sends to the nodes that built trees for a session once it has
+     * finished.  The payload is the TreeRequest that the node validated for, and the time of the repair.
+     */
+    public static class RepairFinishedVerbHandler implements IVerbHandler
+    {
+        static Message makeVerb(TreeRequest request, long repairedAt)
+        {
+            try
+            {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                DataOutputStream dos = new DataOutputStream(bos);
+                TreeRequestVerbHandler.SERIALIZER.serialize(request, dos);
+                dos.writeLong(repairedAt);
+                return new Message(FBUtilities.getLocalAddress(), StorageService.Verb.REPAIR_FINISHED, bos.toByteArray());
+            }
+            catch(IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public void doVerb(Message message)
+        {
+            byte[] bytes = message.getMessageBody();
+            DataInputStream buffer = new DataInputStream(new ByteArrayInputStream(bytes));
+            try
+            {
+                TreeRequest remotereq = TreeRequestVerbHandler.SERIALIZER.deserialize(buffer);
+                long repairedAt = buffer.readLong();
+                // the request was validated for the initiator, which is the sender
+                TreeRequest request = new TreeRequest(remotereq.sessionid, message.getFrom(), remotereq.cf);
+                AntiEntropyService.instance.markRepaired(request, repairedAt);
+            }
+            catch (IOException e)
+            {
+                throw new IOError(e);
+            }
+        }
+    }
+
     /**
      * A tuple of table and cf.
      */
@@ -740,6 +875,9 @@ public class AntiEntropyService
         private final String[] cfnames;
         private final SimpleCondition requestsMade;
         private final ConcurrentHashMap<TreeRequest,Object> requests;
+        // the data validated by the session is repaired as of its start
+        private final long repairedAt;
+        private Set<InetAddress> endpoints;
         public RepairSession(String tablename, String... cfnames)
         {
             super("manual-repair-" + UUID.randomUUID());
@@ -747,6 +885,7 @@ public class AntiEntropyService
             this.cfnames = cfnames;
             this.requestsMade = new SimpleCondition();
             this.requests = new ConcurrentHashMap<TreeRequest,Object>();
+            this.repairedAt = System.currentTimeMillis();
         }
 
         /**
@@ -760,7 +899,7 @@ public class AntiEntropyService
         @Override
         public void run()
         {
-            Set<InetAddress> endpoints = AntiEntropyService.getNeighbors(tablename);
+            endpoints = AntiEntropyService.getNeighbors(tablename);
             if (endpoints.isEmpty())
             {
                 logger.info("No neighbors to repair with: " + getName() + " completed.");
@@ -817,8 +956,16 @@ public class AntiEntropyService
                 if (!requests.isEmpty())
                     return;
 
-                // all requests completed
+                // all requests completed: every node that built a tree can mark what it validated repaired
                 logger.info("Session " + getName() + " completed successfully.");
+                MessagingService ms = MessagingService.instance;
+                Set<InetAddress> validators = new HashSet<InetAddress>(endpoints);
+                validators.add(FBUtilities.getLocalAddress());
+                for (String cfname : cfnames)
+                {
+                    for (InetAddress endpoint : validators)
+                        ms.sendOneWay(RepairFinishedVerbHandler.makeVerb(new TreeRequest(getName(), endpoint, new CFPair(tablename, cfname)), repairedAt), endpoint);
+                }
                 AntiEntropyService.this.sessions.remove(getName());
                 completed.signalAll();
             }
@@ -165,8 +165,7 @@ class ConsistencyChecker implements Runnable
 		{
 			if (logger_.isDebugEnabled())
 			  logger_.debug("Received response in DataRepairHandler : " + message.toString());
-            readResponseResolver_.preprocess(message);
-            if (readResponseResolver_.getMessageCount() == majority_)
+            if (readResponseResolver_.preprocess(message) && readResponseResolver_.getMessageCount() == majority_)
             {
                 Runnable runnable = new WrappedRunnable()
                 {
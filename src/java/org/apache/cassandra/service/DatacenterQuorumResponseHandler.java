@@ -52,10 +52,10 @@ public class DatacenterQuorumResponseHandler<T> extends QuorumResponseHandler<T>
     @Override
     public void response(Message message)
     {
-        resolver.preprocess(message);
+        boolean counted = resolver.preprocess(message);
 
         int n;
-        n = localdc.equals(snitch.getDatacenter(message.getFrom())) 
+        n = counted && localdc.equals(snitch.getDatacenter(message.getFrom()))
                 ? localResponses.decrementAndGet()
                 : localResponses.get();
 
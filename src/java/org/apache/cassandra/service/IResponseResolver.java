@@ -35,7 +35,10 @@ public interface IResponseResolver<T> {
 	public T resolve() throws DigestMismatchException, IOException;
 	public boolean isDataPresent();
 
-    public void preprocess(Message message);
+    /**
+     * @return true if the message is the first from its replica, and so counts toward blockfor
+     */
+    public boolean preprocess(Message message);
     public Iterable<Message> getMessages();
     public int getMessageCount();
 }
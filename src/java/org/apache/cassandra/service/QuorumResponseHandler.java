@@ -92,6 +92,25 @@ public class QuorumResponseHandler<T> implements IAsyncCallback
         return resolver.resolve();
     }
     
+    /**
+     * Waits until the responses have arrived, or until timeout ms after the requests were sent.
+     * @return true if the responses arrived
+     */
+    public boolean await(long timeout)
+    {
+        long remaining = timeout - (System.currentTimeMillis() - startTime);
+        if (remaining <= 0)
+            return condition.isSignaled();
+        try
+        {
+            return condition.await(remaining, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+    }
+
     public void response(Message message)
     {
         resolver.preprocess(message);
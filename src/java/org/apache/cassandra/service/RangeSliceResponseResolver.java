@@ -109,9 +109,10 @@ public class RangeSliceResponseResolver implements IResponseResolver<List<Row>>
         return resolvedRows;
     }
 
-    public void preprocess(Message message)
+    public boolean preprocess(Message message)
     {
         responses.add(message);
+        return true;
     }
 
     public boolean isDataPresent()
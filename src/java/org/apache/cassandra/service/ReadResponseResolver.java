@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -49,6 +50,8 @@ public class ReadResponseResolver implements IResponseResolver<Row>
     private final String table;
     private final Map<Message, ReadResponse> results = new NonBlockingHashMap<Message, ReadResponse>();
     private DecoratedKey key;
+    // the replica whose data arrived first
+    private volatile InetAddress firstDataEndpoint;
 
     public ReadResponseResolver(String table, ByteBuffer key)
     {
@@ -187,7 +190,12 @@ public class ReadResponseResolver implements IResponseResolver<Row>
         return resolved;
     }
 
-    public void preprocess(Message message)
+    /**
+     * A replica that was sent a digest request may also be sent a speculative data request; each
+     * replica only ever counts once, with its data response replacing its digest response.
+     * Synchronized so that of two concurrent responses from one replica, only one is counted.
+     */
+    public synchronized boolean preprocess(Message message)
     {
         byte[] body = message.getMessageBody();
         ByteArrayInputStream bufIn = new ByteArrayInputStream(body);
@@ -196,7 +204,24 @@ public class ReadResponseResolver implements IResponseResolver<Row>
             ReadResponse result = ReadResponse.serializer().deserialize(new DataInputStream(bufIn));
             if (logger_.isDebugEnabled())
                 logger_.debug("Preprocessed {} response", result.isDigestQuery() ? "digest" : "data");
+
+            boolean counted = true;
+            Iterator<Map.Entry<Message, ReadResponse>> iter = results.entrySet().iterator();
+            while (iter.hasNext())
+            {
+                Map.Entry<Message, ReadResponse> entry = iter.next();
+                if (!entry.getKey().getFrom().equals(message.getFrom()))
+                    continue;
+                if (result.isDigestQuery() || !entry.getValue().isDigestQuery())
+                    return false;
+                iter.remove();
+                counted = false;
+            }
+
+            if (!result.isDigestQuery() && firstDataEndpoint == null)
+                firstDataEndpoint = message.getFrom();
             results.put(message, result);
+            return counted;
         }
         catch (IOException e)
         {
@@ -205,7 +230,7 @@ public class ReadResponseResolver implements IResponseResolver<Row>
     }
 
     /** hack so ConsistencyChecker doesn't have to serialize/deserialize an extra real Message */
-    public void injectPreProcessed(Message message, ReadResponse result)
+    public synchronized void injectPreProcessed(Message message, ReadResponse result)
     {
         results.put(message, result);
     }
@@ -220,6 +245,11 @@ public class ReadResponseResolver implements IResponseResolver<Row>
         return false;
     }
 
+    public InetAddress getFirstDataEndpoint()
+    {
+        return firstDataEndpoint;
+    }
+
     public Iterable<Message> getMessages()
     {
         return results.keySet();
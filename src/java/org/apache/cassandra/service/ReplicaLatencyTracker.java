@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.service;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.locator.ILatencyPublisher;
+import org.apache.cassandra.locator.ILatencySubscriber;
+import org.apache.cassandra.net.MessagingService;
+
+/**
+ * Keeps a window of the most recent response latencies of each replica, and periodically
+ * sorts a snapshot of each so that percentiles of it can be looked up cheaply on the read path.
+ */
+class ReplicaLatencyTracker implements ILatencySubscriber
+{
+    private static final int WINDOW_SIZE = 1000;
+    // too few samples say nothing about a replica's tail latency
+    private static final int MIN_SAMPLES = 20;
+    private static final int UPDATE_INTERVAL_IN_MS = DatabaseDescriptor.getDynamicUpdateInterval();
+
+    private final ConcurrentHashMap<InetAddress, LatencyWindow> windows = new ConcurrentHashMap<InetAddress, LatencyWindow>();
+    private boolean registered = false;
+
+    ReplicaLatencyTracker()
+    {
+        Runnable update = new Runnable()
+        {
+            public void run()
+            {
+                update();
+            }
+        };
+        StorageService.scheduledTasks.scheduleWithFixedDelay(update, UPDATE_INTERVAL_IN_MS, UPDATE_INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void receiveTiming(InetAddress host, Double latency)
+    {
+        LatencyWindow window = windows.get(host);
+        if (window == null)
+        {
+            LatencyWindow newWindow = new LatencyWindow();
+            window = windows.putIfAbsent(host, newWindow);
+            if (window == null)
+                window = newWindow;
+        }
+        window.add(latency);
+    }
+
+    /**
+     * @return the given percentile of host's recent latencies in milliseconds, or -1 if it is not yet known
+     */
+    public double getLatencyPercentile(InetAddress host, double percentile)
+    {
+        LatencyWindow window = windows.get(host);
+        if (window == null)
+            return -1;
+        double[] sorted = window.sorted;
+        if (sorted.length < MIN_SAMPLES)
+            return -1;
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private void update()
+    {
+        if (!registered && StorageService.instance.isInitialized())
+        {
+            ILatencyPublisher handler = (ILatencyPublisher)MessagingService.instance.getVerbHandler(StorageService.Verb.REQUEST_RESPONSE);
+            if (handler != null)
+            {
+                handler.register(this);
+                registered = true;
+            }
+        }
+        for (LatencyWindow window : windows.values())
+            window.snapshot();
+    }
+
+    private static class LatencyWindow
+    {
+        private final double[] latencies = new double[WINDOW_SIZE];
+        private int count;
+        private int next;
+        private boolean changed;
+        volatile double[] sorted = new double[0];
+
+        synchronized void add(double latency)
+        {
+            latencies[next] = latency;
+            next = (next + 1) % WINDOW_SIZE;
+            count = Math.min(count + 1, WINDOW_SIZE);
+            changed = true;
+        }
+
+        void snapshot()
+        {
+            double[] copy;
+            synchronized (this)
+            {
+                if (!changed)
+                    return;
+                changed = false;
+                copy = Arrays.copyOf(latencies, count);
+            }
+            Arrays.sort(copy);
+            sorted = copy;
+        }
+    }
+}
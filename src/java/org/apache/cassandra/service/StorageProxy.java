@@ -24,6 +24,7 @@ import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
@@ -39,6 +40,7 @@ import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.SpeculativeRetry;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.marshal.AbstractType;
@@ -70,8 +72,13 @@ public class StorageProxy implements StorageProxyMBean
     private static final LatencyTracker readStats = new LatencyTracker();
     private static final LatencyTracker rangeStats = new LatencyTracker();
     private static final LatencyTracker writeStats = new LatencyTracker();
+    private static final ReplicaLatencyTracker replicaLatencies = new ReplicaLatencyTracker();
+    private static final AtomicLong speculativeRetries = new AtomicLong();
+    private static final AtomicLong speculativeRetryWins = new AtomicLong();
     private static boolean hintedHandoffEnabled = DatabaseDescriptor.hintedHandoffEnabled();
     private static final String UNREACHABLE = "UNREACHABLE";
+    // the most ranges a range slice will query at once
+    static final int MAX_CONCURRENT_RANGE_REQUESTS = 16;
 
     private StorageProxy() {}
     static
@@ -311,8 +318,7 @@ public class StorageProxy implements StorageProxyMBean
                 responseHandler.response(null);
 
                 // repair-on-write (local message)
-                ReplicateOnWriteTask replicateOnWriteTask = new ReplicateOnWriteTask(rm);
-                StageManager.getStage(Stage.REPLICATE_ON_WRITE).execute(replicateOnWriteTask);
+                ReplicateOnWriteTask.replicate(rm);
             }
         };
         StageManager.getStage(Stage.MUTATION).execute(runnable);
@@ -431,6 +437,8 @@ public class StorageProxy implements StorageProxyMBean
     private static List<Row> strongRead(List<ReadCommand> commands, ConsistencyLevel consistency_level) throws IOException, UnavailableException, TimeoutException
     {
         List<QuorumResponseHandler<Row>> quorumResponseHandlers = new ArrayList<QuorumResponseHandler<Row>>();
+        List<ReadResponseResolver> resolvers = new ArrayList<ReadResponseResolver>();
+        List<InetAddress> dataPoints = new ArrayList<InetAddress>();
         List<List<InetAddress>> commandEndpoints = new ArrayList<List<InetAddress>>();
         List<Row> rows = new ArrayList<Row>();
 
@@ -464,6 +472,8 @@ public class StorageProxy implements StorageProxyMBean
             }
             MessagingService.instance.sendRR(messages, endpoints, handler);
             quorumResponseHandlers.add(handler);
+            resolvers.add(resolver);
+            dataPoints.add(dataPoint);
             commandEndpoints.add(endpoints);
         }
 
@@ -477,7 +487,10 @@ public class StorageProxy implements StorageProxyMBean
             try
             {
                 long startTime2 = System.currentTimeMillis();
+                InetAddress speculatedTo = maybeSpeculate(command, quorumResponseHandler, dataPoints.get(i), commandEndpoints.get(i));
                 row = quorumResponseHandler.get();
+                if (speculatedTo != null && speculatedTo.equals(resolvers.get(i).getFirstDataEndpoint()))
+                    speculativeRetryWins.incrementAndGet();
                 if (row != null)
                     rows.add(row);
 
@@ -520,6 +533,37 @@ public class StorageProxy implements StorageProxyMBean
         return rows;
     }
 
+    /**
+     * If the keyspace speculates, waits until the data replica is late by its standard and then
+     * asks the closest other replica for the data too.
+     *
+     * @return the replica a speculative data request was sent to, or null
+     */
+    private static InetAddress maybeSpeculate(ReadCommand command, QuorumResponseHandler<Row> handler, InetAddress dataPoint, List<InetAddress> endpoints) throws IOException
+    {
+        SpeculativeRetry retry = DatabaseDescriptor.getTableDefinition(command.table).speculativeRetry;
+        if (retry.type == SpeculativeRetry.Type.NONE || endpoints.size() < 2)
+            return null;
+
+        double delay = retry.type == SpeculativeRetry.Type.CUSTOM
+                     ? retry.value
+                     : replicaLatencies.getLatencyPercentile(dataPoint, retry.value);
+        if (delay < 0 || handler.await((long) delay))
+            return null;
+
+        List<InetAddress> candidates = new ArrayList<InetAddress>(endpoints);
+        candidates.remove(dataPoint);
+        DatabaseDescriptor.getEndpointSnitch().sortByProximity(FBUtilities.getLocalAddress(), candidates);
+        InetAddress target = candidates.get(0);
+
+        Message message = command.makeReadMessage();
+        if (logger.isDebugEnabled())
+            logger.debug("speculatively reading data for " + command + " from " + message.getMessageId() + "@" + target + " after " + delay + " ms");
+        MessagingService.instance.sendRR(message, target, handler);
+        speculativeRetries.incrementAndGet();
+        return target;
+    }
+
     /*
     * This function executes the read protocol locally.  Consistency checks are performed in the background.
     */
@@ -536,70 +580,35 @@ public class StorageProxy implements StorageProxyMBean
         {
             rows = new ArrayList<Row>(command.max_keys);
             List<AbstractBounds> ranges = getRestrictedRanges(command.range);
-            for (AbstractBounds range : ranges)
+            int concurrencyFactor = estimateConcurrencyFactor(command.max_keys, estimateRowsPerRange(command));
+            int rangesQueried = 0;
+            while (rangesQueried < ranges.size() && rows.size() < command.max_keys)
             {
-                List<InetAddress> liveEndpoints = StorageService.instance.getLiveNaturalEndpoints(command.keyspace, range.right);
-
-                if (consistency_level == ConsistencyLevel.ONE && liveEndpoints.contains(FBUtilities.getLocalAddress())) 
+                // query the next few ranges at once, then add their rows in token order
+                int remaining = command.max_keys - rows.size();
+                List<AbstractBounds> batch = ranges.subList(rangesQueried, Math.min(ranges.size(), rangesQueried + concurrencyFactor));
+                List<Pair<Future<List<Row>>, QuorumResponseHandler<List<Row>>>> results = new ArrayList<Pair<Future<List<Row>>, QuorumResponseHandler<List<Row>>>>(batch.size());
+                for (AbstractBounds range : batch)
+                    results.add(sendRangeSlice(command, range, remaining, consistency_level));
+
+                for (Pair<Future<List<Row>>, QuorumResponseHandler<List<Row>>> result : results)
                 {
+                    List<Row> rangeRows = getRangeSliceResult(result);
                     if (logger.isDebugEnabled())
-                        logger.debug("local range slice");
-                    ColumnFamilyStore cfs = Table.open(command.keyspace).getColumnFamilyStore(command.column_family);
-                    try 
-                    {
-                        rows.addAll(cfs.getRangeSlice(command.super_column,
-                                                    range,
-                                                    command.max_keys,
-                                                    QueryFilter.getFilter(command.predicate, cfs.getComparator())));
-                    } 
-                    catch (ExecutionException e) 
-                    {
-                        throw new RuntimeException(e.getCause());
-                    } 
-                    catch (InterruptedException e) 
-                    {
-                        throw new AssertionError(e);
-                    }           
-                }
-                else 
-                {
-                    DatabaseDescriptor.getEndpointSnitch().sortByProximity(FBUtilities.getLocalAddress(), liveEndpoints);
-                    RangeSliceCommand c2 = new RangeSliceCommand(command.keyspace, command.column_family, command.super_column, command.predicate, range, command.max_keys);
-                    Message message = c2.getMessage();
-
-                    // collect replies and resolve according to consistency level
-                    RangeSliceResponseResolver resolver = new RangeSliceResponseResolver(command.keyspace, liveEndpoints);
-                    AbstractReplicationStrategy rs = Table.open(command.keyspace).getReplicationStrategy();
-                    QuorumResponseHandler<List<Row>> handler = rs.getQuorumResponseHandler(resolver, consistency_level);
-                    // TODO bail early if live endpoints can't satisfy requested consistency level
-                    for (InetAddress endpoint : liveEndpoints) 
-                    {
-                        MessagingService.instance.sendRR(message, endpoint, handler);
-                        if (logger.isDebugEnabled())
-                            logger.debug("reading " + c2 + " from " + message.getMessageId() + "@" + endpoint);
-                    }
-                    // TODO read repair on remaining replicas?
-
-                    // if we're done, great, otherwise, move to the next range
-                    try 
-                    {
-                        if (logger.isDebugEnabled()) 
-                        {
-                            for (Row row : handler.get()) 
-                            {
-                                logger.debug("range slices read " + row.key);
-                            }
-                        }
-                        rows.addAll(handler.get());
-                    } 
-                    catch (DigestMismatchException e) 
                     {
-                        throw new AssertionError(e); // no digests in range slices yet
+                        for (Row row : rangeRows)
+                            logger.debug("range slices read " + row.key);
                     }
+                    rows.addAll(rangeRows);
+                    if (rows.size() >= command.max_keys)
+                        break;
                 }
-            
-                if (rows.size() >= command.max_keys)
-                    break;
+                rangesQueried += batch.size();
+
+                // adjust the estimate by what the ranges actually held
+                concurrencyFactor = rows.isEmpty()
+                                  ? Math.min(MAX_CONCURRENT_RANGE_REQUESTS, concurrencyFactor * 2)
+                                  : estimateConcurrencyFactor(command.max_keys - rows.size(), (double) rows.size() / rangesQueried);
             }
         }
         finally
@@ -609,6 +618,94 @@ public class StorageProxy implements StorageProxyMBean
         return rows.size() > command.max_keys ? rows.subList(0, command.max_keys) : rows;
     }
 
+    /**
+     * @return roughly how many rows of the command's column family each range of the ring holds, judging
+     * by the local data; or 0 if we have none to judge by
+     */
+    private static double estimateRowsPerRange(RangeSliceCommand command)
+    {
+        int localRanges = StorageService.instance.getLocalRanges(command.keyspace).size();
+        if (localRanges == 0)
+            return 0;
+        ColumnFamilyStore cfs = Table.open(command.keyspace).getColumnFamilyStore(command.column_family);
+        return (double) cfs.estimateKeys() / localRanges;
+    }
+
+    /**
+     * @return how many ranges to query at once, to find wantedRows rows in one round if the ranges hold rowsPerRange each
+     */
+    static int estimateConcurrencyFactor(int wantedRows, double rowsPerRange)
+    {
+        if (rowsPerRange <= 0)
+            return 1;
+        return (int) Math.max(1, Math.min(MAX_CONCURRENT_RANGE_REQUESTS, Math.ceil(wantedRows / rowsPerRange)));
+    }
+
+    /**
+     * Starts reading up to maxKeys rows of range, locally if possible, else from the live replicas.
+     * @return the future of the local read, or the handler of the remote ones
+     */
+    private static Pair<Future<List<Row>>, QuorumResponseHandler<List<Row>>> sendRangeSlice(RangeSliceCommand command, AbstractBounds range, int maxKeys, ConsistencyLevel consistency_level)
+    throws IOException
+    {
+        List<InetAddress> liveEndpoints = StorageService.instance.getLiveNaturalEndpoints(command.keyspace, range.right);
+        RangeSliceCommand c2 = new RangeSliceCommand(command.keyspace, command.column_family, command.super_column, command.predicate, range, maxKeys);
+
+        if (consistency_level == ConsistencyLevel.ONE && liveEndpoints.contains(FBUtilities.getLocalAddress()))
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("local range slice");
+            Future<List<Row>> future = StageManager.getStage(Stage.READ).submit(new LocalRangeSliceCallable(c2));
+            return new Pair<Future<List<Row>>, QuorumResponseHandler<List<Row>>>(future, null);
+        }
+
+        DatabaseDescriptor.getEndpointSnitch().sortByProximity(FBUtilities.getLocalAddress(), liveEndpoints);
+        Message message = c2.getMessage();
+
+        // collect replies and resolve according to consistency level
+        RangeSliceResponseResolver resolver = new RangeSliceResponseResolver(command.keyspace, liveEndpoints);
+        AbstractReplicationStrategy rs = Table.open(command.keyspace).getReplicationStrategy();
+        QuorumResponseHandler<List<Row>> handler = rs.getQuorumResponseHandler(resolver, consistency_level);
+        // TODO bail early if live endpoints can't satisfy requested consistency level
+        for (InetAddress endpoint : liveEndpoints)
+        {
+            MessagingService.instance.sendRR(message, endpoint, handler);
+            if (logger.isDebugEnabled())
+                logger.debug("reading " + c2 + " from " + message.getMessageId() + "@" + endpoint);
+        }
+        // TODO read repair on remaining replicas?
+        return new Pair<Future<List<Row>>, QuorumResponseHandler<List<Row>>>(null, handler);
+    }
+
+    private static List<Row> getRangeSliceResult(Pair<Future<List<Row>>, QuorumResponseHandler<List<Row>>> result)
+    throws IOException, TimeoutException
+    {
+        if (result.left != null)
+        {
+            try
+            {
+                return result.left.get();
+            }
+            catch (ExecutionException e)
+            {
+                throw new RuntimeException(e.getCause());
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+
+        try
+        {
+            return result.right.get();
+        }
+        catch (DigestMismatchException e)
+        {
+            throw new AssertionError(e); // no digests in range slices yet
+        }
+    }
+
     /**
      * initiate a request/response session with each live node to check whether or not everybody is using the same 
      * migration id. This is useful for determining if a schema change has propagated through the cluster. Disagreement
@@ -773,6 +870,39 @@ public class StorageProxy implements StorageProxyMBean
         return rangeStats.getRecentLatencyHistogramMicros();
     }
 
+    public long getSpeculativeRetries()
+    {
+        return speculativeRetries.get();
+    }
+
+    public long getSpeculativeRetryWins()
+    {
+        return speculativeRetryWins.get();
+    }
+
+    public int getReplicateOnWritePendingRows()
+    {
+        return ReplicateOnWriteTask.getPendingRows();
+    }
+
+    public double getReplicateOnWriteCoalescingRatio()
+    {
+        long replications = ReplicateOnWriteTask.getReplications();
+        return replications == 0 ? 0 : (double) ReplicateOnWriteTask.getUpdates() / replications;
+    }
+
+    public int getReplicateOnWriteCoalescingWindowInMS()
+    {
+        return DatabaseDescriptor.getReplicateOnWriteCoalescingWindowInMS();
+    }
+
+    public void setReplicateOnWriteCoalescingWindowInMS(int value)
+    {
+        if (value < 0)
+            throw new IllegalArgumentException("replicate_on_write_coalescing_window_in_ms must be non-negative");
+        DatabaseDescriptor.setReplicateOnWriteCoalescingWindowInMS(value);
+    }
+
     public long getWriteOperations()
     {
         return writeStats.getOpCount();
@@ -869,6 +999,25 @@ public class StorageProxy implements StorageProxyMBean
         return hintedHandoffEnabled;
     }
 
+    static class LocalRangeSliceCallable implements Callable<List<Row>>
+    {
+        private final RangeSliceCommand command;
+
+        LocalRangeSliceCallable(RangeSliceCommand command)
+        {
+            this.command = command;
+        }
+
+        public List<Row> call() throws ExecutionException, InterruptedException
+        {
+            ColumnFamilyStore cfs = Table.open(command.keyspace).getColumnFamilyStore(command.column_family);
+            return cfs.getRangeSlice(command.super_column,
+                                     command.range,
+                                     command.max_keys,
+                                     QueryFilter.getFilter(command.predicate, cfs.getComparator()));
+        }
+    }
+
     static class weakReadLocalCallable implements Callable<Object>
     {
         private ReadCommand command;
@@ -32,6 +32,18 @@ public interface StorageProxyMBean
     public long[] getTotalRangeLatencyHistogramMicros();
     public long[] getRecentRangeLatencyHistogramMicros();
 
+    /** @return the number of redundant data reads sent because the first replica asked was slow */
+    public long getSpeculativeRetries();
+    /** @return how many of those returned the data before the first replica asked */
+    public long getSpeculativeRetryWins();
+
+    /** @return the number of rows with replicate_on_write updates waiting to be replicated */
+    public int getReplicateOnWritePendingRows();
+    /** @return the average number of updates replicated by each read of a row; 1 when none were coalesced */
+    public double getReplicateOnWriteCoalescingRatio();
+    public int getReplicateOnWriteCoalescingWindowInMS();
+    public void setReplicateOnWriteCoalescingWindowInMS(int value);
+
     public long getWriteOperations();
     public long getTotalWriteLatencyMicros();
     public double getRecentWriteLatencyMicros();
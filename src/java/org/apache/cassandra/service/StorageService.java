@@ -109,6 +109,7 @@ public class StorageService implements IEndpointStateChangeSubscriber, StorageSe
         REPLICATION_FINISHED,
         INTERNAL_RESPONSE, // responses to internal calls
         REPLICATE_ON_WRITE,
+        REPAIR_FINISHED,
         ;
         // remember to add new verbs at the end, since we serialize by ordinal
     }
@@ -138,6 +139,7 @@ public class StorageService implements IEndpointStateChangeSubscriber, StorageSe
         put(Verb.REPLICATION_FINISHED, Stage.MISC);
         put(Verb.INTERNAL_RESPONSE, Stage.INTERNAL_RESPONSE);
         put(Verb.REPLICATE_ON_WRITE, Stage.REPLICATE_ON_WRITE);
+        put(Verb.REPAIR_FINISHED, Stage.ANTI_ENTROPY);
     }};
 
 
@@ -235,6 +237,7 @@ public class StorageService implements IEndpointStateChangeSubscriber, StorageSe
         MessagingService.instance.registerVerbHandlers(Verb.INTERNAL_RESPONSE, new ResponseVerbHandler());
         MessagingService.instance.registerVerbHandlers(Verb.TREE_REQUEST, new TreeRequestVerbHandler());
         MessagingService.instance.registerVerbHandlers(Verb.TREE_RESPONSE, new AntiEntropyService.TreeResponseVerbHandler());
+        MessagingService.instance.registerVerbHandlers(Verb.REPAIR_FINISHED, new AntiEntropyService.RepairFinishedVerbHandler());
 
         MessagingService.instance.registerVerbHandlers(Verb.GOSSIP_DIGEST_SYN, new GossipDigestSynVerbHandler());
         MessagingService.instance.registerVerbHandlers(Verb.GOSSIP_DIGEST_ACK, new GossipDigestAckVerbHandler());
@@ -314,6 +317,7 @@ public class StorageService implements IEndpointStateChangeSubscriber, StorageSe
         {
             logger_.warn("Unable to start GCInspector (currently only supported on the Sun JVM)");
         }
+        MemtableFlushController.instance.start();
 
         if (Boolean.parseBoolean(System.getProperty("cassandra.load_ring_state", "true")))
         {
@@ -26,34 +26,81 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.compress.CompressedRandomAccessReader;
+import org.apache.cassandra.io.compress.CompressionMetadata;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.Pair;
+import org.apache.cassandra.utils.Throttle;
 import org.apache.cassandra.utils.WrappedRunnable;
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
 
 
 public class FileStreamTask extends WrappedRunnable
 {
     private static Logger logger = LoggerFactory.getLogger( FileStreamTask.class );
     
-    // 10MB chunks
-    public static final int CHUNK_SIZE = 10*1024*1024;
+    // 1MB chunks, small enough to throttle smoothly
+    public static final int CHUNK_SIZE = 1024*1024;
     // around 10 minutes at the default rpctimeout
     public static final int MAX_CONNECT_ATTEMPTS = 8;
 
+    // the files being streamed, in total and to each host, which share the throughput
+    private static final AtomicInteger activeStreams = new AtomicInteger();
+    private static final ConcurrentMap<InetAddress, AtomicInteger> activeStreamsPerHost = new NonBlockingHashMap<InetAddress, AtomicInteger>();
+
     private final StreamHeader header;
     private final InetAddress to;
+    private final Throttle throttle;
+    private long bytesStreamed;
     
-    public FileStreamTask(StreamHeader header, InetAddress to)
+    public FileStreamTask(StreamHeader header, final InetAddress to)
     {
         this.header = header;
         this.to = to;
+        this.throttle = new Throttle("streaming to " + to, new Throttle.ThroughputFunction()
+        {
+            /** The smaller of the shares of the total throughput and of the throughput to the host. */
+            public int targetThroughput()
+            {
+                int total = share(DatabaseDescriptor.getStreamThroughputOutboundMbPerSec(), activeStreams.get());
+                int host = share(DatabaseDescriptor.getStreamThroughputOutboundPerHostMbPerSec(), activeStreamsFor(to).get());
+                if (total < 1 || host < 1)
+                    return Math.max(total, host);
+                return Math.min(total, host);
+            }
+        });
+    }
+
+    private static int share(int mbPerSec, int streams)
+    {
+        if (mbPerSec < 1)
+            // throttling disabled
+            return 0;
+        return Math.max(1, mbPerSec * 1024 * 1024 / 1000 / Math.max(1, streams));
+    }
+
+    private static AtomicInteger activeStreamsFor(InetAddress host)
+    {
+        AtomicInteger streams = activeStreamsPerHost.get(host);
+        if (streams == null)
+        {
+            AtomicInteger newStreams = new AtomicInteger();
+            streams = activeStreamsPerHost.putIfAbsent(host, newStreams);
+            if (streams == null)
+                streams = newStreams;
+        }
+        return streams;
     }
     
     public void runMayThrow() throws IOException
@@ -62,12 +109,16 @@ public class FileStreamTask extends WrappedRunnable
 
         // successfully connected: stream.
         // (at this point, if we fail, it is the receiver's job to re-request)
+        activeStreams.incrementAndGet();
+        activeStreamsFor(to).incrementAndGet();
         try
         {
             stream(channel);
         }
         finally
         {
+            activeStreams.decrementAndGet();
+            activeStreamsFor(to).decrementAndGet();
             try
             {
                 channel.close();
@@ -90,7 +141,14 @@ public class FileStreamTask extends WrappedRunnable
         if (header.file == null)
             return;
 
-        RandomAccessFile raf = new RandomAccessFile(new File(header.file.getFilename()), "r");
+        if (header.file.component.equals(SSTable.COMPONENT_DATA)
+            && new File(header.file.desc.filenameFor(Component.COMPRESSION_INFO)).exists())
+        {
+            streamDecompressed(channel);
+            return;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(new File(header.file.getSourceFilename()), "r");
         try
         {
             FileChannel fc = raf.getChannel();
@@ -105,6 +163,7 @@ public class FileStreamTask extends WrappedRunnable
                     long lastWrite = fc.transferTo(section.left + bytesTransferred, toTransfer, channel);
                     bytesTransferred += lastWrite;
                     header.file.progress += lastWrite;
+                    throttle(lastWrite);
                 }
                 if (logger.isDebugEnabled())
                     logger.debug("Bytes transferred " + bytesTransferred + "/" + header.file.size);
@@ -116,6 +175,50 @@ public class FileStreamTask extends WrappedRunnable
         }
     }
 
+    /**
+     * Sections of a compressed data file are given in uncompressed positions, and don't line up with
+     * chunk boundaries, so we decompress them as we go: the receiver rebuilds an uncompressed sstable.
+     */
+    private void streamDecompressed(SocketChannel channel) throws IOException
+    {
+        String filename = header.file.getFilename();
+        CompressedRandomAccessReader reader = new CompressedRandomAccessReader(filename, CompressionMetadata.create(filename));
+        try
+        {
+            byte[] bytes = new byte[64 * 1024];
+            for (Pair<Long, Long> section : header.file.sections)
+            {
+                long length = section.right - section.left;
+                long bytesTransferred = 0;
+                reader.seek(section.left);
+                while (bytesTransferred < length)
+                {
+                    int toTransfer = (int) Math.min(bytes.length, length - bytesTransferred);
+                    reader.readFully(bytes, 0, toTransfer);
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, toTransfer);
+                    while (buffer.hasRemaining())
+                        channel.write(buffer);
+                    bytesTransferred += toTransfer;
+                    header.file.progress += toTransfer;
+                    throttle(toTransfer);
+                }
+                if (logger.isDebugEnabled())
+                    logger.debug("Bytes transferred " + bytesTransferred + "/" + header.file.size);
+            }
+        }
+        finally
+        {
+            FileUtils.closeQuietly(reader);
+        }
+    }
+
+    private void throttle(long bytes)
+    {
+        bytesStreamed += bytes;
+        StreamingService.instance.outgoingBytes.addAndGet(bytes);
+        throttle.throttle(bytesStreamed);
+    }
+
     /**
      * Connects to the destination, with backoff for failed attempts.
      * TODO: all nodes on a cluster must currently use the same storage port
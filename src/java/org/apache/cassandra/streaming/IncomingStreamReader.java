@@ -18,7 +18,7 @@
 
 package org.apache.cassandra.streaming;
 
-import java.io.File;
+import java.io.EOFException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -28,7 +28,7 @@ import java.nio.channels.SocketChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.utils.Pair;
 
 public class IncomingStreamReader
@@ -48,11 +48,12 @@ public class IncomingStreamReader
         session = StreamInSession.get(remoteAddress.getAddress(), header.sessionId);
         session.addFiles(header.pendingFiles);
         // set the current file we are streaming so progress shows up in jmx
-        session.setCurrentFile(header.file);
+        if (header.file != null)
+            session.addCurrentFile(header.file);
         session.setTable(header.table);
         // pendingFile gets the new context for the local node.
         remoteFile = header.file;
-        localFile = remoteFile != null ? StreamIn.getContextMapping(remoteFile) : null;
+        localFile = remoteFile != null ? session.getContextMapping(remoteFile) : null;
     }
 
     public void read() throws IOException
@@ -73,7 +74,9 @@ public class IncomingStreamReader
         FileOutputStream fos = new FileOutputStream(localFile.getFilename(), true);
         FileChannel fc = fos.getChannel();
 
-        long offset = 0;
+        // a retry only sends what we didn't keep from the failed attempts, to append to it
+        long start = fc.size();
+        long offset = start;
         try
         {
             for (Pair<Long, Long> section : localFile.sections)
@@ -84,19 +87,25 @@ public class IncomingStreamReader
                 {
                     long toRead = Math.min(FileStreamTask.CHUNK_SIZE, length - bytesRead);
                     long lastRead = fc.transferFrom(socketChannel, offset + bytesRead, toRead);
+                    // the socket is blocking: nothing transferred means it was closed
+                    if (lastRead == 0)
+                        throw new EOFException("Stream of " + remoteFile.getFilename() + " ended after " + (offset + bytesRead - start) + " bytes");
                     bytesRead += lastRead;
                     remoteFile.progress += lastRead;
+                    StreamingService.instance.incomingBytes.addAndGet(lastRead);
                 }
                 offset += length;
             }
         }
         catch (IOException ex)
         {
-            /* Ask the source node to re-stream this file. */
-            session.retry(remoteFile);
-
-            /* Delete the orphaned file. */
-            FileUtils.deleteWithConfirm(new File(localFile.getFilename()));
+            /* Keep what we have received, and ask the source node to stream the rest; unless it is too old
+               to resume a stream, in which case it will stream the whole file again. */
+            long kept = MessagingService.instance.getVersion(session.getHost()) >= MessagingService.VERSION_080
+                      ? remoteFile.progress
+                      : 0;
+            fc.truncate(start + kept);
+            session.retry(remoteFile, kept);
             throw ex;
         }
         finally
@@ -32,6 +32,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.cassandra.io.ICompactSerializer;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.SSTable;
+import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.utils.Pair;
 
 /**
@@ -55,6 +56,8 @@ public class PendingFile
     public final OperationType type;
     public final long size;
     public long progress;
+    // on the source node, a file written just for streaming, to read the sections from instead of the component
+    private final String sourceFilename;
 
     public PendingFile(Descriptor desc, PendingFile pf)
     {
@@ -62,8 +65,14 @@ public class PendingFile
     }
 
     public PendingFile(SSTable sstable, Descriptor desc, String component, List<Pair<Long,Long>> sections, OperationType type)
+    {
+        this(sstable, desc, component, sections, type, null);
+    }
+
+    public PendingFile(SSTable sstable, Descriptor desc, String component, List<Pair<Long,Long>> sections, OperationType type, String sourceFilename)
     {
         this.sstable = sstable;
+        this.sourceFilename = sourceFilename;
         this.desc = desc;
         this.component = component;
         this.sections = sections;
@@ -81,6 +90,43 @@ public class PendingFile
     {
         return desc.filenameFor(component);
     }
+
+    /**
+     * @return the file to read the sections from on the source node
+     */
+    public String getSourceFilename()
+    {
+        return sourceFilename == null ? getFilename() : sourceFilename;
+    }
+
+    /**
+     * @return what remains to stream of this file once the target has the given number of bytes of its sections
+     */
+    public PendingFile skip(long bytes)
+    {
+        List<Pair<Long,Long>> remaining = new ArrayList<Pair<Long,Long>>(sections.size());
+        for (Pair<Long,Long> section : sections)
+        {
+            long length = section.right - section.left;
+            if (bytes >= length)
+            {
+                bytes -= length;
+                continue;
+            }
+            remaining.add(new Pair<Long,Long>(section.left + bytes, section.right));
+            bytes = 0;
+        }
+        return new PendingFile(sstable, desc, component, remaining, type, sourceFilename);
+    }
+
+    /**
+     * Deletes the file written for streaming, if any, once it is no longer needed.
+     */
+    public void cleanup()
+    {
+        if (sourceFilename != null)
+            FileUtils.delete(sourceFilename);
+    }
     
     public boolean equals(Object o)
     {
@@ -98,7 +144,8 @@ public class PendingFile
 
     public String toString()
     {
-        return getFilename() + "/" + StringUtils.join(sections, ",") + "\n\t progress=" + progress + "/" + size + " - " + progress*100/size + "%";
+        long percent = size == 0 ? 100 : progress * 100 / size;
+        return getFilename() + "/" + StringUtils.join(sections, ",") + "\n\t progress=" + progress + "/" + size + " - " + percent + "%";
     }
 
     public static class PendingFileSerializer implements ICompactSerializer<PendingFile>
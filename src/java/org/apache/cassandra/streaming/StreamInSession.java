@@ -31,6 +31,8 @@ import org.slf4j.LoggerFactory;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.CompactionManager;
 import org.apache.cassandra.db.Table;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.utils.Pair;
@@ -43,13 +45,18 @@ public class StreamInSession
 
     private static ConcurrentMap<Pair<InetAddress, Long>, StreamInSession> sessions = new NonBlockingHashMap<Pair<InetAddress, Long>, StreamInSession>();
 
-    private final List<PendingFile> files = new ArrayList<PendingFile>();
+    private final Set<PendingFile> files = new LinkedHashSet<PendingFile>();
+    // files may be announced again by the header of a concurrent stream after they have arrived
+    private final Set<String> finishedFiles = new HashSet<String>();
     private final Pair<InetAddress, Long> context;
     private final Runnable callback;
     private String table;
     private final List<Future<SSTableReader>> buildFutures = new ArrayList<Future<SSTableReader>>();
     private ColumnFamilyStore cfs;
-    private PendingFile current;
+    private final Set<PendingFile> currentFiles = new HashSet<PendingFile>();
+    private boolean closed;
+    // the components of a remote sstable all go to the same local sstable
+    private final Map<Descriptor, Descriptor> localDescriptors = new HashMap<Descriptor, Descriptor>();
 
     private StreamInSession(Pair<InetAddress, Long> context, Runnable callback)
     {
@@ -80,9 +87,9 @@ public class StreamInSession
         return session;
     }
 
-    public void setCurrentFile(PendingFile file)
+    public synchronized void addCurrentFile(PendingFile file)
     {
-        this.current = file;
+        currentFiles.add(file);
     }
 
     public void setTable(String table)
@@ -90,10 +97,12 @@ public class StreamInSession
         this.table = table;
     }
 
-    public void addFiles(Collection<PendingFile> files)
+    public synchronized void addFiles(Collection<PendingFile> files)
     {
         for(PendingFile file : files)
         {
+            if (finishedFiles.contains(file.getFilename()))
+                continue;
             if(logger.isDebugEnabled())
                 logger.debug("Adding file {} to Stream Request queue", file.getFilename());
             this.files.add(file);
@@ -102,33 +111,66 @@ public class StreamInSession
         }
     }
 
-    public void finished(PendingFile remoteFile, PendingFile localFile) throws IOException
+    /**
+     * @return the local file to write the given remote file to
+     */
+    public synchronized PendingFile getContextMapping(PendingFile remoteFile) throws IOException
+    {
+        Descriptor localdesc = localDescriptors.get(remoteFile.desc);
+        if (localdesc == null)
+        {
+            localdesc = StreamIn.getContextMapping(remoteFile).desc;
+            localDescriptors.put(remoteFile.desc, localdesc);
+        }
+        return new PendingFile(localdesc, remoteFile);
+    }
+
+    public synchronized void finished(PendingFile remoteFile, PendingFile localFile) throws IOException
     {
         if (logger.isDebugEnabled())
             logger.debug("Finished {}. Sending ack to {}", remoteFile, this);
 
-        Future future = CompactionManager.instance.submitSSTableBuild(localFile.desc, remoteFile.type);
-        buildFutures.add(future);
-
         files.remove(remoteFile);
-        if (remoteFile.equals(current))
-            current = null;
+        currentFiles.remove(remoteFile);
+        finishedFiles.add(remoteFile.getFilename());
+
+        // files arrive over several connections at once: open the sstable once all of its components have
+        if (finishedFiles.contains(remoteFile.desc.filenameFor(SSTable.COMPONENT_DATA)) && !hasPendingFiles(remoteFile.desc))
+        {
+            Future future = CompactionManager.instance.submitSSTableBuild(localFile.desc, remoteFile.type);
+            buildFutures.add(future);
+        }
         StreamReply reply = new StreamReply(remoteFile.getFilename(), getSessionId(), StreamReply.Status.FILE_FINISHED);
         // send a StreamStatus message telling the source node it can delete this file
         MessagingService.instance.sendOneWay(reply.createMessage(), getHost());
     }
 
-    public void retry(PendingFile remoteFile) throws IOException
+    private boolean hasPendingFiles(Descriptor remotedesc)
     {
-        StreamReply reply = new StreamReply(remoteFile.getFilename(), getSessionId(), StreamReply.Status.FILE_RETRY);
+        for (PendingFile file : files)
+        {
+            if (file.desc.equals(remotedesc))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param received the number of bytes of the failed attempt that were kept, for the source to skip
+     */
+    public synchronized void retry(PendingFile remoteFile, long received) throws IOException
+    {
+        currentFiles.remove(remoteFile);
+        StreamReply reply = new StreamReply(remoteFile.getFilename(), getSessionId(), StreamReply.Status.FILE_RETRY, received);
         logger.info("Streaming of file {} from {} failed: requesting a retry.", remoteFile, this);
         MessagingService.instance.sendOneWay(reply.createMessage(), getHost());
     }
 
-    public void closeIfFinished() throws IOException
+    public synchronized void closeIfFinished() throws IOException
     {
-        if (files.isEmpty())
+        if (files.isEmpty() && !closed)
         {
+            closed = true;
             // wait for bloom filters and row indexes to finish building
             List<SSTableReader> sstables = new ArrayList<SSTableReader>(buildFutures.size());
             for (Future<SSTableReader> future : buildFutures)
@@ -196,9 +238,12 @@ public class StreamInSession
             if (entry.getKey().left.equals(host))
             {
                 StreamInSession session = entry.getValue();
-                set.addAll(session.files);
-                if(session.current != null) {
-                    set.add(session.current);
+                synchronized (session)
+                {
+                    set.addAll(session.files);
+                    // the current files carry the progress
+                    set.removeAll(session.currentFiles);
+                    set.addAll(session.currentFiles);
                 }
             }
         }
@@ -19,11 +19,14 @@
 
 package org.apache.cassandra.streaming;
 
+import java.io.File;
 import java.io.IOError;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -32,11 +35,13 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.Table;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.utils.Pair;
 
 /**
@@ -168,9 +173,47 @@ public class StreamOut
             List<Pair<Long,Long>> sections = sstable.getPositionsForRanges(ranges);
             if (sections.isEmpty())
                 continue;
+            // the target opens the sstable once all of these have arrived
+            pending.addAll(createComponentFiles(sstable, sections, type));
             pending.add(new PendingFile(sstable, desc, SSTable.COMPONENT_DATA, sections, type));
         }
         logger.info("Stream context metadata {}, {} sstables.", pending, sstables.size());
         return pending;
     }
+
+    /**
+     * Writes the index, bloom filter and statistics of the given sections to temporary files, so that
+     * the target can open the streamed sstable without reading it back to rebuild them. Counter rows
+     * streamed for repair are rewritten by the target, so their index is left for it to rebuild.
+     */
+    private static List<PendingFile> createComponentFiles(SSTableReader sstable, List<Pair<Long,Long>> sections, OperationType type)
+    {
+        Descriptor desc = sstable.descriptor;
+        if (!desc.isLatestVersion || (type == OperationType.AES && sstable.metadata.getDefaultValidator().isCommutative()))
+            return Collections.emptyList();
+
+        List<String> components = Arrays.asList(SSTable.COMPONENT_INDEX, SSTable.COMPONENT_FILTER, SSTable.COMPONENT_STATS);
+        ColumnFamilyStore cfs = Table.open(desc.ksname).getColumnFamilyStore(desc.cfname);
+        Descriptor tmpdesc = Descriptor.fromFilename(cfs.getTempSSTablePath(desc.directory.getPath()));
+        try
+        {
+            sstable.writeComponentsForSections(tmpdesc, sections);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to write the index of " + sstable + " for streaming: the target will rebuild it", e);
+            for (String component : components)
+                FileUtils.delete(tmpdesc.filenameFor(component));
+            return Collections.emptyList();
+        }
+
+        List<PendingFile> files = new ArrayList<PendingFile>(components.size());
+        for (String component : components)
+        {
+            String filename = tmpdesc.filenameFor(component);
+            List<Pair<Long,Long>> whole = Arrays.asList(new Pair<Long,Long>(0L, new File(filename).length()));
+            files.add(new PendingFile(sstable, desc, component, whole, type, filename));
+        }
+        return files;
+    }
 }
@@ -27,6 +27,7 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.utils.Pair;
 import org.cliffc.high_scale_lib.NonBlockingHashMap;
@@ -69,7 +70,8 @@ public class StreamOutSession
     public final String table;
     private final Pair<InetAddress, Long> context;
     private final Runnable callback;
-    private String currentFile;
+    // the files being streamed, each over its own connection
+    private final Set<String> currentFiles = new HashSet<String>();
 
     private StreamOutSession(String table, Pair<InetAddress, Long> context, Runnable callback)
     {
@@ -88,7 +90,7 @@ public class StreamOutSession
         return context.right;
     }
     
-    public void addFilesToStream(List<PendingFile> pendingFiles)
+    public synchronized void addFilesToStream(List<PendingFile> pendingFiles)
     {
         for (PendingFile pendingFile : pendingFiles)
         {
@@ -98,30 +100,43 @@ public class StreamOutSession
         }
     }
     
-    public void retry()
+    /**
+     * Streams the given file again, without the bytes of the failed attempt that the target kept.
+     */
+    public synchronized void retry(String file, long offset)
     {
-        streamFile(files.get(currentFile));
+        PendingFile remaining = files.get(file).skip(offset);
+        files.put(file, remaining);
+        streamFile(remaining, Collections.<PendingFile>emptyList());
     }
 
-    private void streamFile(PendingFile pf)
+    private void streamFile(PendingFile pf, Collection<PendingFile> pending)
     {
         if (logger.isDebugEnabled())
             logger.debug("Streaming {} ...", pf);
-        currentFile = pf.getFilename();
-        MessagingService.instance.stream(new StreamHeader(table, getSessionId(), pf), getHost());
+        currentFiles.add(pf.getFilename());
+        MessagingService.instance.stream(new StreamHeader(table, getSessionId(), pf, pending), getHost());
     }
 
-    public void startNext() throws IOException
+    public synchronized void startNext(String file) throws IOException
     {
-        assert files.containsKey(currentFile);
-        files.remove(currentFile);
-        Iterator<PendingFile> iter = files.values().iterator();
-        if (iter.hasNext())
-            streamFile(iter.next());
+        assert currentFiles.contains(file);
+        currentFiles.remove(file);
+        files.remove(file).cleanup();
+        for (PendingFile pf : files.values())
+        {
+            if (!currentFiles.contains(pf.getFilename()))
+            {
+                streamFile(pf, Collections.<PendingFile>emptyList());
+                return;
+            }
+        }
     }
 
-    public void close()
+    public synchronized void close()
     {
+        for (PendingFile file : files.values())
+            file.cleanup();
         streams.remove(context);
         if (callback != null)
             callback.run();
@@ -134,9 +149,9 @@ public class StreamOutSession
             Thread.sleep(10);
     }
 
-    Collection<PendingFile> getFiles()
+    synchronized Collection<PendingFile> getFiles()
     {
-        return files.values();
+        return new ArrayList<PendingFile>(files.values());
     }
 
     public static Set<InetAddress> getDestinations()
@@ -160,19 +175,32 @@ public class StreamOutSession
         return list;
     }
 
-    public void validateCurrentFile(String file)
+    public synchronized void validateCurrentFile(String file)
     {
-        if (!file.equals(currentFile))
-            throw new IllegalStateException(String.format("target reports current file is %s but is %s", file, currentFile));
+        if (!currentFiles.contains(file))
+            throw new IllegalStateException(String.format("target reports current file is %s but are %s", file, currentFiles));
     }
 
-    public void begin()
+    /**
+     * Starts streaming as many files as streaming_connections_per_host allows. The header of each tells
+     * the target about all of the files: whichever arrives first, the target knows when it has them all.
+     */
+    public synchronized void begin()
     {
-        PendingFile first = files.isEmpty() ? null : files.values().iterator().next();
-        currentFile = first == null ? null : first.getFilename();
-        StreamHeader header = new StreamHeader(table, getSessionId(), first, files.values());
         logger.info("Streaming to {}", getHost());
         logger.debug("Files are {}", StringUtils.join(files.values(), ","));
-        MessagingService.instance.stream(header, getHost());
+        Collection<PendingFile> pending = new ArrayList<PendingFile>(files.values());
+        if (pending.isEmpty())
+        {
+            MessagingService.instance.stream(new StreamHeader(table, getSessionId(), null, pending), getHost());
+            return;
+        }
+        int connections = DatabaseDescriptor.getStreamingConnectionsPerHost();
+        for (PendingFile pf : pending)
+        {
+            if (currentFiles.size() == connections)
+                break;
+            streamFile(pf, pending);
+        }
     }
 }
@@ -26,8 +26,8 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
-import org.apache.cassandra.io.ICompactSerializer;
 import org.apache.cassandra.net.Message;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.FBUtilities;
 
@@ -40,24 +40,35 @@ class StreamReply
         SESSION_FINISHED,
     }
 
-    public static final ICompactSerializer<StreamReply> serializer = new FileStatusSerializer();
+    public static final FileStatusSerializer serializer = new FileStatusSerializer();
 
     public final long sessionId;
     public final String file;
     public final Status action;
+    /**
+     * for FILE_RETRY, the number of bytes of the failed attempt that the target kept. Always 0 from nodes
+     * older than MessagingService.VERSION_080, which don't resume streams.
+     */
+    public final long offset;
 
     public StreamReply(String file, long sessionId, Status action)
+    {
+        this(file, sessionId, action, 0);
+    }
+
+    public StreamReply(String file, long sessionId, Status action, long offset)
     {
         this.file = file;
         this.action = action;
         this.sessionId = sessionId;
+        this.offset = offset;
     }
 
     public Message createMessage() throws IOException
     {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         DataOutputStream dos = new DataOutputStream( bos );
-        serializer.serialize(this, dos);
+        serializer.serialize(this, dos, MessagingService.getVersion());
         return new Message(FBUtilities.getLocalAddress(), StorageService.Verb.STREAM_REPLY, bos.toByteArray());
     }
 
@@ -68,24 +79,35 @@ class StreamReply
                "sessionId=" + sessionId +
                ", file='" + file + '\'' +
                ", action=" + action +
+               ", offset=" + offset +
                ')';
     }
 
-    private static class FileStatusSerializer implements ICompactSerializer<StreamReply>
+    /**
+     * Older nodes ignore the offset at the end of a reply, so it is always written; but it is only read from
+     * nodes that write it.
+     */
+    static class FileStatusSerializer
     {
-        public void serialize(StreamReply reply, DataOutputStream dos) throws IOException
+        public void serialize(StreamReply reply, DataOutputStream dos, int version) throws IOException
         {
             dos.writeLong(reply.sessionId);
             dos.writeUTF(reply.file);
             dos.writeInt(reply.action.ordinal());
+            if (version >= MessagingService.VERSION_080)
+                dos.writeLong(reply.offset);
         }
 
-        public StreamReply deserialize(DataInputStream dis) throws IOException
+        /**
+         * @param version the messaging version of the node that sent the reply
+         */
+        public StreamReply deserialize(DataInputStream dis, int version) throws IOException
         {
             long sessionId = dis.readLong();
             String targetFile = dis.readUTF();
             Status action = Status.values()[dis.readInt()];
-            return new StreamReply(targetFile, sessionId, action);
+            long offset = version >= MessagingService.VERSION_080 ? dis.readLong() : 0;
+            return new StreamReply(targetFile, sessionId, action, offset);
         }
     }
 }
@@ -31,6 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.net.IVerbHandler;
 import org.apache.cassandra.net.Message;
+import org.apache.cassandra.net.MessagingService;
 
 public class StreamReplyVerbHandler implements IVerbHandler
 {
@@ -43,7 +44,7 @@ public class StreamReplyVerbHandler implements IVerbHandler
 
         try
         {
-            StreamReply reply = StreamReply.serializer.deserialize(new DataInputStream(bufIn));
+            StreamReply reply = StreamReply.serializer.deserialize(new DataInputStream(bufIn), MessagingService.instance.getVersion(message.getFrom()));
             logger.debug("Received StreamReply {}", reply);
             StreamOutSession session = StreamOutSession.get(message.getFrom(), reply.sessionId);
 
@@ -51,12 +52,12 @@ public class StreamReplyVerbHandler implements IVerbHandler
             {
                 case FILE_FINISHED:
                     session.validateCurrentFile(reply.file);
-                    session.startNext();
+                    session.startNext(reply.file);
                     break;
                 case FILE_RETRY:
                     session.validateCurrentFile(reply.file);
-                    logger.info("Need to re-stream file {} to {}", reply.file, message.getFrom());
-                    session.retry();
+                    logger.info("Need to re-stream file {} to {} after byte {}", new Object[]{ reply.file, message.getFrom(), reply.offset });
+                    session.retry(reply.file, reply.offset);
                     break;
                 case SESSION_FINISHED:
                     session.close();
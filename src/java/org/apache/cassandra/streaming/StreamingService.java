@@ -24,18 +24,24 @@ import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
+
 public class StreamingService implements StreamingServiceMBean
 {
     private static final Logger logger = LoggerFactory.getLogger(StreamingService.class);
     public static final String MBEAN_OBJECT_NAME = "org.apache.cassandra.net:type=StreamingService";
     public static final StreamingService instance = new StreamingService();
 
+    final AtomicLong outgoingBytes = new AtomicLong();
+    final AtomicLong incomingBytes = new AtomicLong();
+
     private StreamingService()
     {
         MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
@@ -73,6 +79,40 @@ public class StreamingService implements StreamingServiceMBean
         return sb.toString();
     }
 
+    public long getTotalOutgoingBytes()
+    {
+        return outgoingBytes.get();
+    }
+
+    public long getTotalIncomingBytes()
+    {
+        return incomingBytes.get();
+    }
+
+    public int getStreamThroughputOutboundMbPerSec()
+    {
+        return DatabaseDescriptor.getStreamThroughputOutboundMbPerSec();
+    }
+
+    public void setStreamThroughputOutboundMbPerSec(int value)
+    {
+        if (value < 0)
+            throw new IllegalArgumentException("stream throughput must not be negative");
+        DatabaseDescriptor.setStreamThroughputOutboundMbPerSec(value);
+    }
+
+    public int getStreamThroughputOutboundPerHostMbPerSec()
+    {
+        return DatabaseDescriptor.getStreamThroughputOutboundPerHostMbPerSec();
+    }
+
+    public void setStreamThroughputOutboundPerHostMbPerSec(int value)
+    {
+        if (value < 0)
+            throw new IllegalArgumentException("stream throughput must not be negative");
+        DatabaseDescriptor.setStreamThroughputOutboundPerHostMbPerSec(value);
+    }
+
     /** hosts receiving outgoing streams. */
     public Set<InetAddress> getStreamDestinations()
     {
@@ -39,4 +39,24 @@ public interface StreamingServiceMBean
     
     /** What's currently happening wrt streaming. */
     public String getStatus();
+
+    /** bytes of files streamed to other hosts since startup */
+    public long getTotalOutgoingBytes();
+
+    /** bytes of files streamed from other hosts since startup */
+    public long getTotalIncomingBytes();
+
+    /**
+     * @return the throughput, in MB/s, shared by all files streamed to other hosts; 0 if unthrottled
+     */
+    public int getStreamThroughputOutboundMbPerSec();
+
+    public void setStreamThroughputOutboundMbPerSec(int value);
+
+    /**
+     * @return the throughput, in MB/s, shared by the files streamed to each host; 0 if unthrottled
+     */
+    public int getStreamThroughputOutboundPerHostMbPerSec();
+
+    public void setStreamThroughputOutboundPerHostMbPerSec(int value);
 }
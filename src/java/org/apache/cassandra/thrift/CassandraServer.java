@@ -815,11 +815,13 @@ public class CassandraServer implements Cassandra.Iface
         
         try
         {
+            // KsDef has no speculative_retry field in the thrift interface, so keep the current setting
             KSMetaData ksm = new KSMetaData(
                     ks_def.name, 
                     AbstractReplicationStrategy.getClass(ks_def.strategy_class),
                     ks_def.strategy_options,
-                    ks_def.replication_factor);
+                    ks_def.replication_factor,
+                    DatabaseDescriptor.getTableDefinition(ks_def.name).speculativeRetry);
             applyMigrationOnStage(new UpdateKeyspace(ksm));
             return DatabaseDescriptor.getDefsVersion().toString();
         }
@@ -38,6 +38,7 @@ import org.apache.cassandra.db.ColumnFamilyStoreMBean;
 import org.apache.cassandra.db.CompactionManagerMBean;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.net.MessagingServiceMBean;
+import org.apache.cassandra.streaming.StreamingServiceMBean;
 import org.apache.cassandra.utils.EstimatedHistogram;
 
 public class NodeCmd {
@@ -68,7 +69,7 @@ public class NodeCmd {
         RING, INFO, CFSTATS, SNAPSHOT, CLEARSNAPSHOT, VERSION, TPSTATS, FLUSH, DRAIN,
         DECOMMISSION, MOVE, LOADBALANCE, REMOVETOKEN, REPAIR, CLEANUP, COMPACT,
         SETCACHECAPACITY, GETCOMPACTIONTHRESHOLD, SETCOMPACTIONTHRESHOLD, NETSTATS, CFHISTOGRAMS,
-        COMPACTIONSTATS
+        COMPACTIONSTATS, SETCOMPACTIONTHROUGHPUT, SETSTREAMTHROUGHPUT
     }
 
     
@@ -96,6 +97,8 @@ public class NodeCmd {
                          + "netstats [host]\n"
                          + "move <new token>\n"
                          + "removetoken status|force|<token>\n"
+                         + "setcompactionthroughput <value_in_mb>\n"
+                         + "setstreamthroughput <value_in_mb> [per_host_value_in_mb]\n"
 
                          // Two args
                          + "flush [keyspace] [cfnames]\n"
@@ -205,6 +208,8 @@ public class NodeCmd {
     public void printNetworkStats(final InetAddress addr, PrintStream outs)
     {
         outs.printf("Mode: %s%n", probe.getOperationMode());
+        StreamingServiceMBean streams = probe.getStreamingServiceProxy();
+        outs.printf("Streamed: %d bytes out, %d bytes in%n", streams.getTotalOutgoingBytes(), streams.getTotalIncomingBytes());
         Set<InetAddress> hosts = addr == null ? probe.getStreamDestinations() : new HashSet<InetAddress>(){{add(addr);}};
         if (hosts.size() == 0)
             outs.println("Not sending any streams.");
@@ -284,11 +289,22 @@ public class NodeCmd {
     public void printCompactionStats(PrintStream outs)
     {
         CompactionManagerMBean cm = probe.getCompactionManagerProxy();
-        outs.println("compaction type: " + (cm.getCompactionType() == null ? "n/a" : cm.getCompactionType()));
-        outs.println("column family: " + (cm.getColumnFamilyInProgress() == null ? "n/a" : cm.getColumnFamilyInProgress()));
-        outs.println("bytes compacted: " + (cm.getBytesCompacted() == null ? "n/a" : cm.getBytesCompacted()));
-        outs.println("bytes total in progress: " + (cm.getBytesTotalInProgress() == null ? "n/a" : cm.getBytesTotalInProgress() ));
         outs.println("pending tasks: " + cm.getPendingTasks());
+        int throughput = cm.getCompactionThroughputMbPerSec();
+        outs.println("throughput limit: " + (throughput == 0 ? "none" : throughput + " MB/s"));
+        List<Map<String, String>> compactions = cm.getCompactions();
+        if (compactions.isEmpty())
+            return;
+        outs.printf("%-25s%-20s%-25s%20s%20s%n", "compaction type", "keyspace", "column family", "bytes compacted", "bytes total");
+        for (Map<String, String> c : compactions)
+        {
+            outs.printf("%-25s%-20s%-25s%20s%20s%n",
+                        c.get(CompactionManagerMBean.COMPACTION_TYPE),
+                        c.get(CompactionManagerMBean.COMPACTION_KEYSPACE),
+                        c.get(CompactionManagerMBean.COMPACTION_COLUMNFAMILY),
+                        c.get(CompactionManagerMBean.COMPACTION_BYTES_COMPACTED),
+                        c.get(CompactionManagerMBean.COMPACTION_BYTES_TOTAL));
+        }
     }
  
     public void printColumnFamilyStats(PrintStream outs)
@@ -364,6 +380,7 @@ public class NodeCmd {
                 outs.println("\t\tSpace used (total): " + cfstore.getTotalDiskSpaceUsed());
                 outs.println("\t\tMemtable Columns Count: " + cfstore.getMemtableColumnsCount());
                 outs.println("\t\tMemtable Data Size: " + cfstore.getMemtableDataSize());
+                outs.println("\t\tMemtable Live Size (estimated): " + cfstore.getMemtableLiveSize());
                 outs.println("\t\tMemtable Switch Count: " + cfstore.getMemtableSwitchCount());
                 outs.println("\t\tRead Count: " + cfstore.getReadCount());
                 outs.println("\t\tRead Latency: " + String.format("%01.3f", cfstore.getRecentReadLatencyMicros() / 1000) + " ms.");
@@ -561,6 +578,22 @@ public class NodeCmd {
                 probe.setCacheCapacities(arguments[1], arguments[2], Integer.parseInt(arguments[3]), Integer.parseInt(arguments[4]));
                 break;
 
+            case SETCOMPACTIONTHROUGHPUT :
+                if (arguments.length != 2) { badUse("Missing value argument."); }
+                int throughput = Integer.parseInt(arguments[1]);
+                if (throughput < 0) { badUse("Throughput must not be negative (0 disables throttling)"); }
+                probe.getCompactionManagerProxy().setCompactionThroughputMbPerSec(throughput);
+                break;
+
+            case SETSTREAMTHROUGHPUT :
+                if (arguments.length < 2 || arguments.length > 3) { badUse("setstreamthroughput requires a total and optionally a per host value."); }
+                int streamThroughput = Integer.parseInt(arguments[1]);
+                int perHostThroughput = arguments.length == 3 ? Integer.parseInt(arguments[2]) : probe.getStreamingServiceProxy().getStreamThroughputOutboundPerHostMbPerSec();
+                if (streamThroughput < 0 || perHostThroughput < 0) { badUse("Throughput must not be negative (0 disables throttling)"); }
+                probe.getStreamingServiceProxy().setStreamThroughputOutboundMbPerSec(streamThroughput);
+                probe.getStreamingServiceProxy().setStreamThroughputOutboundPerHostMbPerSec(perHostThroughput);
+                break;
+
             case SETCOMPACTIONTHRESHOLD :
                 if (arguments.length != 5) { badUse("setcompactionthreshold requires ks, cf, min, and max threshold args."); }
                 int minthreshold = Integer.parseInt(arguments[3]);
@@ -218,6 +218,11 @@ public class NodeProbe
       return compactionProxy;
     }
 
+    public StreamingServiceMBean getStreamingServiceProxy()
+    {
+      return streamProxy;
+    }
+
     public JMXInstrumentedCacheMBean getKeyCacheMBean(String tableName, String cfName)
     {
         String keyCachePath = "org.apache.cassandra.db:type=Caches,keyspace=" + tableName + ",cache=" + cfName + "KeyCache";
@@ -0,0 +1,261 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.io.ICompactSerializer;
+
+/**
+ * A bloom filter that sets all of a key's bits within a single 512-bit block, the size of a cache line,
+ * so that a probe costs one cache miss instead of one per hash function.  The block and the bit positions
+ * within it are derived from a single 64-bit murmur hash, without allocating.
+ *
+ * Confining the bits to a block makes the false positive rate worse than that of a BloomFilter with the same
+ * number of buckets per element; getFilter makes up for most of it with an extra bucket per element.
+ */
+public class BlockedBloomFilter extends Filter
+{
+    private static final Logger logger = LoggerFactory.getLogger(BlockedBloomFilter.class);
+
+    static final int WORDS_PER_BLOCK = 8;
+    static final int BITS_PER_BLOCK = WORDS_PER_BLOCK * 64;
+    // the top log2(BITS_PER_BLOCK) bits of a probe state select a bit of the block
+    private static final int PROBE_SHIFT = 64 - 9;
+
+    private static final ICompactSerializer<BlockedBloomFilter> serializer = new BlockedBloomFilterSerializer(false);
+    private static final ICompactSerializer<BlockedBloomFilter> offHeapSerializer = new BlockedBloomFilterSerializer(true);
+
+    final Words words;
+    private final long blocks;
+
+    BlockedBloomFilter(int hashes, Words words)
+    {
+        assert words.length() > 0 && words.length() % WORDS_PER_BLOCK == 0;
+        hashCount = hashes;
+        this.words = words;
+        blocks = words.length() / WORDS_PER_BLOCK;
+    }
+
+    public static ICompactSerializer<BlockedBloomFilter> serializer()
+    {
+        return serializer;
+    }
+
+    /**
+     * @param offHeap whether deserialized filters keep their bitset in native memory
+     */
+    public static ICompactSerializer<BlockedBloomFilter> serializer(boolean offHeap)
+    {
+        return offHeap ? offHeapSerializer : serializer;
+    }
+
+    static Words wordsFor(long words, boolean offHeap)
+    {
+        return offHeap ? new OffHeapWords(words) : new HeapWords(words);
+    }
+
+    private static Words blocksFor(long numElements, int bucketsPerElement, boolean offHeap)
+    {
+        long blocks = Math.max(1, (numElements * bucketsPerElement + BITS_PER_BLOCK - 1) / BITS_PER_BLOCK);
+        return wordsFor(blocks * WORDS_PER_BLOCK, offHeap);
+    }
+
+    /**
+     * @return A BlockedBloomFilter with the lowest practical false positive probability
+     * for the given number of elements.
+     */
+    public static BlockedBloomFilter getFilter(long numElements, int targetBucketsPerElem, boolean offHeap)
+    {
+        int maxBucketsPerElement = Math.max(1, BloomCalculations.maxBucketsPerElement(numElements));
+        int bucketsPerElement = Math.min(targetBucketsPerElem, maxBucketsPerElement);
+        if (bucketsPerElement < targetBucketsPerElem)
+        {
+            logger.warn(String.format("Cannot provide an optimal BlockedBloomFilter for %d elements (%d/%d buckets per element).",
+                                      numElements, bucketsPerElement, targetBucketsPerElem));
+        }
+        BloomCalculations.BloomSpecification spec = BloomCalculations.computeBloomSpec(bucketsPerElement);
+        return new BlockedBloomFilter(spec.K, blocksFor(numElements, spec.bucketsPerElement + 1, offHeap));
+    }
+
+    /**
+     * @return The smallest BlockedBloomFilter that can provide the given false positive
+     * probability rate for the given number of elements.
+     */
+    public static BlockedBloomFilter getFilter(long numElements, double maxFalsePosProbability, boolean offHeap)
+    {
+        assert maxFalsePosProbability <= 1.0 : "Invalid probability";
+        int bucketsPerElement = BloomCalculations.maxBucketsPerElement(numElements);
+        BloomCalculations.BloomSpecification spec = BloomCalculations.computeBloomSpec(bucketsPerElement, maxFalsePosProbability);
+        return new BlockedBloomFilter(spec.K, blocksFor(numElements, spec.bucketsPerElement + 1, offHeap));
+    }
+
+    private static long hash(ByteBuffer key)
+    {
+        return MurmurHash.hash64(key.array(), key.position() + key.arrayOffset(), key.remaining(), 0L);
+    }
+
+    /**
+     * @return the index of the first word of the key's block
+     */
+    private long blockOffset(long hash)
+    {
+        return ((hash >>> 32) % blocks) * WORDS_PER_BLOCK;
+    }
+
+    /**
+     * @return the next probe state: each probe's bit is taken from the top bits of a 64-bit linear congruential
+     * sequence seeded with the key's hash, which keeps the probes of a key about as independent as separate hashes
+     */
+    private static long nextProbe(long probe)
+    {
+        return probe * 0x9e3779b97f4a7c15L + 0x632be59bd9b4e019L;
+    }
+
+    public void add(ByteBuffer key)
+    {
+        long hash = hash(key);
+        long offset = blockOffset(hash);
+        long probe = hash;
+        for (int i = 0; i < hashCount; i++)
+        {
+            probe = nextProbe(probe);
+            int position = (int) (probe >>> PROBE_SHIFT);
+            words.set(offset + (position >>> 6), 1L << (position & 63));
+        }
+    }
+
+    public boolean isPresent(ByteBuffer key)
+    {
+        long hash = hash(key);
+        long offset = blockOffset(hash);
+        long probe = hash;
+        for (int i = 0; i < hashCount; i++)
+        {
+            probe = nextProbe(probe);
+            int position = (int) (probe >>> PROBE_SHIFT);
+            if ((words.get(offset + (position >>> 6)) & (1L << (position & 63))) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    public void clear()
+    {
+        for (long i = 0; i < words.length(); i++)
+            words.put(i, 0);
+    }
+
+    /**
+     * The words of the filter's bitset, on or off the heap.
+     */
+    static abstract class Words
+    {
+        abstract long length();
+
+        abstract long get(long index);
+
+        abstract void put(long index, long value);
+
+        /** sets the bits of mask in the word at index */
+        abstract void set(long index, long mask);
+    }
+
+    static class HeapWords extends Words
+    {
+        private final long[] words;
+
+        HeapWords(long length)
+        {
+            assert length <= Integer.MAX_VALUE;
+            words = new long[(int) length];
+        }
+
+        long length()
+        {
+            return words.length;
+        }
+
+        long get(long index)
+        {
+            return words[(int) index];
+        }
+
+        void put(long index, long value)
+        {
+            words[(int) index] = value;
+        }
+
+        void set(long index, long mask)
+        {
+            words[(int) index] |= mask;
+        }
+    }
+
+    /**
+     * Direct buffers of up to 1GB each, which are released along with the filter once it is garbage collected.
+     * Blocks never straddle two buffers, since those hold a whole number of blocks.
+     */
+    static class OffHeapWords extends Words
+    {
+        private static final int PAGE_SHIFT = 27;
+        private static final long PAGE_MASK = (1L << PAGE_SHIFT) - 1;
+
+        private final ByteBuffer[] pages;
+        private final long length;
+
+        OffHeapWords(long length)
+        {
+            this.length = length;
+            pages = new ByteBuffer[(int) ((length + PAGE_MASK) >>> PAGE_SHIFT)];
+            for (int i = 0; i < pages.length; i++)
+            {
+                long words = Math.min(length - ((long) i << PAGE_SHIFT), 1L << PAGE_SHIFT);
+                pages[i] = ByteBuffer.allocateDirect((int) words * 8).order(ByteOrder.nativeOrder());
+            }
+        }
+
+        long length()
+        {
+            return length;
+        }
+
+        long get(long index)
+        {
+            return pages[(int) (index >>> PAGE_SHIFT)].getLong((int) (index & PAGE_MASK) << 3);
+        }
+
+        void put(long index, long value)
+        {
+            pages[(int) (index >>> PAGE_SHIFT)].putLong((int) (index & PAGE_MASK) << 3, value);
+        }
+
+        void set(long index, long mask)
+        {
+            ByteBuffer page = pages[(int) (index >>> PAGE_SHIFT)];
+            int position = (int) (index & PAGE_MASK) << 3;
+            page.putLong(position, page.getLong(position) | mask);
+        }
+    }
+}
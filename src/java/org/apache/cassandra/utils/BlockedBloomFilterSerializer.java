@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.cassandra.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.cassandra.io.ICompactSerializer;
+
+class BlockedBloomFilterSerializer implements ICompactSerializer<BlockedBloomFilter>
+{
+    private final boolean offHeap;
+
+    BlockedBloomFilterSerializer(boolean offHeap)
+    {
+        this.offHeap = offHeap;
+    }
+
+    public void serialize(BlockedBloomFilter bf, DataOutputStream dos) throws IOException
+    {
+        long length = bf.words.length();
+        dos.writeInt(bf.getHashCount());
+        dos.writeLong(length);
+        for (long i = 0; i < length; i++)
+            dos.writeLong(bf.words.get(i));
+        dos.flush();
+    }
+
+    public BlockedBloomFilter deserialize(DataInputStream dis) throws IOException
+    {
+        int hashes = dis.readInt();
+        long length = dis.readLong();
+        BlockedBloomFilter.Words words = BlockedBloomFilter.wordsFor(length, offHeap);
+        for (long i = 0; i < length; i++)
+            words.put(i, dis.readLong());
+        return new BlockedBloomFilter(hashes, words);
+    }
+}
@@ -123,4 +123,17 @@ public class ByteBufferUtil
 
         return clone;
     }
+
+    /**
+     * @return a copy of the remaining bytes of b, unless b already wraps exactly its own array
+     */
+    public static byte[] getArray(ByteBuffer b)
+    {
+        if (b.hasArray() && b.arrayOffset() == 0 && b.position() == 0 && b.remaining() == b.array().length)
+            return b.array();
+
+        byte[] bytes = new byte[b.remaining()];
+        b.duplicate().get(bytes);
+        return bytes;
+    }
 }
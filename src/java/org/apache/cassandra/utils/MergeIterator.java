@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.cassandra.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+/**
+ * Merges sorted input iterators, folding the items that compare equal into a single output with a Reducer,
+ * whether they come from different inputs or from the same one.  The current head of every input is kept in
+ * a binary heap, so that an item costs O(log k) comparisons for k inputs rather than O(k).
+ */
+public abstract class MergeIterator<In,Out> extends AbstractIterator<Out> implements CloseableIterator<Out>
+{
+    protected final List<? extends Iterator<In>> iterators;
+    protected final Reducer<In,Out> reducer;
+
+    protected MergeIterator(List<? extends Iterator<In>> iterators, Reducer<In,Out> reducer)
+    {
+        this.iterators = iterators;
+        this.reducer = reducer;
+    }
+
+    public static <In,Out> MergeIterator<In,Out> get(List<? extends Iterator<In>> iterators, Comparator<? super In> comparator, Reducer<In,Out> reducer)
+    {
+        if (iterators.size() == 1)
+            return new OneToOne<In,Out>(iterators, comparator, reducer);
+        return new ManyToOne<In,Out>(iterators, comparator, reducer);
+    }
+
+    public Iterable<? extends Iterator<In>> iterators()
+    {
+        return iterators;
+    }
+
+    /**
+     * Closes the inputs that are Closeable.
+     */
+    public void close() throws IOException
+    {
+        for (Iterator<In> iterator : iterators)
+        {
+            if (iterator instanceof Closeable)
+                ((Closeable) iterator).close();
+        }
+    }
+
+    /**
+     * Accumulates the inputs that compare equal into an output.
+     */
+    public static abstract class Reducer<In,Out>
+    {
+        /** combine this object with the previous ones.  intermediate state is up to your implementation. */
+        public abstract void reduce(In current);
+
+        /** return the object computed from the objects reduced since the last key change */
+        protected abstract Out getReduced();
+
+        /** called before the objects of each new key are reduced */
+        protected void onKeyChange() {}
+    }
+
+    private static class ManyToOne<In,Out> extends MergeIterator<In,Out>
+    {
+        private final Comparator<? super In> comparator;
+        // a binary heap of the inputs that are not exhausted, ordered by their current item
+        private final Candidate<In>[] heap;
+        private int size;
+        private boolean initialized;
+
+        @SuppressWarnings("unchecked")
+        ManyToOne(List<? extends Iterator<In>> iterators, Comparator<? super In> comparator, Reducer<In,Out> reducer)
+        {
+            super(iterators, reducer);
+            this.comparator = comparator;
+            heap = new Candidate[iterators.size()];
+        }
+
+        protected Out computeNext()
+        {
+            if (!initialized)
+            {
+                // don't touch the inputs until we are asked for an output
+                for (Iterator<In> iterator : iterators)
+                {
+                    Candidate<In> candidate = new Candidate<In>(iterator);
+                    if (candidate.advance())
+                        push(candidate);
+                }
+                initialized = true;
+            }
+            if (size == 0)
+                return endOfData();
+
+            reducer.onKeyChange();
+            In first = heap[0].item;
+            do
+            {
+                Candidate<In> candidate = pop();
+                reducer.reduce(candidate.item);
+                // as with a collating iterator, an input moves on as soon as its item is consumed
+                if (candidate.advance())
+                    push(candidate);
+            }
+            while (size > 0 && comparator.compare(heap[0].item, first) == 0);
+            return reducer.getReduced();
+        }
+
+        private void push(Candidate<In> candidate)
+        {
+            int i = size++;
+            while (i > 0)
+            {
+                int parent = (i - 1) >>> 1;
+                if (comparator.compare(heap[parent].item, candidate.item) <= 0)
+                    break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = candidate;
+        }
+
+        private Candidate<In> pop()
+        {
+            Candidate<In> top = heap[0];
+            Candidate<In> last = heap[--size];
+            heap[size] = null;
+            if (size > 0)
+            {
+                int i = 0;
+                while (true)
+                {
+                    int child = 2 * i + 1;
+                    if (child >= size)
+                        break;
+                    if (child + 1 < size && comparator.compare(heap[child + 1].item, heap[child].item) < 0)
+                        child++;
+                    if (comparator.compare(last.item, heap[child].item) <= 0)
+                        break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = last;
+            }
+            return top;
+        }
+    }
+
+    private static final class Candidate<In>
+    {
+        private final Iterator<In> iterator;
+        private In item;
+
+        Candidate(Iterator<In> iterator)
+        {
+            this.iterator = iterator;
+        }
+
+        /** @return true if the input has another item, which becomes the current one */
+        boolean advance()
+        {
+            if (!iterator.hasNext())
+                return false;
+            item = iterator.next();
+            return true;
+        }
+    }
+
+    /**
+     * A single input needs no heap: only its consecutive equal items are reduced together.
+     */
+    private static class OneToOne<In,Out> extends MergeIterator<In,Out>
+    {
+        private final PeekingIterator<In> source;
+        private final Comparator<? super In> comparator;
+
+        OneToOne(List<? extends Iterator<In>> iterators, Comparator<? super In> comparator, Reducer<In,Out> reducer)
+        {
+            super(iterators, reducer);
+            source = Iterators.peekingIterator(iterators.get(0));
+            this.comparator = comparator;
+        }
+
+        protected Out computeNext()
+        {
+            if (!source.hasNext())
+                return endOfData();
+            reducer.onKeyChange();
+            In first = source.next();
+            reducer.reduce(first);
+            while (source.hasNext() && comparator.compare(source.peek(), first) == 0)
+                reducer.reduce(source.next());
+            return reducer.getReduced();
+        }
+    }
+}
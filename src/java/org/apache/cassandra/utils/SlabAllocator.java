@@ -0,0 +1,213 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The SlabAllocator is a bump-the-pointer allocator that copies small buffers into
+ * large (1MB) regions, so that a memtable holds on to a few thousand large arrays
+ * instead of millions of tiny ones.  This avoids fragmenting the old generation:
+ * when the memtable is flushed and dropped, its regions are collected as a whole.
+ *
+ * Buffers larger than MAX_CLONED_SIZE are allocated directly on the heap, since they
+ * would waste too much of a region.
+ *
+ * Regions are kept on the java heap (not in native memory) because columns handed
+ * out by a memtable can outlive it, e.g. in the row cache or in a pending response;
+ * the GC frees a region only once nothing references it anymore.
+ *
+ * Inspired by the MSLAB of HBase.
+ */
+public class SlabAllocator extends Allocator
+{
+    private final static int REGION_SIZE = 1024 * 1024;
+    private final static int MAX_CLONED_SIZE = 128 * 1024; // bigger than this don't go in the region
+
+    private final AtomicReference<Region> currentRegion = new AtomicReference<Region>();
+    private final AtomicInteger regionCount = new AtomicInteger(0);
+
+    public ByteBuffer allocate(int size)
+    {
+        assert size >= 0;
+        if (size == 0)
+            return FBUtilities.EMPTY_BYTE_BUFFER;
+
+        if (size > MAX_CLONED_SIZE)
+            return ByteBuffer.allocate(size);
+
+        while (true)
+        {
+            Region region = getRegion();
+
+            // Try to allocate from this region
+            ByteBuffer cloned = region.allocate(size);
+            if (cloned != null)
+                return cloned;
+
+            // not enough space!
+            currentRegion.compareAndSet(region, null);
+        }
+    }
+
+    /**
+     * Get the current region, or, if there is no current region, allocate a new one
+     */
+    private Region getRegion()
+    {
+        while (true)
+        {
+            // Try to get the region
+            Region region = currentRegion.get();
+            if (region != null)
+                return region;
+
+            // No current region, so we want to allocate one. We race
+            // against other allocators to CAS in an uninitialized region
+            // (which is cheap to allocate)
+            region = new Region(REGION_SIZE);
+            if (currentRegion.compareAndSet(null, region))
+            {
+                // we won race - now we need to actually do the expensive allocation step
+                region.init();
+                regionCount.incrementAndGet();
+                return region;
+            }
+            // someone else won race - that's fine, we'll try to grab theirs
+            // in the next iteration of the loop.
+        }
+    }
+
+    /**
+     * @return a lower bound on the bytes used by this allocator: the regions allocated so far.
+     * (Buffers too large to be cloned into a region are not counted.)
+     */
+    public long getMinimumSize()
+    {
+        return regionCount.get() * (long) REGION_SIZE;
+    }
+
+    /**
+     * A region of memory out of which allocations are sliced.
+     *
+     * This serves two purposes:
+     *  - to provide a step between initialization and allocation, so that racing to CAS a
+     *    new region in is harmless (since only the winner actually allocates the array)
+     *  - encapsulates the allocation offset
+     */
+    private static class Region
+    {
+        /**
+         * Actual underlying data
+         */
+        private ByteBuffer data;
+
+        private static final int UNINITIALIZED = -1;
+        /**
+         * Offset for the next allocation, or the sentinel value -1
+         * which implies that the region is still uninitialized.
+         */
+        private final AtomicInteger nextFreeOffset = new AtomicInteger(UNINITIALIZED);
+
+        /**
+         * Total number of allocations satisfied from this buffer
+         */
+        private final AtomicInteger allocCount = new AtomicInteger();
+
+        /**
+         * Size of region in bytes
+         */
+        private final int size;
+
+        /**
+         * Create an uninitialized region. Note that memory is not allocated yet, so
+         * this is cheap.
+         *
+         * @param size in bytes
+         */
+        private Region(int size)
+        {
+            this.size = size;
+        }
+
+        /**
+         * Actually claim the memory for this region. This should only be called from
+         * the thread that constructed the region. It is thread-safe against other
+         * threads calling alloc(), who will block until the allocation is complete.
+         */
+        public void init()
+        {
+            assert nextFreeOffset.get() == UNINITIALIZED;
+            data = ByteBuffer.allocate(size);
+            assert data.remaining() == data.capacity();
+            // Mark that it's ready for use
+            boolean initted = nextFreeOffset.compareAndSet(UNINITIALIZED, 0);
+            // We should always succeed the above CAS since only one thread calls init()!
+            assert initted : "Multiple threads tried to init same region";
+        }
+
+        /**
+         * Try to allocate <code>size</code> bytes from the region.
+         *
+         * @return the successful allocation, or null to indicate not-enough-space
+         */
+        public ByteBuffer allocate(int size)
+        {
+            while (true)
+            {
+                int oldOffset = nextFreeOffset.get();
+                if (oldOffset == UNINITIALIZED)
+                {
+                    // The region doesn't have its data allocated yet.
+                    // Since we found this in currentRegion, we know that whoever
+                    // CAS-ed it there is allocating it right now. So spin-loop
+                    // shouldn't spin long!
+                    Thread.yield();
+                    continue;
+                }
+
+                if (oldOffset + size > data.capacity()) // capacity == remaining
+                    return null;
+
+                // Try to atomically claim this region
+                if (nextFreeOffset.compareAndSet(oldOffset, oldOffset + size))
+                {
+                    // we got the alloc
+                    allocCount.incrementAndGet();
+                    // keep arrayOffset at zero, so callers indexing with position() + arrayOffset() stay correct
+                    ByteBuffer slice = data.duplicate();
+                    slice.limit(oldOffset + size);
+                    slice.position(oldOffset);
+                    return slice;
+                }
+                // we raced and lost alloc, try again
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Region@" + System.identityHashCode(this) +
+                   " allocs=" + allocCount.get() + "waste=" +
+                   (data.capacity() - nextFreeOffset.get());
+        }
+    }
+}
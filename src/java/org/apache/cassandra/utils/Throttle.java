@@ -0,0 +1,104 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Encapsulates the timing/state required to throttle a caller to a target throughput in
+ * bytes per millisecond, when periodically passed the total count of bytes it has handled.
+ *
+ * The target is re-read from the ThroughputFunction on every call, so it may change while
+ * the caller runs (e.g. when it is a share of a global limit).  Not thread safe: each
+ * caller should use its own Throttle.
+ */
+public class Throttle
+{
+    private static final Logger logger = LoggerFactory.getLogger(Throttle.class);
+
+    private final String name;
+    private final ThroughputFunction fun;
+
+    // the bytes that had been handled the last time we delayed to throttle,
+    // and the time in milliseconds when we last throttled
+    private long bytesAtLastDelay;
+    private long timeAtLastDelay;
+
+    // current target bytes of throughput per millisecond
+    private int targetBytesPerMS = -1;
+
+    public Throttle(String name, ThroughputFunction fun)
+    {
+        this.name = name;
+        this.fun = fun;
+        this.timeAtLastDelay = System.currentTimeMillis();
+    }
+
+    /** @param currentBytes the total number of bytes handled so far */
+    public void throttle(long currentBytes)
+    {
+        long bytesDelta = currentBytes - bytesAtLastDelay;
+        int newTargetBytesPerMS = fun.targetThroughput();
+        if (newTargetBytesPerMS < 1)
+        {
+            // throttling disabled
+            bytesAtLastDelay = currentBytes;
+            timeAtLastDelay = System.currentTimeMillis();
+            return;
+        }
+
+        if (newTargetBytesPerMS != targetBytesPerMS && logger.isDebugEnabled())
+            logger.debug("{} target throughput now {} bytes/ms", name, newTargetBytesPerMS);
+        targetBytesPerMS = newTargetBytesPerMS;
+
+        // the bytes handled in excess of the target since we last delayed
+        long msSinceLast = System.currentTimeMillis() - timeAtLastDelay;
+        long excessBytes = bytesDelta - msSinceLast * targetBytesPerMS;
+        // less than a millisecond ahead: let the excess accumulate until it is worth sleeping for
+        if (excessBytes > 0 && excessBytes < targetBytesPerMS)
+            return;
+
+        long timeToDelay = excessBytes / targetBytesPerMS;
+        if (timeToDelay > 0)
+        {
+            if (logger.isTraceEnabled())
+                logger.trace(String.format("%s actual throughput was %d bytes in %d ms: throttling for %d ms",
+                                           name, bytesDelta, msSinceLast, timeToDelay));
+            try
+            {
+                Thread.sleep(timeToDelay);
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+        bytesAtLastDelay = currentBytes;
+        timeAtLastDelay = System.currentTimeMillis();
+    }
+
+    public interface ThroughputFunction
+    {
+        /**
+         * @return the target throughput in bytes per millisecond; less than 1 disables throttling
+         */
+        public int targetThroughput();
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+/**
+ * Compares the write throughput of an indexed CF with that of an unindexed one, with concurrent writers
+ * overwriting the indexed column of rows that have been flushed, i.e. the case where reading the old value
+ * before each write would go to disk.
+ */
+public class LongIndexedWriteSpeedTest extends CleanupHelper
+{
+    private static final int THREADS = 32;
+    private static final int ROWS = 20000;
+    private static final int VALUES = 100;
+
+    @Test
+    public void testIndexedWrites() throws Exception
+    {
+        long unindexed = testWrites("Standard1");
+        long indexed = testWrites("Indexed1");
+        System.out.println(String.format("%s: indexed writes at %.1f%% of the unindexed throughput",
+                                         this.getClass().getName(), 100.0 * indexed / unindexed));
+    }
+
+    /**
+     * @return writes per second
+     */
+    protected long testWrites(final String cfName) throws Exception
+    {
+        ColumnFamilyStore store = Table.open("Keyspace1").getColumnFamilyStore(cfName);
+        final ByteBuffer birthdate = ByteBufferUtil.bytes("birthdate");
+
+        // rows to overwrite, flushed so that their current values are on disk
+        write(cfName, birthdate, 0, ROWS, 0);
+        store.forceBlockingFlush();
+
+        // give garbage collection a bit of time to catch up
+        Thread.sleep(1000);
+
+        long start = System.currentTimeMillis();
+        List<Thread> threads = new ArrayList<Thread>(THREADS);
+        for (int t = 0; t < THREADS; t++)
+        {
+            final int thread = t;
+            threads.add(new Thread()
+            {
+                public void run()
+                {
+                    write(cfName, birthdate, thread, ROWS, THREADS);
+                }
+            });
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        long rate = ROWS * 1000L / elapsed;
+        System.out.println(String.format("%s: cf=%s threads=%d rows=%d: %d ms, %d writes/s",
+                                         this.getClass().getName(),
+                                         cfName,
+                                         THREADS,
+                                         ROWS,
+                                         elapsed,
+                                         rate));
+        return rate;
+    }
+
+    /**
+     * Writes every stride-th row from first (every row if stride is 0), with a new value and timestamp.
+     */
+    private static void write(String cfName, ByteBuffer column, int first, int rows, int stride)
+    {
+        long timestamp = stride == 0 ? 0 : 1;
+        for (int i = first; i < rows; i += Math.max(1, stride))
+        {
+            RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("key" + i));
+            rm.add(new QueryPath(cfName, null, column), FBUtilities.toByteBuffer((long) ((i + timestamp) % VALUES)), timestamp);
+            try
+            {
+                rm.apply();
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
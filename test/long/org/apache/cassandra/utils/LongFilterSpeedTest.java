@@ -0,0 +1,135 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the cost of adding to and probing the filter implementations, with filters sized well past the
+ * processor caches.  Each measurement follows warmup rounds, so that the probes are compiled.
+ */
+public class LongFilterSpeedTest
+{
+    private static final int ELEMENTS = 5 * 1000 * 1000;
+    private static final int PROBES = 2 * 1000 * 1000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    private static final ByteBuffer[] keys = keys(1, ELEMENTS);
+    private static final ByteBuffer[] otherKeys = keys(2, PROBES);
+
+    private static ByteBuffer[] keys(int seed, int n)
+    {
+        Random random = new Random(seed);
+        ByteBuffer[] keys = new ByteBuffer[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = ByteBufferUtil.bytes(Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+        return keys;
+    }
+
+    private interface FilterFactory
+    {
+        Filter create();
+    }
+
+    @Test
+    public void testBloomFilter()
+    {
+        timeit("BloomFilter", new FilterFactory()
+        {
+            public Filter create()
+            {
+                return BloomFilter.getFilter(ELEMENTS, 15);
+            }
+        });
+    }
+
+    @Test
+    public void testLegacyBloomFilter()
+    {
+        timeit("LegacyBloomFilter", new FilterFactory()
+        {
+            public Filter create()
+            {
+                return LegacyBloomFilter.getFilter(ELEMENTS, 15);
+            }
+        });
+    }
+
+    @Test
+    public void testBlockedBloomFilter()
+    {
+        timeit("BlockedBloomFilter", new FilterFactory()
+        {
+            public Filter create()
+            {
+                return BlockedBloomFilter.getFilter(ELEMENTS, 15, false);
+            }
+        });
+    }
+
+    @Test
+    public void testOffHeapBlockedBloomFilter()
+    {
+        timeit("BlockedBloomFilter (off-heap)", new FilterFactory()
+        {
+            public Filter create()
+            {
+                return BlockedBloomFilter.getFilter(ELEMENTS, 15, true);
+            }
+        });
+    }
+
+    private static void timeit(String name, FilterFactory factory)
+    {
+        long addNanos = 0;
+        long probeNanos = 0;
+        int falsePositives = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++)
+        {
+            Filter filter = factory.create();
+            long start = System.nanoTime();
+            for (ByteBuffer key : keys)
+                filter.add(key);
+            long added = System.nanoTime();
+            int present = 0;
+            for (ByteBuffer key : otherKeys)
+            {
+                if (filter.isPresent(key))
+                    present++;
+            }
+            long probed = System.nanoTime();
+
+            if (round >= WARMUP_ROUNDS)
+            {
+                addNanos += added - start;
+                probeNanos += probed - added;
+                falsePositives += present;
+            }
+        }
+        System.out.println(String.format("%s: add %.1f ns/key, isPresent %.1f ns/key, false positive rate %.5f",
+                                         name,
+                                         (double) addNanos / ROUNDS / ELEMENTS,
+                                         (double) probeNanos / ROUNDS / PROBES,
+                                         (double) falsePositives / ROUNDS / PROBES));
+    }
+}
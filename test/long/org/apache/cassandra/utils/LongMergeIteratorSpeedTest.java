@@ -0,0 +1,152 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.utils;
+
+import java.util.*;
+
+import com.google.common.collect.Ordering;
+import org.apache.commons.collections.iterators.CollatingIterator;
+import org.junit.Test;
+
+/**
+ * Compares merging k sorted inputs with the CollatingIterator and ReducingIterator pair against the
+ * MergeIterator, with a quarter of the items of each input also present in another.  Each measurement
+ * follows warmup rounds, so that the merges are compiled.
+ */
+public class LongMergeIteratorSpeedTest
+{
+    private static final int ITEMS = 4 * 1000 * 1000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    private static List<List<Integer>> sources(int k)
+    {
+        Random random = new Random(k);
+        List<SortedSet<Integer>> sets = new ArrayList<SortedSet<Integer>>(k);
+        for (int i = 0; i < k; i++)
+            sets.add(new TreeSet<Integer>());
+        for (int item = 0; item < ITEMS; item++)
+        {
+            int source = random.nextInt(k);
+            sets.get(source).add(item);
+            if (k > 1 && random.nextInt(4) == 0)
+                sets.get((source + 1 + random.nextInt(k - 1)) % k).add(item);
+        }
+        List<List<Integer>> sources = new ArrayList<List<Integer>>(k);
+        for (SortedSet<Integer> set : sets)
+            sources.add(new ArrayList<Integer>(set));
+        return sources;
+    }
+
+    private interface Merger
+    {
+        /** @return the number of distinct items merged from the sources */
+        int merge(List<List<Integer>> sources);
+    }
+
+    private static class Counter extends MergeIterator.Reducer<Integer, Integer>
+    {
+        private Integer item;
+
+        public void reduce(Integer current)
+        {
+            item = current;
+        }
+
+        protected Integer getReduced()
+        {
+            return item;
+        }
+    }
+
+    private static final Merger COLLATING = new Merger()
+    {
+        public int merge(List<List<Integer>> sources)
+        {
+            CollatingIterator collator = FBUtilities.getCollatingIterator();
+            for (List<Integer> source : sources)
+                collator.addIterator(source.iterator());
+            Iterator<Integer> reduced = new ReducingIterator<Integer, Integer>(collator)
+            {
+                private Integer item;
+
+                public void reduce(Integer current)
+                {
+                    item = current;
+                }
+
+                protected Integer getReduced()
+                {
+                    return item;
+                }
+            };
+            int merged = 0;
+            while (reduced.hasNext())
+            {
+                reduced.next();
+                merged++;
+            }
+            return merged;
+        }
+    };
+
+    private static final Merger MERGE = new Merger()
+    {
+        public int merge(List<List<Integer>> sources)
+        {
+            List<Iterator<Integer>> iterators = new ArrayList<Iterator<Integer>>(sources.size());
+            for (List<Integer> source : sources)
+                iterators.add(source.iterator());
+            Iterator<Integer> reduced = MergeIterator.get(iterators, Ordering.<Integer>natural(), new Counter());
+            int merged = 0;
+            while (reduced.hasNext())
+            {
+                reduced.next();
+                merged++;
+            }
+            return merged;
+        }
+    };
+
+    @Test
+    public void testMerge()
+    {
+        for (int k : new int[]{ 2, 8, 32 })
+        {
+            List<List<Integer>> sources = sources(k);
+            timeit("CollatingIterator+ReducingIterator", k, sources, COLLATING);
+            timeit("MergeIterator", k, sources, MERGE);
+        }
+    }
+
+    private static void timeit(String name, int k, List<List<Integer>> sources, Merger merger)
+    {
+        long nanos = 0;
+        int merged = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++)
+        {
+            long start = System.nanoTime();
+            merged = merger.merge(sources);
+            if (round >= WARMUP_ROUNDS)
+                nanos += System.nanoTime() - start;
+        }
+        assert merged == ITEMS : merged;
+        System.out.println(String.format("%s, k=%d: %.1f ns/item", name, k, (double) nanos / ROUNDS / ITEMS));
+    }
+}
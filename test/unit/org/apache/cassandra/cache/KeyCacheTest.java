@@ -0,0 +1,145 @@
+package org.apache.cassandra.cache;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeyCacheTest
+{
+    private static ByteBuffer key(int i)
+    {
+        return ByteBufferUtil.bytes("key" + i);
+    }
+
+    @Test
+    public void testGetPut()
+    {
+        KeyCache cache = new KeyCache(1000);
+        for (int i = 0; i < 500; i++)
+            cache.put(1, key(i), i * 10L);
+        cache.put(2, key(0), 42L);
+
+        assertEquals(501, cache.getSize());
+        for (int i = 0; i < 500; i++)
+            assertEquals(i * 10L, cache.get(1, key(i)));
+        // the same key in another sstable is a separate entry
+        assertEquals(42L, cache.get(2, key(0)));
+        assertEquals(-1L, cache.get(3, key(0)));
+        assertEquals(-1L, cache.get(1, key(500)));
+
+        // a key backed by a larger array is found all the same
+        ByteBuffer padded = ByteBuffer.allocate(10);
+        padded.put((byte) 'x').put(key(7)).flip();
+        padded.position(1);
+        assertEquals(70L, cache.get(1, padded));
+
+        cache.put(1, key(3), 3L);
+        assertEquals(3L, cache.get(1, key(3)));
+        assertEquals(501, cache.getSize());
+        assertEquals(500, cache.getKeySet().size());
+        assertEquals(505, cache.getRequests());
+        assertEquals(503, cache.getHits());
+    }
+
+    @Test
+    public void testEviction() throws CharacterCodingException
+    {
+        KeyCache cache = new KeyCache(160);
+        for (int i = 0; i < 2000; i++)
+            cache.put(1, key(i), i);
+        assertEquals(160, cache.getSize());
+
+        // touch every other cached key, so that the clock spares those while new keys replace the others
+        Set<Integer> touched = new HashSet<Integer>();
+        Set<Integer> untouched = new HashSet<Integer>();
+        for (ByteBuffer key : cache.getKeySet())
+        {
+            int i = Integer.parseInt(ByteBufferUtil.string(key).substring(3));
+            if (touched.size() <= untouched.size())
+            {
+                assertEquals(i, cache.get(1, key));
+                touched.add(i);
+            }
+            else
+            {
+                untouched.add(i);
+            }
+        }
+        for (int i = 2000; i < 2040; i++)
+            cache.put(1, key(i), i);
+        assertEquals(160, cache.getSize());
+
+        int touchedRetained = 0;
+        int untouchedRetained = 0;
+        for (ByteBuffer key : cache.getKeySet())
+        {
+            int i = Integer.parseInt(ByteBufferUtil.string(key).substring(3));
+            // every entry that is still cached is still found, whatever was shifted around by removals
+            assertEquals(i, cache.get(1, key));
+            if (touched.contains(i))
+                touchedRetained++;
+            else if (untouched.contains(i))
+                untouchedRetained++;
+        }
+        assertEquals(80, touchedRetained);
+        // the new keys replaced untouched entries (or each other) only
+        assert untouchedRetained < 80 : untouchedRetained;
+    }
+
+    @Test
+    public void testCapacity()
+    {
+        KeyCache cache = new KeyCache(0);
+        cache.put(1, key(0), 0);
+        assertEquals(0, cache.getSize());
+
+        // the capacity is split evenly between the segments, so it takes more keys than that to fill them all
+        cache.updateCapacity(1000);
+        for (int i = 0; i < 5000; i++)
+            cache.put(1, key(i), i);
+        assertEquals(1000, cache.getSize());
+
+        cache.updateCapacity(100);
+        assertEquals(100, cache.getCapacity());
+        assertEquals(100, cache.getSize());
+        int found = 0;
+        for (int i = 0; i < 5000; i++)
+        {
+            if (cache.get(1, key(i)) == i)
+                found++;
+        }
+        assertEquals(100, found);
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(-1L, cache.get(1, key(0)));
+    }
+}
@@ -22,9 +22,11 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -39,6 +41,7 @@ import org.apache.cassandra.CleanupHelper;
 import org.apache.cassandra.Util;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.config.ConfigurationException;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.columniterator.IdentityQueryFilter;
 import org.apache.cassandra.db.filter.*;
 import org.apache.cassandra.dht.IPartitioner;
@@ -216,6 +219,51 @@ public class ColumnFamilyStoreTest extends CleanupHelper
         assert rows.isEmpty();
     }
 
+    @Test
+    public void testMultipleIndexScan() throws IOException, ExecutionException, InterruptedException
+    {
+        ColumnFamilyStore cfs = Table.open("Keyspace2").getColumnFamilyStore("Indexed1");
+        for (int i = 0; i < 400; i++)
+        {
+            RowMutation rm = new RowMutation("Keyspace2", ByteBufferUtil.bytes("m" + i));
+            rm.add(new QueryPath("Indexed1", null, ByteBufferUtil.bytes("birthdate")), FBUtilities.toByteBuffer(100L + i % 2), 0);
+            rm.add(new QueryPath("Indexed1", null, ByteBufferUtil.bytes("state")), FBUtilities.toByteBuffer((long) (i % 3)), 0);
+            rm.add(new QueryPath("Indexed1", null, ByteBufferUtil.bytes("notbirthdate")), FBUtilities.toByteBuffer((long) i), 0);
+            rm.apply();
+            if (i == 199)
+                cfs.forceBlockingFlush();
+        }
+
+        IndexExpression expr = new IndexExpression(ByteBufferUtil.bytes("birthdate"), IndexOperator.EQ, FBUtilities.toByteBuffer(100L));
+        IndexExpression expr2 = new IndexExpression(ByteBufferUtil.bytes("state"), IndexOperator.EQ, FBUtilities.toByteBuffer(0L));
+        IFilter filter = new IdentityQueryFilter();
+        IPartitioner p = StorageService.getPartitioner();
+        Range range = new Range(p.getMinimumToken(), p.getMinimumToken());
+
+        // both index rows span several index pages; only every sixth row is in both
+        IndexClause clause = new IndexClause(Arrays.asList(expr, expr2), FBUtilities.EMPTY_BYTE_BUFFER, 1000);
+        List<Row> rows = cfs.scan(clause, range, filter);
+        Set<String> expected = new HashSet<String>();
+        for (int i = 0; i < 400; i += 6)
+            expected.add("m" + i);
+        Set<String> actual = new HashSet<String>();
+        for (Row row : rows)
+            actual.add(ByteBufferUtil.string(row.key.key));
+        assert rows.size() == expected.size() : StringUtils.join(rows, ",");
+        assert actual.equals(expected) : actual;
+
+        // an unindexed expression is still applied to the intersected rows
+        IndexExpression expr3 = new IndexExpression(ByteBufferUtil.bytes("notbirthdate"), IndexOperator.LT, FBUtilities.toByteBuffer(60L));
+        clause = new IndexClause(Arrays.asList(expr, expr2, expr3), FBUtilities.EMPTY_BYTE_BUFFER, 1000);
+        rows = cfs.scan(clause, range, filter);
+        assert rows.size() == 10 : StringUtils.join(rows, ",");
+
+        // the count is honored
+        clause = new IndexClause(Arrays.asList(expr, expr2), FBUtilities.EMPTY_BYTE_BUFFER, 5);
+        rows = cfs.scan(clause, range, filter);
+        assert rows.size() == 5 : StringUtils.join(rows, ",");
+    }
+
     @Test
     public void testIndexDeletions() throws IOException
     {
@@ -282,6 +330,13 @@ public class ColumnFamilyStoreTest extends CleanupHelper
         rm.add(new QueryPath("Indexed1", null, ByteBufferUtil.bytes("birthdate")), FBUtilities.toByteBuffer(2L), 2);
         rm.apply();
 
+        // the update leaves the entry for the old value behind...
+        ColumnFamilyStore indexCfs = table.getColumnFamilyStore("Indexed1").getIndexedColumnFamilyStore(ByteBufferUtil.bytes("birthdate"));
+        QueryFilter indexFilter = QueryFilter.getNamesFilter(indexCfs.partitioner.decorateKey(FBUtilities.toByteBuffer(1L)),
+                                                             new QueryPath(indexCfs.getColumnFamilyName()),
+                                                             ByteBufferUtil.bytes("k1"));
+        assert !indexCfs.getColumnFamily(indexFilter).getColumn(ByteBufferUtil.bytes("k1")).isMarkedForDelete();
+
         IndexExpression expr = new IndexExpression(ByteBufferUtil.bytes("birthdate"), IndexOperator.EQ, FBUtilities.toByteBuffer(1L));
         IndexClause clause = new IndexClause(Arrays.asList(expr), FBUtilities.EMPTY_BYTE_BUFFER, 100);
         IFilter filter = new IdentityQueryFilter();
@@ -290,6 +345,9 @@ public class ColumnFamilyStoreTest extends CleanupHelper
         List<Row> rows = table.getColumnFamilyStore("Indexed1").scan(clause, range, filter);
         assert rows.size() == 0;
 
+        // ... until a scan finds it doesn't match the row any more
+        assert indexCfs.getColumnFamily(indexFilter).getColumn(ByteBufferUtil.bytes("k1")).isMarkedForDelete();
+
         expr = new IndexExpression(ByteBufferUtil.bytes("birthdate"), IndexOperator.EQ, FBUtilities.toByteBuffer(2L));
         clause = new IndexClause(Arrays.asList(expr), FBUtilities.EMPTY_BYTE_BUFFER, 100);
         rows = table.getColumnFamilyStore("Indexed1").scan(clause, range, filter);
@@ -307,6 +365,39 @@ public class ColumnFamilyStoreTest extends CleanupHelper
     
     }
 
+    @Test
+    public void testIndexScanWideRowEmptySlice() throws IOException, ExecutionException, InterruptedException
+    {
+        // a row wide enough that the scan fetches the indexed columns separately from the requested slice
+        ColumnFamilyStore cfs = Table.open("Keyspace1").getColumnFamilyStore("Indexed1");
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("wide"));
+        rm.add(new QueryPath("Indexed1", null, ByteBufferUtil.bytes("birthdate")), FBUtilities.toByteBuffer(42L), 0);
+        for (int i = 0; i < 100; i++)
+            rm.add(new QueryPath("Indexed1", null, ByteBufferUtil.bytes(String.format("c%03d", i))), ByteBuffer.wrap(new byte[100]), 0);
+        rm.apply();
+        cfs.forceBlockingFlush();
+        assert cfs.getMaxRowSize() >= DatabaseDescriptor.getColumnIndexSize();
+
+        IndexExpression expr = new IndexExpression(ByteBufferUtil.bytes("birthdate"), IndexOperator.EQ, FBUtilities.toByteBuffer(42L));
+        IndexClause clause = new IndexClause(Arrays.asList(expr), FBUtilities.EMPTY_BYTE_BUFFER, 100);
+        IPartitioner p = StorageService.getPartitioner();
+        Range range = new Range(p.getMinimumToken(), p.getMinimumToken());
+        // a slice matching none of the columns of the row must not make its index entry look stale
+        IFilter filter = new SliceQueryFilter(ByteBufferUtil.bytes("x"), ByteBufferUtil.bytes("y"), false, 100);
+        for (int i = 0; i < 2; i++)
+        {
+            List<Row> rows = cfs.scan(clause, range, filter);
+            assertEquals(1, rows.size());
+            assertEquals("wide", ByteBufferUtil.string(rows.get(0).key.key));
+        }
+
+        ColumnFamilyStore indexCfs = cfs.getIndexedColumnFamilyStore(ByteBufferUtil.bytes("birthdate"));
+        QueryFilter indexFilter = QueryFilter.getNamesFilter(indexCfs.partitioner.decorateKey(FBUtilities.toByteBuffer(42L)),
+                                                             new QueryPath(indexCfs.getColumnFamilyName()),
+                                                             ByteBufferUtil.bytes("wide"));
+        assert !indexCfs.getColumnFamily(indexFilter).getColumn(ByteBufferUtil.bytes("wide")).isMarkedForDelete();
+    }
+
     @Test
     public void testIndexCreate() throws IOException, ConfigurationException, InterruptedException
     {
@@ -500,6 +591,43 @@ public class ColumnFamilyStoreTest extends CleanupHelper
     }
         
 
+    @Test
+    public void testNamesQueryStopsAtNewestSSTables() throws IOException, ExecutionException, InterruptedException
+    {
+        ColumnFamilyStore cfs = Table.open("Keyspace4").getColumnFamilyStore("Standard1");
+        DecoratedKey key = Util.dk("timeordered");
+
+        // three sstables, each overwriting "a" with a newer timestamp; "b" is only in the oldest one
+        for (int i = 1; i <= 3; i++)
+        {
+            RowMutation rm = new RowMutation("Keyspace4", key.key);
+            rm.add(new QueryPath("Standard1", null, ByteBufferUtil.bytes("a")), ByteBufferUtil.bytes("a" + i), i);
+            if (i == 1)
+                rm.add(new QueryPath("Standard1", null, ByteBufferUtil.bytes("b")), ByteBufferUtil.bytes("b1"), i);
+            rm.apply();
+            cfs.forceBlockingFlush();
+        }
+        assertEquals(3, cfs.getSSTables().size());
+        for (SSTableReader sstable : cfs.getSSTables())
+        {
+            assertEquals(sstable.getMinTimestamp(), sstable.getMaxTimestamp());
+            SSTableReader reopened = SSTableReader.open(sstable.descriptor);
+            assertEquals(sstable.getMinTimestamp(), reopened.getMinTimestamp());
+            assertEquals(sstable.getMaxTimestamp(), reopened.getMaxTimestamp());
+        }
+
+        // only the newest sstable is needed for "a"
+        cfs.getRecentSSTablesPerReadHistogram();
+        ColumnFamily cf = cfs.getColumnFamily(QueryFilter.getNamesFilter(key, new QueryPath("Standard1"), ByteBufferUtil.bytes("a")));
+        assertEquals(ByteBufferUtil.bytes("a3"), cf.getColumn(ByteBufferUtil.bytes("a")).value());
+        assertEquals(1, cfs.getRecentSSTablesPerReadHistogram()[1]);
+
+        // "b" requires going all the way back
+        cf = cfs.getColumnFamily(QueryFilter.getNamesFilter(key, new QueryPath("Standard1"), ByteBufferUtil.bytes("b")));
+        assertEquals(ByteBufferUtil.bytes("b1"), cf.getColumn(ByteBufferUtil.bytes("b")).value());
+        assertEquals(1, cfs.getRecentSSTablesPerReadHistogram()[3]);
+    }
+
     private ColumnFamilyStore insertKey1Key2() throws IOException, ExecutionException, InterruptedException
     {
         List<RowMutation> rms = new LinkedList<RowMutation>();
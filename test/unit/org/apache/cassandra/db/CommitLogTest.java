@@ -20,19 +20,88 @@
 package org.apache.cassandra.db;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
 import org.junit.Test;
 
 import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.CommitLogHeader;
 import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.utils.Pair;
 
+import static org.apache.cassandra.Util.column;
+import static org.apache.cassandra.db.TableTest.assertColumns;
+
 public class CommitLogTest extends CleanupHelper
 {
+    @Test
+    public void testRecycledSegments() throws Exception
+    {
+        CommitLog.setSegmentSize(16 * 1024);
+        CommitLog.instance.resetUnsafe();
+        Table table = Table.open("Keyspace1");
+        File directory = new File(DatabaseDescriptor.getCommitLogLocation());
+
+        // once flushed, the segments holding these are recycled
+        for (int i = 0; i < 500; i++)
+            apply("Standard1", String.format("stale%03d", i));
+        table.getColumnFamilyStore("Standard1").forceBlockingFlush();
+        Set<String> before = new HashSet<String>(Arrays.asList(directory.list()));
+        int recycled = countRecycled(directory);
+        assert recycled > 0;
+
+        // entries of the same size as the stale ones, ending part way through a reused segment
+        int fresh = 0;
+        while (countRecycled(directory) == recycled)
+            apply("Standard2", String.format("fresh%03d", fresh++));
+        for (int i = 0; i < 20; i++)
+            apply("Standard2", String.format("fresh%03d", fresh++));
+
+        // the reused segment still holds stale entries past the new ones: even without its header,
+        // replay must stop at the end of the new entries
+        for (String name : directory.list())
+        {
+            if (name.endsWith(".header") && !before.contains(name))
+                new File(directory, name).delete();
+        }
+        table.getColumnFamilyStore("Standard1").clearUnsafe();
+        table.getColumnFamilyStore("Standard2").clearUnsafe();
+        CommitLog.instance.resetUnsafe();
+        CommitLog.recover();
+
+        for (int i = 0; i < fresh; i++)
+            assertColumns(Util.getColumnFamily(table, Util.dk(String.format("fresh%03d", i)), "Standard2"), "col");
+        for (int i = 0; i < 500; i++)
+            assertColumns(Util.getColumnFamily(table, Util.dk(String.format("stale%03d", i)), "Standard1"));
+    }
+
+    private static void apply(String cfName, String key) throws IOException
+    {
+        RowMutation rm = new RowMutation("Keyspace1", Util.dk(key).key);
+        ColumnFamily cf = ColumnFamily.create("Keyspace1", cfName);
+        cf.addColumn(column("col", "val", 1L));
+        rm.add(cf);
+        rm.apply();
+    }
+
+    private static int countRecycled(File directory)
+    {
+        int count = 0;
+        for (String name : directory.list())
+        {
+            if (name.endsWith(".recycled"))
+                count++;
+        }
+        return count;
+    }
+
     @Test
     public void testRecoveryWithEmptyHeader() throws Exception
     {
@@ -18,6 +18,7 @@
 */
 package org.apache.cassandra.db;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
@@ -35,8 +36,10 @@ import org.apache.cassandra.Util;
 import org.junit.Test;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.Pair;
@@ -83,6 +86,113 @@ public class CompactionsTest extends CleanupHelper
         assertEquals(inserted.size(), Util.getRangeSlice(store).size());
     }
 
+    @Test
+    public void testMinorCompactionSkipsClaimedSSTables() throws IOException, ExecutionException, InterruptedException
+    {
+        CompactionManager.instance.disableAutoCompaction();
+
+        Table table = Table.open(TABLE1);
+        ColumnFamilyStore store = table.getColumnFamilyStore("Standard2");
+        for (int j = 0; j < 4; j++)
+        {
+            RowMutation rm = new RowMutation(TABLE1, ByteBuffer.wrap(String.valueOf(j).getBytes()));
+            rm.add(new QueryPath("Standard2", null, ByteBuffer.wrap("c".getBytes())), FBUtilities.EMPTY_BYTE_BUFFER, j);
+            rm.apply();
+            store.forceBlockingFlush();
+        }
+        assertEquals(4, store.getSSTables().size());
+
+        // as if another compaction were running on all of them
+        Set<SSTableReader> claimed = store.markUncompactingSSTables();
+        store.setMaximumCompactionThreshold(32);
+        store.setMinimumCompactionThreshold(4);
+        try
+        {
+            assertEquals(0, (int) CompactionManager.instance.submitMinorIfNeeded(store).get());
+            assertEquals(4, store.getSSTables().size());
+        }
+        finally
+        {
+            store.unmarkCompacting(claimed);
+        }
+
+        assertEquals(4, (int) CompactionManager.instance.submitMinorIfNeeded(store).get());
+        assertEquals(1, store.getSSTables().size());
+        assertEquals(4, Util.getRangeSlice(store).size());
+    }
+
+    @Test
+    public void testRepairedSSTablesCompactedSeparately() throws IOException, ExecutionException, InterruptedException
+    {
+        CompactionManager.instance.disableAutoCompaction();
+
+        Table table = Table.open(TABLE1);
+        ColumnFamilyStore store = table.getColumnFamilyStore("Standard4");
+        for (int j = 0; j < 4; j++)
+        {
+            RowMutation rm = new RowMutation(TABLE1, ByteBuffer.wrap(String.valueOf(j).getBytes()));
+            rm.add(new QueryPath("Standard4", null, ByteBuffer.wrap("c".getBytes())), FBUtilities.EMPTY_BYTE_BUFFER, j);
+            rm.apply();
+            store.forceBlockingFlush();
+        }
+        assertEquals(4, store.getSSTables().size());
+
+        // mark two of them repaired, by different sessions
+        long repairedAt = System.currentTimeMillis();
+        List<SSTableReader> sstables = new ArrayList<SSTableReader>(store.getSSTables());
+        sstables.get(0).markRepaired(repairedAt);
+        sstables.get(1).markRepaired(repairedAt + 1);
+
+        // the repaired ones are compacted apart from the others, and stay repaired as of the older session
+        CompactionManager.instance.performMajor(store);
+        assertEquals(2, store.getSSTables().size());
+        assertEquals(1, store.getUnrepairedSSTables().size());
+        for (SSTableReader sstable : store.getSSTables())
+        {
+            if (sstable.isRepaired())
+                assertEquals(repairedAt, sstable.getRepairedAt());
+        }
+        assertEquals(4, Util.getRangeSlice(store).size());
+    }
+
+    @Test
+    public void testCompressedCompaction() throws IOException, ExecutionException, InterruptedException
+    {
+        CompactionManager.instance.disableAutoCompaction();
+
+        // enough columns per row that rows span several of the 4KB chunks
+        Table table = Table.open(TABLE1);
+        ColumnFamilyStore store = table.getColumnFamilyStore("StandardCompressed");
+        for (int j = 0; j < 2; j++)
+        {
+            for (int i = 0; i < 10; i++)
+            {
+                RowMutation rm = new RowMutation(TABLE1, ByteBuffer.wrap(("key" + i).getBytes()));
+                for (int c = 0; c < 100; c++)
+                    rm.add(new QueryPath("StandardCompressed", null, ByteBuffer.wrap(("column" + c).getBytes())), ByteBuffer.wrap(("value" + c + "-" + j).getBytes()), j);
+                rm.apply();
+            }
+            store.forceBlockingFlush();
+        }
+        assertEquals(2, store.getSSTables().size());
+        for (SSTableReader sstable : store.getSSTables())
+            assert new File(sstable.descriptor.filenameFor(Component.COMPRESSION_INFO)).exists();
+        assertEquals(10, Util.getRangeSlice(store).size());
+
+        CompactionManager.instance.performMajor(store);
+        assertEquals(1, store.getSSTables().size());
+        SSTableReader sstable = store.getSSTables().iterator().next();
+        assert new File(sstable.descriptor.filenameFor(Component.COMPRESSION_INFO)).exists();
+        assert new File(sstable.getFilename()).length() < sstable.length();
+
+        List<Row> rows = Util.getRangeSlice(store);
+        assertEquals(10, rows.size());
+        for (Row row : rows)
+            assertEquals(100, row.cf.getColumnCount());
+        ColumnFamily cf = store.getColumnFamily(QueryFilter.getIdentityFilter(Util.dk("key7"), new QueryPath("StandardCompressed")));
+        assertEquals("value42-1", new String(cf.getColumn(ByteBuffer.wrap("column42".getBytes())).value().array()));
+    }
+
     @Test
     public void testGetBuckets()
     {
@@ -0,0 +1,71 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.apache.cassandra.Util.column;
+
+public class HintedHandOffTest extends CleanupHelper
+{
+    @Test
+    public void testHintHoldsMutation() throws Exception
+    {
+        InetAddress target = InetAddress.getByName("127.0.0.2");
+        ByteBuffer targetKey = ByteBufferUtil.bytes(target.getHostAddress());
+        ColumnFamilyStore hintStore = Table.open(Table.SYSTEM_TABLE).getColumnFamilyStore(HintedHandOffManager.HINTS_CF);
+
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("k1"));
+        ColumnFamily cf = ColumnFamily.create("Keyspace1", "Standard1");
+        cf.addColumn(column("c1", "v1", 1L));
+        rm.add(cf);
+
+        RowMutation hint = new RowMutation(Table.SYSTEM_TABLE, targetKey);
+        hint.addHints(rm);
+        hint.apply();
+
+        QueryFilter filter = QueryFilter.getIdentityFilter(Util.dk(target.getHostAddress()), new QueryPath(HintedHandOffManager.HINTS_CF));
+        ColumnFamily hints = hintStore.getColumnFamily(filter);
+        Collection<IColumn> hintColumns = hints.getSortedColumns();
+        assert hintColumns.size() == 1 : hintColumns;
+
+        // the hint carries the whole mutation, expiring with the CF's gc_grace_seconds
+        IColumn mutation = hintColumns.iterator().next().getSubColumn(HintedHandOffManager.HINT_MUTATION);
+        assert mutation instanceof ExpiringColumn;
+        assert ((ExpiringColumn) mutation).getTimeToLive() == cf.metadata().getGcGraceSeconds();
+        assert Arrays.equals(ByteBufferUtil.getArray(mutation.value()), rm.getSerializedBuffer());
+        RowMutation hinted = RowMutation.fromBytes(ByteBufferUtil.getArray(mutation.value()));
+        assert hinted.getTable().equals("Keyspace1");
+        assert hinted.key().equals(rm.key());
+
+        HintedHandOffManager.deleteHintsForEndPoint(target);
+        assert ColumnFamilyStore.removeDeleted(hintStore.getColumnFamily(filter), Integer.MAX_VALUE) == null;
+    }
+}
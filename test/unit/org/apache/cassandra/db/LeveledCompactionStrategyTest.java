@@ -0,0 +1,92 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.io.sstable.SSTableReader;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+public class LeveledCompactionStrategyTest extends CleanupHelper
+{
+    @Test
+    public void testLevelsDoNotOverlap() throws Exception
+    {
+        Table table = Table.open("Keyspace1");
+        ColumnFamilyStore store = table.getColumnFamilyStore("StandardLeveled");
+        assertTrue(store.getCompactionStrategy() instanceof LeveledCompactionStrategy);
+
+        // 20 sstables of ~100KB each with overlapping key ranges, against 1MB sstables
+        ByteBuffer value = ByteBuffer.wrap(new byte[1024]);
+        int rows = 0;
+        for (int r = 0; r < 20; r++)
+        {
+            for (int i = 0; i < 10; i++)
+            {
+                RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("key" + rows++));
+                for (int c = 0; c < 10; c++)
+                    rm.add(new QueryPath("StandardLeveled", null, ByteBufferUtil.bytes("column" + c)), value, 0);
+                rm.apply();
+            }
+            store.forceBlockingFlush();
+        }
+        while (CompactionManager.instance.submitMinorIfNeeded(store).get() > 0);
+
+        int[] counts = CompactionManager.instance.getSSTableCountPerLevel("Keyspace1", "StandardLeveled");
+        assertTrue(counts.length > 1);
+        assertTrue("level 0 should be below the compaction threshold", counts[0] < store.getMinimumCompactionThreshold());
+        assertTrue("level 1 output should have been split", counts[1] > 1);
+
+        List<SSTableReader> leveled = new ArrayList<SSTableReader>();
+        for (SSTableReader sstable : store.getSSTables())
+        {
+            if (sstable.getSSTableLevel() > 0)
+                leveled.add(sstable);
+        }
+        Collections.sort(leveled, new Comparator<SSTableReader>()
+        {
+            public int compare(SSTableReader o1, SSTableReader o2)
+            {
+                int c = o1.getSSTableLevel() - o2.getSSTableLevel();
+                return c != 0 ? c : o1.getFirst().compareTo(o2.getFirst());
+            }
+        });
+        for (int i = 1; i < leveled.size(); i++)
+        {
+            SSTableReader previous = leveled.get(i - 1);
+            SSTableReader current = leveled.get(i);
+            if (previous.getSSTableLevel() == current.getSSTableLevel())
+                assertTrue(previous + " overlaps " + current, previous.getLast().compareTo(current.getFirst()) < 0);
+        }
+
+        assertEquals(rows, Util.getRangeSlice(store).size());
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class MemtableFlushControllerTest extends CleanupHelper
+{
+    @Test
+    public void testFlushLargest() throws Exception
+    {
+        Table table = Table.open("Keyspace1");
+        ColumnFamilyStore cfs = table.getColumnFamilyStore("Indexed1");
+        ColumnFamilyStore small = table.getColumnFamilyStore("Standard2");
+        ByteBuffer birthdate = ByteBufferUtil.bytes("birthdate");
+        ColumnFamilyStore indexCfs = cfs.getIndexedColumnFamilyStore(birthdate);
+
+        for (int i = 0; i < 5000; i++)
+        {
+            RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("k" + i));
+            rm.add(new QueryPath("Indexed1", null, birthdate), FBUtilities.toByteBuffer((long) i), 0);
+            rm.apply();
+        }
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("k"));
+        rm.add(new QueryPath("Standard2", null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes("v"), 0);
+        rm.apply();
+
+        // the estimate is well above the serialized size, and counts the index with its parent
+        assertTrue(cfs.getMemtableLiveSize() > 2 * cfs.getMemtableDataSize());
+        assertTrue(indexCfs.getMemtableLiveSize() > 0);
+        assertEquals(cfs.getMemtableLiveSize() + indexCfs.getMemtableLiveSize(), cfs.getTotalMemtableLiveSize());
+        assertTrue(cfs.getTotalMemtableLiveSize() > 1024 * 1024);
+
+        // within the budget, nothing happens
+        DatabaseDescriptor.setMemtableTotalSpaceInMB(1024);
+        MemtableFlushController.instance.run();
+        assertTrue(cfs.getMemtableLiveSize() > 0);
+
+        // over it, the largest memtable is flushed along with its index, and flushing it is enough
+        DatabaseDescriptor.setMemtableTotalSpaceInMB(1);
+        MemtableFlushController.instance.run();
+        assertEquals(0, cfs.getMemtableLiveSize());
+        assertEquals(0, indexCfs.getMemtableLiveSize());
+        assertTrue(small.getMemtableLiveSize() > 0);
+
+        assertTrue(MemtableFlushController.instance.getTotalPendingFlushSize() > 0 || cfs.getSSTables().size() == 1);
+        while (cfs.getTotalPendingFlushSize() > 0)
+            Thread.sleep(10);
+        assertEquals(1, cfs.getSSTables().size());
+        assertEquals(1, indexCfs.getSSTables().size());
+    }
+}
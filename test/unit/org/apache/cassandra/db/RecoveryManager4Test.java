@@ -0,0 +1,84 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.db.commitlog.CommitLog;
+
+import static org.apache.cassandra.Util.column;
+import static org.apache.cassandra.db.TableTest.assertColumns;
+
+public class RecoveryManager4Test extends CleanupHelper
+{
+    @Test
+    public void testConcurrentWritesAcrossSegments() throws Exception
+    {
+        // small segments, so that the writers race to roll over to new ones
+        CommitLog.setSegmentSize(16 * 1024);
+        CommitLog.instance.resetUnsafe();
+
+        final Table table = Table.open("Keyspace1");
+        final int threadCount = 8;
+        final int rowsPerThread = 200;
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++)
+        {
+            final int thread = t;
+            threads.add(new Thread()
+            {
+                public void run()
+                {
+                    for (int i = 0; i < rowsPerThread; i++)
+                    {
+                        RowMutation rm = new RowMutation("Keyspace1", Util.dk("key" + thread + "-" + i).key);
+                        ColumnFamily cf = ColumnFamily.create("Keyspace1", "Standard1");
+                        cf.addColumn(column("col", "val", 1L));
+                        rm.add(cf);
+                        try
+                        {
+                            rm.apply();
+                        }
+                        catch (Exception e)
+                        {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        table.getColumnFamilyStore("Standard1").clearUnsafe();
+        CommitLog.instance.resetUnsafe(); // disassociate segments from live CL
+        CommitLog.recover();
+
+        for (int t = 0; t < threadCount; t++)
+            for (int i = 0; i < rowsPerThread; i++)
+                assertColumns(Util.getColumnFamily(table, Util.dk("key" + t + "-" + i), "Standard1"), "col");
+    }
+}
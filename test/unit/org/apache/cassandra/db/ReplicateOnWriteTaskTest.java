@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.cassandra.db;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static junit.framework.Assert.assertEquals;
+import static org.apache.cassandra.Util.token;
+
+public class ReplicateOnWriteTaskTest extends CleanupHelper
+{
+    @BeforeClass
+    public static void beforeClass()
+    {
+        StorageService.instance.getTokenMetadata().updateNormalToken(token("1"), FBUtilities.getLocalAddress());
+    }
+
+    @Test
+    public void testCoalescing() throws Exception
+    {
+        DatabaseDescriptor.setReplicateOnWriteCoalescingWindowInMS(1000);
+        long updates = ReplicateOnWriteTask.getUpdates();
+        long replications = ReplicateOnWriteTask.getReplications();
+
+        for (int i = 0; i < 3; i++)
+        {
+            RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("k1"));
+            rm.add(new QueryPath("Counter1", null, ByteBufferUtil.bytes("c" + i)), ByteBufferUtil.bytes("v"), 0);
+            ReplicateOnWriteTask.replicate(rm);
+        }
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("k2"));
+        rm.add(new QueryPath("SuperCounter1", ByteBufferUtil.bytes("sc"), ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes("v"), 0);
+        rm.add(new QueryPath("Standard1", null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes("v"), 0);
+        ReplicateOnWriteTask.replicate(rm);
+
+        // CFs that are not replicated on write are ignored
+        rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("k3"));
+        rm.add(new QueryPath("Standard1", null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes("v"), 0);
+        ReplicateOnWriteTask.replicate(rm);
+
+        assertEquals(2, ReplicateOnWriteTask.getPendingRows());
+        assertEquals(updates + 4, ReplicateOnWriteTask.getUpdates());
+
+        while (ReplicateOnWriteTask.getPendingRows() > 0)
+            Thread.sleep(10);
+        assertEquals(replications + 2, ReplicateOnWriteTask.getReplications());
+
+        // without a window, updates only coalesce while they wait in the stage queue
+        DatabaseDescriptor.setReplicateOnWriteCoalescingWindowInMS(0);
+        ReplicateOnWriteTask.replicate(rm);
+        rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("k1"));
+        rm.add(new QueryPath("Counter1", null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes("v"), 0);
+        ReplicateOnWriteTask.replicate(rm);
+        while (ReplicateOnWriteTask.getPendingRows() > 0)
+            Thread.sleep(10);
+        assertEquals(updates + 5, ReplicateOnWriteTask.getUpdates());
+        assertEquals(replications + 3, ReplicateOnWriteTask.getReplications());
+    }
+}
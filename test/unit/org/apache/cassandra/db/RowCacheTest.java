@@ -0,0 +1,96 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.cache.SerializingCache;
+import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static junit.framework.Assert.assertEquals;
+
+public class RowCacheTest extends CleanupHelper
+{
+    private static final String TABLE = "Keyspace1";
+    private static final String CF = "StandardOffHeapCached";
+
+    private static ColumnFamily read(ColumnFamilyStore store, String key)
+    {
+        return store.getColumnFamily(QueryFilter.getIdentityFilter(Util.dk(key), new QueryPath(CF)));
+    }
+
+    private static void write(String key, String column, String value, long timestamp) throws Exception
+    {
+        RowMutation rm = new RowMutation(TABLE, ByteBufferUtil.bytes(key));
+        rm.add(new QueryPath(CF, null, ByteBufferUtil.bytes(column)), ByteBufferUtil.bytes(value), timestamp);
+        rm.apply();
+    }
+
+    @Test
+    public void testOffHeapRowCache() throws Exception
+    {
+        ColumnFamilyStore store = Table.open(TABLE).getColumnFamilyStore(CF);
+        assert store.getRowCacheCapacity() == 1024 : store.getRowCacheCapacity();
+
+        for (int i = 0; i < 10; i++)
+            write("key" + i, "c", "value" + i, 0);
+        store.forceBlockingFlush();
+
+        for (int i = 0; i < 10; i++)
+            assertEquals("value" + i, ByteBufferUtil.string(read(store, "key" + i).getColumn(ByteBufferUtil.bytes("c")).value()));
+        assertEquals(10, store.getRowCacheSize());
+
+        // rows handed out by the cache are copies, so changing one must not change the cache
+        read(store, "key1").addColumn(new Column(ByteBufferUtil.bytes("d"), ByteBufferUtil.bytes("x"), 0));
+        assertEquals(1, read(store, "key1").getColumnCount());
+
+        // a write invalidates the cached row, and the next read sees it
+        write("key2", "c", "updated", 1);
+        assertEquals(9, store.getRowCacheSize());
+        assertEquals("updated", ByteBufferUtil.string(read(store, "key2").getColumn(ByteBufferUtil.bytes("c")).value()));
+        assertEquals(10, store.getRowCacheSize());
+    }
+
+    @Test
+    public void testSerializingCacheWeighsEntries() throws Exception
+    {
+        // capacity is in kilobytes: three 600 byte rows won't fit in 1KB
+        SerializingCache<String, ColumnFamily> cache = new SerializingCache<String, ColumnFamily>(1, ColumnFamily.serializer());
+        byte[] value = new byte[500];
+        for (int i = 0; i < 3; i++)
+        {
+            ColumnFamily cf = ColumnFamily.create(TABLE, CF);
+            cf.addColumn(new Column(ByteBufferUtil.bytes("c"), ByteBuffer.wrap(value), i));
+            cache.put("key" + i, cf);
+        }
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.weightedSize());
+        assertEquals(2, cache.get("key2").getColumn(ByteBufferUtil.bytes("c")).timestamp());
+
+        cache.remove("key2");
+        assertEquals(0, cache.size());
+        assert cache.get("key2") == null;
+    }
+}
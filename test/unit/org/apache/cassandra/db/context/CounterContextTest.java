@@ -73,7 +73,7 @@ public class CounterContextTest
     }
 
     @Test
-    public void testUpdatePresentReorder() throws UnknownHostException
+    public void testUpdatePresent() throws UnknownHostException
     {
         byte[] context;
 
@@ -95,15 +95,18 @@ public class CounterContextTest
             2L,
             3L);
 
-        context = cc.update(context, idAddress, 10L);
+        byte[] updated = cc.update(context, idAddress, 10L);
 
+        // updated in place, the tuples staying sorted by id
+        assertSame(context, updated);
         assertEquals(context.length, stepLength * defaultEntries);
-        assertEquals(  3L, FBUtilities.byteArrayToLong(context, idLength));
-        assertEquals( 13L, FBUtilities.byteArrayToLong(context, idLength + clockLength));
-        for (int i = 1; i < defaultEntries; i++)
+        int localOffset = (defaultEntries - 1) * stepLength;
+        assertEquals(  3L, FBUtilities.byteArrayToLong(context, localOffset + idLength));
+        assertEquals( 13L, FBUtilities.byteArrayToLong(context, localOffset + idLength + clockLength));
+        for (int i = 0; i < defaultEntries - 1; i++)
         {
             int offset = i * stepLength;
-            assertEquals( i-1, FBUtilities.byteArrayToInt(context,  offset));
+            assertEquals(   i, FBUtilities.byteArrayToInt(context,  offset));
             assertEquals(1L, FBUtilities.byteArrayToLong(context, offset + idLength));
             assertEquals(1L, FBUtilities.byteArrayToLong(context, offset + idLength + clockLength));
         }
@@ -127,12 +130,12 @@ public class CounterContextTest
         context = cc.update(context, idAddress, 328L);
 
         assert context.length == stepLength * 3;
-        assert   1L == FBUtilities.byteArrayToLong(context, idLength);
-        assert 328L == FBUtilities.byteArrayToLong(context, idLength + clockLength);
-        for (int i = 1; i < 3; i++)
+        assert   1L == FBUtilities.byteArrayToLong(context, 2*stepLength + idLength);
+        assert 328L == FBUtilities.byteArrayToLong(context, 2*stepLength + idLength + clockLength);
+        for (int i = 0; i < 2; i++)
         {
             int offset = i * stepLength;
-            assert i-1 == FBUtilities.byteArrayToInt(context,  offset);
+            assert   i == FBUtilities.byteArrayToInt(context,  offset);
             assert  1L == FBUtilities.byteArrayToLong(context, offset + idLength);
             assert  1L == FBUtilities.byteArrayToLong(context, offset + idLength + clockLength);
         }
@@ -228,6 +231,33 @@ public class CounterContextTest
         assertEquals( 9, FBUtilities.byteArrayToInt(sorted, 9*stepLength));
     }
 
+    @Test
+    public void testUpdateUnsorted() throws UnknownHostException
+    {
+        // written by an earlier version, most recently updated first
+        byte[] context = new byte[stepLength * 3];
+        cc.writeElementAtStepOffset(context, 0, FBUtilities.toByteArray(5), 3L, 3L);
+        cc.writeElementAtStepOffset(context, 1, FBUtilities.toByteArray(1), 2L, 2L);
+        cc.writeElementAtStepOffset(context, 2, FBUtilities.toByteArray(3), 1L, 1L);
+        byte[] original = ArrayUtils.clone(context);
+
+        byte[] updated = cc.update(context, InetAddress.getByAddress(FBUtilities.toByteArray(3)), 4L);
+        assertArrayEquals(original, context);
+        assertEquals(stepLength * 3, updated.length);
+        assertEquals(1,  FBUtilities.byteArrayToInt(updated,  0*stepLength));
+        assertEquals(3,  FBUtilities.byteArrayToInt(updated,  1*stepLength));
+        assertEquals(2L, FBUtilities.byteArrayToLong(updated, 1*stepLength + idLength));
+        assertEquals(5L, FBUtilities.byteArrayToLong(updated, 1*stepLength + idLength + clockLength));
+        assertEquals(5,  FBUtilities.byteArrayToInt(updated,  2*stepLength));
+
+        updated = cc.update(context, InetAddress.getByAddress(FBUtilities.toByteArray(2)), 7L);
+        assertArrayEquals(original, context);
+        assertEquals(stepLength * 4, updated.length);
+        for (int i = 0; i < 4; i++)
+            assertEquals(new int[]{ 1, 2, 3, 5 }[i], FBUtilities.byteArrayToInt(updated, i*stepLength));
+        assertEquals(7L, FBUtilities.byteArrayToLong(updated, 1*stepLength + idLength + clockLength));
+    }
+
     @Test
     public void testDiff()
     {
@@ -440,35 +470,41 @@ public class CounterContextTest
             2L,
             9L);
 
+        // right is not sorted, as written by an earlier version; it is merged as is, but not reordered
+        byte[] originalRight = ArrayUtils.clone(right);
         byte[] merged = cc.merge(left, right);
+        assertArrayEquals(originalRight, right);
+        assertEquals(5 * stepLength, merged.length);
+
+        // remote node id counts are reconciled (i.e. take max), in id order
+        assertEquals( 1,   FBUtilities.byteArrayToInt(merged,  0*stepLength));
+        assertEquals( 1L,  FBUtilities.byteArrayToLong(merged, 0*stepLength + idLength));
+        assertEquals( 1L,  FBUtilities.byteArrayToLong(merged, 0*stepLength + idLength + clockLength));
+
+        assertEquals( 2,   FBUtilities.byteArrayToInt(merged,  1*stepLength));
+        assertEquals( 2L,  FBUtilities.byteArrayToLong(merged, 1*stepLength + idLength));
+        assertEquals( 2L,  FBUtilities.byteArrayToLong(merged, 1*stepLength + idLength + clockLength));
+
+        assertEquals( 4,   FBUtilities.byteArrayToInt(merged,  2*stepLength));
+        assertEquals( 6L,  FBUtilities.byteArrayToLong(merged, 2*stepLength + idLength));
+        assertEquals( 3L,  FBUtilities.byteArrayToLong(merged, 2*stepLength + idLength + clockLength));
+
+        assertEquals( 5,   FBUtilities.byteArrayToInt(merged,  3*stepLength));
+        assertEquals( 5L,  FBUtilities.byteArrayToLong(merged, 3*stepLength + idLength));
+        assertEquals( 5L,  FBUtilities.byteArrayToLong(merged, 3*stepLength + idLength + clockLength));
 
         // local node id's counts are aggregated
-        assertEquals(0, FBUtilities.compareUnsigned(
+        assertEquals(0, FBUtilities.compareByteSubArrays(
             FBUtilities.getLocalAddress().getAddress(),
-            merged, 
             0,
-            0*stepLength,
-            4,
+            merged,
+            4*stepLength,
             4));
-        assertEquals(  9L, FBUtilities.byteArrayToLong(merged, 0*stepLength + idLength));
-        assertEquals(12L,  FBUtilities.byteArrayToLong(merged, 0*stepLength + idLength + clockLength));
-
-        // remote node id counts are reconciled (i.e. take max)
-        assertEquals( 4,   FBUtilities.byteArrayToInt(merged,  1*stepLength));
-        assertEquals( 6L,  FBUtilities.byteArrayToLong(merged, 1*stepLength + idLength));
-        assertEquals( 3L,  FBUtilities.byteArrayToLong(merged, 1*stepLength + idLength + clockLength));
-
-        assertEquals( 5,   FBUtilities.byteArrayToInt(merged,  2*stepLength));
-        assertEquals( 5L,  FBUtilities.byteArrayToLong(merged, 2*stepLength + idLength));
-        assertEquals( 5L,  FBUtilities.byteArrayToLong(merged, 2*stepLength + idLength + clockLength));
-
-        assertEquals( 2,   FBUtilities.byteArrayToInt(merged,  3*stepLength));
-        assertEquals( 2L,  FBUtilities.byteArrayToLong(merged, 3*stepLength + idLength));
-        assertEquals( 2L,  FBUtilities.byteArrayToLong(merged, 3*stepLength + idLength + clockLength));
+        assertEquals(  9L, FBUtilities.byteArrayToLong(merged, 4*stepLength + idLength));
+        assertEquals(12L,  FBUtilities.byteArrayToLong(merged, 4*stepLength + idLength + clockLength));
 
-        assertEquals( 1,   FBUtilities.byteArrayToInt(merged,  4*stepLength));
-        assertEquals( 1L,  FBUtilities.byteArrayToLong(merged, 4*stepLength + idLength));
-        assertEquals( 1L,  FBUtilities.byteArrayToLong(merged, 4*stepLength + idLength + clockLength));
+        // merging sorted contexts gives the same result
+        assertArrayEquals(merged, cc.merge(left, cc.sortElementsById(right)));
     }
 
     @Test
@@ -0,0 +1,182 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.cassandra.io.compress;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.junit.Test;
+
+import org.apache.cassandra.io.util.FileMark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CompressedRandomAccessReaderTest
+{
+    private static final int CHUNK_LENGTH = 1024;
+
+    private static byte[] randomData(int length)
+    {
+        // a small alphabet, so that the data compresses
+        Random random = new Random(length);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = (byte) ('a' + random.nextInt(4));
+        return data;
+    }
+
+    @Test
+    public void testReadAcrossChunks() throws IOException
+    {
+        File file = File.createTempFile("compressed", "-Data.db");
+        String metadataPath = file.getPath() + ".info";
+        byte[] data = randomData(10 * CHUNK_LENGTH + 17);
+
+        CompressedSequentialWriter writer = new CompressedSequentialWriter(file, metadataPath, CHUNK_LENGTH);
+        writer.write(data, 0, 100);
+        writer.writeLong(42L);
+        writer.write(data, 108, data.length - 108);
+        assertEquals(data.length, writer.getFilePointer());
+        writer.close();
+        assert file.length() < data.length;
+
+        CompressionMetadata metadata = CompressionMetadata.read(metadataPath);
+        assertEquals(11, metadata.chunkCount());
+        CompressedRandomAccessReader reader = new CompressedRandomAccessReader(file.getPath(), metadata);
+        assertEquals(data.length, reader.length());
+
+        byte[] first = new byte[100];
+        reader.readFully(first);
+        assertEquals(new String(data, 0, 100), new String(first));
+        assertEquals(42L, reader.readLong());
+
+        // seek into, and read across, chunk boundaries
+        reader.seek(CHUNK_LENGTH - 3);
+        byte[] read = new byte[3 * CHUNK_LENGTH];
+        reader.readFully(read);
+        assertEquals(new String(data, CHUNK_LENGTH - 3, read.length), new String(read));
+
+        reader.seek(data.length - 1);
+        assertEquals(data[data.length - 1], (byte) reader.read());
+        assert reader.isEOF();
+        assertEquals(-1, reader.read());
+        reader.close();
+    }
+
+    @Test
+    public void testResetIntoWrittenChunk() throws IOException
+    {
+        File file = File.createTempFile("compressed", "-Data.db");
+        String metadataPath = file.getPath() + ".info";
+        byte[] data = randomData(4 * CHUNK_LENGTH);
+
+        CompressedSequentialWriter writer = new CompressedSequentialWriter(file, metadataPath, CHUNK_LENGTH);
+        writer.write(data, 0, CHUNK_LENGTH + 10);
+        FileMark mark = writer.mark();
+        writer.write(randomData(2 * CHUNK_LENGTH));
+        writer.reset(mark);
+        writer.write(data, CHUNK_LENGTH + 10, data.length - (CHUNK_LENGTH + 10));
+        writer.close();
+
+        CompressedRandomAccessReader reader = new CompressedRandomAccessReader(file.getPath(), CompressionMetadata.read(metadataPath));
+        byte[] read = new byte[data.length];
+        reader.readFully(read);
+        assertEquals(new String(data), new String(read));
+        reader.close();
+    }
+
+    @Test
+    public void testPooledDecompressors() throws IOException
+    {
+        File file = File.createTempFile("compressed", "-Data.db");
+        String metadataPath = file.getPath() + ".info";
+        byte[] data = randomData(4 * CHUNK_LENGTH);
+
+        CompressedSequentialWriter writer = new CompressedSequentialWriter(file, metadataPath, CHUNK_LENGTH);
+        writer.write(data);
+        writer.close();
+        CompressionMetadata metadata = CompressionMetadata.read(metadataPath);
+        Queue<CompressedRandomAccessReader.Decompressor> pool = new ArrayBlockingQueue<CompressedRandomAccessReader.Decompressor>(1);
+
+        CompressedRandomAccessReader reader = new CompressedRandomAccessReader(file.getPath(), metadata, pool);
+        byte[] read = new byte[10];
+        reader.readFully(read);
+        assertEquals(new String(data, 0, 10), new String(read));
+        reader.close();
+        reader.close();
+        assertEquals(1, pool.size());
+
+        // the next reader takes over the decompressor, and nothing of the previous chunk leaks into its reads
+        CompressedRandomAccessReader second = new CompressedRandomAccessReader(file.getPath(), metadata, pool);
+        assertEquals(0, pool.size());
+        CompressedRandomAccessReader third = new CompressedRandomAccessReader(file.getPath(), metadata, pool);
+        second.seek(5);
+        second.readFully(read);
+        assertEquals(new String(data, 5, 10), new String(read));
+        third.seek(2 * CHUNK_LENGTH + 5);
+        third.readFully(read);
+        assertEquals(new String(data, 2 * CHUNK_LENGTH + 5, 10), new String(read));
+        second.close();
+        third.close();
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testCorruptChunk() throws IOException
+    {
+        File file = File.createTempFile("compressed", "-Data.db");
+        String metadataPath = file.getPath() + ".info";
+        byte[] data = randomData(1000);
+
+        CompressedSequentialWriter writer = new CompressedSequentialWriter(file, metadataPath, CHUNK_LENGTH);
+        writer.write(data);
+        writer.close();
+        CompressionMetadata metadata = CompressionMetadata.read(metadataPath);
+
+        // a chunk cut short: the inflater runs out of input before the end of the stream
+        CompressionMetadata truncated = new CompressionMetadata(CHUNK_LENGTH, metadata.dataLength, metadata.compressedFileLength / 2, new long[]{ 0 });
+        assertCorrupt(new CompressedRandomAccessReader(file.getPath(), truncated));
+
+        // a chunk length smaller than the chunk: the inflater runs out of room before the end of the stream
+        CompressionMetadata shorter = new CompressionMetadata(CHUNK_LENGTH / 2, metadata.dataLength, metadata.compressedFileLength, new long[]{ 0, metadata.compressedFileLength });
+        assertCorrupt(new CompressedRandomAccessReader(file.getPath(), shorter));
+    }
+
+    private static void assertCorrupt(CompressedRandomAccessReader reader) throws IOException
+    {
+        try
+        {
+            reader.read();
+            fail("corrupt chunk read");
+        }
+        catch (IOException e)
+        {
+            assert e.getMessage().startsWith("corrupt chunk 0 in ") : e;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+}
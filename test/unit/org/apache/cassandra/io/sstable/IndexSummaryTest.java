@@ -0,0 +1,95 @@
+package org.apache.cassandra.io.sstable;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.BigIntegerToken;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.OrderPreservingPartitioner;
+import org.apache.cassandra.dht.RandomPartitioner;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+
+public class IndexSummaryTest
+{
+    @Test
+    public void testBinarySearchRandomPartitioner()
+    {
+        RandomPartitioner partitioner = new RandomPartitioner();
+        List<DecoratedKey> samples = samples(partitioner);
+        IndexSummary summary = summary(samples);
+
+        for (int i = 0; i < 500; i++)
+            assertSearch(summary, samples, partitioner.decorateKey(ByteBufferUtil.bytes("probe" + i)), partitioner);
+        for (DecoratedKey sample : samples)
+            assertSearch(summary, samples, sample, partitioner);
+
+        // token-only bounds, including the extremes of the token space
+        for (BigInteger token : new BigInteger[]{ BigInteger.ZERO, BigInteger.ONE, BigInteger.ONE.shiftLeft(127), BigInteger.valueOf(-1) })
+            assertSearch(summary, samples, new DecoratedKey<BigIntegerToken>(new BigIntegerToken(token), null), partitioner);
+    }
+
+    @Test
+    public void testBinarySearchOrderPreservingPartitioner()
+    {
+        OrderPreservingPartitioner partitioner = new OrderPreservingPartitioner();
+        List<DecoratedKey> samples = samples(partitioner);
+        IndexSummary summary = summary(samples);
+
+        for (int i = 0; i < 500; i++)
+            assertSearch(summary, samples, partitioner.decorateKey(ByteBufferUtil.bytes("probe" + i)), partitioner);
+        for (DecoratedKey sample : samples)
+            assertSearch(summary, samples, sample, partitioner);
+    }
+
+    private static List<DecoratedKey> samples(IPartitioner partitioner)
+    {
+        List<DecoratedKey> samples = new ArrayList<DecoratedKey>();
+        for (int i = 0; i < 100; i++)
+            samples.add(partitioner.decorateKey(ByteBufferUtil.bytes("key" + i)));
+        Collections.sort(samples);
+        return samples;
+    }
+
+    private static IndexSummary summary(List<DecoratedKey> samples)
+    {
+        IndexSummary summary = new IndexSummary(samples.size());
+        for (int i = 0; i < samples.size(); i++)
+            summary.addEntry(samples.get(i), i);
+        summary.complete();
+        return summary;
+    }
+
+    private static void assertSearch(IndexSummary summary, List<DecoratedKey> samples, DecoratedKey key, IPartitioner partitioner)
+    {
+        assertEquals(key.toString(), Collections.binarySearch(samples, key, DecoratedKey.comparator), summary.binarySearch(key, partitioner));
+    }
+}
@@ -21,17 +21,24 @@ package org.apache.cassandra.io.sstable;
  */
 
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutionException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import org.junit.Test;
 
 import org.apache.cassandra.CleanupHelper;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.columniterator.IColumnIterator;
+import org.apache.cassandra.db.columniterator.SSTableNamesIterator;
+import org.apache.cassandra.db.columniterator.SSTableSliceIterator;
 import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
@@ -149,4 +156,190 @@ public class SSTableReaderTest extends CleanupHelper
         store.forceBlockingFlush();
         assert store.getMaxRowSize() != 0;
     }
+
+    @Test
+    public void testMarkRepaired() throws IOException, ExecutionException, InterruptedException
+    {
+        Table table = Table.open("Keyspace1");
+        ColumnFamilyStore store = table.getColumnFamilyStore("Standard3");
+
+        for (int j = 0; j < 10; j++)
+        {
+            ByteBuffer key = ByteBuffer.wrap(String.valueOf(j).getBytes());
+            RowMutation rm = new RowMutation("Keyspace1", key);
+            rm.add(new QueryPath("Standard3", null, ByteBufferUtil.bytes("0")), FBUtilities.EMPTY_BYTE_BUFFER, j);
+            rm.apply();
+        }
+        store.forceBlockingFlush();
+        SSTableReader sstable = store.getSSTables().iterator().next();
+        assert !sstable.isRepaired();
+        assertEquals(1, store.getUnrepairedSSTables().size());
+
+        long repairedAt = System.currentTimeMillis();
+        sstable.markRepaired(repairedAt);
+        assertEquals(repairedAt, sstable.getRepairedAt());
+        assertEquals(0, store.getUnrepairedSSTables().size());
+
+        // the marker survives reopening the sstable, along with the rest of the statistics
+        SSTableReader reopened = SSTableReader.open(sstable.descriptor);
+        assertEquals(repairedAt, reopened.getRepairedAt());
+        assertEquals(sstable.getMaxTimestamp(), reopened.getMaxTimestamp());
+        assertEquals(sstable.getEstimatedRowSize().max(), reopened.getEstimatedRowSize().max());
+        assert !new File(sstable.descriptor.asTemporary(true).filenameFor(Component.STATS)).exists();
+    }
+
+    @Test
+    public void testPersistentSummary() throws IOException, ExecutionException, InterruptedException
+    {
+        MmappedSegmentedFile.MAX_SEGMENT_SIZE = 40; // so that the saved segment boundaries matter
+
+        Table table = Table.open("Keyspace1");
+        ColumnFamilyStore store = table.getColumnFamilyStore("Standard2");
+
+        CompactionManager.instance.disableAutoCompaction();
+        for (int j = 0; j < 300; j++)
+        {
+            ByteBuffer key = ByteBuffer.wrap(String.valueOf(j).getBytes());
+            RowMutation rm = new RowMutation("Keyspace1", key);
+            rm.add(new QueryPath("Standard2", null, ByteBufferUtil.bytes("0")), FBUtilities.EMPTY_BYTE_BUFFER, j);
+            rm.apply();
+        }
+        store.forceBlockingFlush();
+        CompactionManager.instance.performMajor(store);
+
+        SSTableReader sstable = store.getSSTables().iterator().next();
+        File summaryFile = new File(sstable.descriptor.filenameFor(Component.SUMMARY));
+        assert summaryFile.exists();
+
+        // reopening from the saved summary and rescanning the index must agree with the written sstable
+        SSTableReader fromSummary = SSTableReader.open(sstable.descriptor);
+        summaryFile.delete();
+        SSTableReader rescanned = SSTableReader.open(sstable.descriptor);
+        assert summaryFile.exists();
+        for (SSTableReader reopened : Arrays.asList(fromSummary, rescanned))
+        {
+            assertEquals(sstable.first, reopened.first);
+            assertEquals(sstable.last, reopened.last);
+            assertEquals(sstable.estimatedKeys(), reopened.estimatedKeys());
+            assertEquals(new ArrayList<DecoratedKey>(sstable.getKeySamples()), new ArrayList<DecoratedKey>(reopened.getKeySamples()));
+            for (int j = 0; j < 310; j++)
+            {
+                DecoratedKey dk = Util.dk(String.valueOf(j));
+                assertEquals(sstable.getPosition(dk, SSTableReader.Operator.EQ), reopened.getPosition(dk, SSTableReader.Operator.EQ));
+                assertEquals(sstable.getPosition(dk, SSTableReader.Operator.GE), reopened.getPosition(dk, SSTableReader.Operator.GE));
+            }
+        }
+    }
+
+    @Test
+    public void testPromotedIndex() throws IOException, ExecutionException, InterruptedException
+    {
+        Table table = Table.open("Keyspace1");
+        ColumnFamilyStore store = table.getColumnFamilyStore("Standard1");
+
+        // a row spanning many column index blocks, and a row without a column index
+        CompactionManager.instance.disableAutoCompaction();
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("wide"));
+        for (int i = 0; i < 1000; i++)
+            rm.add(new QueryPath("Standard1", null, column(i)), ByteBuffer.wrap(new byte[100]), 0);
+        rm.apply();
+        rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("narrow"));
+        rm.add(new QueryPath("Standard1", null, column(0)), ByteBuffer.wrap(new byte[100]), 0);
+        rm.apply();
+        store.forceBlockingFlush();
+        DecoratedKey wide = Util.dk("wide");
+        DecoratedKey narrow = Util.dk("narrow");
+
+        // both flushed and compacted rows are promoted
+        for (SSTableReader sstable : store.getSSTables())
+        {
+            RowIndexEntry entry = sstable.getIndexEntry(wide, SSTableReader.Operator.EQ);
+            assert entry == null || entry.isPromoted();
+        }
+        CompactionManager.instance.performMajor(store);
+        SSTableReader sstable = store.getSSTables().iterator().next();
+        RowIndexEntry entry = sstable.getIndexEntry(wide, SSTableReader.Operator.EQ);
+        assert entry.isPromoted();
+        assertEquals(sstable.getPosition(wide, SSTableReader.Operator.GE), entry.position);
+        assert !sstable.getIndexEntry(narrow, SSTableReader.Operator.EQ).isPromoted();
+
+        // slices and names are read straight from the columns of the data file
+        assertColumns(new SSTableSliceIterator(sstable, wide, column(500), column(509), false), 500, 501, 502, 503, 504, 505, 506, 507, 508, 509);
+        assertColumns(new SSTableSliceIterator(sstable, wide, column(999), column(996), true), 999, 998, 997, 996);
+        assertColumns(new SSTableSliceIterator(sstable, wide, column(998), FBUtilities.EMPTY_BYTE_BUFFER, false), 998, 999);
+        SortedSet<ByteBuffer> names = new TreeSet<ByteBuffer>(store.metadata.comparator);
+        names.addAll(Arrays.asList(column(0), column(123), column(777), column(999), ByteBufferUtil.bytes("missing")));
+        assertColumns(new SSTableNamesIterator(sstable, wide, names), 0, 123, 777, 999);
+        assertColumns(new SSTableNamesIterator(sstable, narrow, names), 0);
+    }
+
+    @Test
+    public void testPromotedIndexCached() throws IOException, ExecutionException, InterruptedException
+    {
+        Table table = Table.open("Keyspace1");
+        ColumnFamilyStore store = table.getColumnFamilyStore("Standard2");
+
+        CompactionManager.instance.disableAutoCompaction();
+        for (int j = 0; j < 2; j++)
+        {
+            RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("wide"));
+            for (int i = j; i < 1000; i += 2)
+                rm.add(new QueryPath("Standard2", null, column(i)), ByteBuffer.wrap(new byte[100]), 0);
+            rm.apply();
+            rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("narrow"));
+            rm.add(new QueryPath("Standard2", null, column(j)), ByteBuffer.wrap(new byte[100]), 0);
+            rm.apply();
+            store.forceBlockingFlush();
+        }
+        DecoratedKey wide = Util.dk("wide");
+        DecoratedKey narrow = Util.dk("narrow");
+
+        // the first lookup caches the key, and a hit still carries the promoted header
+        for (SSTableReader flushed : store.getSSTables())
+        {
+            assert flushed.getCachedPosition(wide) == -1;
+            RowIndexEntry scanned = flushed.getIndexEntry(wide, SSTableReader.Operator.EQ);
+            if (scanned == null)
+                // written by another test
+                continue;
+            assert flushed.getCachedPosition(wide) == scanned.position;
+            RowIndexEntry cached = flushed.getIndexEntry(wide, SSTableReader.Operator.EQ);
+            assert cached.isPromoted();
+            assertEquals(scanned.columnsPosition(wide), cached.columnsPosition(wide));
+            flushed.getIndexEntry(narrow, SSTableReader.Operator.EQ);
+            assert !flushed.getIndexEntry(narrow, SSTableReader.Operator.EQ).isPromoted();
+        }
+
+        // keys cached in the compacted sstables are cached in the new one along with their headers
+        CompactionManager.instance.performMajor(store);
+        SSTableReader sstable = store.getSSTables().iterator().next();
+        assert sstable.getCachedPosition(wide) >= 0;
+        assert sstable.getIndexEntry(wide, SSTableReader.Operator.EQ).isPromoted();
+        assert sstable.getCachedPosition(narrow) >= 0;
+        assert !sstable.getIndexEntry(narrow, SSTableReader.Operator.EQ).isPromoted();
+
+        // and a slice of the cached row goes straight to its columns
+        assertColumns(new SSTableSliceIterator(sstable, wide, column(500), column(509), false), 500, 501, 502, 503, 504, 505, 506, 507, 508, 509);
+        assertColumns(new SSTableSliceIterator(sstable, wide, column(999), column(996), true), 999, 998, 997, 996);
+        SortedSet<ByteBuffer> names = new TreeSet<ByteBuffer>(store.metadata.comparator);
+        names.addAll(Arrays.asList(column(0), column(777), column(999)));
+        assertColumns(new SSTableNamesIterator(sstable, wide, names), 0, 777, 999);
+    }
+
+    private static ByteBuffer column(int i)
+    {
+        return ByteBufferUtil.bytes(String.format("c%04d", i));
+    }
+
+    private static void assertColumns(IColumnIterator iter, int... expected) throws IOException
+    {
+        List<ByteBuffer> names = new ArrayList<ByteBuffer>();
+        while (iter.hasNext())
+            names.add(iter.next().name());
+        iter.close();
+        List<ByteBuffer> expectedNames = new ArrayList<ByteBuffer>();
+        for (int i : expected)
+            expectedNames.add(column(i));
+        assertEquals(expectedNames, names);
+    }
 }
@@ -0,0 +1,93 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.net;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.assertEquals;
+
+public class OutboundTcpConnectionTest
+{
+    @Test
+    public void testWriteAndReset() throws IOException
+    {
+        ServerSocket server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress(FBUtilities.getLocalAddress(), DatabaseDescriptor.getStoragePort()));
+        try
+        {
+            OutboundTcpConnection connection = new OutboundTcpConnection(FBUtilities.getLocalAddress());
+
+            // enough messages to be gathered into several writes, and some large enough to fill the socket buffer
+            for (int i = 0; i < 1000; i++)
+                connection.write(MessagingService.packIt(payload(i), false));
+            Socket socket = server.accept();
+            assertMessages(socket, 0, 1000);
+
+            // a reset closes the socket, and later messages go out on a new one
+            connection.closeSocket();
+            for (int i = 1000; i < 1010; i++)
+                connection.write(MessagingService.packIt(payload(i), false));
+            Socket second = server.accept();
+            assertMessages(second, 1000, 1010);
+            assertEquals(-1, socket.getInputStream().read());
+
+            assertEquals(0, connection.getPendingMessages());
+            socket.close();
+            second.close();
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+    private static byte[] payload(int i)
+    {
+        byte[] bytes = new byte[i % 100 == 0 ? 256 * 1024 : 10 + i % 50];
+        for (int j = 0; j < bytes.length; j++)
+            bytes[j] = (byte) (i + j);
+        return bytes;
+    }
+
+    private static void assertMessages(Socket socket, int from, int to) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        for (int i = from; i < to; i++)
+        {
+            MessagingService.validateMagic(in.readInt());
+            in.readInt(); // header
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            assert Arrays.equals(payload(i), bytes) : "message " + i + " differs";
+        }
+    }
+}
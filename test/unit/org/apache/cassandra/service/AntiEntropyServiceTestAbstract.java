@@ -40,6 +40,7 @@ import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.PrecompactedRow;
+import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.locator.AbstractReplicationStrategy;
 import org.apache.cassandra.locator.TokenMetadata;
@@ -48,6 +49,7 @@ import org.apache.cassandra.utils.MerkleTree;
 
 import static org.apache.cassandra.service.AntiEntropyService.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
@@ -181,6 +183,54 @@ public abstract class AntiEntropyServiceTestAbstract extends CleanupHelper
         sess.join();
     }
 
+    @Test
+    public void testMarkRepaired() throws Throwable
+    {
+        List<RowMutation> rms = new LinkedList<RowMutation>();
+        RowMutation rm = new RowMutation(tablename, ByteBufferUtil.bytes("key1"));
+        rm.add(new QueryPath(cfname, null, ByteBufferUtil.bytes("Column1")), ByteBufferUtil.bytes("asdf"), 0);
+        rms.add(rm);
+        Util.writeColumnFamily(rms);
+        List<SSTableReader> unrepaired = store.getUnrepairedSSTables();
+        assert !unrepaired.isEmpty();
+
+        // validate, and finish the session: every node is responsible for the entire ring, so all is repaired
+        CompactionManager.instance.submitValidation(store, new Validator(request)).get();
+        long repairedAt = System.currentTimeMillis();
+        aes.markRepaired(request, repairedAt);
+        assert store.getUnrepairedSSTables().isEmpty();
+        for (SSTableReader sstable : unrepaired)
+            assertEquals(repairedAt, sstable.getRepairedAt());
+        flushAES();
+
+        // new data is left for the next repair
+        Util.writeColumnFamily(rms);
+        assertEquals(1, store.getUnrepairedSSTables().size());
+    }
+
+    @Test
+    public void testIsCovered() throws Throwable
+    {
+        IPartitioner part = StorageService.getPartitioner();
+        Token min = part.getMinimumToken();
+        Token a = part.midpoint(min, min);
+        Token b = part.midpoint(a, min);
+        Token c = part.midpoint(b, min);
+
+        List<Range> ranges = Arrays.asList(new Range(min, a), new Range(a, b));
+        assertTrue(isCovered(a, a, ranges));
+        // adjacent ranges cover the tokens on either side of their boundary
+        assertTrue(isCovered(part.midpoint(min, a), part.midpoint(a, b), ranges));
+        assertFalse(isCovered(part.midpoint(a, b), c, ranges));
+
+        // a wrapping range covers the tokens across the minimum
+        ranges = Arrays.asList(new Range(b, a));
+        assertTrue(isCovered(c, c, ranges));
+        assertTrue(isCovered(part.midpoint(min, a), a, ranges));
+        assertFalse(isCovered(a, c, ranges));
+        assertFalse(isCovered(part.midpoint(a, b), c, ranges));
+    }
+
     @Test
     public void testGetNeighborsPlusOne() throws Throwable
     {
@@ -21,12 +21,23 @@ package org.apache.cassandra.service;
  */
 
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
 import java.util.Arrays;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
 import org.junit.Test;
 
 import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.ReadResponse;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.net.Message;
+import org.apache.cassandra.utils.WrappedRunnable;
 
 import static org.apache.cassandra.db.TableTest.assertColumns;
 import static org.apache.cassandra.Util.column;
@@ -93,4 +104,75 @@ public class ReadResponseResolverTest extends SchemaLoader
     {
         assertNull(ReadResponseResolver.resolveSuperset(Arrays.<ColumnFamily>asList(null, null)));
     }
+
+    @Test
+    public void testSpeculativeDataReplacesDigest() throws Exception
+    {
+        InetAddress slow = InetAddress.getByName("127.0.0.2");
+        InetAddress fast = InetAddress.getByName("127.0.0.3");
+        ColumnFamily cf = ColumnFamily.create("Keyspace1", "Standard1");
+        cf.addColumn(column("c1", "v1", 0));
+        Row row = new Row(Util.dk("k1"), cf);
+
+        ReadResponseResolver resolver = new ReadResponseResolver("Keyspace1", row.key.key);
+        assert resolver.preprocess(responseMessage(fast, new ReadResponse(ColumnFamily.digest(cf))));
+        assert resolver.getMessageCount() == 1;
+        assert !resolver.isDataPresent();
+
+        // the speculative data read of a replica that already sent its digest counts only once
+        assert !resolver.preprocess(responseMessage(fast, new ReadResponse(row)));
+        assert resolver.getMessageCount() == 1;
+        assert resolver.isDataPresent();
+        assert fast.equals(resolver.getFirstDataEndpoint());
+        assert !resolver.preprocess(responseMessage(fast, new ReadResponse(ColumnFamily.digest(cf))));
+        assert resolver.getMessageCount() == 1;
+
+        assert resolver.preprocess(responseMessage(slow, new ReadResponse(row)));
+        assert resolver.getMessageCount() == 2;
+        assert fast.equals(resolver.getFirstDataEndpoint());
+        assertColumns(resolver.resolve().cf, "c1");
+    }
+
+    @Test
+    public void testConcurrentResponsesCountOnce() throws Exception
+    {
+        InetAddress replica = InetAddress.getByName("127.0.0.2");
+        ColumnFamily cf = ColumnFamily.create("Keyspace1", "Standard1");
+        cf.addColumn(column("c1", "v1", 0));
+        Row row = new Row(Util.dk("k1"), cf);
+
+        for (int i = 0; i < 100; i++)
+        {
+            final ReadResponseResolver resolver = new ReadResponseResolver("Keyspace1", row.key.key);
+            final Message digest = responseMessage(replica, new ReadResponse(ColumnFamily.digest(cf)));
+            final Message data = responseMessage(replica, new ReadResponse(row));
+            final CyclicBarrier barrier = new CyclicBarrier(2);
+            final AtomicInteger counted = new AtomicInteger();
+            Thread digestThread = new Thread(new WrappedRunnable()
+            {
+                public void runMayThrow() throws Exception
+                {
+                    barrier.await();
+                    if (resolver.preprocess(digest))
+                        counted.incrementAndGet();
+                }
+            });
+            digestThread.start();
+            barrier.await();
+            if (resolver.preprocess(data))
+                counted.incrementAndGet();
+            digestThread.join();
+
+            assert counted.get() == 1;
+            assert resolver.getMessageCount() == 1;
+            assert resolver.isDataPresent();
+        }
+    }
+
+    private static Message responseMessage(InetAddress from, ReadResponse response) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ReadResponse.serializer().serialize(response, new DataOutputStream(bos));
+        return new Message(from, StorageService.Verb.REQUEST_RESPONSE, bos.toByteArray());
+    }
 }
@@ -19,6 +19,7 @@
 package org.apache.cassandra.service;
 
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import org.junit.BeforeClass;
@@ -30,8 +31,19 @@ import static org.apache.cassandra.Util.range;
 import static org.apache.cassandra.Util.bounds;
 import static org.apache.cassandra.Util.token;
 
+import org.apache.cassandra.concurrent.Stage;
+import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.db.RangeSliceCommand;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.locator.TokenMetadata;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
 
 public class StorageProxyTest extends CleanupHelper
 {
@@ -111,4 +123,58 @@ public class StorageProxyTest extends CleanupHelper
         // completely empty bounds match everything
         testGRR(bounds("", ""), bounds("", "1"), range("1", "6"), range("6", ""));
     }
+
+    @Test
+    public void testEstimateConcurrencyFactor()
+    {
+        // nothing to judge by: one range at a time
+        assertEquals(1, StorageProxy.estimateConcurrencyFactor(100, 0));
+        // enough ranges to find the wanted rows in one round
+        assertEquals(10, StorageProxy.estimateConcurrencyFactor(100, 10));
+        assertEquals(3, StorageProxy.estimateConcurrencyFactor(5, 2));
+        // always at least one range
+        assertEquals(1, StorageProxy.estimateConcurrencyFactor(1, 1000));
+        // and never more than the cap
+        assertEquals(StorageProxy.MAX_CONCURRENT_RANGE_REQUESTS, StorageProxy.estimateConcurrencyFactor(10000, 1));
+        assertEquals(StorageProxy.MAX_CONCURRENT_RANGE_REQUESTS, StorageProxy.estimateConcurrencyFactor(Integer.MAX_VALUE, 0.5));
+    }
+
+    @Test
+    public void testGetRangeSlice() throws Throwable
+    {
+        // Keyspace5 replicates every range to both nodes, so each range is read locally at ONE;
+        // the ring splits the full range into ("", 1], (1, 6] and (6, ""], with two rows in each
+        String[] keys = new String[]{ "0a", "0b", "3a", "3b", "8a", "8b" };
+        for (int i = keys.length - 1; i >= 0; i--)
+        {
+            RowMutation rm = new RowMutation("Keyspace5", ByteBufferUtil.bytes(keys[i]));
+            rm.add(new QueryPath("Standard1", null, ByteBufferUtil.bytes("c")), ByteBufferUtil.bytes(keys[i]), 0);
+            rm.apply();
+        }
+
+        // every range: all the rows, in token order
+        assertRangeSlice(100, keys, 3);
+        // the rows of the first two ranges are cut at max_keys, and the last range is never queried
+        assertRangeSlice(3, new String[]{ "0a", "0b", "3a" }, 2);
+        // the first range is enough
+        assertRangeSlice(2, new String[]{ "0a", "0b" }, 1);
+    }
+
+    private void assertRangeSlice(int maxKeys, String[] expectedKeys, int expectedRangesQueried) throws Throwable
+    {
+        SlicePredicate predicate = new SlicePredicate().setSlice_range(new SliceRange(FBUtilities.EMPTY_BYTE_BUFFER, FBUtilities.EMPTY_BYTE_BUFFER, false, 100));
+        RangeSliceCommand command = new RangeSliceCommand("Keyspace5", "Standard1", null, predicate, bounds("", ""), maxKeys);
+
+        // each range read locally is one task on the read stage
+        long tasksBefore = StageManager.getStage(Stage.READ).getTaskCount();
+        List<Row> rows = StorageProxy.getRangeSlice(command, ConsistencyLevel.ONE);
+        assertEquals(expectedRangesQueried, StageManager.getStage(Stage.READ).getTaskCount() - tasksBefore);
+
+        assertEquals(rows.toString(), expectedKeys.length, rows.size());
+        for (int i = 0; i < expectedKeys.length; i++)
+        {
+            ByteBuffer key = rows.get(i).key.key;
+            assertEquals(expectedKeys[i], ByteBufferUtil.string(key));
+        }
+    }
 }
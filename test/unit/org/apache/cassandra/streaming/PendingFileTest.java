@@ -0,0 +1,57 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.streaming;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.utils.Pair;
+
+public class PendingFileTest
+{
+    @Test
+    public void testSkip()
+    {
+        Descriptor desc = Descriptor.fromFilename(new File("Keyspace1", "Standard1-500-Data.db").toString());
+        PendingFile file = new PendingFile(null, desc, "Data.db", Arrays.asList(new Pair<Long,Long>(0L, 10L),
+                                                                               new Pair<Long,Long>(20L, 30L)), OperationType.BOOTSTRAP);
+        assertEquals(20, file.size);
+
+        // nothing received: everything is sent again
+        assertEquals(file.sections, file.skip(0).sections);
+
+        // part of the first section
+        PendingFile remaining = file.skip(4);
+        assertEquals(Arrays.asList(new Pair<Long,Long>(4L, 10L), new Pair<Long,Long>(20L, 30L)), remaining.sections);
+        assertEquals(16, remaining.size);
+        assertEquals(file.getFilename(), remaining.getFilename());
+
+        // the whole first section, then part of the second
+        assertEquals(Arrays.asList(new Pair<Long,Long>(20L, 30L)), file.skip(10).sections);
+        assertEquals(Arrays.asList(new Pair<Long,Long>(25L, 30L)), file.skip(15).sections);
+
+        // everything
+        assertEquals(0, file.skip(20).size);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.streaming;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+import org.apache.cassandra.CleanupHelper;
+import org.apache.cassandra.net.MessagingService;
+
+public class StreamReplyTest extends CleanupHelper
+{
+    @Test
+    public void testSerializeVersions() throws IOException
+    {
+        StreamReply reply = new StreamReply("Keyspace1/Standard1-500-Data.db", 42, StreamReply.Status.FILE_RETRY, 1234);
+
+        // current nodes keep the offset
+        StreamReply read = roundTrip(reply, MessagingService.VERSION_080, MessagingService.VERSION_080);
+        assertEquals(reply.toString(), read.toString());
+
+        // replies from older nodes have none
+        read = roundTrip(reply, MessagingService.VERSION_07, MessagingService.VERSION_07);
+        assertEquals(42, read.sessionId);
+        assertEquals(reply.file, read.file);
+        assertEquals(StreamReply.Status.FILE_RETRY, read.action);
+        assertEquals(0, read.offset);
+
+        // and older nodes read the start of current replies, ignoring the offset
+        read = roundTrip(reply, MessagingService.VERSION_080, MessagingService.VERSION_07);
+        assertEquals(reply.file, read.file);
+        assertEquals(0, read.offset);
+    }
+
+    @Test
+    public void testPeerVersions() throws IOException
+    {
+        InetAddress peer = InetAddress.getByName("127.0.0.2");
+        // until a peer sends us something, assume it is as old as can be
+        assertEquals(MessagingService.VERSION_07, MessagingService.instance.getVersion(peer));
+        MessagingService.instance.setVersion(peer, MessagingService.VERSION_080);
+        assertEquals(MessagingService.VERSION_080, MessagingService.instance.getVersion(peer));
+    }
+
+    private static StreamReply roundTrip(StreamReply reply, int writeVersion, int readVersion) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        StreamReply.serializer.serialize(reply, new DataOutputStream(bos), writeVersion);
+        return StreamReply.serializer.deserialize(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())), readVersion);
+    }
+}
@@ -35,6 +35,7 @@ import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.SSTableUtils;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.service.StorageService;
@@ -101,6 +102,14 @@ public class StreamingTransferTest extends CleanupHelper
         assert null != cfs.getColumnFamily(QueryFilter.getIdentityFilter(Util.dk("key1"), new QueryPath(cfs.columnFamily)));
         assert null != cfs.getColumnFamily(QueryFilter.getIdentityFilter(Util.dk("key3"), new QueryPath(cfs.columnFamily)));
 
+        // by streaming them, along with statistics, rather than rebuilding them
+        long statsRows = 0;
+        for (long bucket : cfs.getSSTables().iterator().next().getEstimatedRowSize().get(false))
+            statsRows += bucket;
+        assertEquals(2, statsRows);
+        for (String filename : sstable.descriptor.directory.list())
+            assert !filename.contains("-" + SSTable.TEMPFILE_MARKER + "-") : filename;
+
         // and that the secondary index works
         IndexExpression expr = new IndexExpression(ByteBufferUtil.bytes("birthdate"), IndexOperator.EQ, FBUtilities.toByteBuffer(3L));
         IndexClause clause = new IndexClause(Arrays.asList(expr), FBUtilities.EMPTY_BYTE_BUFFER, 100);
@@ -155,4 +164,44 @@ public class StreamingTransferTest extends CleanupHelper
         assert null != cfstore.getColumnFamily(QueryFilter.getIdentityFilter(Util.dk("test"), new QueryPath("Standard1")));
         assert null != cfstore.getColumnFamily(QueryFilter.getIdentityFilter(Util.dk("transfer1"), new QueryPath("Standard1")));
     }
+
+    @Test
+    public void testTransferCompressedTable() throws Exception
+    {
+        Table table = Table.open("Keyspace1");
+        ColumnFamilyStore cfs = table.getColumnFamilyStore("StandardCompressed");
+
+        // rows large enough to span several chunks
+        for (int i = 1; i <= 3; i++)
+        {
+            String key = "key" + i;
+            RowMutation rm = new RowMutation("Keyspace1", ByteBuffer.wrap(key.getBytes()));
+            ColumnFamily cf = ColumnFamily.create(table.name, cfs.columnFamily);
+            for (int c = 0; c < 200; c++)
+                cf.addColumn(column("column" + c, key, 0));
+            rm.add(cf);
+            rm.apply();
+        }
+        cfs.forceBlockingFlush();
+        assert cfs.getSSTables().size() == 1;
+        SSTableReader sstable = cfs.getSSTables().iterator().next();
+        cfs.removeAllSSTables();
+
+        // transfer the first and last key
+        IPartitioner p = StorageService.getPartitioner();
+        List<Range> ranges = new ArrayList<Range>();
+        ranges.add(new Range(p.getMinimumToken(), p.getToken(ByteBufferUtil.bytes("key1"))));
+        ranges.add(new Range(p.getToken(ByteBufferUtil.bytes("key2")), p.getMinimumToken()));
+        StreamOutSession session = StreamOutSession.create(table.name, LOCAL, null);
+        StreamOut.transferSSTables(session, Arrays.asList(sstable), ranges, OperationType.BOOTSTRAP);
+        session.await();
+
+        // the data was decompressed for the transfer
+        List<Row> rows = Util.getRangeSlice(cfs);
+        assertEquals(2, rows.size());
+        assert rows.get(0).key.key.equals(ByteBufferUtil.bytes("key1"));
+        assert rows.get(1).key.key.equals(ByteBufferUtil.bytes("key3"));
+        assertEquals(200, rows.get(0).cf.getColumnsMap().size());
+        assertEquals(200, rows.get(1).cf.getColumnsMap().size());
+    }
 }
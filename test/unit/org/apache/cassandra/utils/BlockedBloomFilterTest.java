@@ -0,0 +1,133 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.io.util.DataOutputBuffer;
+
+public class BlockedBloomFilterTest
+{
+    public BlockedBloomFilter bf;
+
+    public BlockedBloomFilterTest()
+    {
+        bf = BlockedBloomFilter.getFilter(10000L, FilterTestHelper.MAX_FAILURE_RATE, false);
+    }
+
+    public static BlockedBloomFilter testSerialize(BlockedBloomFilter f, boolean offHeap) throws IOException
+    {
+        f.add(ByteBufferUtil.bytes("a"));
+        DataOutputBuffer out = new DataOutputBuffer();
+        BlockedBloomFilter.serializer().serialize(f, out);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.getData(), 0, out.getLength());
+        BlockedBloomFilter f2 = BlockedBloomFilter.serializer(offHeap).deserialize(new DataInputStream(in));
+
+        assert f2.isPresent(ByteBufferUtil.bytes("a"));
+        assert !f2.isPresent(ByteBufferUtil.bytes("b"));
+        return f2;
+    }
+
+    @Before
+    public void clear()
+    {
+        bf.clear();
+    }
+
+    @Test
+    public void testOne()
+    {
+        bf.add(ByteBufferUtil.bytes("a"));
+        assert bf.isPresent(ByteBufferUtil.bytes("a"));
+        assert !bf.isPresent(ByteBufferUtil.bytes("b"));
+    }
+
+    @Test
+    public void testFalsePositivesInt()
+    {
+        FilterTestHelper.testFalsePositives(bf, FilterTestHelper.intKeys(), FilterTestHelper.randomKeys2());
+    }
+
+    @Test
+    public void testFalsePositivesRandom()
+    {
+        FilterTestHelper.testFalsePositives(bf, FilterTestHelper.randomKeys(), FilterTestHelper.randomKeys2());
+    }
+
+    @Test
+    public void testFalsePositivesOffHeap()
+    {
+        BlockedBloomFilter offHeap = BlockedBloomFilter.getFilter(10000L, FilterTestHelper.MAX_FAILURE_RATE, true);
+        FilterTestHelper.testFalsePositives(offHeap, FilterTestHelper.randomKeys(), FilterTestHelper.randomKeys2());
+    }
+
+    @Test
+    public void testFalsePositivesSSTableSize()
+    {
+        // the blocked filter must stay about as accurate as the unblocked one at the size sstables use
+        BlockedBloomFilter blocked = BlockedBloomFilter.getFilter(FilterTestHelper.ELEMENTS, 15, false);
+        BloomFilter unblocked = BloomFilter.getFilter(FilterTestHelper.ELEMENTS, 15);
+        ResetableIterator<ByteBuffer> keys = new KeyGenerator.RandomStringGenerator(314159, 10 * FilterTestHelper.ELEMENTS);
+        for (int i = 0; i < FilterTestHelper.ELEMENTS; i++)
+        {
+            ByteBuffer key = keys.next();
+            blocked.add(key);
+            unblocked.add(key);
+        }
+        int blockedFalsePositives = 0;
+        int unblockedFalsePositives = 0;
+        while (keys.hasNext())
+        {
+            ByteBuffer key = keys.next();
+            if (blocked.isPresent(key))
+                blockedFalsePositives++;
+            if (unblocked.isPresent(key))
+                unblockedFalsePositives++;
+        }
+        assert blockedFalsePositives <= unblockedFalsePositives * 3 / 2 + 10 : blockedFalsePositives + " vs " + unblockedFalsePositives;
+    }
+
+    @Test
+    public void testWords()
+    {
+        if (KeyGenerator.WordGenerator.WORDS == 0)
+        {
+            return;
+        }
+        BlockedBloomFilter bf2 = BlockedBloomFilter.getFilter(KeyGenerator.WordGenerator.WORDS / 2, FilterTestHelper.MAX_FAILURE_RATE, false);
+        int skipEven = KeyGenerator.WordGenerator.WORDS % 2 == 0 ? 0 : 2;
+        FilterTestHelper.testFalsePositives(bf2,
+                                            new KeyGenerator.WordGenerator(skipEven, 2),
+                                            new KeyGenerator.WordGenerator(1, 2));
+    }
+
+    @Test
+    public void testSerialize() throws IOException
+    {
+        BlockedBloomFilterTest.testSerialize(bf, false);
+        BlockedBloomFilterTest.testSerialize(bf, true);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.utils;
+
+import java.util.*;
+
+import com.google.common.collect.Ordering;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MergeIteratorTest
+{
+    /** counts the inputs that are merged into each output, as "item:count" */
+    private static class Counter extends MergeIterator.Reducer<Integer, String>
+    {
+        private Integer item;
+        private int count;
+
+        public void reduce(Integer current)
+        {
+            assert item == null || item.equals(current);
+            item = current;
+            count++;
+        }
+
+        protected String getReduced()
+        {
+            return item + ":" + count;
+        }
+
+        protected void onKeyChange()
+        {
+            item = null;
+            count = 0;
+        }
+    }
+
+    private static List<String> merge(List<Integer>... sources)
+    {
+        List<Iterator<Integer>> iterators = new ArrayList<Iterator<Integer>>();
+        for (List<Integer> source : sources)
+            iterators.add(source.iterator());
+        List<String> merged = new ArrayList<String>();
+        Iterator<String> iter = MergeIterator.get(iterators, Ordering.<Integer>natural(), new Counter());
+        while (iter.hasNext())
+            merged.add(iter.next());
+        return merged;
+    }
+
+    @Test
+    public void testSingleSource()
+    {
+        assertEquals(Arrays.asList("1:1", "3:1", "7:1"), merge(Arrays.asList(1, 3, 7)));
+        assertEquals(Collections.<String>emptyList(), merge(Collections.<Integer>emptyList()));
+    }
+
+    @Test
+    public void testDuplicatesAcrossSources()
+    {
+        List<String> merged = merge(Arrays.asList(1, 2, 5, 8),
+                                    Arrays.asList(2, 3, 8),
+                                    Collections.<Integer>emptyList(),
+                                    Arrays.asList(0, 2, 8, 9));
+        assertEquals(Arrays.asList("0:1", "1:1", "2:3", "3:1", "5:1", "8:3", "9:1"), merged);
+    }
+
+    @Test
+    public void testDuplicatesWithinSources()
+    {
+        assertEquals(Arrays.asList("1:2", "3:1"), merge(Arrays.asList(1, 1, 3)));
+        assertEquals(Arrays.asList("1:3", "2:1", "4:3"), merge(Arrays.asList(1, 1, 4, 4), Arrays.asList(1, 2, 4)));
+    }
+
+    @Test
+    public void testRandomSources()
+    {
+        Random random = new Random(1);
+        for (int k : new int[]{ 2, 3, 8, 32 })
+        {
+            List<Integer>[] sources = new List[k];
+            SortedMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+            for (int i = 0; i < k; i++)
+            {
+                SortedSet<Integer> source = new TreeSet<Integer>();
+                for (int j = random.nextInt(100); j > 0; j--)
+                    source.add(random.nextInt(200));
+                for (Integer item : source)
+                    expected.put(item, expected.containsKey(item) ? expected.get(item) + 1 : 1);
+                sources[i] = new ArrayList<Integer>(source);
+            }
+
+            List<String> expectedMerge = new ArrayList<String>();
+            for (Map.Entry<Integer, Integer> entry : expected.entrySet())
+                expectedMerge.add(entry.getKey() + ":" + entry.getValue());
+            assertEquals(expectedMerge, merge(sources));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SlabAllocatorTest
+{
+    @Test
+    public void testCloneIsIndependentCopy()
+    {
+        SlabAllocator allocator = new SlabAllocator();
+        ByteBuffer original = ByteBufferUtil.bytes("abcdef");
+        original.position(2);
+
+        ByteBuffer cloned = allocator.clone(original);
+        assertEquals(original, cloned);
+        assertEquals(4, cloned.remaining());
+        // slices are positioned within the region, not offset from it
+        assertEquals(0, cloned.arrayOffset());
+
+        original.put(2, (byte) 'x');
+        assertEquals("cdef", ByteBufferUtil.string(cloned));
+    }
+
+    @Test
+    public void testAllocationsDoNotOverlap()
+    {
+        SlabAllocator allocator = new SlabAllocator();
+        ByteBuffer first = allocator.clone(ByteBufferUtil.bytes("first"));
+        ByteBuffer second = allocator.clone(ByteBufferUtil.bytes("second"));
+
+        assertSame(first.array(), second.array());
+        assertEquals("first", ByteBufferUtil.string(first));
+        assertEquals("second", ByteBufferUtil.string(second));
+        assertEquals(1024 * 1024, allocator.getMinimumSize());
+    }
+
+    @Test
+    public void testRegionRollover()
+    {
+        SlabAllocator allocator = new SlabAllocator();
+        ByteBuffer previous = allocator.allocate(100 * 1024);
+        for (int i = 0; i < 20; i++)
+        {
+            ByteBuffer next = allocator.allocate(100 * 1024);
+            assertEquals(100 * 1024, next.remaining());
+            if (next.array() == previous.array())
+                assertTrue(next.position() >= previous.limit());
+            previous = next;
+        }
+        assertTrue(allocator.getMinimumSize() >= 2 * 1024 * 1024);
+    }
+
+    @Test
+    public void testLargeAndEmptyBuffers()
+    {
+        SlabAllocator allocator = new SlabAllocator();
+        assertEquals(0, allocator.allocate(0).remaining());
+
+        ByteBuffer large = allocator.allocate(512 * 1024);
+        assertEquals(512 * 1024, large.capacity());
+        assertEquals(0, allocator.getMinimumSize());
+    }
+}